@@ -0,0 +1,42 @@
+-- Moves device configurations out of devices into device_configurations, one row per
+-- distinct content, as in init-postgres.sql. Run once with the device service stopped:
+--   psql -d qct_devices -f content-address-configurations.sql
+-- The space of the dropped column is reclaimed by VACUUM FULL devices, which locks the
+-- table while it runs.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS device_configurations (
+    id BIGSERIAL PRIMARY KEY,
+    content_hash BYTEA NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_device_configurations_hash UNIQUE (content_hash)
+);
+
+INSERT INTO device_configurations (content_hash, content)
+SELECT DISTINCT sha256(convert_to(configuration, 'UTF8')), configuration
+FROM devices
+WHERE configuration IS NOT NULL
+ON CONFLICT (content_hash) DO NOTHING;
+
+ALTER TABLE devices ADD COLUMN IF NOT EXISTS configuration_id BIGINT;
+
+UPDATE devices d
+SET configuration_id = c.id
+FROM device_configurations c
+WHERE d.configuration IS NOT NULL
+  AND c.content_hash = sha256(convert_to(d.configuration, 'UTF8'));
+
+ALTER TABLE devices
+    DROP COLUMN configuration,
+    ADD FOREIGN KEY (configuration_id) REFERENCES device_configurations(id);
+
+CREATE INDEX IF NOT EXISTS idx_devices_configuration_id ON devices(configuration_id);
+
+GRANT ALL PRIVILEGES ON device_configurations TO qct_user;
+GRANT ALL PRIVILEGES ON SEQUENCE device_configurations_id_seq TO qct_user;
+
+COMMIT;
+
+ANALYZE devices;
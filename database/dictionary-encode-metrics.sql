@@ -0,0 +1,46 @@
+-- Replaces the metric_type and unit strings of device_metrics with ids into
+-- metric_dictionary, as in init-postgres.sql. Run once, after partition-device-metrics.sql,
+-- with the device service stopped:
+--   psql -d qct_devices -f dictionary-encode-metrics.sql
+-- Every row is rewritten; the space of the dropped columns is reclaimed as partitions are
+-- rewritten or dropped by retention.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS metric_dictionary (
+    id SERIAL PRIMARY KEY,
+    kind VARCHAR(16) NOT NULL,
+    value VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_metric_dictionary_value UNIQUE (kind, value)
+);
+
+INSERT INTO metric_dictionary (kind, value)
+SELECT DISTINCT 'METRIC_TYPE', metric_type FROM device_metrics
+ON CONFLICT (kind, value) DO NOTHING;
+
+INSERT INTO metric_dictionary (kind, value)
+SELECT DISTINCT 'UNIT', unit FROM device_metrics WHERE unit IS NOT NULL
+ON CONFLICT (kind, value) DO NOTHING;
+
+ALTER TABLE device_metrics ADD COLUMN metric_type_id INTEGER, ADD COLUMN unit_id INTEGER;
+
+UPDATE device_metrics m
+SET metric_type_id = (SELECT id FROM metric_dictionary WHERE kind = 'METRIC_TYPE' AND value = m.metric_type),
+    unit_id = (SELECT id FROM metric_dictionary WHERE kind = 'UNIT' AND value = m.unit);
+
+DROP INDEX IF EXISTS idx_device_metrics_device_type_ts;
+ALTER TABLE device_metrics
+    ALTER COLUMN metric_type_id SET NOT NULL,
+    DROP COLUMN metric_type,
+    DROP COLUMN unit,
+    ADD FOREIGN KEY (metric_type_id) REFERENCES metric_dictionary(id),
+    ADD FOREIGN KEY (unit_id) REFERENCES metric_dictionary(id);
+
+CREATE INDEX idx_device_metrics_device_type_ts ON device_metrics(device_id, metric_type_id, timestamp DESC);
+
+GRANT ALL PRIVILEGES ON metric_dictionary TO qct_user;
+GRANT ALL PRIVILEGES ON SEQUENCE metric_dictionary_id_seq TO qct_user;
+
+COMMIT;
+
+ANALYZE device_metrics;
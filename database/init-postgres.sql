@@ -9,51 +9,139 @@ CREATE DATABASE qct_devices;
 CREATE USER qct_user WITH PASSWORD 'qct_password';
 GRANT ALL PRIVILEGES ON DATABASE qct_devices TO qct_user;
 
+-- Device configurations, stored once each and referenced by id from devices (see
+-- DeviceConfigurationStore). content_hash is the SHA-256 of the UTF-8 content; rows are
+-- never changed.
+CREATE TABLE device_configurations (
+    id BIGSERIAL PRIMARY KEY,
+    content_hash BYTEA NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_device_configurations_hash UNIQUE (content_hash)
+);
+
 -- Create devices table
 CREATE TABLE devices (
     id BIGSERIAL PRIMARY KEY,
     device_id VARCHAR(50) UNIQUE NOT NULL,
     oem_id VARCHAR(50) NOT NULL,
     device_type VARCHAR(50) NOT NULL,
-    configuration TEXT,
+    configuration_id BIGINT REFERENCES device_configurations(id),
     firmware VARCHAR(100),
     status VARCHAR(20) DEFAULT 'ACTIVE',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
--- Create device_metrics table for analytics
+-- Metric types and units, stored in device_metrics by id (see MetricDictionary). Entries
+-- are never changed or removed.
+CREATE TABLE metric_dictionary (
+    id SERIAL PRIMARY KEY,
+    kind VARCHAR(16) NOT NULL,
+    value VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_metric_dictionary_value UNIQUE (kind, value)
+);
+
+-- Create device_metrics table for analytics, range-partitioned by timestamp.
+-- The application creates partitions ahead of time (qct.analytics.partitioning) and drops
+-- them once past raw retention; the default partition only catches out-of-range timestamps.
 CREATE TABLE device_metrics (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     device_id VARCHAR(50) NOT NULL,
-    metric_type VARCHAR(30) NOT NULL,
+    metric_type_id INTEGER NOT NULL REFERENCES metric_dictionary(id),
     value DECIMAL(10,2) NOT NULL,
-    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    unit_id INTEGER REFERENCES metric_dictionary(id),
+    description VARCHAR(255),
+    timestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, timestamp),
     FOREIGN KEY (device_id) REFERENCES devices(device_id)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE device_metrics_default PARTITION OF device_metrics DEFAULT;
+
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN SELECT generate_series(CURRENT_DATE, CURRENT_DATE + 7, INTERVAL '1 day')::date LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF device_metrics FOR VALUES FROM (%L) TO (%L)',
+                       'device_metrics_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+-- Minute/hour/day aggregates compacted from device_metrics
+CREATE TABLE device_metric_rollups (
+    id BIGSERIAL PRIMARY KEY,
+    resolution VARCHAR(10) NOT NULL,
+    device_id VARCHAR(50) NOT NULL,
+    metric_type VARCHAR(30) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    sample_count BIGINT NOT NULL,
+    sum_value DECIMAL(20,2) NOT NULL,
+    min_value DECIMAL(10,2) NOT NULL,
+    max_value DECIMAL(10,2) NOT NULL,
+    last_value DECIMAL(10,2) NOT NULL,
+    last_timestamp TIMESTAMP NOT NULL,
+    CONSTRAINT uk_device_metric_rollups_bucket UNIQUE (resolution, device_id, metric_type, bucket_start)
+);
+
+-- Hourly percentile sketches per device and metric type (see MetricSketchService)
+CREATE TABLE device_metric_sketches (
+    id BIGSERIAL PRIMARY KEY,
+    device_id VARCHAR(50) NOT NULL,
+    metric_type VARCHAR(30) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    sample_count BIGINT NOT NULL,
+    sketch BYTEA NOT NULL,
+    CONSTRAINT uk_device_metric_sketches_bucket UNIQUE (device_id, metric_type, bucket_start)
 );
 
 -- Create indexes for performance
 CREATE INDEX idx_devices_oem_id ON devices(oem_id);
 CREATE INDEX idx_devices_device_type ON devices(device_type);
 CREATE INDEX idx_devices_status ON devices(status);
-CREATE INDEX idx_device_metrics_device_id ON device_metrics(device_id);
+CREATE INDEX idx_devices_configuration_id ON devices(configuration_id);
+CREATE INDEX idx_devices_updated_at ON devices(updated_at);
 CREATE INDEX idx_device_metrics_timestamp ON device_metrics(timestamp);
+CREATE INDEX idx_device_metrics_device_ts ON device_metrics(device_id, timestamp DESC, id DESC);
+CREATE INDEX idx_device_metrics_device_type_ts ON device_metrics(device_id, metric_type_id, timestamp DESC);
+CREATE INDEX idx_device_metric_sketches_bucket_start ON device_metric_sketches(bucket_start);
 
 -- Grant permissions to application user
 GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA public TO qct_user;
 GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA public TO qct_user;
 
 -- Insert sample data
-INSERT INTO devices (device_id, oem_id, device_type, configuration, firmware, status) VALUES
-('DEV001', 'SAMSUNG', 'SMARTPHONE', '{"cpu": "Snapdragon 8 Gen 2", "ram": "12GB"}', 'v1.2.3', 'ACTIVE'),
-('DEV002', 'XIAOMI', 'TABLET', '{"cpu": "Snapdragon 870", "ram": "8GB"}', 'v1.1.0', 'ACTIVE'),
-('DEV003', 'ONEPLUS', 'SMARTPHONE', '{"cpu": "Snapdragon 8 Gen 1", "ram": "16GB"}', 'v2.0.1', 'INACTIVE');
+INSERT INTO device_configurations (content_hash, content)
+SELECT sha256(convert_to(c.content, 'UTF8')), c.content
+FROM (VALUES
+    ('{"cpu": "Snapdragon 8 Gen 2", "ram": "12GB"}'),
+    ('{"cpu": "Snapdragon 870", "ram": "8GB"}'),
+    ('{"cpu": "Snapdragon 8 Gen 1", "ram": "16GB"}')
+) AS c(content);
+
+INSERT INTO devices (device_id, oem_id, device_type, configuration_id, firmware, status)
+SELECT s.device_id, s.oem_id, s.device_type, c.id, s.firmware, s.status
+FROM (VALUES
+    ('DEV001', 'SAMSUNG', 'SMARTPHONE', '{"cpu": "Snapdragon 8 Gen 2", "ram": "12GB"}', 'v1.2.3', 'ACTIVE'),
+    ('DEV002', 'XIAOMI', 'TABLET', '{"cpu": "Snapdragon 870", "ram": "8GB"}', 'v1.1.0', 'ACTIVE'),
+    ('DEV003', 'ONEPLUS', 'SMARTPHONE', '{"cpu": "Snapdragon 8 Gen 1", "ram": "16GB"}', 'v2.0.1', 'INACTIVE')
+) AS s(device_id, oem_id, device_type, configuration, firmware, status)
+JOIN device_configurations c ON c.content_hash = sha256(convert_to(s.configuration, 'UTF8'));
 
 -- Insert sample metrics
-INSERT INTO device_metrics (device_id, metric_type, value) VALUES
-('DEV001', 'CPU_USAGE', 45.5),
-('DEV001', 'MEMORY_USAGE', 67.2),
-('DEV002', 'CPU_USAGE', 32.1),
-('DEV002', 'MEMORY_USAGE', 54.8),
-('DEV003', 'CPU_USAGE', 78.9),
-('DEV003', 'MEMORY_USAGE', 89.3);
\ No newline at end of file
+INSERT INTO metric_dictionary (kind, value) VALUES
+('METRIC_TYPE', 'CPU_USAGE'),
+('METRIC_TYPE', 'MEMORY_USAGE');
+
+INSERT INTO device_metrics (device_id, metric_type_id, value)
+SELECT s.device_id, t.id, s.value
+FROM (VALUES
+    ('DEV001', 'CPU_USAGE', 45.5),
+    ('DEV001', 'MEMORY_USAGE', 67.2),
+    ('DEV002', 'CPU_USAGE', 32.1),
+    ('DEV002', 'MEMORY_USAGE', 54.8),
+    ('DEV003', 'CPU_USAGE', 78.9),
+    ('DEV003', 'MEMORY_USAGE', 89.3)
+) AS s(device_id, metric_type, value)
+JOIN metric_dictionary t ON t.kind = 'METRIC_TYPE' AND t.value = s.metric_type;
\ No newline at end of file
@@ -0,0 +1,63 @@
+-- Converts an existing, unpartitioned device_metrics table into the range-partitioned layout
+-- of init-postgres.sql. Run once with the device service stopped:
+--   psql -d qct_devices -f partition-device-metrics.sql
+-- All rows are copied, so allow for roughly the table's size in free disk space.
+
+BEGIN;
+
+ALTER TABLE device_metrics RENAME TO device_metrics_legacy;
+ALTER TABLE device_metrics_legacy RENAME CONSTRAINT device_metrics_pkey TO device_metrics_legacy_pkey;
+DROP INDEX IF EXISTS idx_device_metrics_device_id;
+DROP INDEX IF EXISTS idx_device_metrics_timestamp;
+DROP INDEX IF EXISTS idx_device_metrics_device_ts;
+DROP INDEX IF EXISTS idx_device_metrics_device_type_ts;
+
+CREATE TABLE device_metrics (
+    id BIGINT NOT NULL DEFAULT nextval('device_metrics_id_seq'),
+    device_id VARCHAR(50) NOT NULL,
+    metric_type VARCHAR(30) NOT NULL,
+    value DECIMAL(10,2) NOT NULL,
+    unit VARCHAR(255),
+    description VARCHAR(255),
+    timestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE device_metrics_default PARTITION OF device_metrics DEFAULT;
+
+-- Daily partitions from the oldest retained sample to a week ahead
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN SELECT generate_series(COALESCE(MIN(timestamp)::date, CURRENT_DATE), CURRENT_DATE + 7, INTERVAL '1 day')::date
+               FROM device_metrics_legacy LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF device_metrics FOR VALUES FROM (%L) TO (%L)',
+                       'device_metrics_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+INSERT INTO device_metrics (id, device_id, metric_type, value, unit, description, timestamp)
+SELECT id, device_id, metric_type, value, unit, description, COALESCE(timestamp, CURRENT_TIMESTAMP)
+FROM device_metrics_legacy;
+
+-- Keep the device foreign key only where the old table enforced it (schemas created by
+-- Hibernate have none and may hold metrics of unknown devices)
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_constraint
+               WHERE conrelid = 'device_metrics_legacy'::regclass AND contype = 'f') THEN
+        ALTER TABLE device_metrics ADD FOREIGN KEY (device_id) REFERENCES devices(device_id);
+    END IF;
+END $$;
+
+ALTER SEQUENCE device_metrics_id_seq OWNED BY device_metrics.id;
+DROP TABLE device_metrics_legacy;
+
+CREATE INDEX idx_device_metrics_timestamp ON device_metrics(timestamp);
+CREATE INDEX idx_device_metrics_device_ts ON device_metrics(device_id, timestamp DESC, id DESC);
+CREATE INDEX idx_device_metrics_device_type_ts ON device_metrics(device_id, metric_type, timestamp DESC);
+
+COMMIT;
+
+ANALYZE device_metrics;
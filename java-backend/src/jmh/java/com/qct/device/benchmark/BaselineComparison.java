@@ -0,0 +1,92 @@
+package com.qct.device.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files benchmark by benchmark.
+ *
+ * <p>A benchmark regresses when its score moved in the worse direction for its mode by more
+ * than {@code thresholdPercent} <em>and</em> by more than the two scores' combined error, so
+ * that noisy benchmarks do not fail the comparison on their own.
+ */
+public class BaselineComparison {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final double thresholdPercent;
+    private final List<Row> rows = new ArrayList<>();
+
+    record Score(String mode, double value, double error, String unit) {
+    }
+
+    record Row(String key, Score baseline, Score current, double changePercent, boolean regressed) {
+    }
+
+    public BaselineComparison(Path baseline, Path current, double thresholdPercent) throws IOException {
+        this.thresholdPercent = thresholdPercent;
+        Map<String, Score> before = read(baseline);
+        Map<String, Score> after = read(current);
+        after.forEach((key, score) -> rows.add(compare(key, before.get(key), score)));
+    }
+
+    public boolean hasRegressions() {
+        return rows.stream().anyMatch(Row::regressed);
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%-100s %18s %18s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Row row : rows) {
+            String baseline = row.baseline() == null ? "-" : format(row.baseline());
+            String change = row.baseline() == null ? "new" : String.format("%+.1f%%", row.changePercent());
+            out.printf("%-100s %18s %18s %9s%s%n", row.key(), baseline, format(row.current()), change,
+                    row.regressed() ? "  REGRESSION" : "");
+        }
+        long regressions = rows.stream().filter(Row::regressed).count();
+        out.printf("%d benchmarks compared, %d regressed by more than %.1f%%%n", rows.size(), regressions, thresholdPercent);
+    }
+
+    private Row compare(String key, Score baseline, Score current) {
+        if (baseline == null || !baseline.mode().equals(current.mode()) || !baseline.unit().equals(current.unit())) {
+            return new Row(key, null, current, 0, false);
+        }
+        double changePercent = (current.value() - baseline.value()) / baseline.value() * 100;
+        // Throughput modes are better when higher; time modes are better when lower
+        double worsePercent = "thrpt".equals(current.mode()) ? -changePercent : changePercent;
+        boolean beyondError = Math.abs(current.value() - baseline.value()) > baseline.error() + current.error();
+        return new Row(key, baseline, current, changePercent, worsePercent > thresholdPercent && beyondError);
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : MAPPER.readTree(file.toFile())) {
+            JsonNode metric = result.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key(result), new Score(result.path("mode").asText(), metric.path("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error, metric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    private static String key(JsonNode result) {
+        Map<String, String> params = new TreeMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+        fields.forEachRemaining(field -> params.put(field.getKey(), field.getValue().asText()));
+        String name = result.path("benchmark").asText().replace("com.qct.device.", "");
+        return params.isEmpty() ? name : name + params;
+    }
+
+    private static String format(Score score) {
+        return String.format("%.3f %s", score.value(), score.unit());
+    }
+}
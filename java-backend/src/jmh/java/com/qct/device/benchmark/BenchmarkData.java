@@ -0,0 +1,72 @@
+package com.qct.device.benchmark;
+
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.model.Device;
+import com.qct.device.model.DeviceMetric;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic fixtures shaped like production data: a handful of metric types and units,
+ * two-decimal values and timestamps a few seconds apart, newest first.
+ */
+public final class BenchmarkData {
+
+    static final String[] METRIC_TYPES = {"CPU_USAGE", "MEMORY_USAGE", "BATTERY_LEVEL", "TEMPERATURE"};
+    static final String[] UNITS = {"%", "%", "%", "C"};
+
+    public static final String CONFIGURATION =
+            "{\"cpu_governor\":\"performance\",\"max_freq\":\"2.8GHz\",\"thermal_limit\":\"85C\"}";
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 15, 12, 0);
+
+    private BenchmarkData() {
+    }
+
+    public static DeviceMetric metric(long id, SplittableRandom random) {
+        int type = random.nextInt(METRIC_TYPES.length);
+        DeviceMetric metric = new DeviceMetric();
+        metric.setId(id);
+        metric.setDeviceId("DEV" + (1 + id % 8));
+        metric.setMetricType(METRIC_TYPES[type]);
+        metric.setValue(BigDecimal.valueOf(random.nextInt(10_000), 2));
+        metric.setUnit(UNITS[type]);
+        metric.setTimestamp(EPOCH.minusSeconds(id * 5).plusNanos(random.nextInt(1_000) * 1_000L));
+        return metric;
+    }
+
+    public static Device device(long id) {
+        Device device = new Device();
+        device.setId(id);
+        device.setDeviceId("DEV" + id);
+        device.setOemId(id % 2 == 0 ? "SAMSUNG" : "XIAOMI");
+        device.setDeviceType("SMARTPHONE");
+        device.setConfigurationId(1L);
+        device.setFirmware("v2.1.0");
+        device.setStatus("ACTIVE");
+        device.setCreatedAt(EPOCH.minusDays(30));
+        device.setUpdatedAt(EPOCH);
+        return device;
+    }
+
+    public static List<AnalyticsResponse> analyticsResponses(int size) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<AnalyticsResponse> responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            DeviceMetric metric = metric(i + 1, random);
+            responses.add(AnalyticsResponse.builder()
+                    .id(metric.getId())
+                    .deviceId(metric.getDeviceId())
+                    .metricType(metric.getMetricType())
+                    .value(metric.getValue())
+                    .unit(metric.getUnit())
+                    .timestamp(metric.getTimestamp())
+                    .build());
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,96 @@
+package com.qct.device.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Entry point of the {@code benchmarks} Maven profile.
+ *
+ * <p>Modes:
+ * <ul>
+ *   <li>{@code run}: run the benchmarks and write JSON results; print a comparison if a
+ *       baseline exists</li>
+ *   <li>{@code compare}: as {@code run}, but exit with status 1 if anything regressed</li>
+ *   <li>{@code save}: run and store the results as the new baseline</li>
+ *   <li>{@code diff}: compare an existing result file with the baseline without running</li>
+ * </ul>
+ *
+ * <p>{@code --quick=true} cuts warmup and measurement to a smoke-test length; its numbers are
+ * not meant to be compared with a full run.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        Map<String, String> options = parse(args);
+        String mode = options.getOrDefault("mode", "run");
+        Path result = Path.of(options.getOrDefault("result", "target/jmh-result.json"));
+        Path baseline = Path.of(options.getOrDefault("baseline", "src/jmh/baseline.json"));
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "10"));
+
+        if (!mode.equals("diff")) {
+            Files.createDirectories(result.toAbsolutePath().getParent());
+            ChainedOptionsBuilder jmh = new OptionsBuilder()
+                    .include(options.getOrDefault("include", ".*"))
+                    .result(result.toString())
+                    .resultFormat(ResultFormatType.JSON);
+            if (Boolean.parseBoolean(options.getOrDefault("quick", "false"))) {
+                jmh.warmupIterations(1).warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(2).measurementTime(TimeValue.seconds(1));
+            }
+            String jvmArgs = options.getOrDefault("jvm-args", "").trim();
+            if (!jvmArgs.isEmpty()) {
+                jmh.jvmArgsAppend(jvmArgs.split("\\s+"));
+            }
+            new Runner(jmh.build()).run();
+        }
+
+        switch (mode) {
+            case "save" -> {
+                Files.createDirectories(baseline.toAbsolutePath().getParent());
+                Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Saved baseline to " + baseline);
+            }
+            case "run", "compare", "diff" -> {
+                if (!Files.exists(baseline)) {
+                    System.out.println("No baseline at " + baseline + "; run with -Dbench.mode=save to create one");
+                    if (!mode.equals("run")) {
+                        System.exit(2);
+                    }
+                    return;
+                }
+                BaselineComparison comparison = new BaselineComparison(baseline, result, threshold);
+                comparison.print(System.out);
+                if (!mode.equals("run") && comparison.hasRegressions()) {
+                    System.exit(1);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,56 @@
+package com.qct.device.benchmark;
+
+import com.qct.device.config.AggregationProperties;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.service.AnalyticsService;
+import com.qct.device.service.MetricWindowAggregator;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Minimal application context for benchmarking the persistence paths: JPA on an in-memory
+ * H2 database in PostgreSQL mode, the real repositories and {@link AnalyticsService}, and
+ * no web layer, Redis or caching.
+ */
+@SpringBootConfiguration
+@ImportAutoConfiguration({
+        DataSourceAutoConfiguration.class,
+        HibernateJpaAutoConfiguration.class,
+        JdbcTemplateAutoConfiguration.class,
+        TransactionAutoConfiguration.class
+})
+@EntityScan(basePackageClasses = DeviceMetric.class)
+@EnableJpaRepositories(basePackageClasses = DeviceMetricRepository.class)
+@EnableConfigurationProperties(AggregationProperties.class)
+@Import({AnalyticsService.class, MetricWindowAggregator.class})
+public class EmbeddedDatabaseContext {
+
+    /**
+     * Starts the context. {@code application.yml} is deliberately not loaded since it targets
+     * PostgreSQL; everything the benchmarks need is passed here.
+     */
+    public static ConfigurableApplicationContext start(boolean inMemoryAggregation) {
+        return new SpringApplicationBuilder(EmbeddedDatabaseContext.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.config.name=benchmark",
+                        "--spring.main.banner-mode=off",
+                        "--spring.datasource.url=jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.open-in-view=false",
+                        "--logging.level.root=WARN",
+                        "--qct.analytics.aggregation.enabled=" + inMemoryAggregation);
+    }
+}
@@ -0,0 +1,99 @@
+package com.qct.device.benchmark;
+
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.service.AnalyticsService;
+import com.qct.device.service.MetricWindowAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AnalyticsService#getPerformanceMetrics} uncached, against an embedded database
+ * seeded with a day of samples for the measured device and a few neighbours.
+ *
+ * <p>{@code source=DATABASE} measures the query path; {@code source=WINDOWS} measures the
+ * in-memory sliding windows that replace it once {@link MetricWindowAggregator} is ready.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PerformanceMetricsBenchmark {
+
+    private static final String DEVICE_ID = "DEV001";
+    private static final int DEVICES = 4;
+
+    public enum Source { DATABASE, WINDOWS }
+
+    @Param({"DATABASE", "WINDOWS"})
+    public Source source;
+
+    @Param({"1000", "20000"})
+    public int samplesPerDevice;
+
+    private ConfigurableApplicationContext context;
+    private AnalyticsService analyticsService;
+
+    @Setup
+    public void setUp() {
+        context = EmbeddedDatabaseContext.start(source == Source.WINDOWS);
+        seed(context.getBean(JdbcTemplate.class));
+        if (source == Source.WINDOWS) {
+            context.getBean(MetricWindowAggregator.class).rebuild();
+        }
+        analyticsService = context.getBean(AnalyticsService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AnalyticsResponse getPerformanceMetrics() {
+        return analyticsService.getPerformanceMetrics(DEVICE_ID);
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime now = LocalDateTime.now();
+        long spacingMillis = TimeUnit.DAYS.toMillis(1) / samplesPerDevice;
+        List<Object[]> rows = new ArrayList<>(samplesPerDevice);
+        for (int device = 1; device <= DEVICES; device++) {
+            rows.clear();
+            for (int i = 0; i < samplesPerDevice; i++) {
+                int type = random.nextInt(BenchmarkData.METRIC_TYPES.length);
+                rows.add(new Object[]{
+                        "DEV00" + device,
+                        BenchmarkData.METRIC_TYPES[type],
+                        BigDecimal.valueOf(random.nextInt(10_000), 2),
+                        BenchmarkData.UNITS[type],
+                        Timestamp.valueOf(now.minusNanos((i + 1) * spacingMillis * 1_000_000L))
+                });
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO device_metrics (device_id, metric_type, value, unit, timestamp) " +
+                    "VALUES (?, ?, ?, ?, ?)", rows);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.qct.device.service;
+
+import com.qct.device.benchmark.BenchmarkData;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.DeviceResponse;
+import com.qct.device.model.Device;
+import com.qct.device.model.DeviceMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping done for every row returned by the device and analytics endpoints.
+ * Lives in the service package because the mappers are package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    private DeviceMetric metric;
+    private Device device;
+
+    @Setup
+    public void setUp() {
+        metric = BenchmarkData.metric(1, new SplittableRandom(42));
+        device = BenchmarkData.device(1);
+    }
+
+    @Benchmark
+    public AnalyticsResponse analyticsMapToResponse() {
+        return AnalyticsService.mapToResponse(metric);
+    }
+
+    @Benchmark
+    public DeviceResponse deviceMapToResponse() {
+        return DeviceService.mapToResponse(device, BenchmarkData.CONFIGURATION);
+    }
+}
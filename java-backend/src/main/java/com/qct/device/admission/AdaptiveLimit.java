@@ -0,0 +1,71 @@
+package com.qct.device.admission;
+
+/**
+ * A concurrency limit that follows latency, after the gradient method: the ratio of long-term
+ * to short-term average latency tells whether requests have started queueing downstream, on
+ * connections or locks. While short-term latency stays within {@code tolerance} of the
+ * long-term average, the limit grows by about its square root per sample. Beyond that it
+ * shrinks in proportion, by at most half.
+ *
+ * <p>Not thread-safe; {@link AdmissionControl} updates it under its lane lock.
+ */
+final class AdaptiveLimit {
+
+    // Exponential moving averages over roughly 10 and 500 samples
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.002;
+    private static final double SMOOTHING = 0.2;
+
+    private final int min;
+    private final int max;
+    private final double tolerance;
+
+    private double limit;
+    private double shortLatency;
+    private double longLatency;
+
+    AdaptiveLimit(int initial, int min, int max, double tolerance) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.tolerance = tolerance;
+        this.limit = clamp(initial);
+    }
+
+    int get() {
+        return (int) limit;
+    }
+
+    /** Short-term average latency in nanoseconds; 0 before the first sample. */
+    double latencyNanos() {
+        return shortLatency;
+    }
+
+    /**
+     * Records the latency of a request that completed while {@code inFlight} were running,
+     * itself included.
+     */
+    void update(long latencyNanos, int inFlight) {
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+        shortLatency += (latencyNanos - shortLatency) * SHORT_WEIGHT;
+        longLatency += (latencyNanos - longLatency) * LONG_WEIGHT;
+        // Latency fell well below the long-term average, as after an overload: catch up with it
+        if (longLatency > 2 * shortLatency) {
+            longLatency *= 0.95;
+        }
+        // Latency says nothing about a limit that is not being reached
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,19 @@
+package com.qct.device.admission;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides the lane a handler is admitted through, which otherwise follows the HTTP method:
+ * {@code GET} and {@code HEAD} are reads, everything else ingest.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Admission {
+
+    AdmissionClass value();
+}
@@ -0,0 +1,23 @@
+package com.qct.device.admission;
+
+/**
+ * The lane a request is admitted through. Each lane has its own concurrency limit and queue,
+ * so a flood in one cannot hold up the other.
+ */
+public enum AdmissionClass {
+
+    /** Metric ingest and other writes. */
+    INGEST,
+
+    /** Reads. */
+    READ,
+
+    /**
+     * Streamed exports. They hold their slot for as long as the client reads, so they get a
+     * small lane of their own instead of taking read slots for minutes.
+     */
+    EXPORT,
+
+    /** Not admission controlled: health checks and long-lived subscriptions. */
+    EXEMPT
+}
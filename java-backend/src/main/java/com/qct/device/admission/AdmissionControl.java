@@ -0,0 +1,288 @@
+package com.qct.device.admission;
+
+import com.qct.device.config.AdmissionProperties;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the requests running at once in each {@link AdmissionClass}, so that overload turns
+ * into quick rejections instead of every request slowing down together.
+ *
+ * <p>Each lane's limit adapts to the latency of the requests it admits ({@link AdaptiveLimit}).
+ * No OEM may hold more than {@code max-oem-share} of it, so slow requests from one OEM cannot
+ * take every slot. Requests over either limit wait in a queue per OEM, and freed slots go to
+ * the waiting OEMs in turn, so an OEM sending a flood waits behind its own requests rather
+ * than everyone else's. A request is shed, for the caller to retry after the hinted delay,
+ * when its OEM or the lane already has too many waiting, or when no slot frees up within
+ * {@code max-queue-time}.
+ */
+@Slf4j
+public class AdmissionControl {
+
+    private final Map<AdmissionClass, Lane> lanes = new EnumMap<>(AdmissionClass.class);
+    private final Clock clock;
+
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.clock = meterRegistry.config().clock();
+        lanes.put(AdmissionClass.INGEST, new Lane(AdmissionClass.INGEST, properties.getIngest(), meterRegistry));
+        lanes.put(AdmissionClass.READ, new Lane(AdmissionClass.READ, properties.getRead(), meterRegistry));
+        lanes.put(AdmissionClass.EXPORT, new Lane(AdmissionClass.EXPORT, properties.getExport(), meterRegistry));
+    }
+
+    /**
+     * Waits for a slot in the lane of {@code admissionClass}; the returned permit must be
+     * released once the request is done.
+     *
+     * @throws AdmissionRejectedException when the request is shed
+     */
+    public Permit acquire(AdmissionClass admissionClass, String oem) {
+        return lane(admissionClass).acquire(oem);
+    }
+
+    /** The current concurrency limit of a lane. */
+    public int limit(AdmissionClass admissionClass) {
+        Lane lane = lane(admissionClass);
+        lane.lock.lock();
+        try {
+            return lane.limit.get();
+        } finally {
+            lane.lock.unlock();
+        }
+    }
+
+    private Lane lane(AdmissionClass admissionClass) {
+        Lane lane = lanes.get(admissionClass);
+        if (lane == null) {
+            throw new IllegalArgumentException("No admission lane for " + admissionClass);
+        }
+        return lane;
+    }
+
+    /**
+     * A slot in a lane, held from admission until {@link #release}.
+     */
+    public final class Permit {
+
+        private final Lane lane;
+        private final String oem;
+        private final long admittedAt;
+        private boolean released;
+
+        private Permit(Lane lane, String oem, long admittedAt) {
+            this.lane = lane;
+            this.oem = oem;
+            this.admittedAt = admittedAt;
+        }
+
+        /**
+         * Frees the slot. {@code sample} feeds the request's latency to the lane's limit; leave
+         * it out for requests whose duration is not service time, such as streamed exports.
+         */
+        public void release(boolean sample) {
+            if (released) {
+                return;
+            }
+            released = true;
+            lane.release(oem, sample ? clock.monotonicTime() - admittedAt : -1);
+        }
+    }
+
+    private static final class Waiter {
+
+        final String oem;
+        final Condition ready;
+        boolean admitted;
+
+        Waiter(String oem, Condition ready) {
+            this.oem = oem;
+            this.ready = ready;
+        }
+    }
+
+    private final class Lane {
+
+        final AdmissionClass admissionClass;
+        final AdmissionProperties.Lane config;
+        final AdaptiveLimit limit;
+        final ReentrantLock lock = new ReentrantLock();
+
+        // Waiting requests by OEM, and the OEMs with any waiting in the order they get slots
+        final Map<String, ArrayDeque<Waiter>> waiting = new HashMap<>();
+        final ArrayDeque<String> turns = new ArrayDeque<>();
+        final Map<String, Integer> inFlightByOem = new HashMap<>();
+        volatile int inFlight;
+        volatile int queued;
+
+        final Timer queueTime;
+        final Counter shedQueueFull;
+        final Counter shedOemQueueFull;
+        final Counter shedTimeout;
+
+        Lane(AdmissionClass admissionClass, AdmissionProperties.Lane config, MeterRegistry meterRegistry) {
+            this.admissionClass = admissionClass;
+            this.config = config;
+            this.limit = new AdaptiveLimit(config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(),
+                    config.getTolerance());
+
+            String lane = admissionClass.name().toLowerCase();
+            this.queueTime = Timer.builder("qct.admission.queue.time")
+                    .description("Time admitted requests waited for a slot")
+                    .tag("class", lane)
+                    .register(meterRegistry);
+            this.shedQueueFull = shed(meterRegistry, lane, "queue_full");
+            this.shedOemQueueFull = shed(meterRegistry, lane, "oem_queue_full");
+            this.shedTimeout = shed(meterRegistry, lane, "timeout");
+            Gauge.builder("qct.admission.limit", this, l -> l.limit.get())
+                    .tag("class", lane)
+                    .register(meterRegistry);
+            Gauge.builder("qct.admission.in_flight", this, l -> l.inFlight)
+                    .tag("class", lane)
+                    .register(meterRegistry);
+            Gauge.builder("qct.admission.queued", this, l -> l.queued)
+                    .tag("class", lane)
+                    .register(meterRegistry);
+        }
+
+        private Counter shed(MeterRegistry meterRegistry, String lane, String reason) {
+            return Counter.builder("qct.admission.shed")
+                    .description("Requests rejected by admission control")
+                    .tag("class", lane)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        Permit acquire(String oem) {
+            long start = clock.monotonicTime();
+            lock.lock();
+            try {
+                // Free slots are never left while a waiter could take them, so this jumps no queue
+                if (!waiting.containsKey(oem) && inFlight < limit.get() && withinShare(oem)) {
+                    admit(oem);
+                    queueTime.record(0, TimeUnit.NANOSECONDS);
+                    return new Permit(this, oem, start);
+                }
+                if (queued >= config.getMaxQueued()) {
+                    throw reject(shedQueueFull, oem, "queue full");
+                }
+                ArrayDeque<Waiter> own = waiting.get(oem);
+                if (own != null && own.size() >= config.getMaxQueuedPerOem()) {
+                    throw reject(shedOemQueueFull, oem, "too many requests waiting for OEM " + oem);
+                }
+                if (own == null) {
+                    own = new ArrayDeque<>();
+                    waiting.put(oem, own);
+                    turns.addLast(oem);
+                }
+                Waiter waiter = new Waiter(oem, lock.newCondition());
+                own.addLast(waiter);
+                queued++;
+
+                long remaining = config.getMaxQueueTime().toNanos();
+                try {
+                    while (!waiter.admitted && remaining > 0) {
+                        remaining = waiter.ready.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!waiter.admitted) {
+                    remove(waiter);
+                    throw reject(shedTimeout, oem, "no slot within " + config.getMaxQueueTime().toMillis() + "ms");
+                }
+                long admittedAt = clock.monotonicTime();
+                queueTime.record(admittedAt - start, TimeUnit.NANOSECONDS);
+                return new Permit(this, oem, admittedAt);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(String oem, long latencyNanos) {
+            lock.lock();
+            try {
+                if (latencyNanos >= 0) {
+                    limit.update(latencyNanos, inFlight);
+                }
+                inFlight--;
+                inFlightByOem.computeIfPresent(oem, (key, count) -> count > 1 ? count - 1 : null);
+                handOff();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gives free slots to the waiting OEMs in turn, passing over those at their share, until
+         * the slots run out or a full round admits nobody.
+         */
+        private void handOff() {
+            int passed = 0;
+            while (inFlight < limit.get() && passed < turns.size()) {
+                String oem = turns.pollFirst();
+                if (!withinShare(oem)) {
+                    turns.addLast(oem);
+                    passed++;
+                    continue;
+                }
+                ArrayDeque<Waiter> own = waiting.get(oem);
+                Waiter next = own.pollFirst();
+                if (own.isEmpty()) {
+                    waiting.remove(oem);
+                } else {
+                    turns.addLast(oem);
+                }
+                queued--;
+                admit(oem);
+                next.admitted = true;
+                next.ready.signal();
+                passed = 0;
+            }
+        }
+
+        private void admit(String oem) {
+            inFlight++;
+            inFlightByOem.merge(oem, 1, Integer::sum);
+        }
+
+        private boolean withinShare(String oem) {
+            int share = Math.max(1, (int) Math.ceil(limit.get() * config.getMaxOemShare()));
+            return inFlightByOem.getOrDefault(oem, 0) < share;
+        }
+
+        private void remove(Waiter waiter) {
+            ArrayDeque<Waiter> own = waiting.get(waiter.oem);
+            own.remove(waiter);
+            queued--;
+            if (own.isEmpty()) {
+                waiting.remove(waiter.oem);
+                turns.remove(waiter.oem);
+            }
+        }
+
+        private AdmissionRejectedException reject(Counter counter, String oem, String reason) {
+            counter.increment();
+            log.debug("Shed {} request for {}: {}", admissionClass, oem, reason);
+            return new AdmissionRejectedException(admissionClass, reason, retryAfter());
+        }
+
+        /** Roughly how long the requests already waiting will take to get through, at least 1s. */
+        private Duration retryAfter() {
+            double drainNanos = (queued + 1) * limit.latencyNanos() / Math.max(1, limit.get());
+            long seconds = (long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1));
+            return Duration.ofSeconds(Math.max(1, Math.min(30, seconds)));
+        }
+    }
+}
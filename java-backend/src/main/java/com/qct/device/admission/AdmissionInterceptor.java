@@ -0,0 +1,104 @@
+package com.qct.device.admission;
+
+import com.qct.device.service.DeviceRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Admits each request through {@link AdmissionControl} before its handler runs, and releases
+ * its slot when the response is complete, including for asynchronous handlers.
+ *
+ * <p>Requests are queued under the OEM they concern: the {@code oemId} path variable, the OEM
+ * of the {@code deviceId} path variable when the device registry holds it, the
+ * {@value #OEM_HEADER} header (for ingest, where the OEM is only in the body), or else the
+ * caller's user name.
+ */
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String OEM_HEADER = "X-OEM-Id";
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".permit";
+    private static final String ASYNC_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".async";
+
+    private final AdmissionControl admissionControl;
+    private final DeviceRegistry deviceRegistry;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl, DeviceRegistry deviceRegistry) {
+        this.admissionControl = admissionControl;
+        this.deviceRegistry = deviceRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The dispatch that completes an asynchronous request runs under the first one's permit
+        if (!(handler instanceof HandlerMethod method) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        AdmissionClass admissionClass = classify(request, method);
+        if (admissionClass != AdmissionClass.EXEMPT) {
+            request.setAttribute(PERMIT_ATTRIBUTE, admissionControl.acquire(admissionClass, oemOf(request)));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(ASYNC_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdmissionControl.Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            // A streamed response lasts as long as the client reads, which is no measure of load
+            permit.release(request.getAttribute(ASYNC_ATTRIBUTE) == null);
+        }
+    }
+
+    static AdmissionClass classify(HttpServletRequest request, HandlerMethod method) {
+        Admission admission = method.getMethodAnnotation(Admission.class);
+        if (admission == null) {
+            admission = AnnotatedElementUtils.findMergedAnnotation(method.getBeanType(), Admission.class);
+        }
+        if (admission != null) {
+            return admission.value();
+        }
+        String httpMethod = request.getMethod();
+        return HttpMethod.GET.matches(httpMethod) || HttpMethod.HEAD.matches(httpMethod)
+                ? AdmissionClass.READ
+                : AdmissionClass.INGEST;
+    }
+
+    private String oemOf(HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables != null) {
+            String oemId = variables.get("oemId");
+            if (oemId != null) {
+                return oemId;
+            }
+            String deviceId = variables.get("deviceId");
+            if (deviceId != null) {
+                String oem = deviceRegistry.findCachedOem(deviceId).orElse(null);
+                if (oem != null) {
+                    return oem;
+                }
+            }
+        }
+        String header = request.getHeader(OEM_HEADER);
+        if (header != null && !header.isBlank()) {
+            return header;
+        }
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "anonymous";
+    }
+}
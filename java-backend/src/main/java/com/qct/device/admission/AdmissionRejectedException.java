@@ -0,0 +1,21 @@
+package com.qct.device.admission;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * A request shed by {@link AdmissionControl}; answered with {@code 429} and {@code Retry-After}.
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final AdmissionClass admissionClass;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(AdmissionClass admissionClass, String reason, Duration retryAfter) {
+        super(admissionClass + " requests over capacity: " + reason);
+        this.admissionClass = admissionClass;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,14 @@
+package com.qct.device.cache;
+
+/**
+ * Encoding used when writing values to Redis. Reads accept either, so a cache can be
+ * switched in both directions while instances with the old setting are still running.
+ */
+public enum CacheCodec {
+
+    /** Self-describing Jackson JSON, readable by every release. */
+    JSON,
+
+    /** {@link CompactCacheSerializer} binary form, falling back to JSON for unsupported types. */
+    BINARY
+}
@@ -0,0 +1,16 @@
+package com.qct.device.cache;
+
+/**
+ * How cached analytics react to newly written metrics.
+ */
+public enum CacheWriteMode {
+
+    /** Evict the affected device and OEM entries so the next read reloads them. */
+    EVICT,
+
+    /** Merge new metrics into cached lists in place; summaries are still evicted. */
+    APPEND,
+
+    /** Leave caches alone and rely on TTL expiry. */
+    NONE
+}
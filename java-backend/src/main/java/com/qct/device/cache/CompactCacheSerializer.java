@@ -0,0 +1,106 @@
+package com.qct.device.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Redis value serializer that writes the response DTOs (and lists of them) in the compact
+ * {@link DtoBinaryCodec} form and everything else as JSON.
+ *
+ * <p>Binary values start with a header of magic byte, schema version, flags and kind; the
+ * body is LZ4 compressed when it exceeds {@code compressionThreshold} bytes. Values that do
+ * not start with the magic byte are decoded as JSON, so entries written by older releases
+ * or by caches still on {@link CacheCodec#JSON} stay readable.
+ */
+public class CompactCacheSerializer implements RedisSerializer<Object> {
+
+    /** Cannot start a JSON document. */
+    static final byte MAGIC = (byte) 0xC7;
+
+    private static final int FLAG_LZ4 = 1;
+    private static final int HEADER_SIZE = 4;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final RedisSerializer<Object> json;
+    private final CacheCodec codec;
+    private final int compressionThreshold;
+
+    public CompactCacheSerializer(RedisSerializer<Object> json, CacheCodec codec, int compressionThreshold) {
+        this.json = json;
+        this.codec = codec;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        int kind = codec == CacheCodec.BINARY ? DtoBinaryCodec.kindOf(value) : 0;
+        if (kind == 0) {
+            // Typed JSON cannot recreate immutable JDK lists such as those from Stream.toList()
+            boolean immutableList = value instanceof List<?> list && !(list instanceof ArrayList);
+            return json.serialize(immutableList ? new ArrayList<>((List<?>) value) : value);
+        }
+
+        DtoBinaryCodec.Output body = new DtoBinaryCodec.Output(256);
+        body.writeByte(MAGIC);
+        body.writeByte(DtoBinaryCodec.SCHEMA_VERSION);
+        body.writeByte(0);
+        body.writeByte(kind);
+        DtoBinaryCodec.encode(value, kind, body);
+
+        int rawLength = body.size() - HEADER_SIZE;
+        if (rawLength < compressionThreshold) {
+            return body.toByteArray();
+        }
+        DtoBinaryCodec.Output compressed = new DtoBinaryCodec.Output(
+                HEADER_SIZE + 5 + COMPRESSOR.maxCompressedLength(rawLength));
+        compressed.writeByte(MAGIC);
+        compressed.writeByte(DtoBinaryCodec.SCHEMA_VERSION);
+        compressed.writeByte(FLAG_LZ4);
+        compressed.writeByte(kind);
+        compressed.writeVarLong(rawLength);
+        int offset = compressed.size();
+        int length = COMPRESSOR.compress(body.buffer(), HEADER_SIZE, rawLength,
+                compressed.buffer(), offset, compressed.buffer().length - offset);
+        return Arrays.copyOf(compressed.buffer(), offset + length);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return json.deserialize(bytes);
+        }
+        try {
+            DtoBinaryCodec.Input header = new DtoBinaryCodec.Input(bytes, 1);
+            int version = header.readByte();
+            if (version != DtoBinaryCodec.SCHEMA_VERSION) {
+                throw new SerializationException("Unsupported cache schema version " + version);
+            }
+            int flags = header.readByte();
+            int kind = header.readByte();
+            if ((flags & FLAG_LZ4) == 0) {
+                return DtoBinaryCodec.decode(kind, header);
+            }
+            int rawLength = Math.toIntExact(header.readVarLong());
+            byte[] raw = new byte[rawLength];
+            DECOMPRESSOR.decompress(bytes, header.position(), raw, 0, rawLength);
+            return DtoBinaryCodec.decode(kind, new DtoBinaryCodec.Input(raw, 0));
+        } catch (RuntimeException e) {
+            if (e instanceof SerializationException serializationException) {
+                throw serializationException;
+            }
+            throw new SerializationException("Could not decode cached value: " + e.getMessage(), e);
+        }
+    }
+}
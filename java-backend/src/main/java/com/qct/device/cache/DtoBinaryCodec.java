@@ -0,0 +1,421 @@
+package com.qct.device.cache;
+
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.DeviceResponse;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fixed-schema, column-oriented binary form of the cached response DTOs.
+ *
+ * <p>Rows are written column by column: each column starts with a presence bitmap, strings
+ * are dictionary encoded, ids and timestamps are delta encoded and numbers use zig-zag
+ * varints. A single DTO is written as a one-row table. The column list for each type is the
+ * schema; changing it requires bumping {@link #SCHEMA_VERSION}.
+ */
+final class DtoBinaryCodec {
+
+    static final int SCHEMA_VERSION = 2;
+
+    static final int ANALYTICS = 1;
+    static final int ANALYTICS_LIST = 2;
+    static final int DEVICE = 3;
+    static final int DEVICE_LIST = 4;
+
+    private enum Type { LONG, STRING, DECIMAL, TIMESTAMP }
+
+    private record Column<T>(Type type, Function<T, Object> getter, BiConsumer<T, Object> setter) {
+    }
+
+    private record Schema<T>(Supplier<T> factory, List<Column<T>> columns) {
+    }
+
+    private static final Schema<AnalyticsResponse> ANALYTICS_SCHEMA = new Schema<>(
+            AnalyticsResponse::new, List.of(
+            column(Type.LONG, AnalyticsResponse::getId, AnalyticsResponse::setId),
+            column(Type.STRING, AnalyticsResponse::getDeviceId, AnalyticsResponse::setDeviceId),
+            column(Type.STRING, AnalyticsResponse::getMetricType, AnalyticsResponse::setMetricType),
+            column(Type.DECIMAL, AnalyticsResponse::getValue, AnalyticsResponse::setValue),
+            column(Type.STRING, AnalyticsResponse::getUnit, AnalyticsResponse::setUnit),
+            column(Type.STRING, AnalyticsResponse::getDescription, AnalyticsResponse::setDescription),
+            column(Type.TIMESTAMP, AnalyticsResponse::getTimestamp, AnalyticsResponse::setTimestamp),
+            column(Type.DECIMAL, AnalyticsResponse::getAverageValue, AnalyticsResponse::setAverageValue),
+            column(Type.DECIMAL, AnalyticsResponse::getMaxValue, AnalyticsResponse::setMaxValue),
+            column(Type.DECIMAL, AnalyticsResponse::getMinValue, AnalyticsResponse::setMinValue),
+            column(Type.LONG, AnalyticsResponse::getTotalCount, AnalyticsResponse::setTotalCount)));
+
+    private static final Schema<DeviceResponse> DEVICE_SCHEMA = new Schema<>(
+            DeviceResponse::new, List.of(
+            column(Type.STRING, DeviceResponse::getDeviceId, DeviceResponse::setDeviceId),
+            column(Type.STRING, DeviceResponse::getOemId, DeviceResponse::setOemId),
+            column(Type.STRING, DeviceResponse::getDeviceType, DeviceResponse::setDeviceType),
+            column(Type.LONG, DeviceResponse::getConfigurationId, DeviceResponse::setConfigurationId),
+            column(Type.STRING, DeviceResponse::getConfiguration, DeviceResponse::setConfiguration),
+            column(Type.STRING, DeviceResponse::getFirmware, DeviceResponse::setFirmware),
+            column(Type.STRING, DeviceResponse::getStatus, DeviceResponse::setStatus),
+            column(Type.TIMESTAMP, DeviceResponse::getCreatedAt, DeviceResponse::setCreatedAt),
+            column(Type.TIMESTAMP, DeviceResponse::getUpdatedAt, DeviceResponse::setUpdatedAt)));
+
+    private DtoBinaryCodec() {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, V> Column<T> column(Type type, Function<T, V> getter, BiConsumer<T, V> setter) {
+        return new Column<>(type, (Function<T, Object>) getter, (BiConsumer<T, Object>) setter);
+    }
+
+    /**
+     * @return the kind to encode {@code value} as, or {@code 0} if it has no binary schema
+     */
+    static int kindOf(Object value) {
+        if (value instanceof AnalyticsResponse) {
+            return ANALYTICS;
+        }
+        if (value instanceof DeviceResponse) {
+            return DEVICE;
+        }
+        if (value instanceof List<?> list) {
+            // Empty lists are written as empty analytics lists; they decode the same either way
+            if (list.isEmpty() || allOf(list, AnalyticsResponse.class)) {
+                return ANALYTICS_LIST;
+            }
+            if (allOf(list, DeviceResponse.class)) {
+                return DEVICE_LIST;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean allOf(List<?> list, Class<?> type) {
+        for (Object item : list) {
+            if (item == null || item.getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void encode(Object value, int kind, Output out) {
+        switch (kind) {
+            case ANALYTICS -> encodeRows(ANALYTICS_SCHEMA, List.of((AnalyticsResponse) value), out);
+            case ANALYTICS_LIST -> encodeRows(ANALYTICS_SCHEMA, castList(value), out);
+            case DEVICE -> encodeRows(DEVICE_SCHEMA, List.of((DeviceResponse) value), out);
+            case DEVICE_LIST -> encodeRows(DEVICE_SCHEMA, castList(value), out);
+            default -> throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    static Object decode(int kind, Input in) {
+        return switch (kind) {
+            case ANALYTICS -> decodeRows(ANALYTICS_SCHEMA, in).get(0);
+            case ANALYTICS_LIST -> decodeRows(ANALYTICS_SCHEMA, in);
+            case DEVICE -> decodeRows(DEVICE_SCHEMA, in).get(0);
+            case DEVICE_LIST -> decodeRows(DEVICE_SCHEMA, in);
+            default -> throw new IllegalArgumentException("Unknown kind " + kind);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> castList(Object value) {
+        return (List<T>) value;
+    }
+
+    private static <T> void encodeRows(Schema<T> schema, List<T> rows, Output out) {
+        out.writeVarLong(rows.size());
+        Object[] values = new Object[rows.size()];
+        for (Column<T> column : schema.columns()) {
+            for (int i = 0; i < rows.size(); i++) {
+                values[i] = column.getter().apply(rows.get(i));
+            }
+            writePresence(values, out);
+            switch (column.type()) {
+                case LONG -> writeLongs(values, out);
+                case STRING -> writeStrings(values, out);
+                case DECIMAL -> writeDecimals(values, out);
+                case TIMESTAMP -> writeTimestamps(values, out);
+            }
+        }
+    }
+
+    private static <T> List<T> decodeRows(Schema<T> schema, Input in) {
+        int count = Math.toIntExact(in.readVarLong());
+        List<T> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(schema.factory().get());
+        }
+        for (Column<T> column : schema.columns()) {
+            boolean[] present = readPresence(count, in);
+            Object[] values = switch (column.type()) {
+                case LONG -> readLongs(present, in);
+                case STRING -> readStrings(present, in);
+                case DECIMAL -> readDecimals(present, in);
+                case TIMESTAMP -> readTimestamps(present, in);
+            };
+            for (int i = 0; i < count; i++) {
+                if (values[i] != null) {
+                    column.setter().accept(rows.get(i), values[i]);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void writePresence(Object[] values, Output out) {
+        byte[] bitmap = new byte[(values.length + 7) / 8];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                bitmap[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        out.write(bitmap);
+    }
+
+    private static boolean[] readPresence(int count, Input in) {
+        byte[] bitmap = in.read((count + 7) / 8);
+        boolean[] present = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            present[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+        }
+        return present;
+    }
+
+    // Longs are delta encoded against the previous present value; ids in newest-first lists differ by little
+
+    private static void writeLongs(Object[] values, Output out) {
+        long previous = 0;
+        for (Object value : values) {
+            if (value != null) {
+                long current = (Long) value;
+                out.writeVarLong(zigZag(current - previous));
+                previous = current;
+            }
+        }
+    }
+
+    private static Object[] readLongs(boolean[] present, Input in) {
+        Object[] values = new Object[present.length];
+        long previous = 0;
+        for (int i = 0; i < present.length; i++) {
+            if (present[i]) {
+                previous += unZigZag(in.readVarLong());
+                values[i] = previous;
+            }
+        }
+        return values;
+    }
+
+    private static void writeStrings(Object[] values, Output out) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                codes[i] = dictionary.computeIfAbsent((String) values[i], s -> {
+                    entries.add(s);
+                    return entries.size() - 1;
+                });
+            }
+        }
+        out.writeVarLong(entries.size());
+        for (String entry : entries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            out.writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+        if (entries.size() > 1) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    out.writeVarLong(codes[i]);
+                }
+            }
+        }
+    }
+
+    private static Object[] readStrings(boolean[] present, Input in) {
+        String[] entries = new String[Math.toIntExact(in.readVarLong())];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new String(in.read(Math.toIntExact(in.readVarLong())), StandardCharsets.UTF_8);
+        }
+        Object[] values = new Object[present.length];
+        for (int i = 0; i < present.length; i++) {
+            if (present[i]) {
+                // A single-entry dictionary needs no per-row codes
+                values[i] = entries.length == 1 ? entries[0] : entries[Math.toIntExact(in.readVarLong())];
+            }
+        }
+        return values;
+    }
+
+    private static void writeDecimals(Object[] values, Output out) {
+        for (Object value : values) {
+            if (value != null) {
+                BigDecimal decimal = (BigDecimal) value;
+                out.writeVarLong(zigZag(decimal.scale()));
+                BigInteger unscaled = decimal.unscaledValue();
+                if (unscaled.bitLength() < 62) {
+                    out.writeVarLong(zigZag(unscaled.longValue()) << 1);
+                } else {
+                    byte[] bytes = unscaled.toByteArray();
+                    out.writeVarLong(((long) bytes.length << 1) | 1);
+                    out.write(bytes);
+                }
+            }
+        }
+    }
+
+    private static Object[] readDecimals(boolean[] present, Input in) {
+        Object[] values = new Object[present.length];
+        for (int i = 0; i < present.length; i++) {
+            if (present[i]) {
+                int scale = (int) unZigZag(in.readVarLong());
+                long tagged = in.readVarLong();
+                BigInteger unscaled = (tagged & 1) == 0
+                        ? BigInteger.valueOf(unZigZag(tagged >>> 1))
+                        : new BigInteger(in.read(Math.toIntExact(tagged >>> 1)));
+                values[i] = new BigDecimal(unscaled, scale);
+            }
+        }
+        return values;
+    }
+
+    // Seconds are delta encoded; sub-second parts are stored as micros when they are whole micros
+
+    private static void writeTimestamps(Object[] values, Output out) {
+        long previous = 0;
+        for (Object value : values) {
+            if (value != null) {
+                LocalDateTime timestamp = (LocalDateTime) value;
+                long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+                int nanos = timestamp.getNano();
+                out.writeVarLong(zigZag(seconds - previous));
+                out.writeVarLong(nanos % 1_000 == 0 ? (long) (nanos / 1_000) << 1 : ((long) nanos << 1) | 1);
+                previous = seconds;
+            }
+        }
+    }
+
+    private static Object[] readTimestamps(boolean[] present, Input in) {
+        Object[] values = new Object[present.length];
+        long previous = 0;
+        for (int i = 0; i < present.length; i++) {
+            if (present[i]) {
+                previous += unZigZag(in.readVarLong());
+                long fraction = in.readVarLong();
+                int nanos = (int) ((fraction & 1) == 0 ? (fraction >>> 1) * 1_000 : fraction >>> 1);
+                values[i] = LocalDateTime.ofEpochSecond(previous, nanos, ZoneOffset.UTC);
+            }
+        }
+        return values;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer with unsigned LEB128 varints.
+     */
+    static final class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int offset) {
+            this.buffer = buffer;
+            this.position = offset;
+        }
+
+        int readByte() {
+            return buffer[position++] & 0xFF;
+        }
+
+        byte[] read(int length) {
+            if (length < 0 || position + length > buffer.length) {
+                throw new IllegalArgumentException("Truncated input");
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        int position() {
+            return position;
+        }
+    }
+}
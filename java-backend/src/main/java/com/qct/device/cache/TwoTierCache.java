@@ -0,0 +1,548 @@
+package com.qct.device.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * A Caffeine near-cache in front of a shared Redis cache. Reads are answered locally when
+ * possible and fall through to Redis otherwise; writes and evictions go to both tiers and
+ * are broadcast so other instances drop their local copy. Filling a key after a miss is not
+ * broadcast: any copy another instance holds was loaded since the last eviction and is as
+ * current, and dropping it would make the instances evict each other's hot keys.
+ *
+ * <p>Local entries are keyed by the key's string form, matching how Redis keys are derived.
+ * Redis failures are logged and treated as misses so the local tier keeps serving.
+ *
+ * <p>Load time is recorded around the value loader for synchronized lookups, and otherwise
+ * as the time from a miss to the {@code put} of the same key on the same thread, which is
+ * how Spring's caching interceptor fills an entry.
+ *
+ * <p>Synchronized lookups ({@code @Cacheable(sync = true)}) are single-flight: concurrent misses
+ * for a key on this instance wait for one load instead of each running it. Caches with a
+ * refresh-ahead window reload an entry in the background when it is read close to its Redis
+ * expiry, and caches with a stale-while-revalidate window keep answering with the last value
+ * loaded here for that long after it expired while a background load replaces it. Both only
+ * know about values this instance loaded or wrote; evictions discard them, so changed data is
+ * never served stale.
+ *
+ * <p>{@link #getAll} and {@link #putAll} serve batch reads: local misses are fetched from Redis
+ * in one {@code MGET}, and the values loaded for the rest are written in one pipeline.
+ * {@link #evictAll} serves bulk writes with one {@code DEL} and a single invalidation
+ * broadcast for all the keys.
+ */
+@Slf4j
+public class TwoTierCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Cache remote;
+    private final TwoTierCacheManager manager;
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+    private final Counter remoteErrors;
+    private final Timer loads;
+    private final Counter coalesced;
+    private final Counter staleServed;
+    private final Counter refreshFailures;
+    private final ThreadLocal<PendingLoad> pendingLoad = new ThreadLocal<>();
+
+    private final Map<String, Load> inFlight = new ConcurrentHashMap<>();
+    /** When values were last loaded or written here; {@code null} without refresh or stale windows. */
+    private final com.github.benmanes.caffeine.cache.Cache<String, Loaded> loaded;
+    private final long refreshAfterNanos;
+    private final boolean serveStale;
+    private final Executor refresher;
+
+    private record PendingLoad(String key, long startNanos) {
+    }
+
+    record Loaded(Object storeValue, long loadedAtNanos) {
+    }
+
+    /** A load in progress; superseded when the key is evicted meanwhile, so its result is not cached. */
+    private static final class Load extends CompletableFuture<Object> {
+        volatile boolean superseded;
+    }
+
+    /**
+     * @param loaded       load times of values, kept for the Redis TTL plus any stale window
+     * @param refreshAfter age after which a read triggers a background reload, or {@code null}
+     * @param serveStale   whether a miss may be answered from {@code loaded} while reloading
+     */
+    TwoTierCache(String name,
+                 com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+                 Cache remote,
+                 TwoTierCacheManager manager,
+                 MeterRegistry meterRegistry,
+                 com.github.benmanes.caffeine.cache.Cache<String, Loaded> loaded,
+                 Duration refreshAfter,
+                 boolean serveStale,
+                 Executor refresher) {
+        super(true);
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.manager = manager;
+        this.loaded = loaded;
+        this.refreshAfterNanos = refreshAfter != null ? refreshAfter.toNanos() : Long.MAX_VALUE;
+        this.serveStale = serveStale && loaded != null;
+        this.refresher = refresher;
+        this.localHits = requests(meterRegistry, "local", "hit");
+        this.localMisses = requests(meterRegistry, "local", "miss");
+        this.remoteHits = requests(meterRegistry, "redis", "hit");
+        this.remoteMisses = requests(meterRegistry, "redis", "miss");
+        this.remoteErrors = Counter.builder("qct.cache.errors")
+                .tag("cache", name)
+                .tag("tier", "redis")
+                .register(meterRegistry);
+        this.loads = Timer.builder("qct.cache.loads")
+                .description("Time taken to compute a value missing from both tiers")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("qct.cache.loads.coalesced")
+                .description("Lookups that waited for a load already in progress instead of running their own")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.staleServed = Counter.builder("qct.cache.stale")
+                .description("Misses answered with an expired value while it was reloaded")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("qct.cache.refresh.errors")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("qct.cache.requests")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = localKey(key);
+        Object stored = local.getIfPresent(localKey);
+        if (stored != null) {
+            localHits.increment();
+            return stored;
+        }
+        localMisses.increment();
+
+        ValueWrapper shared;
+        try {
+            shared = remote.get(key);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis read for cache {} failed: {}", name, e.getMessage());
+            pendingLoad.set(new PendingLoad(localKey, System.nanoTime()));
+            return null;
+        }
+        if (shared == null) {
+            remoteMisses.increment();
+            pendingLoad.set(new PendingLoad(localKey, System.nanoTime()));
+            return null;
+        }
+        remoteHits.increment();
+        stored = toStoreValue(shared.get());
+        local.put(localKey, stored);
+        return stored;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        ValueWrapper cached = get(key);
+        pendingLoad.remove();
+        if (cached != null) {
+            Loaded entry = loaded != null ? loaded.getIfPresent(localKey) : null;
+            if (entry != null && System.nanoTime() - entry.loadedAtNanos() >= refreshAfterNanos) {
+                refreshAsync(key, localKey, valueLoader);
+            }
+            return (T) cached.get();
+        }
+        if (serveStale) {
+            Loaded entry = loaded.getIfPresent(localKey);
+            if (entry != null) {
+                staleServed.increment();
+                refreshAsync(key, localKey, valueLoader);
+                return (T) fromStoreValue(entry.storeValue());
+            }
+        }
+
+        Load load = new Load();
+        Load leader = inFlight.putIfAbsent(localKey, load);
+        if (leader != null) {
+            coalesced.increment();
+            try {
+                return (T) leader.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            return (T) load(key, localKey, valueLoader, load);
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * Runs {@code valueLoader} as the single load of {@code localKey} and caches the result
+     * unless the key was evicted in the meantime. Waiters get the result either way.
+     */
+    private Object load(Object key, String localKey, Callable<?> valueLoader, Load load) throws Exception {
+        Object value;
+        long start = System.nanoTime();
+        try {
+            value = valueLoader.call();
+        } catch (Exception | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            inFlight.remove(localKey, load);
+        }
+        if (!load.superseded) {
+            store(key, localKey, value);
+        }
+        load.complete(value);
+        return value;
+    }
+
+    private void refreshAsync(Object key, String localKey, Callable<?> valueLoader) {
+        Load load = new Load();
+        if (inFlight.putIfAbsent(localKey, load) != null) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(key, localKey, valueLoader, load);
+                } catch (Exception e) {
+                    refreshFailures.increment();
+                    log.warn("Background reload of {} in cache {} failed: {}", localKey, name, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Refresh pool saturated; a later read will try again
+            inFlight.remove(localKey, load);
+            load.complete(null);
+        }
+    }
+
+    /**
+     * The cached values of those of {@code keys} that are present, keyed by the keys' string
+     * form. Unlike {@link #get(Object)}, misses are not timed as loads.
+     */
+    public Map<String, Object> getAll(Collection<?> keys) {
+        Map<String, Object> found = new LinkedHashMap<>();
+        List<Object> missing = new ArrayList<>();
+        for (Object key : keys) {
+            String localKey = localKey(key);
+            Object stored = local.getIfPresent(localKey);
+            if (stored != null) {
+                localHits.increment();
+                found.put(localKey, fromStoreValue(stored));
+            } else {
+                localMisses.increment();
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        List<Object> shared;
+        try {
+            shared = readRemote(missing);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis read of {} keys for cache {} failed: {}", missing.size(), name, e.getMessage());
+            return found;
+        }
+        for (int i = 0; i < missing.size(); i++) {
+            Object value = shared.get(i);
+            if (value == null) {
+                remoteMisses.increment();
+                continue;
+            }
+            remoteHits.increment();
+            String localKey = localKey(missing.get(i));
+            Object stored = toStoreValue(value);
+            local.put(localKey, stored);
+            found.put(localKey, fromStoreValue(stored));
+        }
+        return found;
+    }
+
+    /**
+     * Stores values loaded for keys {@link #getAll} missed in both tiers, with one Redis round
+     * trip. Being fills, they are not broadcast.
+     */
+    public void putAll(Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            writeRemote(values);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis write of {} keys for cache {} failed: {}", values.size(), name, e.getMessage());
+        }
+        values.forEach((key, value) -> storeLocal(localKey(key), value));
+    }
+
+    // In the same encoding as RedisCache; other remote caches are read key by key
+    private List<Object> readRemote(List<Object> keys) {
+        if (!(remote instanceof RedisCache redisCache)) {
+            return keys.stream().map(key -> {
+                ValueWrapper shared = remote.get(key);
+                return shared != null ? shared.get() : null;
+            }).toList();
+        }
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        byte[][] redisKeys = keys.stream().map(key -> redisKey(config, key)).toArray(byte[][]::new);
+        List<byte[]> values = manager.multiGet(redisKeys);
+        List<Object> shared = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = values != null ? values.get(i) : null;
+            shared.add(value != null ? config.getValueSerializationPair().read(ByteBuffer.wrap(value)) : null);
+        }
+        return shared;
+    }
+
+    private void writeRemote(Map<?, ?> values) {
+        if (!(remote instanceof RedisCache redisCache)) {
+            values.forEach(remote::put);
+            return;
+        }
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        List<byte[]> keys = new ArrayList<>(values.size());
+        List<byte[]> serialized = new ArrayList<>(values.size());
+        List<Expiration> expirations = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            if (value == null) {
+                // Null markers are encoded by RedisCache itself
+                remote.put(key, null);
+                return;
+            }
+            Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+            keys.add(redisKey(config, key));
+            serialized.add(ByteUtils.getBytes(config.getValueSerializationPair().write(value)));
+            expirations.add(ttl != null && !ttl.isZero() && !ttl.isNegative()
+                    ? Expiration.from(ttl) : Expiration.persistent());
+        });
+        manager.multiSet(keys, serialized, expirations);
+    }
+
+    private void deleteRemote(Collection<?> keys) {
+        if (!(remote instanceof RedisCache redisCache)) {
+            keys.forEach(remote::evict);
+            return;
+        }
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        manager.multiDelete(keys.stream().map(key -> redisKey(config, key)).toArray(byte[][]::new));
+    }
+
+    private byte[] redisKey(RedisCacheConfiguration config, Object key) {
+        String localKey = localKey(key);
+        String cacheKey = config.usePrefix() ? config.getKeyPrefixFor(name) + localKey : localKey;
+        return ByteUtils.getBytes(config.getKeySerializationPair().write(cacheKey));
+    }
+
+    /**
+     * Stores {@code value} in both tiers. Following a miss of the same key on this thread it is
+     * a fill, as by {@code @Cacheable}; otherwise a write, which other instances are told of.
+     */
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = localKey(key);
+        store(key, localKey, value);
+
+        PendingLoad pending = pendingLoad.get();
+        pendingLoad.remove();
+        if (pending != null && Objects.equals(pending.key(), localKey)) {
+            loads.record(System.nanoTime() - pending.startNanos(), TimeUnit.NANOSECONDS);
+        } else {
+            manager.publishEvict(name, localKey);
+        }
+    }
+
+    private void store(Object key, String localKey, Object value) {
+        try {
+            remote.put(key, value);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis write for cache {} failed: {}", name, e.getMessage());
+        }
+        storeLocal(localKey, value);
+    }
+
+    private void storeLocal(String localKey, Object value) {
+        Object stored = toStoreValue(value);
+        local.put(localKey, stored);
+        if (loaded != null) {
+            loaded.put(localKey, new Loaded(stored, System.nanoTime()));
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        try {
+            remote.evict(key);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis evict for cache {} failed: {}", name, e.getMessage());
+        }
+        String localKey = localKey(key);
+        discard(localKey);
+        manager.publishEvict(name, localKey);
+    }
+
+    /**
+     * Evicts every key like {@link #evict}, with one Redis round trip and one invalidation
+     * message for the lot.
+     */
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            deleteRemote(keys);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis evict of {} keys for cache {} failed: {}", keys.size(), name, e.getMessage());
+        }
+        List<String> localKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            String localKey = localKey(key);
+            discard(localKey);
+            localKeys.add(localKey);
+        }
+        manager.publishEvictAll(name, localKeys);
+    }
+
+    @Override
+    public void clear() {
+        try {
+            remote.clear();
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis clear for cache {} failed: {}", name, e.getMessage());
+        }
+        discardAll();
+        manager.publishClear(name);
+    }
+
+    /**
+     * Replaces the local entry under {@code key} with {@code update} applied to it, atomically
+     * with respect to other local writes, and evicts the key from Redis and other instances. A
+     * read-modify-write on Redis could lose another instance's concurrent update; this way they
+     * reload instead. An absent local entry stays absent, as does one {@code update} maps to
+     * {@code null}.
+     *
+     * @return whether an updated entry is now cached locally
+     */
+    public boolean updateLocal(Object key, UnaryOperator<Object> update) {
+        try {
+            remote.evict(key);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Redis evict for cache {} failed: {}", name, e.getMessage());
+        }
+        String localKey = localKey(key);
+        // A load that started before the update could overwrite it with older data
+        Load load = inFlight.remove(localKey);
+        if (load != null) {
+            load.superseded = true;
+        }
+        Object updated = local.asMap().computeIfPresent(localKey, (k, stored) -> {
+            Object value = update.apply(fromStoreValue(stored));
+            return value != null ? toStoreValue(value) : null;
+        });
+        if (loaded != null) {
+            if (updated != null) {
+                loaded.put(localKey, new Loaded(updated, System.nanoTime()));
+            } else {
+                loaded.invalidate(localKey);
+            }
+        }
+        manager.publishEvict(name, localKey);
+        return updated != null;
+    }
+
+    /**
+     * Drops a local entry in response to another instance's write, without touching Redis.
+     */
+    void evictLocal(String localKey) {
+        discard(localKey);
+    }
+
+    void clearLocal() {
+        discardAll();
+    }
+
+    private void discard(String localKey) {
+        local.invalidate(localKey);
+        if (loaded != null) {
+            loaded.invalidate(localKey);
+        }
+        Load load = inFlight.remove(localKey);
+        if (load != null) {
+            load.superseded = true;
+        }
+    }
+
+    private void discardAll() {
+        local.invalidateAll();
+        if (loaded != null) {
+            loaded.invalidateAll();
+        }
+        inFlight.keySet().forEach(this::discard);
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,233 @@
+package com.qct.device.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.qct.device.config.TwoTierCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out {@link TwoTierCache}s backed by a {@link RedisCacheManager}, and keeps their
+ * local tiers coherent across instances through Redis pub/sub.
+ *
+ * <p>Every write or eviction, but not the fill of a missed key, is published as
+ * {@code nodeId, op, cache, key} on the invalidation channel, bulk evictions as one message
+ * listing all their keys; instances drop the matching local entry and ignore their own
+ * messages. Delivery is best effort, so local TTLs bound how long a missed message can
+ * leave a stale entry behind.
+ *
+ * <p>Background reloads for refresh-ahead and stale-while-revalidate share one small pool
+ * with a bounded queue; when it is full, reads keep being answered and the reload is retried
+ * on a later read.
+ */
+@Slf4j
+public class TwoTierCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    private static final String EVICT = "E";
+    private static final String CLEAR = "C";
+    private static final String EVICT_ALL = "A";
+
+    private final RedisCacheManager remote;
+    private final TwoTierCacheProperties properties;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+
+    private final Counter published;
+    private final Counter received;
+    private final Counter publishFailures;
+
+    public TwoTierCacheManager(RedisCacheManager remote,
+                               TwoTierCacheProperties properties,
+                               StringRedisTemplate redisTemplate,
+                               MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.published = Counter.builder("qct.cache.invalidations")
+                .tag("direction", "published")
+                .register(meterRegistry);
+        this.received = Counter.builder("qct.cache.invalidations")
+                .tag("direction", "received")
+                .register(meterRegistry);
+        this.publishFailures = Counter.builder("qct.cache.invalidations.failed")
+                .register(meterRegistry);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-refresh-");
+        threadFactory.setDaemon(true);
+        int threads = Math.max(1, properties.getRefreshThreads());
+        this.refresher = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getRefreshQueueSize())), threadFactory);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private Cache createCache(String name) {
+        Cache shared = remote.getCache(name);
+        if (!properties.getLocal().isEnabled()) {
+            return shared;
+        }
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumWeight(properties.localMaxWeightFor(name))
+                .weigher((String key, Object value) -> weigh(value))
+                .expireAfterWrite(properties.localTtlFor(name))
+                .evictionListener((key, value, cause) -> Counter.builder("qct.cache.evictions")
+                        .tag("cache", name)
+                        .tag("tier", "local")
+                        .tag("cause", cause.name())
+                        .register(meterRegistry)
+                        .increment())
+                .build();
+        Gauge.builder("qct.cache.size", local, c -> c.estimatedSize())
+                .tag("cache", name)
+                .tag("tier", "local")
+                .register(meterRegistry);
+        Gauge.builder("qct.cache.weight", local,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .tag("cache", name)
+                .tag("tier", "local")
+                .register(meterRegistry);
+        return new TwoTierCache(name, local, shared, this, meterRegistry,
+                loadTimes(name), refreshAfter(name), properties.staleWhileRevalidateFor(name) != null, refresher);
+    }
+
+    /**
+     * Load times are only needed to refresh ahead or serve stale values, and are kept for as
+     * long as either can use them.
+     */
+    private com.github.benmanes.caffeine.cache.Cache<String, TwoTierCache.Loaded> loadTimes(String name) {
+        Duration stale = properties.staleWhileRevalidateFor(name);
+        if (properties.refreshAheadFor(name) == null && stale == null) {
+            return null;
+        }
+        Duration ttl = properties.ttlFor(name);
+        return Caffeine.newBuilder()
+                .maximumWeight(properties.localMaxWeightFor(name))
+                .weigher((String key, TwoTierCache.Loaded loaded) -> weigh(loaded.storeValue()))
+                .expireAfterWrite(stale != null ? ttl.plus(stale) : ttl)
+                .build();
+    }
+
+    private Duration refreshAfter(String name) {
+        Duration refreshAhead = properties.refreshAheadFor(name);
+        if (refreshAhead == null) {
+            return null;
+        }
+        Duration ttl = properties.ttlFor(name);
+        return refreshAhead.compareTo(ttl) < 0 ? ttl.minus(refreshAhead) : Duration.ZERO;
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return Math.max(1, collection.size());
+        }
+        if (value instanceof Map<?, ?> map) {
+            return Math.max(1, map.size());
+        }
+        return 1;
+    }
+
+    void publishEvict(String cacheName, String key) {
+        publish(String.join("\n", nodeId, EVICT, cacheName, key));
+    }
+
+    void publishEvictAll(String cacheName, List<String> keys) {
+        publish(String.join("\n", nodeId, EVICT_ALL, cacheName, String.join("\n", keys)));
+    }
+
+    void publishClear(String cacheName) {
+        publish(String.join("\n", nodeId, CLEAR, cacheName));
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(properties.getInvalidationChannel(), message);
+            published.increment();
+        } catch (RuntimeException e) {
+            publishFailures.increment();
+            log.warn("Failed to broadcast cache invalidation: {}", e.getMessage());
+        }
+    }
+
+    List<byte[]> multiGet(byte[][] keys) {
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(keys));
+    }
+
+    void multiDelete(byte[][] keys) {
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(keys));
+    }
+
+    void multiSet(List<byte[]> keys, List<byte[]> values, List<Expiration> expirations) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                connection.stringCommands().set(keys.get(i), values.get(i), expirations.get(i),
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n", 4);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        received.increment();
+        if (!(caches.get(parts[2]) instanceof TwoTierCache cache)) {
+            return;
+        }
+        if (CLEAR.equals(parts[1])) {
+            cache.clearLocal();
+        } else if (EVICT.equals(parts[1]) && parts.length == 4) {
+            cache.evictLocal(parts[3]);
+        } else if (EVICT_ALL.equals(parts[1]) && parts.length == 4) {
+            for (String key : parts[3].split("\n")) {
+                cache.evictLocal(key);
+            }
+        }
+    }
+}
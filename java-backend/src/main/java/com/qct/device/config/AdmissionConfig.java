@@ -0,0 +1,35 @@
+package com.qct.device.config;
+
+import com.qct.device.admission.AdmissionControl;
+import com.qct.device.admission.AdmissionInterceptor;
+import com.qct.device.service.DeviceRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts {@link AdmissionControl} in front of the device and analytics APIs.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "qct.admission", name = "enabled", havingValue = "true")
+public class AdmissionConfig {
+
+    @Bean
+    public AdmissionControl admissionControl(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        return new AdmissionControl(properties, meterRegistry);
+    }
+
+    @Bean
+    public WebMvcConfigurer admissionInterceptorConfigurer(AdmissionControl admissionControl, DeviceRegistry deviceRegistry) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new AdmissionInterceptor(admissionControl, deviceRegistry))
+                        .addPathPatterns("/api/v1/devices/**", "/api/v1/analytics/**");
+            }
+        };
+    }
+}
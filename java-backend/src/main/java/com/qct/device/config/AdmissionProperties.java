@@ -0,0 +1,64 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Admission control in front of the device and analytics APIs (see
+ * {@link com.qct.device.admission.AdmissionControl}).
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.admission")
+public class AdmissionProperties {
+
+    private boolean enabled;
+
+    private Lane ingest = new Lane();
+
+    private Lane read = new Lane();
+
+    /**
+     * Streamed exports. Their duration is the client's read speed rather than service time, so
+     * the limit never adapts and stays at {@code initial-limit}.
+     */
+    private Lane export = Lane.fixed(8);
+
+    @Data
+    public static class Lane {
+
+        /** Concurrent requests admitted before any latency has been measured. */
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        /** Keep below the Tomcat thread count, so that shed requests are answered promptly. */
+        private int maxLimit = 100;
+
+        /** Short-term latency over long-term latency at which the limit starts to shrink. */
+        private double tolerance = 2.0;
+
+        /** Fraction of the limit one OEM may hold at once, keeping slots free for the others. */
+        private double maxOemShare = 0.5;
+
+        /** Longest a request waits for a slot before it is shed. */
+        private Duration maxQueueTime = Duration.ofMillis(500);
+
+        /** Requests waiting in the lane, across OEMs, before new ones are shed at once. */
+        private int maxQueued = 500;
+
+        /** Requests one OEM may have waiting before its new ones are shed at once. */
+        private int maxQueuedPerOem = 50;
+
+        static Lane fixed(int limit) {
+            Lane lane = new Lane();
+            lane.setInitialLimit(limit);
+            lane.setMinLimit(limit);
+            lane.setMaxLimit(limit);
+            lane.setMaxQueued(2 * limit);
+            lane.setMaxQueuedPerOem(limit);
+            return lane;
+        }
+    }
+}
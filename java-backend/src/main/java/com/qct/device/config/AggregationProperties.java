@@ -0,0 +1,23 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the in-memory sliding window aggregates behind the performance endpoint.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.aggregation")
+public class AggregationProperties {
+
+    /** Serve performance summaries from memory instead of querying the database. */
+    private boolean enabled = true;
+
+    /** Cron for periodic rebuilds from the database; {@code -} disables them. */
+    private String resyncCron = "-";
+
+    /** Device/metric series with no samples for this long are dropped from memory. */
+    private Duration idleEviction = Duration.ofHours(25);
+}
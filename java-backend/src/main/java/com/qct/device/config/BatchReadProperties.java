@@ -0,0 +1,15 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Limits for the endpoints that read many devices in one request.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.batch-read")
+public class BatchReadProperties {
+
+    /** Most device ids one batch read may name. */
+    private int maxDeviceIds = 500;
+}
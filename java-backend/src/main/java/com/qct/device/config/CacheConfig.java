@@ -1,30 +1,62 @@
 package com.qct.device.config;
 
-import org.springframework.cache.CacheManager;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.qct.device.cache.CacheCodec;
+import com.qct.device.cache.CompactCacheSerializer;
+import com.qct.device.cache.TwoTierCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
-import java.time.Duration;
-
 @Configuration
 @EnableCaching
 public class CacheConfig {
-    
+
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public TwoTierCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                            TwoTierCacheProperties properties,
+                                            StringRedisTemplate redisTemplate,
+                                            MeterRegistry meterRegistry) {
+        GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer()
+                .configure(mapper -> mapper.registerModule(new JavaTimeModule()));
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofMinutes(30))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair
-                        .fromSerializer(new GenericJackson2JsonRedisSerializer()));
-        
-        return RedisCacheManager.builder(connectionFactory)
-                .cacheDefaults(config)
-                .build();
+                .entryTtl(properties.getTtl())
+                .serializeValuesWith(values(json, properties.getCodec(), properties));
+
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(config);
+        properties.getCaches().keySet().forEach(name -> builder.withCacheConfiguration(name, config
+                .entryTtl(properties.ttlFor(name))
+                .serializeValuesWith(values(json, properties.codecFor(name), properties))));
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+
+        return new TwoTierCacheManager(redisCacheManager, properties, redisTemplate, meterRegistry);
+    }
+
+    private static RedisSerializationContext.SerializationPair<Object> values(GenericJackson2JsonRedisSerializer json,
+                                                                              CacheCodec codec,
+                                                                              TwoTierCacheProperties properties) {
+        return RedisSerializationContext.SerializationPair.fromSerializer(
+                new CompactCacheSerializer(json, codec, properties.getCompressionThreshold()));
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                   TwoTierCacheManager cacheManager,
+                                                                   TwoTierCacheProperties properties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(properties.getInvalidationChannel()));
+        return container;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.qct.device.config;
+
+import com.qct.device.datasource.PrimaryReadInterceptor;
+import com.qct.device.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured connection pool with a primary pool and one pool per replica,
+ * both configured from {@code spring.datasource}, behind a {@link ReplicaRoutingDataSource}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "qct.datasource.routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig implements WebMvcConfigurer {
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(DataSourceProperties dataSourceProperties,
+                                                      DataSourceRoutingProperties properties,
+                                                      Environment environment,
+                                                      MeterRegistry meterRegistry) {
+        HikariDataSource primary = pool(dataSourceProperties, environment, meterRegistry);
+        primary.setPoolName("primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (DataSourceRoutingProperties.Replica spec : properties.getReplicas()) {
+            if (spec.getName() == null || spec.getUrl() == null) {
+                throw new IllegalStateException("qct.datasource.routing.replicas entries need a name and a url");
+            }
+            HikariDataSource replica = pool(dataSourceProperties, environment, meterRegistry);
+            replica.setPoolName("replica-" + spec.getName());
+            replica.setJdbcUrl(spec.getUrl());
+            if (spec.getUsername() != null) {
+                replica.setUsername(spec.getUsername());
+            }
+            if (spec.getPassword() != null) {
+                replica.setPassword(spec.getPassword());
+            }
+            if (spec.getMaximumPoolSize() != null) {
+                replica.setMaximumPoolSize(spec.getMaximumPoolSize());
+            }
+            replica.setReadOnly(true);
+            // An unreachable replica must not stop the service from starting
+            replica.setInitializationFailTimeout(-1);
+            if (replicas.put(spec.getName(), replica) != null) {
+                throw new IllegalStateException("Duplicate replica name " + spec.getName());
+            }
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, properties.getLagQuery(),
+                properties.getMaxLag(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new PrimaryReadInterceptor());
+    }
+
+    private static HikariDataSource pool(DataSourceProperties dataSourceProperties, Environment environment,
+                                         MeterRegistry meterRegistry) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setMetricRegistry(meterRegistry);
+        return pool;
+    }
+}
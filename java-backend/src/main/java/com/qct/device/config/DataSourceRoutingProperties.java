@@ -0,0 +1,53 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routing of read-only transactions to replica databases (see
+ * {@link com.qct.device.datasource.ReplicaRoutingDataSource}). Replicas share the
+ * {@code spring.datasource.hikari} pool settings of the primary unless overridden here.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.datasource.routing")
+public class DataSourceRoutingProperties {
+
+    private boolean enabled = false;
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    /** Replicas further behind the primary than this are skipped until they catch up. */
+    private Duration maxLag = Duration.ofSeconds(10);
+
+    /** How often replica lag is measured; replicas take reads only after their first check. */
+    private Duration lagCheckInterval = Duration.ofSeconds(5);
+
+    /**
+     * Returns the replica's lag in seconds, or null when unknown. The default reports no lag
+     * for a database that is not a standby, or a standby that has replayed all it received.
+     */
+    private String lagQuery = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+            "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    @Data
+    public static class Replica {
+
+        private String name;
+
+        private String url;
+
+        /** Defaults to the primary's. */
+        private String username;
+
+        /** Defaults to the primary's. */
+        private String password;
+
+        /** Defaults to the primary's pool size. */
+        private Integer maximumPoolSize;
+    }
+}
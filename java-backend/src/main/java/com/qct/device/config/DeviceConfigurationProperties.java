@@ -0,0 +1,18 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * In-memory caching of the shared device configurations.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.devices.configurations")
+public class DeviceConfigurationProperties {
+
+    /** Distinct configurations kept in memory, parsed, with their ids. */
+    private long maxCached = 10_000;
+
+    /** Most devices a single assignment may name explicitly; assigning to an OEM is unbounded. */
+    private int maxAssignedDevices = 10_000;
+}
@@ -0,0 +1,50 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Sizing and expiry for the in-memory device registry that answers device lookups.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.devices.registry")
+public class DeviceRegistryProperties {
+
+    /** Serve lookups from memory; when off every lookup queries the database. */
+    private boolean enabled = true;
+
+    /** Maximum number of device ids, known or unknown, kept in memory. */
+    private long maxSize = 200_000;
+
+    /** How long a known device is served from memory before it is reloaded. */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /** How long an unknown device id is remembered as absent. */
+    private Duration negativeTtl = Duration.ofMinutes(1);
+
+    /**
+     * Lower bound on the filter capacity. The filter is sized for twice the current device
+     * count, or this, whichever is larger, and rebuilt once it fills up.
+     */
+    private long minExpectedDevices = 1_000_000;
+
+    /** Target false positive rate of the membership filter while within capacity. */
+    private double falsePositiveRate = 0.01;
+
+    /** Cron for periodic filter rebuilds, which drop deleted devices; {@code -} disables them. */
+    private String rebuildCron = "0 30 3 * * *";
+
+    /** Redis pub/sub channel on which device changes are announced to the other instances. */
+    private String channel = "qct:devices:changed";
+
+    /** Longest time a device change waits before it is announced to the other instances. */
+    private Duration publishInterval = Duration.ofMillis(200);
+
+    /**
+     * How often devices changed recently are re-read from the primary into the filter, which
+     * bounds how long a lost announcement can keep a new device rejected.
+     */
+    private Duration recheckInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,32 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Sizing for the in-memory store of recent raw samples behind the {@code /recent} endpoint.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.hot-window")
+public class HotWindowProperties {
+
+    private boolean enabled = true;
+
+    /** How much recent history each series keeps. */
+    private Duration window = Duration.ofHours(1);
+
+    /** Upper bound on sample buffer memory; the least recently used devices are evicted beyond it. */
+    private DataSize memoryBudget = DataSize.ofMegabytes(128);
+
+    /** Samples a new series is allocated for; buffers double as needed. */
+    private int initialCapacity = 64;
+
+    /** Hard cap on samples per series; the oldest are overwritten beyond it. */
+    private int maxSamplesPerSeries = 65_536;
+
+    /** Load the last {@code window} of samples from the database on startup. */
+    private boolean warmOnStartup = true;
+}
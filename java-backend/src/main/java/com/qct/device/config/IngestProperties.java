@@ -0,0 +1,29 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Tuning for the batched metric ingestion pipeline.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.ingest")
+public class IngestProperties {
+
+    /** Maximum number of metrics buffered in memory before producers are throttled. */
+    private int queueCapacity = 100_000;
+
+    /** Maximum number of rows written per JDBC batch. */
+    private int batchSize = 1_000;
+
+    /** Longest time a metric waits in the queue before a partial batch is flushed. */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    /** How long a producer waits for queue space before the request is throttled. */
+    private Duration offerTimeout = Duration.ofMillis(50);
+
+    /** Maximum number of per-record validation errors echoed back to the client. */
+    private int maxReportedErrors = 100;
+}
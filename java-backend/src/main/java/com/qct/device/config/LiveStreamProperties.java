@@ -0,0 +1,41 @@
+package com.qct.device.config;
+
+import com.qct.device.service.OverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Limits for live metric subscriptions served over server-sent events.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.live")
+public class LiveStreamProperties {
+
+    private boolean enabled = true;
+
+    /** Open subscriptions per instance; further subscribers are turned away with 503. */
+    private int maxSubscribers = 1_000;
+
+    /** Samples buffered per subscriber unless the client asks for a different size. */
+    private int bufferSize = 1_000;
+
+    /** Upper bound on the buffer size a client may ask for. */
+    private int maxBufferSize = 10_000;
+
+    /** What happens to samples a subscriber cannot keep up with, unless the client chooses. */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Threads writing events to subscribers; a slow client only ever holds one of them. Not
+     * used on virtual threads, where each delivery runs on a thread of its own.
+     */
+    private int deliveryThreads = 4;
+
+    /** Idle connections get a comment line this often so that proxies keep them open. */
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    /** Subscriptions end after this long and clients reconnect. */
+    private Duration timeout = Duration.ofMinutes(30);
+}
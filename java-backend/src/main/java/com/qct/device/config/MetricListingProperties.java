@@ -0,0 +1,20 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Range of the raw metric listings, pages and streams of a device or OEM.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.listing")
+public class MetricListingProperties {
+
+    /**
+     * How far back a listing reaches when the caller names no {@code since}; bounding every
+     * listing in time lets the planner skip older partitions.
+     */
+    private Duration defaultWindow = Duration.ofDays(7);
+}
@@ -0,0 +1,24 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Server-side OEM aggregation over rollups and raw samples (see
+ * {@link com.qct.device.service.OemAggregationService}).
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.oem-aggregate")
+public class OemAggregateProperties {
+
+    /** Device shards queried in parallel, each in its own transaction; 1 runs a single query. */
+    private int shards = 1;
+
+    /** Threads shared by shard queries across requests; unbounded on virtual threads. */
+    private int threads = 4;
+
+    /** Longest time range an aggregate may span. */
+    private Duration maxRange = Duration.ofDays(93);
+}
@@ -0,0 +1,31 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Partition management for a range-partitioned {@code device_metrics} table. Has no effect
+ * when the table is not partitioned (see {@code database/init-postgres.sql}).
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.partitioning")
+public class PartitionProperties {
+
+    public enum Interval { DAILY, WEEKLY }
+
+    private boolean enabled = true;
+
+    /** Range covered by each new partition; existing partitions keep their bounds. */
+    private Interval interval = Interval.DAILY;
+
+    /** Partitions are created in advance until this far past the current time is covered. */
+    private Duration ahead = Duration.ofDays(7);
+
+    /** Cron for creating upcoming partitions. */
+    private String maintenanceCron = "0 5 * * * *";
+
+    /** Partition DDL gives up rather than queue behind long-running queries for longer than this. */
+    private Duration lockTimeout = Duration.ofSeconds(5);
+}
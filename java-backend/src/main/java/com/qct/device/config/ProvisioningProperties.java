@@ -0,0 +1,18 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Tuning for bulk device provisioning.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.provisioning")
+public class ProvisioningProperties {
+
+    /** Number of devices upserted per JDBC batch and transaction. */
+    private int batchSize = 1_000;
+
+    /** Maximum number of per-record errors echoed back to the client. */
+    private int maxReportedErrors = 100;
+}
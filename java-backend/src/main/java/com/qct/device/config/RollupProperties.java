@@ -0,0 +1,44 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Compaction and retention settings for {@code device_metric_rollups}.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.rollup")
+public class RollupProperties {
+
+    private boolean enabled = true;
+
+    /** Delay between compaction runs. */
+    private Duration interval = Duration.ofMinutes(1);
+
+    /** Buckets are only compacted once they have been closed for this long. */
+    private Duration settleDelay = Duration.ofMinutes(1);
+
+    /** Upper bound on how much history a single run compacts, so catching up stays incremental. */
+    private Duration maxCatchUp = Duration.ofHours(6);
+
+    /** Raw samples older than this are deleted once compacted. */
+    private Duration rawRetention = Duration.ofDays(30);
+
+    private Duration minuteRetention = Duration.ofDays(30);
+
+    private Duration hourRetention = Duration.ofDays(365);
+
+    /** Day buckets are kept forever unless set. */
+    private Duration dayRetention;
+
+    /** Rows deleted per statement when applying retention. */
+    private int deleteBatchSize = 10_000;
+
+    /** Series queries pick the finest resolution that returns at most this many buckets. */
+    private int maxPoints = 1_500;
+
+    /** Cron for the retention sweep. */
+    private String retentionCron = "0 15 * * * *";
+}
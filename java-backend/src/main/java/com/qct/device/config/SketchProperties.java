@@ -0,0 +1,31 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Hourly percentile sketches kept per device and metric type in {@code device_metric_sketches}.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.analytics.sketches")
+public class SketchProperties {
+
+    private boolean enabled = true;
+
+    /** Relative error bound of reported percentiles; changing it invalidates stored sketches. */
+    private double relativeAccuracy = 0.01;
+
+    /** How often sketches accumulated from ingest are merged into the stored ones. */
+    private Duration flushInterval = Duration.ofSeconds(30);
+
+    /** Sketches for hours older than this are deleted. */
+    private Duration retention = Duration.ofDays(90);
+
+    /** Cron for the retention sweep. */
+    private String retentionCron = "0 25 * * * *";
+
+    /** Longest time range a percentile query may span. */
+    private Duration maxRange = Duration.ofDays(31);
+}
@@ -0,0 +1,32 @@
+package com.qct.device.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Bulk device status transitions (see {@link com.qct.device.service.DeviceStatusJobService}).
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.devices.status-jobs")
+public class StatusJobProperties {
+
+    /** Devices updated per statement and transaction; row locks are held for one chunk only. */
+    private int chunkSize = 1_000;
+
+    /** Jobs running at once; further jobs wait in the queue. */
+    private int threads = 2;
+
+    /** Jobs queued or running at once before new ones are refused. */
+    private int maxActiveJobs = 20;
+
+    /** Most devices a single job may name explicitly; the other selectors are unbounded. */
+    private int maxDeviceIds = 100_000;
+
+    /** How long a finished job can still be looked up; on other instances, counted from its last progress. */
+    private Duration retention = Duration.ofHours(1);
+
+    /** Prefix of the Redis keys holding each job's progress for the other instances. */
+    private String keyPrefix = "qct:devices:status-jobs:";
+}
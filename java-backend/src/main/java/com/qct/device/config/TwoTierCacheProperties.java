@@ -0,0 +1,126 @@
+package com.qct.device.config;
+
+import com.qct.device.cache.CacheCodec;
+import com.qct.device.cache.CacheWriteMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sizing and expiry for the in-process cache tier and the Redis tier behind it.
+ *
+ * <p>Local capacity is expressed as a weight: a cached collection weighs as much as its
+ * element count and any other value weighs 1, so a few large OEM listings cannot crowd
+ * out thousands of small entries unnoticed.
+ */
+@Data
+@ConfigurationProperties(prefix = "qct.cache")
+public class TwoTierCacheProperties {
+
+    /** Redis entry TTL for caches without their own {@code ttl}. */
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /** Redis pub/sub channel on which evictions are broadcast to the other instances. */
+    private String invalidationChannel = "qct:cache:invalidation";
+
+    /** Redis value encoding for caches without their own {@code codec}. */
+    private CacheCodec codec = CacheCodec.JSON;
+
+    /** Binary values larger than this many bytes are LZ4 compressed. */
+    private int compressionThreshold = 2_048;
+
+    /** Threads reloading entries in the background for refresh-ahead and stale-while-revalidate. */
+    private int refreshThreads = 2;
+
+    /** Background reloads waiting beyond this are skipped until a later read. */
+    private int refreshQueueSize = 256;
+
+    private Local local = new Local();
+
+    private Write write = new Write();
+
+    /** Per-cache overrides, keyed by cache name. */
+    private Map<String, Spec> caches = new HashMap<>();
+
+    public Duration ttlFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getTtl() != null ? spec.getTtl() : ttl;
+    }
+
+    public CacheCodec codecFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getCodec() != null ? spec.getCodec() : codec;
+    }
+
+    public Duration localTtlFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getLocalTtl() != null ? spec.getLocalTtl() : local.getTtl();
+    }
+
+    public long localMaxWeightFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null && spec.getLocalMaxWeight() != null ? spec.getLocalMaxWeight() : local.getMaxWeight();
+    }
+
+    public Duration refreshAheadFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null ? positive(spec.getRefreshAhead()) : null;
+    }
+
+    public Duration staleWhileRevalidateFor(String cacheName) {
+        Spec spec = caches.get(cacheName);
+        return spec != null ? positive(spec.getStaleWhileRevalidate()) : null;
+    }
+
+    private static Duration positive(Duration duration) {
+        return duration != null && !duration.isNegative() && !duration.isZero() ? duration : null;
+    }
+
+    @Data
+    public static class Local {
+
+        private boolean enabled = true;
+
+        /** Should stay below the Redis TTL so a local copy never outlives the shared one. */
+        private Duration ttl = Duration.ofMinutes(1);
+
+        private long maxWeight = 200_000;
+    }
+
+    @Data
+    public static class Write {
+
+        /** How analytics caches follow metric writes. */
+        private CacheWriteMode mode = CacheWriteMode.EVICT;
+
+        /** Writes are collected and applied once per interval, so bursts touch each key once. */
+        private Duration flushInterval = Duration.ofMillis(500);
+
+        /** Above this many pending metrics per interval, appends fall back to eviction. */
+        private int maxPendingAppends = 10_000;
+    }
+
+    @Data
+    public static class Spec {
+
+        private Duration ttl;
+
+        private Duration localTtl;
+
+        private Long localMaxWeight;
+
+        private CacheCodec codec;
+
+        /** Entries read within this long of their Redis expiry are reloaded in the background. */
+        private Duration refreshAhead;
+
+        /**
+         * How long after expiry this instance may keep answering with the value it last loaded
+         * while a background load replaces it. Evicted entries are never served stale.
+         */
+        private Duration staleWhileRevalidate;
+    }
+}
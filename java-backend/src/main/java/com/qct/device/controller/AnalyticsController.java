@@ -1,24 +1,66 @@
 package com.qct.device.controller;
 
+import com.qct.device.admission.Admission;
+import com.qct.device.admission.AdmissionClass;
 import com.qct.device.dto.AnalyticsRequest;
 import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.BatchIngestResponse;
+import com.qct.device.dto.MetricPage;
+import com.qct.device.dto.MetricSeriesResponse;
+import com.qct.device.dto.OemAggregateResponse;
+import com.qct.device.dto.PercentileSummaryResponse;
+import com.qct.device.dto.RecentMetricsResponse;
+import com.qct.device.model.RollupResolution;
 import com.qct.device.service.AnalyticsService;
+import com.qct.device.service.HotWindowMetricStore;
+import com.qct.device.service.LiveMetricStream;
+import com.qct.device.service.MetricIngestService;
+import com.qct.device.service.MetricRollupService;
+import com.qct.device.service.MetricSketchService;
+import com.qct.device.service.OemAggregationService;
+import com.qct.device.service.OverflowPolicy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/v1/analytics")
 @RequiredArgsConstructor
 @Slf4j
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = HttpHeaders.ETAG)
 public class AnalyticsController {
     
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    
     private final AnalyticsService analyticsService;
+    private final MetricIngestService metricIngestService;
+    private final MetricRollupService metricRollupService;
+    private final MetricSketchService metricSketchService;
+    private final OemAggregationService oemAggregationService;
+    private final HotWindowMetricStore hotWindowMetricStore;
+    private final LiveMetricStream liveMetricStream;
+    private final ObjectMapper objectMapper;
     
     @PostMapping("/metrics")
     public ResponseEntity<AnalyticsResponse> recordMetric(@Valid @RequestBody AnalyticsRequest request) {
@@ -27,18 +69,184 @@ public class AnalyticsController {
         return ResponseEntity.ok(response);
     }
     
+    @PostMapping(value = "/metrics/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchIngestResponse> recordMetrics(InputStream body) throws IOException {
+        BatchIngestResponse response = metricIngestService.ingest(body);
+        log.info("Batch ingest: {} received, {} accepted, {} invalid",
+                response.getReceived(), response.getAccepted(), response.getInvalid());
+        if (response.isThrottled()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(response);
+        }
+        return ResponseEntity.accepted().body(response);
+    }
+    
     @GetMapping("/device/{deviceId}")
-    public ResponseEntity<List<AnalyticsResponse>> getDeviceMetrics(@PathVariable String deviceId) {
+    public ResponseEntity<List<AnalyticsResponse>> getDeviceMetrics(@PathVariable String deviceId,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String version = analyticsService.getDeviceMetricsVersion(deviceId, since);
+            if (ETags.matches(ifNoneMatch, version)) {
+                return ETags.notModified(version);
+            }
+        }
         log.info("Fetching metrics for device: {}", deviceId);
-        List<AnalyticsResponse> metrics = analyticsService.getDeviceMetrics(deviceId);
-        return ResponseEntity.ok(metrics);
+        List<AnalyticsResponse> metrics = analyticsService.getDeviceMetrics(deviceId, since);
+        return ResponseEntity.ok()
+                .eTag(ETags.ofMetrics(metrics, AnalyticsResponse::getId))
+                .body(metrics);
+    }
+    
+    @GetMapping("/device/{deviceId}/page")
+    public ResponseEntity<MetricPage> getDeviceMetricsPage(@PathVariable String deviceId,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "100") int limit,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String version = analyticsService.getDeviceMetricsVersion(deviceId, since);
+            if (ETags.matches(ifNoneMatch, version)) {
+                return ETags.notModified(version);
+            }
+        }
+        MetricPage page = analyticsService.getDeviceMetricsPage(deviceId, since, cursor, limit);
+        return ResponseEntity.ok().eTag(page.getVersion()).body(page);
+    }
+    
+    @GetMapping(value = "/device/{deviceId}/stream", produces = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @Admission(AdmissionClass.EXPORT)
+    public ResponseEntity<StreamingResponseBody> streamDeviceMetrics(@PathVariable String deviceId,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        log.info("Streaming metrics for device: {}", deviceId);
+        return stream(accept, sink -> analyticsService.streamDeviceMetrics(deviceId, since, sink));
+    }
+    
+    @GetMapping("/device/{deviceId}/recent")
+    public ResponseEntity<RecentMetricsResponse> getRecentMetrics(@PathVariable String deviceId,
+                                                                  @RequestParam String metricType,
+                                                                  @RequestParam(required = false) Duration window,
+                                                                  @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(hotWindowMetricStore.getRecent(deviceId, metricType, window, limit));
+    }
+    
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Admission(AdmissionClass.EXEMPT)
+    public ResponseEntity<SseEmitter> subscribeLive(@RequestParam(name = "deviceId", required = false) Set<String> deviceIds,
+                                                    @RequestParam(name = "oemId", required = false) Set<String> oemIds,
+                                                    @RequestParam(name = "metricType", required = false) Set<String> metricTypes,
+                                                    @RequestParam(required = false) OverflowPolicy policy,
+                                                    @RequestParam(required = false) Integer bufferSize) {
+        return liveMetricStream.subscribe(orEmpty(deviceIds), orEmpty(oemIds), orEmpty(metricTypes), policy, bufferSize)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "5")
+                        .build());
+    }
+    
+    @GetMapping("/device/{deviceId}/series")
+    public ResponseEntity<MetricSeriesResponse> getMetricSeries(
+            @PathVariable String deviceId,
+            @RequestParam String metricType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) RollupResolution resolution) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        if (!start.isBefore(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(metricRollupService.getSeries(deviceId, metricType, start, end, resolution));
+    }
+    
+    @GetMapping("/device/{deviceId}/percentiles")
+    public ResponseEntity<PercentileSummaryResponse> getDevicePercentiles(
+            @PathVariable String deviceId,
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(name = "quantile", required = false) List<Double> quantiles) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(metricSketchService.getDevicePercentiles(deviceId, metricType, start, end, quantiles));
+    }
+    
+    @GetMapping("/oem/{oemId}/percentiles")
+    public ResponseEntity<PercentileSummaryResponse> getOemPercentiles(
+            @PathVariable String oemId,
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(name = "quantile", required = false) List<Double> quantiles) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(metricSketchService.getOemPercentiles(oemId, metricType, start, end, quantiles));
+    }
+    
+    @GetMapping("/percentiles")
+    public ResponseEntity<PercentileSummaryResponse> getFleetPercentiles(
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(name = "quantile", required = false) List<Double> quantiles) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(metricSketchService.getFleetPercentiles(metricType, start, end, quantiles));
     }
     
     @GetMapping("/oem/{oemId}/summary")
-    public ResponseEntity<List<AnalyticsResponse>> getOemAnalytics(@PathVariable String oemId) {
+    public ResponseEntity<List<AnalyticsResponse>> getOemAnalytics(@PathVariable String oemId,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String version = analyticsService.getOemAnalyticsVersion(oemId, since);
+            if (ETags.matches(ifNoneMatch, version)) {
+                return ETags.notModified(version);
+            }
+        }
         log.info("Fetching analytics summary for OEM: {}", oemId);
-        List<AnalyticsResponse> analytics = analyticsService.getOemAnalytics(oemId);
-        return ResponseEntity.ok(analytics);
+        List<AnalyticsResponse> analytics = analyticsService.getOemAnalytics(oemId, since);
+        return ResponseEntity.ok()
+                .eTag(ETags.ofMetrics(analytics, AnalyticsResponse::getId))
+                .body(analytics);
+    }
+    
+    @GetMapping("/oem/{oemId}/aggregate")
+    public ResponseEntity<OemAggregateResponse> getOemAggregate(
+            @PathVariable String oemId,
+            @RequestParam(required = false) String metricType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(oemAggregationService.aggregate(oemId, metricType, start, end));
+    }
+    
+    @GetMapping("/oem/{oemId}/page")
+    public ResponseEntity<MetricPage> getOemAnalyticsPage(@PathVariable String oemId,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "100") int limit,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String version = analyticsService.getOemAnalyticsVersion(oemId, since);
+            if (ETags.matches(ifNoneMatch, version)) {
+                return ETags.notModified(version);
+            }
+        }
+        MetricPage page = analyticsService.getOemAnalyticsPage(oemId, since, cursor, limit);
+        return ResponseEntity.ok().eTag(page.getVersion()).body(page);
+    }
+    
+    @GetMapping(value = "/oem/{oemId}/stream", produces = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @Admission(AdmissionClass.EXPORT)
+    public ResponseEntity<StreamingResponseBody> streamOemAnalytics(@PathVariable String oemId,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        log.info("Streaming analytics for OEM: {}", oemId);
+        return stream(accept, sink -> analyticsService.streamOemAnalytics(oemId, since, sink));
     }
     
     @GetMapping("/performance/{deviceId}")
@@ -47,4 +255,37 @@ public class AnalyticsController {
         AnalyticsResponse performance = analyticsService.getPerformanceMetrics(deviceId);
         return ResponseEntity.ok(performance);
     }
+    
+    @PostMapping("/performance/batch-get")
+    @Admission(AdmissionClass.READ)
+    public ResponseEntity<Map<String, AnalyticsResponse>> getPerformanceMetrics(@RequestBody List<String> deviceIds) {
+        log.info("Fetching performance metrics for {} devices", deviceIds.size());
+        return ResponseEntity.ok(analyticsService.getPerformanceMetrics(deviceIds));
+    }
+    
+    private static Set<String> orEmpty(Set<String> values) {
+        return values != null ? values : Set.of();
+    }
+    
+    // NDJSON unless the client only accepts JSON, in which case the rows are written as one array
+    private ResponseEntity<StreamingResponseBody> stream(String accept, Consumer<Consumer<AnalyticsResponse>> source) {
+        boolean ndjson = accept == null || !MediaType.parseMediaTypes(accept).contains(MediaType.APPLICATION_JSON);
+        StreamingResponseBody body = out -> {
+            var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            try (SequenceWriter sequence = ndjson
+                    ? writer.withRootValueSeparator("\n").writeValues(out)
+                    : writer.writeValuesAsArray(out)) {
+                source.accept(response -> {
+                    try {
+                        sequence.write(response);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.parseMediaType(APPLICATION_NDJSON_VALUE) : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
 }
\ No newline at end of file
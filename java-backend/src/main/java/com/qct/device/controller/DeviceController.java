@@ -1,24 +1,49 @@
 package com.qct.device.controller;
 
+import com.qct.device.admission.Admission;
+import com.qct.device.admission.AdmissionClass;
+import com.qct.device.datasource.ReadFromPrimary;
+import com.qct.device.dto.BulkProvisionResponse;
+import com.qct.device.dto.ConfigurationAssignmentRequest;
+import com.qct.device.dto.ConfigurationAssignmentResponse;
+import com.qct.device.dto.DeviceConfigurationResponse;
 import com.qct.device.dto.DeviceRequest;
 import com.qct.device.dto.DeviceResponse;
+import com.qct.device.dto.StatusJobResponse;
+import com.qct.device.dto.StatusTransitionRequest;
+import com.qct.device.repository.ContentVersion;
+import com.qct.device.service.DeviceProvisioningService;
 import com.qct.device.service.DeviceService;
+import com.qct.device.service.DeviceStatusJobService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+
+import static com.qct.device.controller.AnalyticsController.APPLICATION_NDJSON_VALUE;
 
 @RestController
 @RequestMapping("/api/v1/devices")
 @RequiredArgsConstructor
 @Slf4j
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = HttpHeaders.ETAG)
 public class DeviceController {
     
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    
     private final DeviceService deviceService;
+    private final DeviceProvisioningService deviceProvisioningService;
+    private final DeviceStatusJobService statusJobService;
     
     @PostMapping("/configure")
     public ResponseEntity<DeviceResponse> configureDevice(@Valid @RequestBody DeviceRequest request) {
@@ -27,20 +52,101 @@ public class DeviceController {
         return ResponseEntity.ok(response);
     }
     
+    @PostMapping(value = "/bulk", consumes = {APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public ResponseEntity<BulkProvisionResponse> provisionDevices(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                                  InputStream body) throws IOException {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE));
+        BulkProvisionResponse response = deviceProvisioningService.provision(body,
+                csv ? DeviceProvisioningService.Format.CSV : DeviceProvisioningService.Format.NDJSON);
+        log.info("Bulk provisioning: {} received, {} inserted, {} updated, {} invalid, {} failed",
+                response.getReceived(), response.getInserted(), response.getUpdated(),
+                response.getInvalid(), response.getFailed());
+        return ResponseEntity.ok(response);
+    }
+    
+    // The body is stored as sent; an identical body later yields the same configuration id
+    @PostMapping("/configurations")
+    public ResponseEntity<DeviceConfigurationResponse> storeConfiguration(@RequestBody String configuration) {
+        return ResponseEntity.ok(deviceService.storeConfiguration(configuration));
+    }
+    
+    @GetMapping("/configurations/{configurationId}")
+    public ResponseEntity<DeviceConfigurationResponse> getConfiguration(@PathVariable long configurationId) {
+        return deviceService.getConfiguration(configurationId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @PostMapping("/configurations/{configurationId}/assign")
+    public ResponseEntity<ConfigurationAssignmentResponse> assignConfiguration(@PathVariable long configurationId,
+                                                                               @RequestBody ConfigurationAssignmentRequest request) {
+        return deviceService.assignConfiguration(configurationId, request)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // Runs in the background; poll the returned Location for progress
+    @PostMapping("/status-jobs")
+    public ResponseEntity<StatusJobResponse> submitStatusJob(@RequestBody StatusTransitionRequest request) {
+        return statusJobService.submit(request)
+                .map(job -> ResponseEntity.accepted()
+                        .location(URI.create("/api/v1/devices/status-jobs/" + job.getJobId()))
+                        .body(job))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "30")
+                        .build());
+    }
+    
+    @GetMapping("/status-jobs/{jobId}")
+    public ResponseEntity<StatusJobResponse> getStatusJob(@PathVariable String jobId) {
+        return statusJobService.find(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // Known devices by id; unknown ids are left out
+    @PostMapping("/batch-get")
+    @Admission(AdmissionClass.READ)
+    public ResponseEntity<Map<String, DeviceResponse>> getDevices(@RequestBody List<String> deviceIds) {
+        return ResponseEntity.ok(deviceService.getDevices(deviceIds));
+    }
+    
+    // Tagged from the registry entry; If-None-Match is answered by the framework
     @GetMapping("/{deviceId}")
     public ResponseEntity<DeviceResponse> getDevice(@PathVariable String deviceId) {
         return deviceService.getDevice(deviceId)
-                .map(ResponseEntity::ok)
+                .map(device -> ResponseEntity.ok()
+                        .eTag(ContentVersion.eTag(1, device.getUpdatedAt()))
+                        .body(device))
                 .orElse(ResponseEntity.notFound().build());
     }
     
+    // Existence check for gateways validating device ids; unknown ids are answered from memory
+    @RequestMapping(value = "/{deviceId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> checkDevice(@PathVariable String deviceId) {
+        return deviceService.deviceExists(deviceId)
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.notFound().build();
+    }
+    
     @GetMapping("/oem/{oemId}")
-    public ResponseEntity<List<DeviceResponse>> getOemDevices(@PathVariable String oemId) {
+    @ReadFromPrimary
+    public ResponseEntity<List<DeviceResponse>> getOemDevices(@PathVariable String oemId,
+                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String version = deviceService.getDevicesByOemVersion(oemId);
+            if (ETags.matches(ifNoneMatch, version)) {
+                return ETags.notModified(version);
+            }
+        }
         List<DeviceResponse> devices = deviceService.getDevicesByOem(oemId);
-        return ResponseEntity.ok(devices);
+        return ResponseEntity.ok()
+                .eTag(ETags.of(devices, DeviceResponse::getUpdatedAt))
+                .body(devices);
     }
     
     @GetMapping("/health")
+    @Admission(AdmissionClass.EXEMPT)
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Device Management Service is healthy");
     }
@@ -0,0 +1,66 @@
+package com.qct.device.controller;
+
+import com.qct.device.repository.ContentVersion;
+import com.qct.device.repository.MetricListingVersion;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Conditional GET support for listings. A 200 is tagged from its own body, so a tag never
+ * claims more than the client was sent, even when the body came from a cache or a lagging
+ * replica; {@code If-None-Match} is checked against a version read from the database, which
+ * answers a 304 without loading the listing.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * The tag of a listing, matching {@link ContentVersion#toETag()} for the same rows.
+     */
+    static <T, V extends Comparable<? super V>> String of(Collection<T> items, Function<T, V> latest) {
+        V max = items.stream().map(latest).filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null);
+        return ContentVersion.eTag(items.size(), max);
+    }
+
+    /**
+     * The tag of a metric listing ordered newest first, matching {@link MetricListingVersion#toETag()}
+     * for the same rows.
+     */
+    static <T> String ofMetrics(List<T> items, Function<T, Long> id) {
+        return items.isEmpty() ? MetricListingVersion.eTag(0, null, null)
+                : MetricListingVersion.eTag(items.size(), id.apply(items.get(0)), id.apply(items.get(items.size() - 1)));
+    }
+
+    /**
+     * Whether {@code ifNoneMatch} names {@code eTag}, by weak comparison.
+     */
+    static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        String opaque = opaque(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,34 @@
+package com.qct.device.datasource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Applies {@link ReadFromPrimary} to the request thread. Work the handler hands to other
+ * threads, such as streamed exports, is not covered.
+ */
+public class PrimaryReadInterceptor implements AsyncHandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod method
+                && (method.hasMethodAnnotation(ReadFromPrimary.class)
+                    || AnnotatedElementUtils.hasAnnotation(method.getBeanType(), ReadFromPrimary.class))) {
+            ReplicaRoutingDataSource.forcePrimary(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.forcePrimary(false);
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicaRoutingDataSource.forcePrimary(false);
+    }
+}
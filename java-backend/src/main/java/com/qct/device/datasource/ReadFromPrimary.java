@@ -0,0 +1,18 @@
+package com.qct.device.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the read-only transactions of a request on the primary database, for handlers whose
+ * callers expect to read their own writes. Applies to controller methods, or to every handler
+ * of a controller.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReadFromPrimary {
+}
@@ -0,0 +1,171 @@
+package com.qct.device.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections for read-only transactions to replicas, round robin, and everything else
+ * to the primary. The choice is made when a connection is first used, so this must sit behind
+ * a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transaction
+ * managers fetch the connection before the transaction is marked read-only.
+ *
+ * <p>Replica lag is measured periodically; a replica that is too far behind, or cannot be
+ * reached, takes no reads until a later check finds it caught up. When no replica qualifies,
+ * reads fall back to the primary. {@link #forcePrimary} keeps a thread's reads on the primary
+ * regardless, for read-your-writes.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+    private final List<Replica> replicas;
+    private final String lagQuery;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter fallbacks;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    String lagQuery, Duration maxLag, MeterRegistry meterRegistry) {
+        this.replicas = replicas.entrySet().stream()
+                .map(e -> new Replica(e.getKey(), e.getValue(), meterRegistry))
+                .toList();
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+        setDefaultTargetDataSource(primary);
+        setTargetDataSources(new HashMap<>(replicas));
+
+        this.fallbacks = Counter.builder("qct.datasource.replica.fallbacks")
+                .description("Read-only transactions sent to the primary because no replica was available")
+                .register(meterRegistry);
+        for (Replica replica : this.replicas) {
+            Gauge.builder("qct.datasource.replica.lag", replica, r -> r.lagSeconds)
+                    .description("Replication lag last measured, NaN when the replica could not be checked")
+                    .baseUnit("seconds")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+            Gauge.builder("qct.datasource.replica.available", replica, r -> r.available ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Keeps read-only transactions started on this thread on the primary until reset.
+     *
+     * @return whether the thread was already forced, to restore it afterwards
+     */
+    public static boolean forcePrimary(boolean force) {
+        boolean previous = PRIMARY_FORCED.get() != null;
+        if (force) {
+            PRIMARY_FORCED.set(Boolean.TRUE);
+        } else {
+            PRIMARY_FORCED.remove();
+        }
+        return previous;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || PRIMARY_FORCED.get() != null) {
+            return null;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.available) {
+                replica.reads.increment();
+                return replica.name;
+            }
+        }
+        fallbacks.increment();
+        return null;
+    }
+
+    @Scheduled(fixedDelayString = "${qct.datasource.routing.lag-check-interval:PT5S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            Double lag = measureLag(replica);
+            boolean available = lag != null && lag <= maxLag.toMillis() / 1000.0;
+            replica.lagSeconds = lag != null ? lag : Double.NaN;
+            if (available != replica.available) {
+                if (available) {
+                    log.info("Replica {} is taking reads (lag {}s)", replica.name, lag);
+                } else {
+                    log.warn("Replica {} is not taking reads (lag {}s, limit {}s)", replica.name,
+                            lag != null ? lag : "unknown", maxLag.toSeconds());
+                }
+                replica.available = available;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            close(dataSource);
+        }
+        close(getResolvedDefaultDataSource());
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private Double measureLag(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout((int) Math.max(1, maxLag.toSeconds()));
+            try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                double lag = rs.getDouble(1);
+                return rs.wasNull() ? null : Math.max(0, lag);
+            }
+        } catch (SQLException e) {
+            log.debug("Lag check of replica {} failed: {}", replica.name, e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final Counter reads;
+        private volatile boolean available;
+        private volatile double lagSeconds = Double.NaN;
+
+        Replica(String name, DataSource dataSource, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.reads = Counter.builder("qct.datasource.replica.reads")
+                    .description("Read-only transactions served by a replica")
+                    .tag("replica", name)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchIngestResponse {
+
+    private long received;
+    private long accepted;
+    private long invalid;
+
+    // Set when the ingest queue is full; the client should resend from resumeFrom
+    private boolean throttled;
+    private Long resumeFrom;
+
+    private List<RecordError> errors;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RecordError {
+        private long index;
+        private String deviceId;
+        private String message;
+    }
+}
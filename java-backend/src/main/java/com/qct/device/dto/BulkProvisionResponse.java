@@ -0,0 +1,27 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkProvisionResponse {
+
+    private long received;
+    private long inserted;
+    private long updated;
+
+    // Records rejected before reaching the database (malformed or failing validation)
+    private long invalid;
+
+    // Records the database refused, e.g. a value longer than its column
+    private long failed;
+
+    private List<BatchIngestResponse.RecordError> errors;
+}
@@ -0,0 +1,14 @@
+package com.qct.device.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ConfigurationAssignmentRequest {
+
+    private List<String> deviceIds;
+
+    // Every device of this OEM, in addition to deviceIds
+    private String oemId;
+}
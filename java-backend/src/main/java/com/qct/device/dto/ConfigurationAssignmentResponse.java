@@ -0,0 +1,18 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigurationAssignmentResponse {
+
+    private Long configurationId;
+
+    // Devices whose configuration changed; those that already had it are not counted
+    private long updated;
+}
@@ -0,0 +1,19 @@
+package com.qct.device.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceConfigurationResponse {
+
+    private Long configurationId;
+
+    // The configuration as JSON, or as a JSON string when it is not JSON
+    private JsonNode configuration;
+}
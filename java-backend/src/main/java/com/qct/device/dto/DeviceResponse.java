@@ -1,16 +1,21 @@
 package com.qct.device.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class DeviceResponse {
     
     private String deviceId;
     private String oemId;
     private String deviceType;
+    private Long configurationId;
     private String configuration;
     private String firmware;
     private String status;
@@ -0,0 +1,26 @@
+package com.qct.device.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricPage {
+
+    private List<AnalyticsResponse> items;
+
+    // Pass back as ?cursor= to fetch the next page; null on the last page
+    private String nextCursor;
+    private boolean hasMore;
+
+    // Entity tag of everything the page was cut from, sent as the ETag header
+    @JsonIgnore
+    private String version;
+}
@@ -0,0 +1,38 @@
+package com.qct.device.dto;
+
+import com.qct.device.model.RollupResolution;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricSeriesResponse {
+
+    private String deviceId;
+    private String metricType;
+    private RollupResolution resolution;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<Point> points;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Point {
+        private LocalDateTime bucketStart;
+        private Long count;
+        private BigDecimal averageValue;
+        private BigDecimal minValue;
+        private BigDecimal maxValue;
+        private BigDecimal lastValue;
+    }
+}
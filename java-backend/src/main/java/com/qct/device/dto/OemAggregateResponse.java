@@ -0,0 +1,49 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OemAggregateResponse {
+
+    private String oemId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    /** Devices with at least one sample in the range. */
+    private Integer deviceCount;
+    /** Totals per metric type across the devices. */
+    private List<MetricTotals> metrics;
+    private List<DeviceTotals> devices;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DeviceTotals {
+        private String deviceId;
+        private List<MetricTotals> metrics;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MetricTotals {
+        private String metricType;
+        private Long count;
+        private BigDecimal averageValue;
+        private BigDecimal minValue;
+        private BigDecimal maxValue;
+        private BigDecimal lastValue;
+        private LocalDateTime lastTimestamp;
+    }
+}
@@ -0,0 +1,40 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PercentileSummaryResponse {
+
+    /** {@code DEVICE}, {@code OEM} or {@code FLEET}. */
+    private String scope;
+    private String id;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Double relativeAccuracy;
+    private List<MetricPercentiles> metrics;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MetricPercentiles {
+        private String metricType;
+        private Long count;
+        private BigDecimal averageValue;
+        private BigDecimal minValue;
+        private BigDecimal maxValue;
+        /** Keyed {@code p50}, {@code p95}, {@code p99.9} and so on. */
+        private Map<String, BigDecimal> percentiles;
+    }
+}
@@ -0,0 +1,27 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Raw samples of one series in column form: {@code timestamps[i]} (epoch millis) pairs with
+ * {@code values[i]}, oldest first.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecentMetricsResponse {
+
+    private String deviceId;
+    private String metricType;
+    private long since;
+    private long count;
+    private Double averageValue;
+    private Double minValue;
+    private Double maxValue;
+    private long[] timestamps;
+    private double[] values;
+}
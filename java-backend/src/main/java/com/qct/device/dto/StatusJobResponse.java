@@ -0,0 +1,33 @@
+package com.qct.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatusJobResponse {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private String jobId;
+    private State state;
+    private String status;
+
+    // Devices matching the selector and not yet in the target status when the job started
+    private Long matched;
+
+    // Devices moved so far; can differ from matched when devices change during the job
+    private long updated;
+    private int chunks;
+
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package com.qct.device.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class StatusTransitionRequest {
+
+    // The status to move the selected devices to
+    private String status;
+
+    // Selectors; devices must match every one given, and at least one is required
+    private List<String> deviceIds;
+    private String oemId;
+    private String deviceType;
+    private String firmware;
+    private String currentStatus;
+}
@@ -0,0 +1,17 @@
+package com.qct.device.event;
+
+import lombok.Value;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Published once for a set of devices changed by one statement, such as a bulk status
+ * transition, instead of a {@link DeviceChangedEvent} per device. {@code oemIds} are the OEMs
+ * of those devices.
+ */
+@Value
+public class DeviceBatchChangedEvent {
+    Collection<String> deviceIds;
+    Set<String> oemIds;
+}
@@ -0,0 +1,14 @@
+package com.qct.device.event;
+
+import lombok.Value;
+
+/**
+ * Published when a device is created or its configuration or status changes.
+ * {@code previousOemId} is set when the device moved to another OEM.
+ */
+@Value
+public class DeviceChangedEvent {
+    String deviceId;
+    String oemId;
+    String previousOemId;
+}
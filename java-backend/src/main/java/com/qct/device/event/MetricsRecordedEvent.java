@@ -0,0 +1,16 @@
+package com.qct.device.event;
+
+import com.qct.device.model.DeviceMetric;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published once metrics have been written to {@code device_metrics}, either by a single
+ * {@code recordMetric} call or by a flushed ingest batch. Every metric carries its generated
+ * {@code id}.
+ */
+@Value
+public class MetricsRecordedEvent {
+    List<DeviceMetric> metrics;
+}
@@ -8,7 +8,11 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "devices")
+@Table(name = "devices",
+       indexes = {
+               @Index(name = "idx_devices_configuration_id", columnList = "configuration_id"),
+               @Index(name = "idx_devices_updated_at", columnList = "updated_at")
+       })
 @Data
 public class Device {
     
@@ -25,8 +29,9 @@ public class Device {
     @Column(name = "device_type", nullable = false)
     private String deviceType;
     
-    @Column(name = "configuration", columnDefinition = "TEXT")
-    private String configuration;
+    /** Into {@code device_configurations}; resolved through {@code DeviceConfigurationStore}. */
+    @Column(name = "configuration_id")
+    private Long configurationId;
     
     @Column(name = "firmware")
     private String firmware;
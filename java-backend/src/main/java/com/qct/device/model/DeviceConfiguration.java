@@ -0,0 +1,32 @@
+package com.qct.device.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A device configuration, stored once and referenced by every device that has it. Rows are
+ * identified by the SHA-256 of their content and never changed.
+ */
+@Entity
+@Table(name = "device_configurations",
+       uniqueConstraints = @UniqueConstraint(name = "uk_device_configurations_hash", columnNames = "content_hash"))
+@Data
+public class DeviceConfiguration {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "content_hash", nullable = false, length = 32)
+    private byte[] contentHash;
+    
+    @Column(name = "content", nullable = false, columnDefinition = "TEXT")
+    private String content;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
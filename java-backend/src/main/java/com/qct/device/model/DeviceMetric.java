@@ -8,7 +8,12 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "device_metrics")
+@Table(name = "device_metrics", indexes = {
+        // Serves per-device listings ordered by time, including keyset pagination
+        @Index(name = "idx_device_metrics_device_ts", columnList = "device_id, timestamp, id"),
+        // Serves per-device, per-type range scans and aggregates
+        @Index(name = "idx_device_metrics_device_type_ts", columnList = "device_id, metric_type_id, timestamp")
+})
 @Data
 public class DeviceMetric {
     
@@ -16,18 +21,23 @@ public class DeviceMetric {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    @Convert(converter = InternedStringConverter.class)
     @Column(name = "device_id", nullable = false)
     private String deviceId;
     
-    @Column(name = "metric_type", nullable = false)
+    // Stored as a metric_dictionary id; see MetricDictionary
+    @Convert(converter = DictionaryConverter.MetricType.class)
+    @Column(name = "metric_type_id", nullable = false)
     private String metricType;
     
     @Column(name = "value", nullable = false, precision = 10, scale = 2)
     private BigDecimal value;
     
-    @Column(name = "unit")
+    @Convert(converter = DictionaryConverter.Unit.class)
+    @Column(name = "unit_id")
     private String unit;
     
+    @Convert(converter = InternedStringConverter.class)
     @Column(name = "description")
     private String description;
     
@@ -0,0 +1,50 @@
+package com.qct.device.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "device_metric_rollups",
+       uniqueConstraints = @UniqueConstraint(name = "uk_device_metric_rollups_bucket",
+               columnNames = {"resolution", "device_id", "metric_type", "bucket_start"}))
+@Data
+public class DeviceMetricRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 10)
+    private RollupResolution resolution;
+    
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    
+    @Column(name = "metric_type", nullable = false)
+    private String metricType;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+    
+    @Column(name = "sum_value", nullable = false, precision = 20, scale = 2)
+    private BigDecimal sumValue;
+    
+    @Column(name = "min_value", nullable = false, precision = 10, scale = 2)
+    private BigDecimal minValue;
+    
+    @Column(name = "max_value", nullable = false, precision = 10, scale = 2)
+    private BigDecimal maxValue;
+    
+    @Column(name = "last_value", nullable = false, precision = 10, scale = 2)
+    private BigDecimal lastValue;
+    
+    @Column(name = "last_timestamp", nullable = false)
+    private LocalDateTime lastTimestamp;
+}
@@ -0,0 +1,37 @@
+package com.qct.device.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Encoded quantile sketch of one device's samples of one metric type over one hour.
+ */
+@Entity
+@Table(name = "device_metric_sketches",
+       uniqueConstraints = @UniqueConstraint(name = "uk_device_metric_sketches_bucket",
+               columnNames = {"device_id", "metric_type", "bucket_start"}),
+       indexes = @Index(name = "idx_device_metric_sketches_bucket_start", columnList = "bucket_start"))
+@Data
+public class DeviceMetricSketch {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    
+    @Column(name = "metric_type", nullable = false)
+    private String metricType;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+    
+    @Column(name = "sketch", nullable = false)
+    private byte[] sketch;
+}
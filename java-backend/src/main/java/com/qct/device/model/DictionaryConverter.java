@@ -0,0 +1,44 @@
+package com.qct.device.model;
+
+import com.qct.device.service.MetricDictionary;
+import jakarta.persistence.AttributeConverter;
+
+/**
+ * Stores a string attribute as its {@code metric_dictionary} id. Values are only looked up, as
+ * the converter also binds query parameters: an unregistered value becomes {@code null}, which
+ * matches nothing, so writers register values with {@link MetricDictionary#idOf} before saving.
+ * Reading returns the dictionary's canonical instance, so entities share one copy of each
+ * string. Instantiated by Hibernate through the Spring bean container.
+ */
+public abstract class DictionaryConverter implements AttributeConverter<String, Integer> {
+
+    private final MetricDictionary dictionary;
+    private final DictionaryKind kind;
+
+    protected DictionaryConverter(MetricDictionary dictionary, DictionaryKind kind) {
+        this.dictionary = dictionary;
+        this.kind = kind;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String value) {
+        return value != null ? dictionary.findId(kind, value) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return id != null ? dictionary.valueOf(id) : null;
+    }
+
+    public static class MetricType extends DictionaryConverter {
+        public MetricType(MetricDictionary dictionary) {
+            super(dictionary, DictionaryKind.METRIC_TYPE);
+        }
+    }
+
+    public static class Unit extends DictionaryConverter {
+        public Unit(MetricDictionary dictionary) {
+            super(dictionary, DictionaryKind.UNIT);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.qct.device.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Table(name = "metric_dictionary",
+       uniqueConstraints = @UniqueConstraint(name = "uk_metric_dictionary_value", columnNames = {"kind", "value"}))
+@Data
+public class DictionaryEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private DictionaryKind kind;
+    
+    @Column(name = "value", nullable = false)
+    private String value;
+}
@@ -0,0 +1,10 @@
+package com.qct.device.model;
+
+/**
+ * Kinds of strings stored once in {@code metric_dictionary} and referenced by id from
+ * {@code device_metrics}.
+ */
+public enum DictionaryKind {
+    METRIC_TYPE,
+    UNIT
+}
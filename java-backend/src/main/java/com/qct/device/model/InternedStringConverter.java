@@ -0,0 +1,21 @@
+package com.qct.device.model;
+
+import com.qct.device.service.MetricDictionary;
+import jakarta.persistence.AttributeConverter;
+
+/**
+ * Leaves the column as is but hands out one shared instance per distinct value read, for
+ * strings that repeat across many rows.
+ */
+public class InternedStringConverter implements AttributeConverter<String, String> {
+
+    @Override
+    public String convertToDatabaseColumn(String value) {
+        return value;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String value) {
+        return MetricDictionary.intern(value);
+    }
+}
@@ -0,0 +1,31 @@
+package com.qct.device.model;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket sizes of the {@code device_metric_rollups} table, finest first. Each resolution
+ * is compacted from the one before it; {@link #MINUTE} is compacted from raw samples.
+ */
+@Getter
+public enum RollupResolution {
+
+    MINUTE("minute", ChronoUnit.MINUTES),
+    HOUR("hour", ChronoUnit.HOURS),
+    DAY("day", ChronoUnit.DAYS);
+
+    /** Unit understood by PostgreSQL {@code date_trunc}. */
+    private final String truncUnit;
+    private final ChronoUnit unit;
+
+    RollupResolution(String truncUnit, ChronoUnit unit) {
+        this.truncUnit = truncUnit;
+        this.unit = unit;
+    }
+
+    public Duration getBucket() {
+        return unit.getDuration();
+    }
+}
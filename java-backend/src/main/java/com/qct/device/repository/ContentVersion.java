@@ -0,0 +1,30 @@
+package com.qct.device.repository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * How many rows a listing holds and the greatest value of a column that grows with every
+ * change to them, such as {@code updatedAt} or a sequence id. Rows only ever gain a greater
+ * value or go away, so two reads with the same version saw the same rows.
+ */
+public interface ContentVersion {
+
+    long getCount();
+
+    Object getLatest();
+
+    default String toETag() {
+        return eTag(getCount(), getLatest());
+    }
+
+    /**
+     * A weak entity tag for a listing of {@code count} rows whose greatest value is
+     * {@code latest}: weak, because the same content may be sent compressed or not.
+     */
+    static String eTag(long count, Object latest) {
+        // Times held in memory may carry more precision than the database keeps
+        Object value = latest instanceof LocalDateTime time ? time.truncatedTo(ChronoUnit.MILLIS) : latest;
+        return "W/\"" + count + "-" + value + "\"";
+    }
+}
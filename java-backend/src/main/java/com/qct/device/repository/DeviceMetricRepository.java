@@ -1,43 +1,155 @@
 package com.qct.device.repository;
 
 import com.qct.device.model.DeviceMetric;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface DeviceMetricRepository extends JpaRepository<DeviceMetric, Long> {
     
-    List<DeviceMetric> findByDeviceIdOrderByTimestampDesc(String deviceId);
+    // Listings below are bounded below by :since so that only recent partitions are scanned
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId = :deviceId AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findByDeviceIdSince(@Param("deviceId") String deviceId, @Param("since") LocalDateTime since);
+    
+    List<DeviceMetric> findByDeviceIdAndMetricTypeAndTimestampBetween(String deviceId, String metricType,
+                                                                      LocalDateTime from, LocalDateTime to);
+    
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId IN " +
+           "(SELECT d.deviceId FROM Device d WHERE d.oemId = :oemId) AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findByOemIdSince(@Param("oemId") String oemId, @Param("since") LocalDateTime since);
+    
+    // Counted over the window only, from idx_device_metrics_device_ts; the ends are LIMIT 1 reads of the same index
+    @Query(value = "SELECT " +
+           "(SELECT COUNT(*) FROM device_metrics WHERE device_id = :deviceId AND timestamp >= :since) AS count, " +
+           "(SELECT id FROM device_metrics WHERE device_id = :deviceId AND timestamp >= :since " +
+           "ORDER BY timestamp DESC, id DESC LIMIT 1) AS newest, " +
+           "(SELECT id FROM device_metrics WHERE device_id = :deviceId AND timestamp >= :since " +
+           "ORDER BY timestamp, id LIMIT 1) AS oldest",
+           nativeQuery = true)
+    MetricListingVersion findVersionByDeviceId(@Param("deviceId") String deviceId, @Param("since") LocalDateTime since);
+    
+    // Merges the index ranges of every device of the OEM, so it costs more with more devices
+    @Query(value = "SELECT " +
+           "(SELECT COUNT(*) FROM device_metrics WHERE device_id IN (SELECT device_id FROM devices WHERE oem_id = :oemId) " +
+           "AND timestamp >= :since) AS count, " +
+           "(SELECT id FROM device_metrics WHERE device_id IN (SELECT device_id FROM devices WHERE oem_id = :oemId) " +
+           "AND timestamp >= :since ORDER BY timestamp DESC, id DESC LIMIT 1) AS newest, " +
+           "(SELECT id FROM device_metrics WHERE device_id IN (SELECT device_id FROM devices WHERE oem_id = :oemId) " +
+           "AND timestamp >= :since ORDER BY timestamp, id LIMIT 1) AS oldest",
+           nativeQuery = true)
+    MetricListingVersion findVersionByOemId(@Param("oemId") String oemId, @Param("since") LocalDateTime since);
+    
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId = :deviceId AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findPageByDeviceId(@Param("deviceId") String deviceId,
+                                          @Param("since") LocalDateTime since,
+                                          Limit limit);
+    
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId = :deviceId AND dm.timestamp >= :since " +
+           "AND (dm.timestamp < :timestamp OR (dm.timestamp = :timestamp AND dm.id < :id)) " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findPageByDeviceIdBefore(@Param("deviceId") String deviceId,
+                                                @Param("since") LocalDateTime since,
+                                                @Param("timestamp") LocalDateTime timestamp,
+                                                @Param("id") Long id,
+                                                Limit limit);
     
-    List<DeviceMetric> findByDeviceIdAndMetricType(String deviceId, String metricType);
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId IN " +
+           "(SELECT d.deviceId FROM Device d WHERE d.oemId = :oemId) AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findPageByOemId(@Param("oemId") String oemId,
+                                       @Param("since") LocalDateTime since,
+                                       Limit limit);
+    
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId IN " +
+           "(SELECT d.deviceId FROM Device d WHERE d.oemId = :oemId) AND dm.timestamp >= :since " +
+           "AND (dm.timestamp < :timestamp OR (dm.timestamp = :timestamp AND dm.id < :id)) " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DeviceMetric> findPageByOemIdBefore(@Param("oemId") String oemId,
+                                             @Param("since") LocalDateTime since,
+                                             @Param("timestamp") LocalDateTime timestamp,
+                                             @Param("id") Long id,
+                                             Limit limit);
+    
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId = :deviceId AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    Stream<DeviceMetric> streamByDeviceId(@Param("deviceId") String deviceId, @Param("since") LocalDateTime since);
     
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
     @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId IN " +
-           "(SELECT d.deviceId FROM Device d WHERE d.oemId = :oemId) " +
-           "ORDER BY dm.timestamp DESC")
-    List<DeviceMetric> findByOemId(@Param("oemId") String oemId);
+           "(SELECT d.deviceId FROM Device d WHERE d.oemId = :oemId) AND dm.timestamp >= :since " +
+           "ORDER BY dm.timestamp DESC, dm.id DESC")
+    Stream<DeviceMetric> streamByOemId(@Param("oemId") String oemId, @Param("since") LocalDateTime since);
     
     @Query("SELECT dm FROM DeviceMetric dm WHERE dm.deviceId = :deviceId " +
            "AND dm.timestamp >= :startTime ORDER BY dm.timestamp DESC")
     List<DeviceMetric> findRecentMetrics(@Param("deviceId") String deviceId, 
                                        @Param("startTime") LocalDateTime startTime);
     
-    @Query("SELECT AVG(dm.value) FROM DeviceMetric dm WHERE dm.deviceId = :deviceId " +
-           "AND dm.metricType = :metricType")
-    Double getAverageValue(@Param("deviceId") String deviceId, 
-                          @Param("metricType") String metricType);
+    @Query("SELECT COUNT(dm) FROM DeviceMetric dm WHERE dm.deviceId = :deviceId " +
+           "AND dm.timestamp >= :startTime")
+    long countRecentMetrics(@Param("deviceId") String deviceId,
+                            @Param("startTime") LocalDateTime startTime);
+    
+    // Time-bounded so that only the partitions covering the range are scanned
+    @Query("SELECT AVG(dm.value) AS average, MIN(dm.value) AS min, MAX(dm.value) AS max " +
+           "FROM DeviceMetric dm WHERE dm.deviceId = :deviceId AND dm.metricType = :metricType " +
+           "AND dm.timestamp >= :startTime")
+    MetricValueSummary summarizeRecentValues(@Param("deviceId") String deviceId,
+                                             @Param("metricType") String metricType,
+                                             @Param("startTime") LocalDateTime startTime);
+    
+    /**
+     * {@link #countRecentMetrics} and {@link #summarizeRecentValues} for many devices in one
+     * scan; devices without samples since {@code startTime} have no row.
+     */
+    @Query("SELECT dm.deviceId AS deviceId, COUNT(dm) AS count, " +
+           "AVG(CASE WHEN dm.metricType = :metricType THEN dm.value END) AS average, " +
+           "MIN(CASE WHEN dm.metricType = :metricType THEN dm.value END) AS min, " +
+           "MAX(CASE WHEN dm.metricType = :metricType THEN dm.value END) AS max " +
+           "FROM DeviceMetric dm WHERE dm.deviceId IN :deviceIds AND dm.timestamp >= :startTime " +
+           "GROUP BY dm.deviceId")
+    List<DeviceMetricSummary> summarizeRecentMetricsByDevice(@Param("deviceIds") Collection<String> deviceIds,
+                                                             @Param("metricType") String metricType,
+                                                             @Param("startTime") LocalDateTime startTime);
+    
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "SELECT m.device_id AS deviceId, t.value AS metricType, " +
+           "date_trunc('minute', m.timestamp) AS bucketStart, COUNT(*) AS sampleCount, " +
+           "SUM(m.value) AS sum, MIN(m.value) AS min, MAX(m.value) AS max " +
+           "FROM device_metrics m JOIN metric_dictionary t ON t.id = m.metric_type_id " +
+           "WHERE m.timestamp >= :startTime AND m.timestamp < :endTime " +
+           "GROUP BY m.device_id, t.value, date_trunc('minute', m.timestamp)",
+           nativeQuery = true)
+    Stream<MetricBucketAggregate> streamMinuteAggregates(@Param("startTime") LocalDateTime startTime,
+                                                        @Param("endTime") LocalDateTime endTime);
+    
+    @Query("SELECT MIN(dm.timestamp) FROM DeviceMetric dm")
+    LocalDateTime findEarliestTimestamp();
     
-    @Query("SELECT MAX(dm.value) FROM DeviceMetric dm WHERE dm.deviceId = :deviceId " +
-           "AND dm.metricType = :metricType")
-    Double getMaxValue(@Param("deviceId") String deviceId, 
-                      @Param("metricType") String metricType);
+    @Query("SELECT MIN(dm.timestamp) FROM DeviceMetric dm WHERE dm.timestamp >= :since")
+    LocalDateTime findEarliestTimestampSince(@Param("since") LocalDateTime since);
     
-    @Query("SELECT MIN(dm.value) FROM DeviceMetric dm WHERE dm.deviceId = :deviceId " +
-           "AND dm.metricType = :metricType")
-    Double getMinValue(@Param("deviceId") String deviceId, 
-                      @Param("metricType") String metricType);
+    @Modifying
+    @Query(value = "DELETE FROM device_metrics WHERE id IN " +
+           "(SELECT id FROM device_metrics WHERE timestamp < :before LIMIT :limit)",
+           nativeQuery = true)
+    int deleteOlderThan(@Param("before") LocalDateTime before, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.qct.device.repository;
+
+import com.qct.device.model.DeviceMetricRollup;
+import com.qct.device.model.RollupResolution;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+@Repository
+public interface DeviceMetricRollupRepository extends JpaRepository<DeviceMetricRollup, Long> {
+    
+    String UPSERT = "INSERT INTO device_metric_rollups (resolution, device_id, metric_type, bucket_start, " +
+            "sample_count, sum_value, min_value, max_value, last_value, last_timestamp) ";
+    
+    String METRIC_TYPE_ID = "(SELECT id FROM metric_dictionary WHERE kind = 'METRIC_TYPE' AND value = :metricType)";
+    
+    String SHARD = "(hashtext(d.device_id) & 2147483647) % :shards = :shard";
+    
+    String ON_CONFLICT = " ON CONFLICT (resolution, device_id, metric_type, bucket_start) DO UPDATE SET " +
+            "sample_count = EXCLUDED.sample_count, sum_value = EXCLUDED.sum_value, " +
+            "min_value = EXCLUDED.min_value, max_value = EXCLUDED.max_value, " +
+            "last_value = EXCLUDED.last_value, last_timestamp = EXCLUDED.last_timestamp";
+    
+    /**
+     * Recomputes the minute buckets in {@code [from, to)} from raw samples.
+     */
+    @Modifying
+    @Query(value = UPSERT +
+           "SELECT 'MINUTE', m.device_id, t.value, date_trunc('minute', m.timestamp), COUNT(*), SUM(m.value), " +
+           "MIN(m.value), MAX(m.value), (array_agg(m.value ORDER BY m.timestamp DESC))[1], MAX(m.timestamp) " +
+           "FROM device_metrics m JOIN metric_dictionary t ON t.id = m.metric_type_id " +
+           "WHERE m.timestamp >= :from AND m.timestamp < :to " +
+           "GROUP BY m.device_id, t.value, date_trunc('minute', m.timestamp)" + ON_CONFLICT,
+           nativeQuery = true)
+    int compactRawMetrics(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    
+    /**
+     * Recomputes the {@code target} buckets covering {@code [from, to)} from {@code source} buckets.
+     */
+    @Modifying
+    @Query(value = UPSERT +
+           "SELECT :target, device_id, metric_type, date_trunc(:unit, bucket_start), SUM(sample_count), " +
+           "SUM(sum_value), MIN(min_value), MAX(max_value), " +
+           "(array_agg(last_value ORDER BY last_timestamp DESC))[1], MAX(last_timestamp) " +
+           "FROM device_metric_rollups WHERE resolution = :source " +
+           "AND bucket_start >= :from AND bucket_start < :to " +
+           "GROUP BY 2, 3, 4" + ON_CONFLICT,
+           nativeQuery = true)
+    int compactRollups(@Param("source") String source,
+                       @Param("target") String target,
+                       @Param("unit") String unit,
+                       @Param("from") LocalDateTime from,
+                       @Param("to") LocalDateTime to);
+    
+    @Query("SELECT MAX(r.bucketStart) FROM DeviceMetricRollup r WHERE r.resolution = :resolution")
+    LocalDateTime findLatestBucketStart(@Param("resolution") RollupResolution resolution);
+    
+    @Query("SELECT MIN(r.bucketStart) FROM DeviceMetricRollup r WHERE r.resolution = :resolution")
+    LocalDateTime findEarliestBucketStart(@Param("resolution") RollupResolution resolution);
+    
+    @Query("SELECT MIN(r.bucketStart) FROM DeviceMetricRollup r " +
+           "WHERE r.resolution = :resolution AND r.bucketStart >= :since")
+    LocalDateTime findEarliestBucketStartSince(@Param("resolution") RollupResolution resolution,
+                                               @Param("since") LocalDateTime since);
+    
+    @Query(value = "SELECT bucket_start AS bucketStart, sample_count AS sampleCount, sum_value AS sumValue, " +
+           "min_value AS minValue, max_value AS maxValue, last_value AS lastValue " +
+           "FROM device_metric_rollups WHERE resolution = :resolution AND device_id = :deviceId " +
+           "AND metric_type = :metricType AND bucket_start >= :from AND bucket_start < :to " +
+           "ORDER BY bucket_start",
+           nativeQuery = true)
+    List<RollupBucket> findBuckets(@Param("resolution") String resolution,
+                                   @Param("deviceId") String deviceId,
+                                   @Param("metricType") String metricType,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+    
+    /**
+     * Buckets computed on the fly from raw samples, for the part of a range not yet compacted.
+     */
+    @Query(value = "SELECT date_trunc(:unit, timestamp) AS bucketStart, COUNT(*) AS sampleCount, " +
+           "SUM(value) AS sumValue, MIN(value) AS minValue, MAX(value) AS maxValue, " +
+           "(array_agg(value ORDER BY timestamp DESC))[1] AS lastValue " +
+           "FROM device_metrics WHERE device_id = :deviceId AND metric_type_id = " + METRIC_TYPE_ID + " " +
+           "AND timestamp >= :from AND timestamp < :to GROUP BY 1 ORDER BY 1",
+           nativeQuery = true)
+    List<RollupBucket> aggregateRawBuckets(@Param("unit") String unit,
+                                           @Param("deviceId") String deviceId,
+                                           @Param("metricType") String metricType,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to);
+    
+    /**
+     * Per device and metric type totals for the devices of an OEM over {@code [from, to)}, in
+     * one statement: hour buckets cover {@code [hourFrom, hourTo)}, minute buckets the rest of
+     * {@code [minuteFrom, minuteTo)}, and raw samples the edges outside that. The boundaries
+     * must be ordered, and may coincide to leave a part out. Only devices whose id hashes to
+     * {@code shard} modulo {@code shards} are included.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "SELECT device_id AS deviceId, metric_type AS metricType, SUM(sample_count) AS sampleCount, " +
+           "SUM(sum_value) AS sumValue, MIN(min_value) AS minValue, MAX(max_value) AS maxValue, " +
+           "(array_agg(last_value ORDER BY last_timestamp DESC))[1] AS lastValue, MAX(last_timestamp) AS lastTimestamp " +
+           "FROM (SELECT r.device_id, r.metric_type, r.sample_count, r.sum_value, r.min_value, r.max_value, " +
+           "r.last_value, r.last_timestamp " +
+           "FROM device_metric_rollups r JOIN devices d ON d.device_id = r.device_id " +
+           "WHERE d.oem_id = :oemId AND " + SHARD + " " +
+           "AND (CAST(:metricType AS text) IS NULL OR r.metric_type = :metricType) " +
+           "AND ((r.resolution = 'HOUR' AND r.bucket_start >= :hourFrom AND r.bucket_start < :hourTo) " +
+           "OR (r.resolution = 'MINUTE' AND ((r.bucket_start >= :minuteFrom AND r.bucket_start < :hourFrom) " +
+           "OR (r.bucket_start >= :hourTo AND r.bucket_start < :minuteTo)))) " +
+           "UNION ALL " +
+           "SELECT m.device_id, t.value, COUNT(*), SUM(m.value), MIN(m.value), MAX(m.value), " +
+           "(array_agg(m.value ORDER BY m.timestamp DESC))[1], MAX(m.timestamp) " +
+           "FROM device_metrics m JOIN devices d ON d.device_id = m.device_id " +
+           "JOIN metric_dictionary t ON t.id = m.metric_type_id " +
+           "WHERE d.oem_id = :oemId AND " + SHARD + " " +
+           "AND (CAST(:metricType AS text) IS NULL OR t.value = :metricType) " +
+           "AND ((m.timestamp >= :from AND m.timestamp < :minuteFrom) " +
+           "OR (m.timestamp >= :minuteTo AND m.timestamp < :to)) " +
+           "GROUP BY m.device_id, t.value) parts " +
+           "GROUP BY device_id, metric_type ORDER BY device_id, metric_type",
+           nativeQuery = true)
+    List<MetricAggregate> aggregateOem(@Param("oemId") String oemId,
+                                       @Param("metricType") String metricType,
+                                       @Param("from") LocalDateTime from,
+                                       @Param("minuteFrom") LocalDateTime minuteFrom,
+                                       @Param("hourFrom") LocalDateTime hourFrom,
+                                       @Param("hourTo") LocalDateTime hourTo,
+                                       @Param("minuteTo") LocalDateTime minuteTo,
+                                       @Param("to") LocalDateTime to,
+                                       @Param("shard") int shard,
+                                       @Param("shards") int shards);
+    
+    @Modifying
+    @Query(value = "DELETE FROM device_metric_rollups WHERE id IN (SELECT id FROM device_metric_rollups " +
+           "WHERE resolution = :resolution AND bucket_start < :before LIMIT :limit)",
+           nativeQuery = true)
+    int deleteOlderThan(@Param("resolution") String resolution,
+                        @Param("before") LocalDateTime before,
+                        @Param("limit") int limit);
+    
+    /**
+     * Transaction-scoped PostgreSQL advisory lock, so only one replica compacts at a time.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryAdvisoryLock(@Param("key") long key);
+}
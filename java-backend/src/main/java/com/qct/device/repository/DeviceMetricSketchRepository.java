@@ -0,0 +1,27 @@
+package com.qct.device.repository;
+
+import com.qct.device.model.DeviceMetricSketch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface DeviceMetricSketchRepository extends JpaRepository<DeviceMetricSketch, Long> {
+    
+    @Modifying
+    @Query(value = "DELETE FROM device_metric_sketches WHERE id IN (SELECT id FROM device_metric_sketches " +
+           "WHERE bucket_start < :before LIMIT :limit)",
+           nativeQuery = true)
+    int deleteOlderThan(@Param("before") LocalDateTime before, @Param("limit") int limit);
+    
+    /**
+     * Transaction-scoped PostgreSQL advisory lock, waited for, so that merges of the same
+     * sketch rows from several replicas run one after the other.
+     */
+    @Query(value = "SELECT CAST(pg_advisory_xact_lock(:key) AS text)", nativeQuery = true)
+    String advisoryLock(@Param("key") long key);
+}
@@ -0,0 +1,12 @@
+package com.qct.device.repository;
+
+/**
+ * One device's sample count across all metric types, with the average, minimum and maximum of
+ * one of them; the figures are {@code null} when the device has no samples of that type.
+ */
+public interface DeviceMetricSummary extends MetricValueSummary {
+
+    String getDeviceId();
+
+    long getCount();
+}
@@ -0,0 +1,11 @@
+package com.qct.device.repository;
+
+/**
+ * Device to OEM mapping, used to find the OEM-level cache entries a device contributes to.
+ */
+public interface DeviceOem {
+
+    String getDeviceId();
+
+    String getOemId();
+}
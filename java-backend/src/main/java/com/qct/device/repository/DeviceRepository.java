@@ -2,8 +2,11 @@ package com.qct.device.repository;
 
 import com.qct.device.model.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,11 +15,34 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
     
     Optional<Device> findByDeviceId(String deviceId);
     
+    List<Device> findByDeviceIdIn(Collection<String> deviceIds);
+    
     List<Device> findByOemId(String oemId);
     
+    @Query("SELECT COUNT(d) AS count, MAX(d.updatedAt) AS latest FROM Device d WHERE d.oemId = :oemId")
+    ContentVersion findVersionByOemId(@Param("oemId") String oemId);
+    
     List<Device> findByStatus(String status);
     
     List<Device> findByDeviceType(String deviceType);
     
     boolean existsByDeviceId(String deviceId);
+    
+    @Query("SELECT d.deviceId AS deviceId, d.oemId AS oemId FROM Device d WHERE d.deviceId IN :deviceIds")
+    List<DeviceOem> findOemsByDeviceIds(@Param("deviceIds") Collection<String> deviceIds);
+    
+    /**
+     * Points the given devices at a configuration in one statement, returning those it changed.
+     */
+    @Query(value = "UPDATE devices SET configuration_id = :configurationId, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE device_id IN (:deviceIds) AND configuration_id IS DISTINCT FROM :configurationId " +
+            "RETURNING device_id AS \"deviceId\", oem_id AS \"oemId\"", nativeQuery = true)
+    List<DeviceOem> assignConfigurationToDevices(@Param("configurationId") Long configurationId,
+                                                 @Param("deviceIds") Collection<String> deviceIds);
+    
+    @Query(value = "UPDATE devices SET configuration_id = :configurationId, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE oem_id = :oemId AND configuration_id IS DISTINCT FROM :configurationId " +
+            "RETURNING device_id AS \"deviceId\", oem_id AS \"oemId\"", nativeQuery = true)
+    List<DeviceOem> assignConfigurationToOem(@Param("configurationId") Long configurationId,
+                                             @Param("oemId") String oemId);
 }
\ No newline at end of file
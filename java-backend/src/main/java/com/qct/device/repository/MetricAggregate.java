@@ -0,0 +1,26 @@
+package com.qct.device.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Totals of one device/metric pair over a time range.
+ */
+public interface MetricAggregate {
+
+    String getDeviceId();
+
+    String getMetricType();
+
+    Long getSampleCount();
+
+    BigDecimal getSumValue();
+
+    BigDecimal getMinValue();
+
+    BigDecimal getMaxValue();
+
+    BigDecimal getLastValue();
+
+    LocalDateTime getLastTimestamp();
+}
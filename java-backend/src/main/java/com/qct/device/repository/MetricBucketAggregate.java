@@ -0,0 +1,23 @@
+package com.qct.device.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Per-minute aggregate of one device's samples of one metric type.
+ */
+public interface MetricBucketAggregate {
+
+    String getDeviceId();
+
+    String getMetricType();
+
+    LocalDateTime getBucketStart();
+
+    Long getSampleCount();
+
+    Double getSum();
+
+    Double getMin();
+
+    Double getMax();
+}
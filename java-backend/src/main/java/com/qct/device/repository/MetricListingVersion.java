@@ -0,0 +1,31 @@
+package com.qct.device.repository;
+
+/**
+ * How many metrics a listing ordered newest first holds, and the ids at either end of it.
+ * Metrics can join or leave anywhere in the listing, not only at its ends: a queued batch is
+ * flushed after newer metrics recorded directly, and a device moving to another OEM takes its
+ * metrics out of the middle of both OEMs' listings. The count catches those; the ends catch one
+ * metric replacing another, such as a new one arriving as the oldest leaves the window. The
+ * count is bounded by the listing's lower timestamp bound, so it grows with the window and not
+ * with a device's whole history.
+ */
+public interface MetricListingVersion {
+
+    long getCount();
+
+    Long getNewest();
+
+    Long getOldest();
+
+    default String toETag() {
+        return eTag(getCount(), getNewest(), getOldest());
+    }
+
+    /**
+     * A weak entity tag for a listing of {@code count} metrics running from {@code newest} to
+     * {@code oldest}, both {@code null} when it is empty.
+     */
+    static String eTag(long count, Long newest, Long oldest) {
+        return "W/\"" + count + "-" + newest + "-" + oldest + "\"";
+    }
+}
@@ -0,0 +1,14 @@
+package com.qct.device.repository;
+
+/**
+ * Average, minimum and maximum of one device's samples of one metric type; all {@code null}
+ * when there are none.
+ */
+public interface MetricValueSummary {
+
+    Double getAverage();
+
+    Double getMin();
+
+    Double getMax();
+}
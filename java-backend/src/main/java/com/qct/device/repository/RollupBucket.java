@@ -0,0 +1,23 @@
+package com.qct.device.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One time bucket of a device/metric series, read either from {@code device_metric_rollups}
+ * or aggregated on the fly from raw samples.
+ */
+public interface RollupBucket {
+
+    LocalDateTime getBucketStart();
+
+    Long getSampleCount();
+
+    BigDecimal getSumValue();
+
+    BigDecimal getMinValue();
+
+    BigDecimal getMaxValue();
+
+    BigDecimal getLastValue();
+}
@@ -0,0 +1,289 @@
+package com.qct.device.service;
+
+import com.qct.device.cache.CacheWriteMode;
+import com.qct.device.cache.TwoTierCache;
+import com.qct.device.config.MetricListingProperties;
+import com.qct.device.config.TwoTierCacheProperties;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.event.DeviceChangedEvent;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceOem;
+import com.qct.device.repository.DeviceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps the {@code deviceMetrics}, {@code oemAnalytics} and {@code performanceMetrics} caches
+ * in step with writes, so they can run with long TTLs without serving stale data.
+ *
+ * <p>Writes are only recorded when they happen; every {@code qct.cache.write.flush-interval}
+ * the affected keys are resolved to their OEMs and each one is updated once, however many
+ * metrics arrived for it. In {@link CacheWriteMode#APPEND} mode new metrics are merged into
+ * cached lists; anything that cannot be merged exactly (metrics the list already holds,
+ * out-of-order timestamps, summaries) is evicted instead. Merged lists keep the order and the
+ * {@code default-window} of the listings they stand for, so metrics that aged out are dropped.
+ */
+@Service
+@Slf4j
+public class AnalyticsCacheUpdater {
+
+    private static final int LOOKUP_CHUNK_SIZE = 5_000;
+
+    // As the listings are ordered: metrics sharing a timestamp come in descending id order
+    private static final Comparator<DeviceMetric> NEWEST_FIRST =
+            Comparator.comparing(DeviceMetric::getTimestamp)
+                    .thenComparing(DeviceMetric::getId)
+                    .reversed();
+
+    private final CacheManager cacheManager;
+    private final DeviceRepository deviceRepository;
+    private final TwoTierCacheProperties.Write properties;
+    private final MetricListingProperties listingProperties;
+
+    private final Counter appended;
+    private final Counter evicted;
+
+    private Map<String, List<DeviceMetric>> pendingMetrics = new HashMap<>();
+    private Set<String> pendingDevices = new HashSet<>();
+    private Set<String> pendingOems = new HashSet<>();
+    private Set<String> evictOnly = new HashSet<>();
+    private int pendingCount;
+
+    public AnalyticsCacheUpdater(CacheManager cacheManager,
+                                 DeviceRepository deviceRepository,
+                                 TwoTierCacheProperties properties,
+                                 MetricListingProperties listingProperties,
+                                 MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.deviceRepository = deviceRepository;
+        this.properties = properties.getWrite();
+        this.listingProperties = listingProperties;
+        this.appended = Counter.builder("qct.cache.write.updates").tag("action", "append").register(meterRegistry);
+        this.evicted = Counter.builder("qct.cache.write.updates").tag("action", "evict").register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onMetricsRecorded(MetricsRecordedEvent event) {
+        if (properties.getMode() == CacheWriteMode.NONE) {
+            return;
+        }
+        for (DeviceMetric metric : event.getMetrics()) {
+            String deviceId = metric.getDeviceId();
+            pendingDevices.add(deviceId);
+            if (properties.getMode() != CacheWriteMode.APPEND || evictOnly.contains(deviceId)) {
+                continue;
+            }
+            if (pendingCount < properties.getMaxPendingAppends()) {
+                pendingMetrics.computeIfAbsent(deviceId, id -> new ArrayList<>()).add(metric);
+                pendingCount++;
+            } else {
+                // A partial append would be wrong, so the whole device falls back to eviction
+                List<DeviceMetric> dropped = pendingMetrics.remove(deviceId);
+                pendingCount -= dropped != null ? dropped.size() : 0;
+                evictOnly.add(deviceId);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDeviceChanged(DeviceChangedEvent event) {
+        pendingDevices.add(event.getDeviceId());
+        pendingOems.add(event.getOemId());
+        if (event.getPreviousOemId() != null) {
+            pendingOems.add(event.getPreviousOemId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDevicesChanged(DeviceBatchChangedEvent event) {
+        pendingDevices.addAll(event.getDeviceIds());
+        pendingOems.addAll(event.getOemIds());
+    }
+
+    @Scheduled(fixedDelayString = "${qct.cache.write.flush-interval:PT0.5S}")
+    public void flush() {
+        Map<String, List<DeviceMetric>> metrics;
+        Set<String> devices;
+        Set<String> oems;
+        synchronized (this) {
+            if (pendingDevices.isEmpty() && pendingOems.isEmpty()) {
+                return;
+            }
+            metrics = pendingMetrics;
+            devices = pendingDevices;
+            oems = pendingOems;
+            pendingMetrics = new HashMap<>();
+            pendingDevices = new HashSet<>();
+            pendingOems = new HashSet<>();
+            evictOnly = new HashSet<>();
+            pendingCount = 0;
+        }
+
+        try {
+            apply(metrics, devices, oems);
+        } catch (RuntimeException e) {
+            log.error("Failed to update analytics caches for {} devices: {}", devices.size(), e.getMessage(), e);
+        }
+    }
+
+    private void apply(Map<String, List<DeviceMetric>> metrics, Set<String> devices, Set<String> oems) {
+        Cache deviceMetrics = cacheManager.getCache(AnalyticsService.DEVICE_METRICS_CACHE);
+        Cache oemAnalytics = cacheManager.getCache(AnalyticsService.OEM_ANALYTICS_CACHE);
+        Cache performanceMetrics = cacheManager.getCache(AnalyticsService.PERFORMANCE_METRICS_CACHE);
+
+        Map<String, List<DeviceMetric>> metricsByOem = new HashMap<>();
+        Set<String> oemsToEvict = new HashSet<>(oems);
+        for (DeviceOem device : findOems(devices)) {
+            List<DeviceMetric> deviceBatch = metrics.get(device.getDeviceId());
+            if (deviceBatch == null || oems.contains(device.getOemId())) {
+                oemsToEvict.add(device.getOemId());
+            } else {
+                metricsByOem.computeIfAbsent(device.getOemId(), id -> new ArrayList<>()).addAll(deviceBatch);
+            }
+        }
+
+        List<String> devicesToEvict = new ArrayList<>();
+        for (String deviceId : devices) {
+            List<DeviceMetric> deviceBatch = metrics.get(deviceId);
+            if (deviceBatch == null || !append(deviceMetrics, deviceId, deviceBatch)) {
+                devicesToEvict.add(deviceId);
+            }
+        }
+        evictAll(deviceMetrics, devicesToEvict);
+        // Summaries cannot be updated incrementally
+        evictAll(performanceMetrics, devices);
+        metricsByOem.forEach((oemId, oemBatch) -> {
+            if (!oemsToEvict.contains(oemId) && !append(oemAnalytics, oemId, oemBatch)) {
+                oemsToEvict.add(oemId);
+            }
+        });
+        evictAll(oemAnalytics, oemsToEvict);
+    }
+
+    /** In chunks, as a fleet-wide change can touch more devices than a statement takes parameters. */
+    private List<DeviceOem> findOems(Set<String> devices) {
+        List<String> ids = new ArrayList<>(devices);
+        List<DeviceOem> found = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+            found.addAll(deviceRepository.findOemsByDeviceIds(ids.subList(from, Math.min(ids.size(), from + LOOKUP_CHUNK_SIZE))));
+        }
+        return found;
+    }
+
+    /**
+     * Prepends {@code batch} to the cached newest-first list under {@code key}. Absent entries
+     * are left absent; the next read loads them. On a {@link TwoTierCache} only this instance's
+     * copy is merged and the shared one is evicted, as two instances merging into Redis at once
+     * would lose one of the batches.
+     *
+     * @return {@code false} if the merge could not be done exactly and the entry must be evicted
+     */
+    private boolean append(Cache cache, String key, List<DeviceMetric> batch) {
+        if (cache == null) {
+            return true;
+        }
+        for (DeviceMetric metric : batch) {
+            if (metric.getId() == null || metric.getTimestamp() == null) {
+                return false;
+            }
+        }
+        List<DeviceMetric> sorted = new ArrayList<>(batch);
+        sorted.sort(NEWEST_FIRST);
+        LocalDateTime windowStart = LocalDateTime.now().minus(listingProperties.getDefaultWindow());
+
+        if (cache instanceof TwoTierCache twoTier) {
+            if (twoTier.updateLocal(key, cached -> merge(cached, sorted, windowStart))) {
+                appended.increment();
+            } else {
+                evicted.increment();
+            }
+            return true;
+        }
+        Cache.ValueWrapper cached = cache.get(key);
+        if (cached == null) {
+            return true;
+        }
+        List<AnalyticsResponse> merged = merge(cached.get(), sorted, windowStart);
+        if (merged == null) {
+            return false;
+        }
+        cache.put(key, merged);
+        appended.increment();
+        return true;
+    }
+
+    /**
+     * The cached list with {@code sorted} in front, or {@code null} if that would not match the
+     * database: when the list already holds some of the metrics (it was loaded after they were
+     * committed) or a metric belongs further down (a late arrival). Metrics older than
+     * {@code windowStart} are dropped from the end, as a fresh listing would leave them out.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<AnalyticsResponse> merge(Object cached, List<DeviceMetric> sorted, LocalDateTime windowStart) {
+        if (!(cached instanceof List<?> list)) {
+            return null;
+        }
+        List<AnalyticsResponse> current = (List<AnalyticsResponse>) list;
+        LocalDateTime newestCached = current.isEmpty() ? null : current.get(0).getTimestamp();
+        long maxCachedId = current.stream()
+                .map(AnalyticsResponse::getId)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .max()
+                .orElse(Long.MIN_VALUE);
+        for (DeviceMetric metric : sorted) {
+            if (metric.getId() <= maxCachedId
+                    || (newestCached != null && metric.getTimestamp().isBefore(newestCached))) {
+                return null;
+            }
+        }
+
+        List<AnalyticsResponse> merged = new ArrayList<>(sorted.size() + current.size());
+        sorted.forEach(metric -> merged.add(AnalyticsService.mapToResponse(metric)));
+        merged.addAll(current);
+        int end = merged.size();
+        while (end > 0 && merged.get(end - 1).getTimestamp() != null
+                && merged.get(end - 1).getTimestamp().isBefore(windowStart)) {
+            end--;
+        }
+        return end == merged.size() ? merged : new ArrayList<>(merged.subList(0, end));
+    }
+
+    /**
+     * Evicts {@code keys} in chunks, each with one Redis round trip and one invalidation message
+     * on a {@link TwoTierCache}, as a bulk import can change hundreds of thousands of devices.
+     */
+    private void evictAll(Cache cache, Collection<String> keys) {
+        if (cache == null || keys.isEmpty()) {
+            return;
+        }
+        if (cache instanceof TwoTierCache twoTier) {
+            List<String> ordered = new ArrayList<>(keys);
+            for (int from = 0; from < ordered.size(); from += LOOKUP_CHUNK_SIZE) {
+                twoTier.evictAll(ordered.subList(from, Math.min(ordered.size(), from + LOOKUP_CHUNK_SIZE)));
+            }
+        } else {
+            keys.forEach(cache::evict);
+        }
+        evicted.increment(keys.size());
+    }
+}
@@ -1,18 +1,41 @@
 package com.qct.device.service;
 
+import com.qct.device.cache.TwoTierCache;
+import com.qct.device.config.BatchReadProperties;
+import com.qct.device.config.MetricListingProperties;
 import com.qct.device.dto.AnalyticsRequest;
 import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.MetricCursor;
+import com.qct.device.dto.MetricPage;
+import com.qct.device.event.MetricsRecordedEvent;
 import com.qct.device.model.DeviceMetric;
+import com.qct.device.model.DictionaryKind;
 import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.repository.DeviceMetricSummary;
+import com.qct.device.repository.MetricValueSummary;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -20,8 +43,26 @@ import java.util.List;
 @Transactional
 public class AnalyticsService {
     
+    public static final int MAX_PAGE_SIZE = 1000;
+    
+    public static final String DEVICE_METRICS_CACHE = "deviceMetrics";
+    public static final String OEM_ANALYTICS_CACHE = "oemAnalytics";
+    public static final String PERFORMANCE_METRICS_CACHE = "performanceMetrics";
+    
     private final DeviceMetricRepository deviceMetricRepository;
+    private final MetricWindowAggregator metricWindowAggregator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final CacheManager cacheManager;
+    private final BatchReadProperties batchReadProperties;
+    private final MetricListingProperties listingProperties;
+    private final MetricDictionary metricDictionary;
     
+    /**
+     * Runs outside a transaction, so that a new metric type or unit is registered before the
+     * insert holds a connection.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public AnalyticsResponse recordMetric(AnalyticsRequest request) {
         log.info("Recording metric {} for device {}", request.getMetricType(), request.getDeviceId());
         
@@ -32,42 +73,130 @@ public class AnalyticsService {
         metric.setUnit(request.getUnit());
         metric.setDescription(request.getDescription());
         
+        // The entity's converters only look values up
+        metricDictionary.idOf(DictionaryKind.METRIC_TYPE, metric.getMetricType());
+        if (metric.getUnit() != null) {
+            metricDictionary.idOf(DictionaryKind.UNIT, metric.getUnit());
+        }
         metric = deviceMetricRepository.save(metric);
+        eventPublisher.publishEvent(new MetricsRecordedEvent(List.of(metric)));
         
         return mapToResponse(metric);
     }
     
+    /**
+     * The device's metrics since {@code since}, newest first; {@code null} means the default
+     * listing window, and only those listings are cached.
+     */
     @Transactional(readOnly = true)
-    @Cacheable(value = "deviceMetrics", key = "#deviceId")
-    public List<AnalyticsResponse> getDeviceMetrics(String deviceId) {
+    @Cacheable(value = DEVICE_METRICS_CACHE, key = "#deviceId", sync = true, condition = "#since == null")
+    public List<AnalyticsResponse> getDeviceMetrics(String deviceId, LocalDateTime since) {
         log.info("Fetching metrics for device: {}", deviceId);
         
-        return deviceMetricRepository.findByDeviceIdOrderByTimestampDesc(deviceId)
+        return deviceMetricRepository.findByDeviceIdSince(deviceId, listingStart(since))
                 .stream()
-                .map(this::mapToResponse)
+                .map(AnalyticsService::mapToResponse)
                 .toList();
     }
     
     @Transactional(readOnly = true)
-    @Cacheable(value = "oemAnalytics", key = "#oemId")
-    public List<AnalyticsResponse> getOemAnalytics(String oemId) {
+    @Cacheable(value = OEM_ANALYTICS_CACHE, key = "#oemId", sync = true, condition = "#since == null")
+    public List<AnalyticsResponse> getOemAnalytics(String oemId, LocalDateTime since) {
         log.info("Fetching analytics for OEM: {}", oemId);
         
-        return deviceMetricRepository.findByOemId(oemId)
+        return deviceMetricRepository.findByOemIdSince(oemId, listingStart(since))
                 .stream()
-                .map(this::mapToResponse)
+                .map(AnalyticsService::mapToResponse)
                 .toList();
     }
     
+    /**
+     * The entity tag of the device's metrics since {@code since}, from their count and the ids
+     * of the newest and oldest, without loading any: it changes whenever one is recorded or one
+     * leaves the listing.
+     */
+    @Transactional(readOnly = true)
+    public String getDeviceMetricsVersion(String deviceId, LocalDateTime since) {
+        return deviceMetricRepository.findVersionByDeviceId(deviceId, listingStart(since)).toETag();
+    }
+    
+    @Transactional(readOnly = true)
+    public String getOemAnalyticsVersion(String oemId, LocalDateTime since) {
+        return deviceMetricRepository.findVersionByOemId(oemId, listingStart(since)).toETag();
+    }
+    
+    /**
+     * A page of the device's metrics, carrying the version of all of them read first in the
+     * same transaction, so the page is never older than its version.
+     */
+    @Transactional(readOnly = true)
+    public MetricPage getDeviceMetricsPage(String deviceId, LocalDateTime since, String cursor, int limit) {
+        LocalDateTime start = listingStart(since);
+        String version = deviceMetricRepository.findVersionByDeviceId(deviceId, start).toETag();
+        Limit fetch = Limit.of(clampPageSize(limit) + 1);
+        MetricCursor position = cursor != null ? MetricCursor.decode(cursor) : null;
+        List<DeviceMetric> metrics = position == null
+                ? deviceMetricRepository.findPageByDeviceId(deviceId, start, fetch)
+                : deviceMetricRepository.findPageByDeviceIdBefore(deviceId, start, position.getTimestamp(), position.getId(), fetch);
+        return toPage(metrics, clampPageSize(limit), version);
+    }
+    
+    @Transactional(readOnly = true)
+    public MetricPage getOemAnalyticsPage(String oemId, LocalDateTime since, String cursor, int limit) {
+        LocalDateTime start = listingStart(since);
+        String version = deviceMetricRepository.findVersionByOemId(oemId, start).toETag();
+        Limit fetch = Limit.of(clampPageSize(limit) + 1);
+        MetricCursor position = cursor != null ? MetricCursor.decode(cursor) : null;
+        List<DeviceMetric> metrics = position == null
+                ? deviceMetricRepository.findPageByOemId(oemId, start, fetch)
+                : deviceMetricRepository.findPageByOemIdBefore(oemId, start, position.getTimestamp(), position.getId(), fetch);
+        return toPage(metrics, clampPageSize(limit), version);
+    }
+    
+    /**
+     * Feeds every metric of the device since {@code since}, newest first, to {@code sink} from
+     * a database cursor. Entities are detached as they are mapped so memory use does not grow
+     * with history.
+     */
+    @Transactional(readOnly = true)
+    public void streamDeviceMetrics(String deviceId, LocalDateTime since, Consumer<AnalyticsResponse> sink) {
+        try (Stream<DeviceMetric> metrics = deviceMetricRepository.streamByDeviceId(deviceId, listingStart(since))) {
+            metrics.forEach(metric -> emit(metric, sink));
+        }
+    }
+    
+    @Transactional(readOnly = true)
+    public void streamOemAnalytics(String oemId, LocalDateTime since, Consumer<AnalyticsResponse> sink) {
+        try (Stream<DeviceMetric> metrics = deviceMetricRepository.streamByOemId(oemId, listingStart(since))) {
+            metrics.forEach(metric -> emit(metric, sink));
+        }
+    }
+    
     @Transactional(readOnly = true)
-    @Cacheable(value = "performanceMetrics", key = "#deviceId")
+    @Cacheable(value = PERFORMANCE_METRICS_CACHE, key = "#deviceId", sync = true,
+               condition = "!@metricWindowAggregator.ready")
     public AnalyticsResponse getPerformanceMetrics(String deviceId) {
+        if (metricWindowAggregator.isReady()) {
+            return getPerformanceMetricsFromWindows(deviceId);
+        }
         log.info("Calculating performance metrics for device: {}", deviceId);
         
         LocalDateTime oneDayAgo = LocalDateTime.now().minusDays(1);
-        List<DeviceMetric> recentMetrics = deviceMetricRepository.findRecentMetrics(deviceId, oneDayAgo);
+        long recentCount = deviceMetricRepository.countRecentMetrics(deviceId, oneDayAgo);
+        if (recentCount == 0) {
+            return performanceSummary(deviceId, 0, null);
+        }
+        
+        // CPU figures cover the same trailing 24h as the count
+        MetricValueSummary cpu = deviceMetricRepository.summarizeRecentValues(deviceId, "CPU_USAGE", oneDayAgo);
+        return performanceSummary(deviceId, recentCount, cpu);
+    }
+    
+    // Same figures as the database path, from the in-memory windows
+    private AnalyticsResponse getPerformanceMetricsFromWindows(String deviceId) {
+        WindowSummary all = metricWindowAggregator.summarize(deviceId, MetricWindow.ONE_DAY);
         
-        if (recentMetrics.isEmpty()) {
+        if (all.isEmpty()) {
             return AnalyticsResponse.builder()
                     .deviceId(deviceId)
                     .metricType("PERFORMANCE_SUMMARY")
@@ -75,23 +204,126 @@ public class AnalyticsService {
                     .build();
         }
         
-        // Calculate aggregated metrics
-        Double avgCpuUsage = deviceMetricRepository.getAverageValue(deviceId, "CPU_USAGE");
-        Double maxCpuUsage = deviceMetricRepository.getMaxValue(deviceId, "CPU_USAGE");
-        Double minCpuUsage = deviceMetricRepository.getMinValue(deviceId, "CPU_USAGE");
+        WindowSummary cpu = metricWindowAggregator.summarize(deviceId, "CPU_USAGE", MetricWindow.ONE_DAY);
+        
+        return AnalyticsResponse.builder()
+                .deviceId(deviceId)
+                .metricType("PERFORMANCE_SUMMARY")
+                .averageValue(cpu.isEmpty() ? BigDecimal.ZERO : BigDecimal.valueOf(cpu.getAverage()))
+                .maxValue(cpu.isEmpty() ? BigDecimal.ZERO : BigDecimal.valueOf(cpu.getMax()))
+                .minValue(cpu.isEmpty() ? BigDecimal.ZERO : BigDecimal.valueOf(cpu.getMin()))
+                .totalCount(all.getCount())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+    
+    /**
+     * {@link #getPerformanceMetrics} for each of {@code deviceIds}, in request order. Cached
+     * summaries are read in one multi-get and the rest computed in one grouped query, then
+     * cached together.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, AnalyticsResponse> getPerformanceMetrics(Collection<String> deviceIds) {
+        Set<String> ids = new LinkedHashSet<>(deviceIds);
+        if (ids.size() > batchReadProperties.getMaxDeviceIds()) {
+            throw new IllegalArgumentException("At most " + batchReadProperties.getMaxDeviceIds() + " device ids per request");
+        }
+        Map<String, AnalyticsResponse> summaries = new LinkedHashMap<>();
+        if (metricWindowAggregator.isReady()) {
+            ids.forEach(deviceId -> summaries.put(deviceId, getPerformanceMetricsFromWindows(deviceId)));
+            return summaries;
+        }
         
+        Cache cache = cacheManager.getCache(PERFORMANCE_METRICS_CACHE);
+        Map<String, Object> cached = cachedValues(cache, ids);
+        List<String> missing = ids.stream().filter(deviceId -> !(cached.get(deviceId) instanceof AnalyticsResponse)).toList();
+        Map<String, AnalyticsResponse> loaded = new HashMap<>();
+        if (!missing.isEmpty()) {
+            log.info("Calculating performance metrics for {} devices", missing.size());
+            LocalDateTime oneDayAgo = LocalDateTime.now().minusDays(1);
+            for (DeviceMetricSummary summary : deviceMetricRepository.summarizeRecentMetricsByDevice(missing, "CPU_USAGE", oneDayAgo)) {
+                loaded.put(summary.getDeviceId(), performanceSummary(summary.getDeviceId(), summary.getCount(), summary));
+            }
+            missing.forEach(deviceId -> loaded.computeIfAbsent(deviceId, id -> performanceSummary(id, 0, null)));
+            putAll(cache, loaded);
+        }
+        ids.forEach(deviceId -> summaries.put(deviceId, cached.get(deviceId) instanceof AnalyticsResponse hit ? hit : loaded.get(deviceId)));
+        return summaries;
+    }
+    
+    private static Map<String, Object> cachedValues(Cache cache, Collection<String> keys) {
+        if (cache instanceof TwoTierCache twoTier) {
+            return twoTier.getAll(keys);
+        }
+        Map<String, Object> found = new HashMap<>();
+        if (cache != null) {
+            keys.forEach(key -> {
+                Cache.ValueWrapper value = cache.get(key);
+                if (value != null) {
+                    found.put(key, value.get());
+                }
+            });
+        }
+        return found;
+    }
+    
+    private static void putAll(Cache cache, Map<String, ?> values) {
+        if (cache instanceof TwoTierCache twoTier) {
+            twoTier.putAll(values);
+        } else if (cache != null) {
+            values.forEach(cache::put);
+        }
+    }
+    
+    /**
+     * @param cpu CPU usage over the same trailing 24h as {@code count}; ignored when it is zero
+     */
+    private static AnalyticsResponse performanceSummary(String deviceId, long count, MetricValueSummary cpu) {
+        if (count == 0) {
+            return AnalyticsResponse.builder()
+                    .deviceId(deviceId)
+                    .metricType("PERFORMANCE_SUMMARY")
+                    .totalCount(0L)
+                    .build();
+        }
         return AnalyticsResponse.builder()
                 .deviceId(deviceId)
                 .metricType("PERFORMANCE_SUMMARY")
-                .averageValue(avgCpuUsage != null ? BigDecimal.valueOf(avgCpuUsage) : BigDecimal.ZERO)
-                .maxValue(maxCpuUsage != null ? BigDecimal.valueOf(maxCpuUsage) : BigDecimal.ZERO)
-                .minValue(minCpuUsage != null ? BigDecimal.valueOf(minCpuUsage) : BigDecimal.ZERO)
-                .totalCount((long) recentMetrics.size())
+                .averageValue(cpu.getAverage() != null ? BigDecimal.valueOf(cpu.getAverage()) : BigDecimal.ZERO)
+                .maxValue(cpu.getMax() != null ? BigDecimal.valueOf(cpu.getMax()) : BigDecimal.ZERO)
+                .minValue(cpu.getMin() != null ? BigDecimal.valueOf(cpu.getMin()) : BigDecimal.ZERO)
+                .totalCount(count)
                 .timestamp(LocalDateTime.now())
                 .build();
     }
     
-    private AnalyticsResponse mapToResponse(DeviceMetric metric) {
+    private void emit(DeviceMetric metric, Consumer<AnalyticsResponse> sink) {
+        AnalyticsResponse response = mapToResponse(metric);
+        entityManager.detach(metric);
+        sink.accept(response);
+    }
+    
+    private MetricPage toPage(List<DeviceMetric> metrics, int pageSize, String version) {
+        boolean hasMore = metrics.size() > pageSize;
+        List<DeviceMetric> page = hasMore ? metrics.subList(0, pageSize) : metrics;
+        DeviceMetric last = hasMore ? page.get(page.size() - 1) : null;
+        return MetricPage.builder()
+                .items(page.stream().map(AnalyticsService::mapToResponse).toList())
+                .nextCursor(last != null ? new MetricCursor(last.getTimestamp(), last.getId()).encode() : null)
+                .hasMore(hasMore)
+                .version(version)
+                .build();
+    }
+    
+    private LocalDateTime listingStart(LocalDateTime since) {
+        return since != null ? since : LocalDateTime.now().minus(listingProperties.getDefaultWindow());
+    }
+    
+    private static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    static AnalyticsResponse mapToResponse(DeviceMetric metric) {
         return AnalyticsResponse.builder()
                 .id(metric.getId())
                 .deviceId(metric.getDeviceId())
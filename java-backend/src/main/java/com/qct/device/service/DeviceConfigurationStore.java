@@ -0,0 +1,204 @@
+package com.qct.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.qct.device.config.DeviceConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Content-addressed store of device configurations: each distinct configuration is one row
+ * of {@code device_configurations}, identified by the SHA-256 of its text, and devices hold
+ * its id. A lot of devices sharing a configuration therefore stores it once, and assigning it
+ * to many devices rewrites only their ids.
+ *
+ * <p>The text is hashed as given, so configurations differing only in formatting are stored
+ * separately. Rows are never changed, so ids and contents are cached without expiry, the
+ * contents parsed once into a {@link JsonNode} (or not at all, when not JSON). New
+ * configurations are written in a transaction of their own, so an id that has been handed out
+ * always exists even if the write that needed it rolls back. That takes a connection, so
+ * writers resolve ids with {@link #idOf} before opening their own transaction rather than
+ * holding one connection while waiting for another.
+ */
+@Service
+@Slf4j
+public class DeviceConfigurationStore {
+
+    private static final String INSERT_SQL = "INSERT INTO device_configurations (content_hash, content, created_at) " +
+            "VALUES (?, ?, ?) ON CONFLICT (content_hash) DO NOTHING RETURNING id";
+    private static final String SELECT_BY_HASH_SQL = "SELECT id FROM device_configurations WHERE content_hash = ?";
+    private static final String SELECT_BY_IDS_SQL = "SELECT id, content FROM device_configurations WHERE id = ANY(?)";
+
+    /**
+     * A stored configuration. {@code parsed} is {@code null} when the content is not JSON; it
+     * is shared by every reader and must not be modified.
+     */
+    public record StoredConfiguration(long id, String content, JsonNode parsed) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate ownTransaction;
+
+    private final Cache<String, Long> idsByHash;
+    private final Cache<Long, StoredConfiguration> configurations;
+
+    private final Counter registered;
+
+    public DeviceConfigurationStore(JdbcTemplate jdbcTemplate,
+                                    ObjectMapper objectMapper,
+                                    DeviceConfigurationProperties properties,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.idsByHash = Caffeine.newBuilder().maximumSize(properties.getMaxCached()).build();
+        this.configurations = Caffeine.newBuilder().maximumSize(properties.getMaxCached()).build();
+
+        this.registered = Counter.builder("qct.devices.configurations.registered")
+                .description("Distinct device configurations written to the store")
+                .register(meterRegistry);
+        Gauge.builder("qct.devices.configurations.cached", configurations, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The id of {@code content}, storing it if it is new; {@code null} for no configuration.
+     * Call it outside any transaction: new content is stored on a connection of its own.
+     */
+    public Long idOf(String content) {
+        if (content == null) {
+            return null;
+        }
+        byte[] hash = hash(content);
+        String key = HexFormat.of().formatHex(hash);
+        Long id = idsByHash.getIfPresent(key);
+        if (id == null) {
+            // Not under the cache's lock: concurrent first uses both insert, and ON CONFLICT keeps one row
+            id = register(hash, content);
+            idsByHash.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * {@link #idOf} for each distinct content, for a writer to bind from before it opens its
+     * transaction; no content maps to {@code null}.
+     */
+    public Map<String, Long> idsOf(Collection<String> contents) {
+        Map<String, Long> ids = new HashMap<>();
+        for (String content : contents) {
+            if (!ids.containsKey(content)) {
+                ids.put(content, idOf(content));
+            }
+        }
+        return ids;
+    }
+
+    public Optional<StoredConfiguration> find(long id) {
+        return Optional.ofNullable(findAll(Set.of(id)).get(id));
+    }
+
+    /**
+     * The configurations among {@code ids} that exist, loading the uncached ones in one query.
+     */
+    public Map<Long, StoredConfiguration> findAll(Collection<Long> ids) {
+        Set<Long> wanted = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (wanted.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, StoredConfiguration> found = new HashMap<>(configurations.getAllPresent(wanted));
+        if (found.size() < wanted.size()) {
+            List<Long> missing = wanted.stream().filter(id -> !found.containsKey(id)).toList();
+            for (StoredConfiguration loaded : load(missing)) {
+                configurations.put(loaded.id(), loaded);
+                found.put(loaded.id(), loaded);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The content of configuration {@code id}, or {@code null} for no or an unknown id.
+     */
+    public String contentOf(Long id) {
+        return id != null ? find(id).map(StoredConfiguration::content).orElse(null) : null;
+    }
+
+    private Long register(byte[] hash, String content) {
+        Long id = ownTransaction.execute(status -> {
+            List<Long> inserted = jdbcTemplate.queryForList(INSERT_SQL, Long.class,
+                    hash, content, Timestamp.valueOf(LocalDateTime.now()));
+            if (!inserted.isEmpty()) {
+                registered.increment();
+                log.debug("Stored device configuration {} ({} chars)", inserted.get(0), content.length());
+                return inserted.get(0);
+            }
+            // Stored before, or meanwhile by another instance
+            return jdbcTemplate.queryForObject(SELECT_BY_HASH_SQL, Long.class, (Object) hash);
+        });
+        if (id == null) {
+            throw new IllegalStateException("No id for device configuration " + HexFormat.of().formatHex(hash));
+        }
+        configurations.asMap().putIfAbsent(id, new StoredConfiguration(id, content, parse(content)));
+        return id;
+    }
+
+    private List<StoredConfiguration> load(List<Long> ids) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_BY_IDS_SQL);
+            Array array = connection.createArrayOf("bigint", ids.toArray());
+            statement.setArray(1, array);
+            return statement;
+        }, (rs, rowNum) -> {
+            String content = rs.getString(2);
+            return new StoredConfiguration(rs.getLong(1), content, parse(content));
+        });
+    }
+
+    private JsonNode parse(String content) {
+        try {
+            JsonNode parsed = objectMapper.readTree(content);
+            return parsed.isMissingNode() ? null : parsed;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    static byte[] hash(String content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.qct.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.qct.device.config.ProvisioningProperties;
+import com.qct.device.dto.BatchIngestResponse;
+import com.qct.device.dto.BulkProvisionResponse;
+import com.qct.device.dto.DeviceRequest;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.repository.DeviceOem;
+import com.qct.device.repository.DeviceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creates or updates devices from a streamed NDJSON or CSV body, upserting them on
+ * {@code device_id} in JDBC batches. Configurations are stored once each in the
+ * {@link DeviceConfigurationStore} and devices written with their id.
+ *
+ * <p>Records are read one line at a time and at most one batch is held in memory, so input
+ * size is unbounded. Malformed, invalid and database-rejected records are reported by their
+ * zero-based position in the input and never abort the rest of the import.
+ */
+@Service
+@Slf4j
+public class DeviceProvisioningService {
+
+    private static final String UPSERT_SQL = "INSERT INTO devices " +
+            "(device_id, oem_id, device_type, configuration_id, firmware, status, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (device_id) DO UPDATE SET oem_id = EXCLUDED.oem_id, device_type = EXCLUDED.device_type, " +
+            "configuration_id = EXCLUDED.configuration_id, firmware = EXCLUDED.firmware, status = EXCLUDED.status, " +
+            "updated_at = EXCLUDED.updated_at";
+
+    public enum Format { NDJSON, CSV }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DeviceRepository deviceRepository;
+    private final DeviceConfigurationStore configurationStore;
+    private final ObjectReader jsonReader;
+    private final CsvMapper csvMapper;
+    private final Validator validator;
+    private final ProvisioningProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Timer batchLatency;
+    private final Counter inserted;
+    private final Counter updated;
+    private final Counter rejected;
+
+    private record Pending(long index, DeviceRequest request) {
+    }
+
+    /** Running totals for one import. */
+    private final class Report {
+        long received;
+        long inserted;
+        long updated;
+        long invalid;
+        long failed;
+        final List<BatchIngestResponse.RecordError> errors = new ArrayList<>();
+
+        void error(long index, String deviceId, String message) {
+            if (errors.size() < properties.getMaxReportedErrors()) {
+                errors.add(new BatchIngestResponse.RecordError(index, deviceId, message));
+            }
+        }
+    }
+
+    public DeviceProvisioningService(JdbcTemplate jdbcTemplate,
+                                     DeviceRepository deviceRepository,
+                                     DeviceConfigurationStore configurationStore,
+                                     ObjectMapper objectMapper,
+                                     Validator validator,
+                                     ProvisioningProperties properties,
+                                     ApplicationEventPublisher eventPublisher,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deviceRepository = deviceRepository;
+        this.configurationStore = configurationStore;
+        this.jsonReader = objectMapper.readerFor(DeviceRequest.class);
+        this.csvMapper = CsvMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+                .enable(CsvParser.Feature.TRIM_SPACES)
+                .build();
+        this.validator = validator;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.batchLatency = Timer.builder("qct.provisioning.batch.latency")
+                .description("Time taken to upsert one batch of devices")
+                .register(meterRegistry);
+        this.inserted = Counter.builder("qct.provisioning.devices").tag("result", "inserted").register(meterRegistry);
+        this.updated = Counter.builder("qct.provisioning.devices").tag("result", "updated").register(meterRegistry);
+        this.rejected = Counter.builder("qct.provisioning.devices").tag("result", "rejected").register(meterRegistry);
+    }
+
+    /**
+     * Upserts every record in {@code body}. NDJSON holds one {@link DeviceRequest} object per
+     * line; CSV starts with a header row naming the {@link DeviceRequest} fields and, being read
+     * line by line, cannot carry newlines inside quoted values.
+     */
+    public BulkProvisionResponse provision(InputStream body, Format format) throws IOException {
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+        List<Pending> batch = new ArrayList<>(properties.getBatchSize());
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            ObjectReader reader = format == Format.CSV ? csvReader(lines.readLine()) : jsonReader;
+            if (reader == null) {
+                return toResponse(report);
+            }
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long index = report.received++;
+                DeviceRequest request;
+                try {
+                    request = reader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    report.invalid++;
+                    report.error(index, null, "Malformed record: " + e.getOriginalMessage());
+                    continue;
+                }
+                Set<ConstraintViolation<DeviceRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                    report.invalid++;
+                    report.error(index, request.getDeviceId(), violations.stream()
+                            .map(ConstraintViolation::getMessage)
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+                batch.add(new Pending(index, request));
+                if (batch.size() >= properties.getBatchSize()) {
+                    writeBatch(batch, report);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, report);
+        }
+
+        rejected.increment(report.invalid + report.failed);
+        log.debug("Provisioned {} devices ({} new, {} updated, {} invalid, {} failed) in {} ms",
+                report.inserted + report.updated, report.inserted, report.updated, report.invalid, report.failed,
+                System.currentTimeMillis() - start);
+        return toResponse(report);
+    }
+
+    private ObjectReader csvReader(String header) {
+        if (header == null) {
+            return null;
+        }
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String column : header.split(",")) {
+            schema.addColumn(column.trim().replace("\"", ""));
+        }
+        return csvMapper.readerFor(DeviceRequest.class).with(schema.build());
+    }
+
+    private void writeBatch(List<Pending> batch, Report report) {
+        long start = System.nanoTime();
+        // A multi-row upsert may not touch the same row twice; the last record for an id wins
+        Map<String, Pending> latest = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            latest.remove(pending.request().getDeviceId());
+            latest.put(pending.request().getDeviceId(), pending);
+        }
+        Map<String, String> previousOems = deviceRepository.findOemsByDeviceIds(latest.keySet()).stream()
+                .collect(Collectors.toMap(DeviceOem::getDeviceId, DeviceOem::getOemId));
+        List<DeviceRequest> rows = latest.values().stream().map(Pending::request).toList();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        // Stored before the upsert takes its connection; a lot shares a few configurations
+        Map<String, Long> configurationIds = configurationStore.idsOf(
+                rows.stream().map(DeviceRequest::getConfiguration).toList());
+
+        Set<String> written;
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, request) -> bind(ps, request, configurationIds, now)));
+            written = latest.keySet();
+        } catch (DataAccessException e) {
+            // One bad row fails the whole batch; isolate it row by row
+            log.warn("Batch of {} devices failed ({}), retrying individually", rows.size(), e.getMessage());
+            written = writeIndividually(latest.values(), configurationIds, now, report);
+        }
+
+        // Count in input order: the first occurrence of an unknown id is the insert
+        Set<String> seen = new HashSet<>();
+        for (Pending pending : batch) {
+            String deviceId = pending.request().getDeviceId();
+            if (!written.contains(deviceId)) {
+                continue;
+            }
+            if (previousOems.containsKey(deviceId) || !seen.add(deviceId)) {
+                report.updated++;
+                updated.increment();
+            } else {
+                report.inserted++;
+                inserted.increment();
+            }
+        }
+        if (!written.isEmpty()) {
+            // The OEMs devices moved away from lose them, so their entries change too
+            Set<String> oemIds = new HashSet<>();
+            for (String deviceId : written) {
+                oemIds.add(latest.get(deviceId).request().getOemId());
+                String previousOemId = previousOems.get(deviceId);
+                if (previousOemId != null) {
+                    oemIds.add(previousOemId);
+                }
+            }
+            eventPublisher.publishEvent(new DeviceBatchChangedEvent(List.copyOf(written), oemIds));
+        }
+        batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Set<String> writeIndividually(Iterable<Pending> rows, Map<String, Long> configurationIds, Timestamp now,
+                                          Report report) {
+        Set<String> written = new HashSet<>();
+        for (Pending pending : rows) {
+            DeviceRequest request = pending.request();
+            try {
+                jdbcTemplate.update(UPSERT_SQL, ps -> bind(ps, request, configurationIds, now));
+                written.add(request.getDeviceId());
+            } catch (DataAccessException e) {
+                report.failed++;
+                report.error(pending.index(), request.getDeviceId(), "Rejected by database: " + e.getMostSpecificCause().getMessage());
+                log.error("Dropping device {}: {}", request.getDeviceId(), e.getMessage());
+            }
+        }
+        return written;
+    }
+
+    private void bind(PreparedStatement ps, DeviceRequest request, Map<String, Long> configurationIds, Timestamp now)
+            throws SQLException {
+        ps.setString(1, request.getDeviceId());
+        ps.setString(2, request.getOemId());
+        ps.setString(3, request.getDeviceType());
+        ps.setObject(4, configurationIds.get(request.getConfiguration()), Types.BIGINT);
+        ps.setString(5, request.getFirmware());
+        ps.setString(6, request.getStatus() != null ? request.getStatus() : "ACTIVE");
+        ps.setTimestamp(7, now);
+        ps.setTimestamp(8, now);
+    }
+
+    private static BulkProvisionResponse toResponse(Report report) {
+        return BulkProvisionResponse.builder()
+                .received(report.received)
+                .inserted(report.inserted)
+                .updated(report.updated)
+                .invalid(report.invalid)
+                .failed(report.failed)
+                .errors(report.errors)
+                .build();
+    }
+}
@@ -0,0 +1,466 @@
+package com.qct.device.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.qct.device.cache.BloomFilter;
+import com.qct.device.config.DeviceRegistryProperties;
+import com.qct.device.datasource.ReplicaRoutingDataSource;
+import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.event.DeviceChangedEvent;
+import com.qct.device.model.Device;
+import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.DeviceConfigurationStore.StoredConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Answers "does this device exist, and what is it" from memory.
+ *
+ * <p>A {@link BloomFilter} over every {@code device_id} rejects most unknown ids outright.
+ * Ids that pass it are looked up in a local cache holding both found devices and
+ * confirmed-absent ids (the filter's false positives), and only then in the database.
+ *
+ * <p>The filter is built from {@code devices} on startup and on {@code rebuild-cron}, and
+ * rebuilt early once more devices were added than it was sized for. Committed device changes
+ * are added to it and invalidate the cached entry. They are also announced in batches on a
+ * Redis channel, so that the other instances stop rejecting a new device within about
+ * {@code publish-interval}.
+ *
+ * <p>Both the build and a periodic recheck of the devices changed since read the primary, not
+ * a replica that may lag behind. The recheck covers announcements lost on the channel and
+ * devices committed while a build was scanning, which would otherwise stay rejected until the
+ * next rebuild.
+ */
+@Service
+@Slf4j
+public class DeviceRegistry implements MessageListener {
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM devices";
+    private static final String IDS_SQL = "SELECT device_id FROM devices";
+    private static final String CHANGED_IDS_SQL = "SELECT device_id FROM devices WHERE updated_at >= ?";
+    private static final int IDS_PER_MESSAGE = 1_000;
+
+    private final DeviceRepository deviceRepository;
+    private final DeviceConfigurationStore configurationStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final DeviceRegistryProperties properties;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Cache<String, Optional<DeviceResponse>> devices;
+    private final Set<String> pendingAnnouncements = ConcurrentHashMap.newKeySet();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Guards the filter swap against concurrent registrations; lookups read the volatile field
+    private final Object filterLock = new Object();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile BloomFilter filter;
+    private long filterInsertions;
+    private Set<String> rebuildReplay;
+    // When the last build or recheck started; the next recheck reads the devices changed since
+    private volatile LocalDateTime checkedFrom;
+
+    private final Counter filtered;
+    private final Counter hits;
+    private final Counter negativeHits;
+    private final Counter loads;
+    private final Counter recovered;
+
+    public DeviceRegistry(DeviceRepository deviceRepository,
+                          DeviceConfigurationStore configurationStore,
+                          JdbcTemplate jdbcTemplate,
+                          StringRedisTemplate redisTemplate,
+                          RedisMessageListenerContainer listenerContainer,
+                          DeviceRegistryProperties properties,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        this.deviceRepository = deviceRepository;
+        this.configurationStore = configurationStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.properties = properties;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        long knownNanos = properties.getTtl().toNanos();
+        long unknownNanos = properties.getNegativeTtl().toNanos();
+        this.devices = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(new Expiry<String, Optional<DeviceResponse>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<DeviceResponse> value, long currentTime) {
+                        return value.isPresent() ? knownNanos : unknownNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<DeviceResponse> value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<DeviceResponse> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        this.filtered = lookups(meterRegistry, "filtered");
+        this.hits = lookups(meterRegistry, "hit");
+        this.negativeHits = lookups(meterRegistry, "negative_hit");
+        this.loads = lookups(meterRegistry, "loaded");
+        this.recovered = Counter.builder("qct.devices.registry.recovered")
+                .description("Changed devices the recheck found missing from the filter")
+                .register(meterRegistry);
+        Gauge.builder("qct.devices.registry.size", devices, Cache::estimatedSize)
+                .register(meterRegistry);
+        Gauge.builder("qct.devices.registry.filter.bytes", this, registry -> {
+            BloomFilter current = registry.filter;
+            return current != null ? current.sizeInBytes() : 0;
+        }).register(meterRegistry);
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("qct.devices.registry.lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(properties.getChannel()));
+    }
+
+    /**
+     * The OEM of a device this instance holds in memory, without going to the database.
+     */
+    public Optional<String> findCachedOem(String deviceId) {
+        Optional<DeviceResponse> cached = devices.getIfPresent(deviceId);
+        return cached != null ? cached.map(DeviceResponse::getOemId) : Optional.empty();
+    }
+
+    public Optional<DeviceResponse> find(String deviceId) {
+        if (!properties.isEnabled()) {
+            return load(deviceId);
+        }
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(deviceId)) {
+            filtered.increment();
+            return Optional.empty();
+        }
+        Optional<DeviceResponse> cached = devices.getIfPresent(deviceId);
+        if (cached != null) {
+            (cached.isPresent() ? hits : negativeHits).increment();
+            return cached;
+        }
+        loads.increment();
+        // Loading under the cache's lock for the id keeps a concurrent invalidation from being lost
+        return devices.get(deviceId, this::load);
+    }
+
+    /**
+     * {@link #find} for many ids at once: the ones not answered by the filter or the cache are
+     * loaded in one query. Unknown ids are left out of the result.
+     */
+    public Map<String, DeviceResponse> findAll(Collection<String> deviceIds) {
+        Map<String, DeviceResponse> found = new LinkedHashMap<>();
+        if (!properties.isEnabled()) {
+            loadAll(deviceIds).forEach((deviceId, device) -> device.ifPresent(d -> found.put(deviceId, d)));
+            return found;
+        }
+        BloomFilter current = filter;
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String deviceId : deviceIds) {
+            if (current != null && !current.mightContain(deviceId)) {
+                filtered.increment();
+            } else {
+                candidates.add(deviceId);
+            }
+        }
+        Map<String, Optional<DeviceResponse>> cached = devices.getAllPresent(candidates);
+        cached.values().forEach(device -> (device.isPresent() ? hits : negativeHits).increment());
+        List<String> missing = candidates.stream().filter(deviceId -> !cached.containsKey(deviceId)).toList();
+
+        Map<String, Optional<DeviceResponse>> loaded = Map.of();
+        if (!missing.isEmpty()) {
+            loads.increment(missing.size());
+            long before = invalidations.get();
+            loaded = loadAll(missing);
+            // Cached only if nothing changed meanwhile; an entry loaded before an invalidation must not outlive it
+            if (invalidations.get() == before) {
+                loaded.forEach(devices.asMap()::putIfAbsent);
+            }
+        }
+        for (String deviceId : candidates) {
+            Optional<DeviceResponse> device = cached.containsKey(deviceId) ? cached.get(deviceId) : loaded.get(deviceId);
+            device.ifPresent(d -> found.put(deviceId, d));
+        }
+        return found;
+    }
+
+    public boolean exists(String deviceId) {
+        return find(deviceId).isPresent();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeviceChanged(DeviceChangedEvent event) {
+        register(event.getDeviceId());
+        pendingAnnouncements.add(event.getDeviceId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDevicesChanged(DeviceBatchChangedEvent event) {
+        event.getDeviceIds().forEach(this::register);
+        pendingAnnouncements.addAll(event.getDeviceIds());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        for (int i = 1; i < parts.length; i++) {
+            register(parts[i]);
+        }
+    }
+
+    /**
+     * Broadcasts the devices changed since the last call, and rebuilds the filter early if it
+     * has taken more ids than it was sized for.
+     */
+    @Scheduled(fixedDelayString = "${qct.devices.registry.publish-interval:PT0.2S}")
+    public void announceChanges() {
+        List<String> batch = new ArrayList<>(IDS_PER_MESSAGE);
+        Iterator<String> pending = pendingAnnouncements.iterator();
+        while (pending.hasNext()) {
+            batch.add(pending.next());
+            pending.remove();
+            if (batch.size() == IDS_PER_MESSAGE || !pending.hasNext()) {
+                publish(batch);
+                batch.clear();
+            }
+        }
+
+        boolean full;
+        synchronized (filterLock) {
+            full = filter != null && rebuildReplay == null && filterInsertions > filter.getExpectedInsertions();
+        }
+        if (full) {
+            log.info("Device filter exceeded its capacity, rebuilding");
+            rebuild();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${qct.devices.registry.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Adds the devices changed since the previous check to the filter, in case their
+     * announcement never arrived. Reads back one interval further than that, to allow for
+     * commit delays and clock differences between the instances stamping {@code updated_at}.
+     */
+    @Scheduled(fixedDelayString = "${qct.devices.registry.recheck-interval:PT1M}",
+               initialDelayString = "${qct.devices.registry.recheck-interval:PT1M}")
+    public void recheckChanges() {
+        LocalDateTime from = checkedFrom;
+        if (!properties.isEnabled() || from == null) {
+            return;
+        }
+        LocalDateTime start = LocalDateTime.now();
+        try {
+            // Outside a read-only transaction, so on the primary
+            List<String> changed = jdbcTemplate.queryForList(CHANGED_IDS_SQL, String.class,
+                    Timestamp.valueOf(from.minus(properties.getRecheckInterval())));
+            int missing = 0;
+            for (String deviceId : changed) {
+                if (recover(deviceId)) {
+                    missing++;
+                }
+            }
+            if (missing > 0) {
+                recovered.increment(missing);
+                log.warn("Device filter was missing {} of {} recently changed devices", missing, changed.size());
+            }
+            checkedFrom = start;
+        } catch (RuntimeException e) {
+            log.warn("Failed to recheck changed devices: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a fresh filter from {@code devices} and swaps it in; ids registered meanwhile
+     * are replayed into it. Until the first build completes the filter is bypassed.
+     */
+    public void rebuild() {
+        // Not synchronized: a virtual thread would pin its carrier for the whole database scan
+        rebuildLock.lock();
+        try {
+            rebuildLocked();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        long start = System.currentTimeMillis();
+        LocalDateTime started = LocalDateTime.now();
+        Set<String> replay = new HashSet<>();
+        synchronized (filterLock) {
+            rebuildReplay = replay;
+        }
+        // A lagging replica would leave out the devices created in the last seconds
+        boolean primaryForced = ReplicaRoutingDataSource.forcePrimary(true);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+                BloomFilter built = BloomFilter.create(
+                        Math.max(properties.getMinExpectedDevices(), 2 * (count != null ? count : 0)),
+                        properties.getFalsePositiveRate());
+                long[] loaded = new long[1];
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(IDS_SQL);
+                    statement.setFetchSize(10_000);
+                    return statement;
+                }, rs -> {
+                    built.put(rs.getString(1));
+                    loaded[0]++;
+                });
+                synchronized (filterLock) {
+                    replay.forEach(built::put);
+                    filterInsertions = loaded[0] + replay.size();
+                    filter = built;
+                }
+                if (checkedFrom == null || checkedFrom.isAfter(started)) {
+                    checkedFrom = started;
+                }
+                log.info("Built device filter over {} devices ({} KB, {} hashes) in {} ms", loaded[0],
+                        built.sizeInBytes() / 1024, built.getHashFunctions(), System.currentTimeMillis() - start);
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to build the device filter: {}", e.getMessage(), e);
+        } finally {
+            ReplicaRoutingDataSource.forcePrimary(primaryForced);
+            synchronized (filterLock) {
+                rebuildReplay = null;
+            }
+        }
+    }
+
+    private void register(String deviceId) {
+        synchronized (filterLock) {
+            if (filter != null) {
+                filter.put(deviceId);
+                filterInsertions++;
+            }
+            if (rebuildReplay != null) {
+                rebuildReplay.add(deviceId);
+            }
+        }
+        invalidations.incrementAndGet();
+        devices.invalidate(deviceId);
+    }
+
+    /**
+     * Adds a device the filter may have missed, without counting it again if it is already in.
+     *
+     * @return whether the filter did not have it
+     */
+    private boolean recover(String deviceId) {
+        synchronized (filterLock) {
+            if (rebuildReplay != null) {
+                rebuildReplay.add(deviceId);
+            }
+            if (filter == null || filter.mightContain(deviceId)) {
+                return false;
+            }
+            filter.put(deviceId);
+            filterInsertions++;
+        }
+        invalidations.incrementAndGet();
+        devices.invalidate(deviceId);
+        return true;
+    }
+
+    private void publish(List<String> deviceIds) {
+        try {
+            redisTemplate.convertAndSend(properties.getChannel(), nodeId + "\n" + String.join("\n", deviceIds));
+        } catch (RuntimeException e) {
+            // Other instances catch up on their next recheck; until then they may reject these ids
+            log.warn("Failed to announce {} device changes: {}", deviceIds.size(), e.getMessage());
+        }
+    }
+
+    private Optional<DeviceResponse> load(String deviceId) {
+        return deviceRepository.findByDeviceId(deviceId).map(device ->
+                DeviceService.mapToResponse(device, configurationStore.contentOf(device.getConfigurationId())));
+    }
+
+    /** Every one of {@code deviceIds}, empty when unknown, with their configurations also loaded together. */
+    private Map<String, Optional<DeviceResponse>> loadAll(Collection<String> deviceIds) {
+        List<Device> loaded = deviceRepository.findByDeviceIdIn(deviceIds);
+        Map<Long, StoredConfiguration> configurations = configurationStore.findAll(
+                loaded.stream().map(Device::getConfigurationId).toList());
+        Map<String, Optional<DeviceResponse>> result = new HashMap<>();
+        deviceIds.forEach(deviceId -> result.put(deviceId, Optional.empty()));
+        for (Device device : loaded) {
+            StoredConfiguration configuration = configurations.get(device.getConfigurationId());
+            result.put(device.getDeviceId(), Optional.of(DeviceService.mapToResponse(device,
+                    configuration != null ? configuration.content() : null)));
+        }
+        return result;
+    }
+}
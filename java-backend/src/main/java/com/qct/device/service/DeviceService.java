@@ -1,16 +1,34 @@
 package com.qct.device.service;
 
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.qct.device.config.BatchReadProperties;
+import com.qct.device.config.DeviceConfigurationProperties;
+import com.qct.device.dto.ConfigurationAssignmentRequest;
+import com.qct.device.dto.ConfigurationAssignmentResponse;
+import com.qct.device.dto.DeviceConfigurationResponse;
 import com.qct.device.dto.DeviceRequest;
 import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.event.DeviceChangedEvent;
 import com.qct.device.model.Device;
+import com.qct.device.repository.DeviceOem;
 import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.DeviceConfigurationStore.StoredConfiguration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -19,53 +37,165 @@ import java.util.Optional;
 public class DeviceService {
     
     private final DeviceRepository deviceRepository;
+    private final DeviceRegistry deviceRegistry;
+    private final DeviceConfigurationStore configurationStore;
+    private final DeviceConfigurationProperties configurationProperties;
+    private final BatchReadProperties batchReadProperties;
+    private final ApplicationEventPublisher eventPublisher;
     
+    /**
+     * Creates the device or, if {@code deviceId} is already registered, replaces its
+     * configuration. Fleets are provisioned in bulk through {@link DeviceProvisioningService}.
+     * Runs without a transaction of its own: a new configuration is stored on a connection of
+     * its own, before the save takes one.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public DeviceResponse configureDevice(DeviceRequest request) {
         log.info("Configuring device: {}", request.getDeviceId());
         
-        Device device = new Device();
+        Long configurationId = configurationStore.idOf(request.getConfiguration());
+        Device device = deviceRepository.findByDeviceId(request.getDeviceId()).orElseGet(Device::new);
+        String previousOemId = device.getId() != null && !request.getOemId().equals(device.getOemId())
+                ? device.getOemId() : null;
+        
         device.setDeviceId(request.getDeviceId());
         device.setOemId(request.getOemId());
         device.setDeviceType(request.getDeviceType());
-        device.setConfiguration(request.getConfiguration());
+        device.setConfigurationId(configurationId);
         device.setFirmware(request.getFirmware());
         device.setStatus(request.getStatus() != null ? request.getStatus() : "ACTIVE");
         
         device = deviceRepository.save(device);
+        eventPublisher.publishEvent(new DeviceChangedEvent(device.getDeviceId(), device.getOemId(), previousOemId));
         
-        return mapToResponse(device);
+        return mapToResponse(device, configurationStore.contentOf(device.getConfigurationId()));
     }
     
-    @Transactional(readOnly = true)
+    // Served by the registry, which only opens a transaction when it has to load the device
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Optional<DeviceResponse> getDevice(String deviceId) {
-        return deviceRepository.findByDeviceId(deviceId)
-                .map(this::mapToResponse);
+        return deviceRegistry.find(deviceId);
+    }
+    
+    /**
+     * The known devices among {@code deviceIds}, in request order.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Map<String, DeviceResponse> getDevices(Collection<String> deviceIds) {
+        Set<String> ids = new LinkedHashSet<>(deviceIds);
+        if (ids.size() > batchReadProperties.getMaxDeviceIds()) {
+            throw new IllegalArgumentException("At most " + batchReadProperties.getMaxDeviceIds() + " device ids per request");
+        }
+        return deviceRegistry.findAll(ids);
+    }
+    
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public boolean deviceExists(String deviceId) {
+        return deviceRegistry.exists(deviceId);
+    }
+    
+    /**
+     * The entity tag of the OEM's devices, from their count and latest {@code updatedAt},
+     * without loading them.
+     */
+    @Transactional(readOnly = true)
+    public String getDevicesByOemVersion(String oemId) {
+        return deviceRepository.findVersionByOemId(oemId).toETag();
     }
     
     @Transactional(readOnly = true)
     public List<DeviceResponse> getDevicesByOem(String oemId) {
-        return deviceRepository.findByOemId(oemId)
-                .stream()
-                .map(this::mapToResponse)
+        List<Device> devices = deviceRepository.findByOemId(oemId);
+        Map<Long, StoredConfiguration> configurations = configurationStore.findAll(
+                devices.stream().map(Device::getConfigurationId).toList());
+        return devices.stream()
+                .map(device -> {
+                    StoredConfiguration configuration = device.getConfigurationId() != null
+                            ? configurations.get(device.getConfigurationId()) : null;
+                    return mapToResponse(device, configuration != null ? configuration.content() : null);
+                })
                 .toList();
     }
     
+    /**
+     * Stores {@code content} as a shared configuration, or finds it if it is already stored.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public DeviceConfigurationResponse storeConfiguration(String content) {
+        long id = configurationStore.idOf(content);
+        return getConfiguration(id).orElseThrow();
+    }
+    
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<DeviceConfigurationResponse> getConfiguration(long configurationId) {
+        return configurationStore.find(configurationId).map(configuration -> DeviceConfigurationResponse.builder()
+                .configurationId(configuration.id())
+                .configuration(configuration.parsed() != null
+                        ? configuration.parsed() : TextNode.valueOf(configuration.content()))
+                .build());
+    }
+    
+    /**
+     * Points the named devices, and every device of the OEM if one is given, at a stored
+     * configuration: one update statement per selector, whatever the number of devices.
+     *
+     * @return the number of devices changed, or empty if the configuration does not exist
+     */
+    public Optional<ConfigurationAssignmentResponse> assignConfiguration(long configurationId,
+                                                                         ConfigurationAssignmentRequest request) {
+        Set<String> deviceIds = request.getDeviceIds() != null ? new LinkedHashSet<>(request.getDeviceIds()) : Set.of();
+        if (deviceIds.isEmpty() && request.getOemId() == null) {
+            throw new IllegalArgumentException("Either deviceIds or oemId is required");
+        }
+        if (deviceIds.size() > configurationProperties.getMaxAssignedDevices()) {
+            throw new IllegalArgumentException("At most " + configurationProperties.getMaxAssignedDevices()
+                    + " deviceIds per assignment; assign by oemId for more");
+        }
+        if (configurationStore.find(configurationId).isEmpty()) {
+            return Optional.empty();
+        }
+        
+        List<DeviceOem> changed = new ArrayList<>();
+        if (!deviceIds.isEmpty()) {
+            changed.addAll(deviceRepository.assignConfigurationToDevices(configurationId, deviceIds));
+        }
+        if (request.getOemId() != null) {
+            changed.addAll(deviceRepository.assignConfigurationToOem(configurationId, request.getOemId()));
+        }
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new DeviceBatchChangedEvent(
+                    changed.stream().map(DeviceOem::getDeviceId).toList(),
+                    changed.stream().map(DeviceOem::getOemId).collect(Collectors.toSet())));
+        }
+        log.info("Assigned configuration {} to {} devices", configurationId, changed.size());
+        return Optional.of(ConfigurationAssignmentResponse.builder()
+                .configurationId(configurationId)
+                .updated(changed.size())
+                .build());
+    }
+    
     public DeviceResponse updateDeviceStatus(String deviceId, String status) {
         Device device = deviceRepository.findByDeviceId(deviceId)
                 .orElseThrow(() -> new RuntimeException("Device not found: " + deviceId));
         
         device.setStatus(status);
         device = deviceRepository.save(device);
+        eventPublisher.publishEvent(new DeviceChangedEvent(device.getDeviceId(), device.getOemId(), null));
         
-        return mapToResponse(device);
+        return mapToResponse(device, configurationStore.contentOf(device.getConfigurationId()));
     }
     
-    private DeviceResponse mapToResponse(Device device) {
+    /**
+     * @param configuration the content of the device's configuration, from the store so that
+     *                      devices sharing one also share its string
+     */
+    static DeviceResponse mapToResponse(Device device, String configuration) {
         return DeviceResponse.builder()
                 .deviceId(device.getDeviceId())
                 .oemId(device.getOemId())
                 .deviceType(device.getDeviceType())
-                .configuration(device.getConfiguration())
+                .configurationId(device.getConfigurationId())
+                .configuration(configuration)
                 .firmware(device.getFirmware())
                 .status(device.getStatus())
                 .createdAt(device.getCreatedAt())
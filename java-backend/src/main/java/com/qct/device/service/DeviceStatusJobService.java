@@ -0,0 +1,337 @@
+package com.qct.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qct.device.config.StatusJobProperties;
+import com.qct.device.dto.StatusJobResponse;
+import com.qct.device.dto.StatusJobResponse.State;
+import com.qct.device.dto.StatusTransitionRequest;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Moves every device matching a selector to a new status, as a job that runs in the
+ * background and can be polled for progress.
+ *
+ * <p>The devices are walked in {@code id} order, {@code chunk-size} at a time, each chunk selected
+ * and updated in a transaction of its own, so rows are locked only briefly and a job of
+ * any size never holds a long transaction. The selector is checked again on every row being
+ * updated, so devices that stopped matching in the meantime are left alone. Each chunk's
+ * devices are announced in one {@link DeviceBatchChangedEvent}, evicting their cache entries
+ * together. A job that fails keeps the chunks it completed; running it again picks up the rest.
+ *
+ * <p>The instance running a job keeps it in memory and writes its progress to Redis after
+ * every step, so that any instance behind the load balancer can answer a poll. Jobs stay
+ * there for {@code retention} after their last update.
+ */
+@Service
+@Slf4j
+public class DeviceStatusJobService {
+
+    /** Width of {@code devices.status}. */
+    static final int MAX_STATUS_LENGTH = 20;
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM devices WHERE %s";
+    private static final String CHUNK_SQL = "SELECT id FROM devices WHERE id > ? AND %s ORDER BY id LIMIT ?";
+    private static final String UPDATE_SQL = "UPDATE devices SET status = ?, updated_at = ? " +
+            "WHERE id = ANY(?) AND %s RETURNING id, device_id, oem_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StatusJobProperties properties;
+    private final TransactionTemplate chunkTransaction;
+    private final ExecutorService executor;
+
+    private final Map<String, StatusJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Counter transitioned;
+
+    public DeviceStatusJobService(JdbcTemplate jdbcTemplate,
+                                  StringRedisTemplate redisTemplate,
+                                  ObjectMapper objectMapper,
+                                  ApplicationEventPublisher eventPublisher,
+                                  StatusJobProperties properties,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.properties = properties;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("status-jobs-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), threadFactory);
+
+        this.transitioned = Counter.builder("qct.devices.status.transitions")
+                .description("Devices moved to another status by bulk jobs")
+                .register(meterRegistry);
+        Gauge.builder("qct.devices.status.jobs.active", active, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a job moving the devices selected by {@code request} to {@code request.status}.
+     *
+     * @return the queued job, or empty when too many jobs are already queued or running
+     */
+    public Optional<StatusJobResponse> submit(StatusTransitionRequest request) {
+        Selector selector = selector(request);
+        pruneFinished();
+        if (active.incrementAndGet() > properties.getMaxActiveJobs()) {
+            active.decrementAndGet();
+            return Optional.empty();
+        }
+        StatusJob job = new StatusJob(UUID.randomUUID().toString(), request.getStatus(), LocalDateTime.now());
+        jobs.put(job.id, job);
+        save(job);
+        try {
+            executor.execute(() -> run(job, selector));
+        } catch (RuntimeException e) {
+            jobs.remove(job.id);
+            active.decrementAndGet();
+            throw e;
+        }
+        log.info("Queued status job {}: {} -> {}", job.id, selector.description(), job.status);
+        return Optional.of(job.snapshot());
+    }
+
+    /**
+     * The job's progress, from memory on the instance running it and from Redis on the others.
+     */
+    public Optional<StatusJobResponse> find(String jobId) {
+        StatusJob job = jobs.get(jobId);
+        if (job != null) {
+            return Optional.of(job.snapshot());
+        }
+        String json = redisTemplate.opsForValue().get(properties.getKeyPrefix() + jobId);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(json, StatusJobResponse.class));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable status job " + jobId, e);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    void run(StatusJob job, Selector selector) {
+        job.startedAt = LocalDateTime.now();
+        job.state = State.RUNNING;
+        try {
+            job.matched = jdbcTemplate.queryForObject(COUNT_SQL.formatted(selector.filter()), Long.class,
+                    selector.args(job.status));
+            save(job);
+            int chunkSize = Math.max(1, properties.getChunkSize());
+            long after = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long from = after;
+                Chunk chunk = chunkTransaction.execute(status -> updateChunk(selector, job.status, from, chunkSize));
+                if (chunk == null) {
+                    break;
+                }
+                job.updated += chunk.changed().size();
+                job.chunks++;
+                transitioned.increment(chunk.changed().size());
+                // From the ids scanned, not those updated: a chunk whose devices all changed meanwhile is not the end
+                after = chunk.lastId();
+                save(job);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Interrupted by shutdown");
+            }
+            job.state = State.COMPLETED;
+            log.info("Status job {} moved {} of {} devices to {} in {} chunks",
+                    job.id, job.updated, job.matched, job.status, job.chunks);
+        } catch (RuntimeException e) {
+            job.error = e.getMessage();
+            job.state = State.FAILED;
+            log.error("Status job {} failed after {} devices: {}", job.id, job.updated, e.getMessage(), e);
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            save(job);
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the next {@code chunkSize} matching devices after {@code after}.
+     *
+     * @return the chunk, or {@code null} when no devices are left
+     */
+    private Chunk updateChunk(Selector selector, String status, long after, int chunkSize) {
+        List<Object> scanArgs = new ArrayList<>();
+        scanArgs.add(after);
+        scanArgs.addAll(List.of(selector.args(status)));
+        scanArgs.add(chunkSize);
+        List<Long> ids = jdbcTemplate.queryForList(CHUNK_SQL.formatted(selector.filter()), Long.class,
+                scanArgs.toArray());
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        List<Object> args = new ArrayList<>();
+        args.add(status);
+        args.add(Timestamp.valueOf(LocalDateTime.now()));
+        args.add(ids.toArray(Long[]::new));
+        args.addAll(List.of(selector.args(status)));
+        List<ChangedDevice> changed = jdbcTemplate.query(UPDATE_SQL.formatted(selector.filter()),
+                (rs, rowNum) -> new ChangedDevice(rs.getLong(1), rs.getString(2), rs.getString(3)),
+                args.toArray());
+        if (!changed.isEmpty()) {
+            // Delivered after this chunk commits
+            eventPublisher.publishEvent(new DeviceBatchChangedEvent(
+                    changed.stream().map(ChangedDevice::deviceId).toList(),
+                    changed.stream().map(ChangedDevice::oemId).collect(Collectors.toSet())));
+        }
+        return new Chunk(ids.get(ids.size() - 1), changed);
+    }
+
+    private void save(StatusJob job) {
+        try {
+            redisTemplate.opsForValue().set(properties.getKeyPrefix() + job.id,
+                    objectMapper.writeValueAsString(job.snapshot()), properties.getRetention());
+        } catch (JsonProcessingException | RuntimeException e) {
+            // The job carries on; only instances other than this one lose sight of it
+            log.warn("Failed to store progress of status job {}: {}", job.id, e.getMessage());
+        }
+    }
+
+    private void pruneFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.getRetention());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    Selector selector(StatusTransitionRequest request) {
+        String status = request.getStatus();
+        if (status == null || status.isBlank()) {
+            throw new IllegalArgumentException("status is required");
+        }
+        if (status.length() > MAX_STATUS_LENGTH) {
+            throw new IllegalArgumentException("status must be at most " + MAX_STATUS_LENGTH + " characters");
+        }
+        Set<String> deviceIds = request.getDeviceIds() != null ? new LinkedHashSet<>(request.getDeviceIds()) : Set.of();
+        if (deviceIds.size() > properties.getMaxDeviceIds()) {
+            throw new IllegalArgumentException("At most " + properties.getMaxDeviceIds()
+                    + " deviceIds per job; select by oemId, deviceType, firmware or currentStatus for more");
+        }
+
+        // The target status comes first, so that jobs never rewrite devices already in it
+        StringBuilder filter = new StringBuilder("status IS DISTINCT FROM ?");
+        StringBuilder description = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        if (!deviceIds.isEmpty()) {
+            filter.append(" AND device_id = ANY(?)");
+            args.add(deviceIds.toArray(String[]::new));
+            description.append(deviceIds.size()).append(" deviceIds ");
+        }
+        criterion(filter, description, args, "oem_id", "oemId", request.getOemId());
+        criterion(filter, description, args, "device_type", "deviceType", request.getDeviceType());
+        criterion(filter, description, args, "firmware", "firmware", request.getFirmware());
+        criterion(filter, description, args, "status", "currentStatus", request.getCurrentStatus());
+        if (args.isEmpty()) {
+            throw new IllegalArgumentException("At least one of deviceIds, oemId, deviceType, firmware or currentStatus is required");
+        }
+        return new Selector(filter.toString(), List.copyOf(args), description.toString().trim());
+    }
+
+    private static void criterion(StringBuilder filter, StringBuilder description, List<Object> args,
+                                  String column, String name, String value) {
+        if (value != null) {
+            filter.append(" AND ").append(column).append(" = ?");
+            args.add(value);
+            description.append(name).append('=').append(value).append(' ');
+        }
+    }
+
+    /**
+     * A {@code WHERE} condition over {@code devices} whose first parameter is the target status.
+     */
+    record Selector(String filter, List<Object> criteria, String description) {
+
+        Object[] args(String status) {
+            Object[] args = new Object[criteria.size() + 1];
+            args[0] = status;
+            for (int i = 0; i < criteria.size(); i++) {
+                args[i + 1] = criteria.get(i);
+            }
+            return args;
+        }
+    }
+
+    private record ChangedDevice(long id, String deviceId, String oemId) {
+    }
+
+    private record Chunk(long lastId, List<ChangedDevice> changed) {
+    }
+
+    /** Written only by the thread running the job; read by anyone polling it. */
+    static final class StatusJob {
+
+        final String id;
+        final String status;
+        final LocalDateTime submittedAt;
+        volatile State state = State.QUEUED;
+        volatile Long matched;
+        volatile long updated;
+        volatile int chunks;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        StatusJob(String id, String status, LocalDateTime submittedAt) {
+            this.id = id;
+            this.status = status;
+            this.submittedAt = submittedAt;
+        }
+
+        StatusJobResponse snapshot() {
+            return StatusJobResponse.builder()
+                    .jobId(id)
+                    .state(state)
+                    .status(status)
+                    .matched(matched)
+                    .updated(updated)
+                    .chunks(chunks)
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+}
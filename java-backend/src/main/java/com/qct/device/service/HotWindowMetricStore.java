@@ -0,0 +1,272 @@
+package com.qct.device.service;
+
+import com.qct.device.config.HotWindowProperties;
+import com.qct.device.dto.RecentMetricsResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recent raw samples per (deviceId, metricType), kept in primitive {@link SampleRing}s so
+ * that recent-window queries and summaries need neither the database nor per-sample objects.
+ *
+ * <p>Buffer memory is tracked against {@code qct.analytics.hot-window.memory-budget}; when a
+ * write pushes it over, the least recently read or written devices are evicted until usage
+ * is back under 90% of the budget. Like {@link MetricWindowAggregator}, each instance only
+ * sees the metrics written through it after the startup warm-up.
+ */
+@Service
+@Slf4j
+public class HotWindowMetricStore {
+
+    private static final String WARM_SQL = "SELECT m.device_id, t.value, m.timestamp, m.value FROM device_metrics m " +
+            "JOIN metric_dictionary t ON t.id = m.metric_type_id " +
+            "WHERE m.timestamp >= ? AND m.timestamp < ? AND m.value IS NOT NULL ORDER BY m.timestamp";
+
+    private final HotWindowProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<String, DeviceSeries> devices = new ConcurrentHashMap<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final Counter evictions;
+
+    /** Events for samples before this instant are skipped because the warm-up loads them. */
+    private volatile long warmCutoff;
+
+    private static final class DeviceSeries {
+        final Map<String, SampleRing> byType = new ConcurrentHashMap<>();
+        volatile long lastAccess;
+    }
+
+    public HotWindowMetricStore(HotWindowProperties properties,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.warmCutoff = properties.isWarmOnStartup() ? Long.MAX_VALUE : Long.MIN_VALUE;
+        this.evictions = Counter.builder("qct.hotwindow.evictions")
+                .description("Devices evicted to stay within the memory budget")
+                .register(meterRegistry);
+        Gauge.builder("qct.hotwindow.bytes", allocatedBytes, AtomicLong::get)
+                .description("Sample buffer memory in use")
+                .register(meterRegistry);
+        Gauge.builder("qct.hotwindow.devices", devices, Map::size)
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMetricsRecorded(MetricsRecordedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long cutoff = warmCutoff;
+        for (DeviceMetric metric : event.getMetrics()) {
+            if (metric.getValue() == null) {
+                continue;
+            }
+            long timestamp = metric.getTimestamp() != null ? toEpochMillis(metric.getTimestamp()) : System.currentTimeMillis();
+            if (timestamp >= cutoff) {
+                record(metric.getDeviceId(), metric.getMetricType(), timestamp, metric.getValue().doubleValue());
+            }
+        }
+        if (allocatedBytes.get() > properties.getMemoryBudget().toBytes()) {
+            evictColdDevices();
+        }
+    }
+
+    public void record(String deviceId, String metricType, long epochMillis, double value) {
+        long horizon = System.currentTimeMillis() - properties.getWindow().toMillis();
+        long access = accessClock.incrementAndGet();
+        // A concurrent expiry or eviction may release the ring under us; the retry lands in a fresh one
+        for (int attempt = 0; attempt < 2; attempt++) {
+            DeviceSeries device = devices.get(deviceId);
+            SampleRing ring = device != null ? device.byType.get(metricType) : null;
+            if (ring == null) {
+                ring = addRing(deviceId, metricType, access);
+            } else {
+                device.lastAccess = access;
+            }
+            long grown = ring.add(epochMillis, value, horizon, properties.getMaxSamplesPerSeries());
+            if (grown >= 0) {
+                allocatedBytes.addAndGet(grown);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds a ring under the device's map entry, so that it cannot land in a device that
+     * {@link #expire} or {@link #evictColdDevices} is removing, where its bytes would never be
+     * released.
+     */
+    private SampleRing addRing(String deviceId, String metricType, long access) {
+        SampleRing[] ring = new SampleRing[1];
+        devices.compute(deviceId, (id, device) -> {
+            DeviceSeries series = device != null ? device : new DeviceSeries();
+            series.lastAccess = access;
+            ring[0] = series.byType.computeIfAbsent(metricType, type -> newRing());
+            return series;
+        });
+        return ring[0];
+    }
+
+    public WindowSummary summarize(String deviceId, String metricType, Duration window) {
+        SampleRing ring = ring(deviceId, metricType);
+        return ring != null ? ring.summarize(since(window)) : WindowSummary.EMPTY;
+    }
+
+    /**
+     * Summary over {@code window} (capped at the configured window) plus the newest
+     * {@code limit} raw samples in it.
+     */
+    public RecentMetricsResponse getRecent(String deviceId, String metricType, Duration window, int limit) {
+        long since = since(window);
+        SampleRing.Samples samples = new SampleRing.Samples();
+        WindowSummary summary = WindowSummary.EMPTY;
+        SampleRing ring = ring(deviceId, metricType);
+        if (ring != null) {
+            summary = ring.summarize(since);
+            ring.copyRecent(since, Math.max(0, limit), samples);
+        } else {
+            samples.timestamps = new long[0];
+            samples.values = new double[0];
+        }
+        return RecentMetricsResponse.builder()
+                .deviceId(deviceId)
+                .metricType(metricType)
+                .since(since)
+                .count(summary.getCount())
+                .averageValue(summary.isEmpty() ? null : summary.getAverage())
+                .minValue(summary.isEmpty() ? null : summary.getMin())
+                .maxValue(summary.isEmpty() ? null : summary.getMax())
+                .timestamps(samples.timestamps)
+                .values(samples.values)
+                .build();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!properties.isEnabled() || !properties.isWarmOnStartup()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now();
+        warmCutoff = toEpochMillis(cutoff);
+        try {
+            long[] loaded = new long[1];
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(WARM_SQL);
+                statement.setFetchSize(5_000);
+                statement.setTimestamp(1, Timestamp.valueOf(cutoff.minus(properties.getWindow())));
+                statement.setTimestamp(2, Timestamp.valueOf(cutoff));
+                return statement;
+            }, rs -> {
+                record(MetricDictionary.intern(rs.getString(1)), MetricDictionary.intern(rs.getString(2)),
+                        rs.getTimestamp(3).getTime(), rs.getDouble(4));
+                loaded[0]++;
+            }));
+            log.info("Loaded {} recent samples for {} devices ({} KB) in {} ms", loaded[0], devices.size(),
+                    allocatedBytes.get() / 1024, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Failed to warm the hot window store: {}", e.getMessage(), e);
+        } finally {
+            warmCutoff = Long.MIN_VALUE;
+        }
+        if (allocatedBytes.get() > properties.getMemoryBudget().toBytes()) {
+            evictColdDevices();
+        }
+    }
+
+    /**
+     * Drops samples that have left the window and releases series and devices left empty.
+     */
+    @Scheduled(fixedDelayString = "PT1M", initialDelayString = "PT1M")
+    public void expire() {
+        long horizon = System.currentTimeMillis() - properties.getWindow().toMillis();
+        devices.forEach((deviceId, device) -> {
+            device.byType.forEach((metricType, ring) -> {
+                if (ring.expire(horizon) && device.byType.remove(metricType, ring)) {
+                    allocatedBytes.addAndGet(-ring.release());
+                }
+            });
+            // Checked under the entry, so a ring being added by record keeps the device
+            devices.computeIfPresent(deviceId, (id, current) -> current == device && current.byType.isEmpty() ? null : current);
+        });
+    }
+
+    synchronized void evictColdDevices() {
+        long target = properties.getMemoryBudget().toBytes() * 9 / 10;
+        if (allocatedBytes.get() <= target) {
+            return;
+        }
+        List<Map.Entry<String, DeviceSeries>> coldestFirst = new ArrayList<>(devices.entrySet());
+        coldestFirst.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        int evicted = 0;
+        for (Map.Entry<String, DeviceSeries> entry : coldestFirst) {
+            if (allocatedBytes.get() <= target) {
+                break;
+            }
+            if (devices.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().byType.values().forEach(ring -> allocatedBytes.addAndGet(-ring.release()));
+                evicted++;
+            }
+        }
+        evictions.increment(evicted);
+        log.debug("Evicted {} cold devices from the hot window store, {} KB in use", evicted, allocatedBytes.get() / 1024);
+    }
+
+    private SampleRing newRing() {
+        int capacity = Math.max(1, Math.min(properties.getInitialCapacity(), properties.getMaxSamplesPerSeries()));
+        allocatedBytes.addAndGet((long) capacity * SampleRing.BYTES_PER_SAMPLE);
+        return new SampleRing(capacity);
+    }
+
+    private SampleRing ring(String deviceId, String metricType) {
+        DeviceSeries device = devices.get(deviceId);
+        if (device == null) {
+            return null;
+        }
+        device.lastAccess = accessClock.incrementAndGet();
+        return device.byType.get(metricType);
+    }
+
+    private long since(Duration window) {
+        Duration capped = window == null || window.compareTo(properties.getWindow()) > 0 ? properties.getWindow() : window;
+        return System.currentTimeMillis() - capped.toMillis();
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
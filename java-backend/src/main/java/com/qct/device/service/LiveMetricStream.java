@@ -0,0 +1,268 @@
+package com.qct.device.service;
+
+import com.qct.device.config.LiveStreamProperties;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pushes newly recorded metrics to live subscribers over server-sent events, straight from
+ * {@link MetricsRecordedEvent}s, so dashboards need not poll the database or the caches.
+ *
+ * <p>Subscriptions are indexed by device and OEM; each has its own bounded buffer, filled
+ * without blocking on the recording thread and drained by a small delivery pool. A subscriber
+ * that cannot keep up loses samples according to its {@link OverflowPolicy} and is told how
+ * many in a {@code dropped} event. Only metrics recorded through this instance are seen.
+ */
+@Service
+@Slf4j
+public class LiveMetricStream {
+
+    /** Samples per {@code metrics} event; larger backlogs go out as several events. */
+    static final int MAX_EVENT_SAMPLES = 500;
+
+    private final LiveStreamProperties properties;
+    private final DeviceRegistry deviceRegistry;
+    private final ExecutorService delivery;
+    private final Map<LiveSubscription, SseEmitter> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Set<LiveSubscription>> byDevice = new ConcurrentHashMap<>();
+    private final Map<String, Set<LiveSubscription>> byOem = new ConcurrentHashMap<>();
+    private final Set<LiveSubscription> wildcard = ConcurrentHashMap.newKeySet();
+
+    private final Counter delivered;
+    private final Map<OverflowPolicy, Counter> dropped = new EnumMap<>(OverflowPolicy.class);
+
+    public LiveMetricStream(LiveStreamProperties properties,
+                            DeviceRegistry deviceRegistry,
+                            MeterRegistry meterRegistry,
+                            Environment environment) {
+        this.properties = properties;
+        this.deviceRegistry = deviceRegistry;
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // A subscriber stuck on a slow socket then holds only its own thread
+            this.delivery = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("live-metrics-", 0).factory());
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("live-metrics-");
+            threadFactory.setDaemon(true);
+            this.delivery = Executors.newFixedThreadPool(Math.max(1, properties.getDeliveryThreads()), threadFactory);
+        }
+
+        this.delivered = Counter.builder("qct.live.samples.delivered")
+                .description("Samples written to live subscribers")
+                .register(meterRegistry);
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            dropped.put(policy, Counter.builder("qct.live.samples.dropped")
+                    .description("Samples shed because a live subscriber fell behind")
+                    .tag("policy", policy.name())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("qct.live.subscribers", subscriptions, Map::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a subscription to the metrics of {@code deviceIds} and of the devices of
+     * {@code oemIds} (every device when both are empty), narrowed to {@code metricTypes} when
+     * that is not empty.
+     *
+     * @param policy     overflow policy, or {@code null} for the configured default
+     * @param bufferSize buffer capacity, or {@code null} for the configured default
+     * @return the event stream, or empty when live streaming is disabled or at capacity
+     */
+    public Optional<SseEmitter> subscribe(Set<String> deviceIds, Set<String> oemIds, Set<String> metricTypes,
+                                          OverflowPolicy policy, Integer bufferSize) {
+        if (!properties.isEnabled() || subscriptions.size() >= properties.getMaxSubscribers()) {
+            return Optional.empty();
+        }
+        int capacity = bufferSize != null ? bufferSize : properties.getBufferSize();
+        LiveSubscription subscription = new LiveSubscription(deviceIds, oemIds, metricTypes,
+                policy != null ? policy : properties.getOverflowPolicy(),
+                Math.max(1, Math.min(capacity, properties.getMaxBufferSize())));
+
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+
+        subscriptions.put(subscription, emitter);
+        if (subscription.isWildcard()) {
+            wildcard.add(subscription);
+        }
+        subscription.deviceIds.forEach(id -> addToIndex(byDevice, id, subscription));
+        subscription.oemIds.forEach(id -> addToIndex(byOem, id, subscription));
+        log.debug("Live subscription opened: devices={}, oems={}, types={}, policy={}, buffer={}",
+                subscription.deviceIds, subscription.oemIds, subscription.metricTypes,
+                subscription.policy, subscription.capacity);
+        return Optional.of(emitter);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMetricsRecorded(MetricsRecordedEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        Map<String, String> oemByDevice = byOem.isEmpty() ? null : new HashMap<>();
+        Set<LiveSubscription> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DeviceMetric metric : event.getMetrics()) {
+            String deviceId = metric.getDeviceId();
+            AnalyticsResponse[] sample = new AnalyticsResponse[1];
+            for (LiveSubscription subscription : byDevice.getOrDefault(deviceId, Set.of())) {
+                offer(subscription, metric, sample, touched);
+            }
+            if (oemByDevice != null) {
+                String oemId = oemByDevice.computeIfAbsent(deviceId, this::oemOf);
+                Set<LiveSubscription> oemSubscriptions = oemId != null ? byOem.get(oemId) : null;
+                if (oemSubscriptions != null) {
+                    for (LiveSubscription subscription : oemSubscriptions) {
+                        // Already offered through the device index
+                        if (!subscription.deviceIds.contains(deviceId)) {
+                            offer(subscription, metric, sample, touched);
+                        }
+                    }
+                }
+            }
+            for (LiveSubscription subscription : wildcard) {
+                offer(subscription, metric, sample, touched);
+            }
+        }
+        touched.forEach(this::schedule);
+    }
+
+    @Scheduled(fixedDelayString = "${qct.analytics.live.heartbeat-interval:PT15S}",
+               initialDelayString = "${qct.analytics.live.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        for (LiveSubscription subscription : subscriptions.keySet()) {
+            subscription.requestHeartbeat();
+            schedule(subscription);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    void close() {
+        subscriptions.values().forEach(SseEmitter::complete);
+        delivery.shutdownNow();
+    }
+
+    private void offer(LiveSubscription subscription, DeviceMetric metric,
+                       AnalyticsResponse[] sample, Set<LiveSubscription> touched) {
+        if (!subscription.acceptsType(metric.getMetricType())) {
+            return;
+        }
+        // Mapped once per metric, and only when someone wants it
+        if (sample[0] == null) {
+            sample[0] = AnalyticsService.mapToResponse(metric);
+        }
+        int shed = subscription.offer(sample[0]);
+        if (shed > 0) {
+            dropped.get(subscription.policy).increment(shed);
+        }
+        touched.add(subscription);
+    }
+
+    private void schedule(LiveSubscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true)) {
+            try {
+                delivery.execute(() -> deliver(subscription));
+            } catch (RejectedExecutionException e) {
+                subscription.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the subscriber's backlog as {@code metrics} events until the buffer is empty. Runs
+     * for one subscription at a time, so writes to an emitter never interleave.
+     */
+    private void deliver(LiveSubscription subscription) {
+        SseEmitter emitter = subscriptions.get(subscription);
+        try {
+            while (emitter != null) {
+                long shed = subscription.takeDropped();
+                if (shed > 0) {
+                    emitter.send(SseEmitter.event().name("dropped").data(Map.of("dropped", shed), MediaType.APPLICATION_JSON));
+                }
+                List<AnalyticsResponse> batch = subscription.drain(MAX_EVENT_SAMPLES);
+                if (!batch.isEmpty()) {
+                    emitter.send(SseEmitter.event().name("metrics").data(batch, MediaType.APPLICATION_JSON));
+                    delivered.increment(batch.size());
+                    continue;
+                }
+                if (subscription.takeHeartbeat()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+                subscription.scheduled.set(false);
+                // A sample offered after the drain but before the flag was cleared found it still set
+                if (subscription.isEmpty() || !subscription.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Live subscriber went away: {}", e.getMessage());
+            unsubscribe(subscription);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void unsubscribe(LiveSubscription subscription) {
+        if (subscriptions.remove(subscription) == null) {
+            return;
+        }
+        wildcard.remove(subscription);
+        subscription.deviceIds.forEach(id -> removeFromIndex(byDevice, id, subscription));
+        subscription.oemIds.forEach(id -> removeFromIndex(byOem, id, subscription));
+    }
+
+    // Inside compute, so that a concurrent removal cannot discard the set being added to
+    private static void addToIndex(Map<String, Set<LiveSubscription>> index, String key,
+                                   LiveSubscription subscription) {
+        index.compute(key, (id, members) -> {
+            Set<LiveSubscription> result = members != null ? members : ConcurrentHashMap.newKeySet();
+            result.add(subscription);
+            return result;
+        });
+    }
+
+    private static void removeFromIndex(Map<String, Set<LiveSubscription>> index, String key,
+                                        LiveSubscription subscription) {
+        index.computeIfPresent(key, (id, members) -> {
+            members.remove(subscription);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private String oemOf(String deviceId) {
+        return deviceRegistry.find(deviceId).map(DeviceResponse::getOemId).orElse(null);
+    }
+}
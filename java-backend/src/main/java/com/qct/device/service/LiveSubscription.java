@@ -0,0 +1,125 @@
+package com.qct.device.service;
+
+import com.qct.device.dto.AnalyticsResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Filter and bounded buffer of one live subscriber. Producers {@link #offer} samples without
+ * blocking; a single delivery task at a time drains the buffer, guarded by {@link #scheduled}.
+ */
+class LiveSubscription {
+
+    final Set<String> deviceIds;
+    final Set<String> oemIds;
+    final Set<String> metricTypes;
+    final OverflowPolicy policy;
+    final int capacity;
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final ArrayDeque<AnalyticsResponse> queue;
+    private final LinkedHashMap<String, AnalyticsResponse> latest;
+    private long dropped;
+    private volatile boolean heartbeatDue;
+
+    LiveSubscription(Set<String> deviceIds, Set<String> oemIds, Set<String> metricTypes,
+                     OverflowPolicy policy, int capacity) {
+        this.deviceIds = Set.copyOf(deviceIds);
+        this.oemIds = Set.copyOf(oemIds);
+        this.metricTypes = Set.copyOf(metricTypes);
+        this.policy = policy;
+        this.capacity = capacity;
+        this.queue = policy == OverflowPolicy.CONFLATE ? null : new ArrayDeque<>(Math.min(capacity, 256));
+        this.latest = policy == OverflowPolicy.CONFLATE ? new LinkedHashMap<>() : null;
+    }
+
+    /** Subscribed to every device, optionally narrowed by metric type. */
+    boolean isWildcard() {
+        return deviceIds.isEmpty() && oemIds.isEmpty();
+    }
+
+    boolean acceptsType(String metricType) {
+        return metricTypes.isEmpty() || metricTypes.contains(metricType);
+    }
+
+    /**
+     * Buffers {@code sample}, shedding according to the policy when full.
+     *
+     * @return the number of samples dropped by this call, 0 or 1
+     */
+    synchronized int offer(AnalyticsResponse sample) {
+        if (latest != null) {
+            String key = sample.getDeviceId() + '\u0000' + sample.getMetricType();
+            // Re-insert so that iteration order follows the latest update
+            boolean replaced = latest.remove(key) != null;
+            latest.put(key, sample);
+            if (replaced) {
+                return 0;
+            }
+            if (latest.size() > capacity) {
+                Iterator<AnalyticsResponse> eldest = latest.values().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped++;
+                return 1;
+            }
+            return 0;
+        }
+        if (queue.size() < capacity) {
+            queue.addLast(sample);
+            return 0;
+        }
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            queue.pollFirst();
+            queue.addLast(sample);
+        }
+        dropped++;
+        return 1;
+    }
+
+    /** Removes up to {@code max} buffered samples, oldest first. */
+    synchronized List<AnalyticsResponse> drain(int max) {
+        int count = Math.min(max, latest != null ? latest.size() : queue.size());
+        List<AnalyticsResponse> batch = new ArrayList<>(count);
+        if (latest != null) {
+            Iterator<Map.Entry<String, AnalyticsResponse>> entries = latest.entrySet().iterator();
+            while (batch.size() < count) {
+                batch.add(entries.next().getValue());
+                entries.remove();
+            }
+        } else {
+            while (batch.size() < count) {
+                batch.add(queue.pollFirst());
+            }
+        }
+        return batch;
+    }
+
+    /** Samples dropped since the last call. */
+    synchronized long takeDropped() {
+        long result = dropped;
+        dropped = 0;
+        return result;
+    }
+
+    synchronized boolean isEmpty() {
+        return latest != null ? latest.isEmpty() : queue.isEmpty();
+    }
+
+    void requestHeartbeat() {
+        heartbeatDue = true;
+    }
+
+    boolean takeHeartbeat() {
+        boolean due = heartbeatDue;
+        heartbeatDue = false;
+        return due;
+    }
+}
@@ -0,0 +1,192 @@
+package com.qct.device.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Interner;
+import com.qct.device.model.DictionaryKind;
+import lombok.extern.slf4j.Slf4j;
+import com.qct.device.datasource.ReplicaRoutingDataSource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Integer ids for the metric types and units stored in {@code device_metrics}, backed by the
+ * {@code metric_dictionary} table and cached for the life of the instance: entries are never
+ * changed or removed, so the cache cannot go stale, and there are few of them.
+ *
+ * <p>Only writers register new values, through {@link #idOf}; queries use {@link #findId},
+ * so a filter on a value nobody has written matches nothing instead of adding a row. New
+ * values are registered on the primary, on a connection of their own outside any surrounding
+ * transaction, so an id that has been handed out always exists even if the write that needed
+ * it rolls back. Instances register concurrently through {@code ON CONFLICT}. Lookups run on
+ * the caller's transactional connection when there is one. Values found missing are remembered
+ * for {@link #MISS_TTL}, so repeated queries on an unknown value do not each go to the database;
+ * a value registered meanwhile by another instance becomes visible once that expires.
+ *
+ * <p>{@link #intern} gives a shared instance for other strings that repeat across metrics,
+ * such as device ids; it holds them weakly, so unused values are collected.
+ */
+@Service
+@Slf4j
+public class MetricDictionary {
+
+    private static final Interner<String> STRINGS = Interner.newWeakInterner();
+
+    /** How long a value found missing is answered as such without looking it up again. */
+    private static final Duration MISS_TTL = Duration.ofSeconds(10);
+    // Values come from request parameters, so the misses remembered are bounded
+    private static final long MAX_MISSES = 10_000;
+
+    private static final String SELECT_BY_VALUE = "SELECT id FROM metric_dictionary WHERE kind = ? AND value = ?";
+    private static final String SELECT_BY_ID = "SELECT kind, value FROM metric_dictionary WHERE id = ?";
+    private static final String INSERT = "INSERT INTO metric_dictionary (kind, value) VALUES (?, ?) " +
+            "ON CONFLICT (kind, value) DO NOTHING RETURNING id";
+
+    private final DataSource dataSource;
+    private final Map<DictionaryKind, Map<String, Integer>> ids = new EnumMap<>(DictionaryKind.class);
+    private final Map<Integer, String> values = new ConcurrentHashMap<>();
+    private final Map<DictionaryKind, Cache<String, Boolean>> misses = new EnumMap<>(DictionaryKind.class);
+    private final ReentrantLock registerLock = new ReentrantLock();
+
+    public MetricDictionary(DataSource dataSource) {
+        this.dataSource = dataSource;
+        for (DictionaryKind kind : DictionaryKind.values()) {
+            ids.put(kind, new ConcurrentHashMap<>());
+            misses.put(kind, Caffeine.newBuilder()
+                    .expireAfterWrite(MISS_TTL)
+                    .maximumSize(MAX_MISSES)
+                    .build());
+        }
+    }
+
+    public static String intern(String value) {
+        return value != null ? STRINGS.intern(value) : null;
+    }
+
+    /**
+     * The id of {@code value}, registering it if it is new. For write paths; call it before
+     * taking the connection the write runs on, as a new value needs a connection of its own.
+     */
+    public int idOf(DictionaryKind kind, String value) {
+        Integer id = ids.get(kind).get(value);
+        return id != null ? id : register(kind, value);
+    }
+
+    /**
+     * The id of {@code value}, or {@code null} if it has never been registered.
+     */
+    public Integer findId(DictionaryKind kind, String value) {
+        Integer id = ids.get(kind).get(value);
+        if (id != null || misses.get(kind).getIfPresent(value) != null) {
+            return id;
+        }
+        return lookup(kind, value);
+    }
+
+    /**
+     * The canonical instance of the value with {@code id}.
+     */
+    public String valueOf(int id) {
+        String value = values.get(id);
+        return value != null ? value : load(id);
+    }
+
+    private int register(DictionaryKind kind, String value) {
+        // A lock rather than synchronized, so a virtual thread waiting on the database does not pin its carrier
+        registerLock.lock();
+        try {
+            Integer id = ids.get(kind).get(value);
+            if (id != null) {
+                return id;
+            }
+            // Not a replica, even when called from a read-only transaction
+            boolean primaryForced = ReplicaRoutingDataSource.forcePrimary(true);
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                id = queryId(connection, INSERT, kind, value);
+                if (id == null) {
+                    // Registered meanwhile by another instance
+                    id = queryId(connection, SELECT_BY_VALUE, kind, value);
+                } else {
+                    log.info("Registered {} '{}' as {}", kind, value, id);
+                }
+            } catch (SQLException e) {
+                throw new DataAccessResourceFailureException("Failed to register " + kind + " '" + value + "'", e);
+            } finally {
+                ReplicaRoutingDataSource.forcePrimary(primaryForced);
+            }
+            if (id == null) {
+                throw new IllegalStateException("No id for " + kind + " '" + value + "'");
+            }
+            cache(kind, value, id);
+            return id;
+        } finally {
+            registerLock.unlock();
+        }
+    }
+
+    private Integer lookup(DictionaryKind kind, String value) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            Integer id = queryId(connection, SELECT_BY_VALUE, kind, value);
+            if (id != null) {
+                cache(kind, value, id);
+            } else {
+                misses.get(kind).put(value, Boolean.TRUE);
+            }
+            return id;
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Failed to look up " + kind + " '" + value + "'", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private String load(int id) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_ID)) {
+            statement.setInt(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("Unknown metric dictionary id " + id);
+                }
+                return cache(DictionaryKind.valueOf(rs.getString(1)), rs.getString(2), id);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Failed to read metric dictionary id " + id, e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private String cache(DictionaryKind kind, String value, int id) {
+        String canonical = intern(value);
+        values.putIfAbsent(id, canonical);
+        ids.get(kind).putIfAbsent(canonical, id);
+        misses.get(kind).invalidate(canonical);
+        return values.get(id);
+    }
+
+    private static Integer queryId(Connection connection, String sql, DictionaryKind kind, String value)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, kind.name());
+            statement.setString(2, value);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.qct.device.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.qct.device.config.IngestProperties;
+import com.qct.device.dto.AnalyticsRequest;
+import com.qct.device.dto.BatchIngestResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.model.DictionaryKind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers incoming metrics in a bounded queue and writes them to {@code device_metrics}
+ * in JDBC batches from a single background writer.
+ */
+@Service
+@Slf4j
+public class MetricIngestService {
+
+    private static final String INSERT_SQL = "INSERT INTO device_metrics " +
+            "(device_id, metric_type_id, value, unit_id, description, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MetricDictionary dictionary;
+    private final ObjectReader requestReader;
+    private final Validator validator;
+    private final IngestProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockingQueue<DeviceMetric> queue;
+
+    private final Timer batchLatency;
+    private final DistributionSummary batchSize;
+    private final Counter written;
+    private final Counter failed;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MetricIngestService(JdbcTemplate jdbcTemplate,
+                               MetricDictionary dictionary,
+                               ObjectMapper objectMapper,
+                               Validator validator,
+                               IngestProperties properties,
+                               ApplicationEventPublisher eventPublisher,
+                               MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+        this.requestReader = objectMapper.readerFor(AnalyticsRequest.class);
+        this.validator = validator;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        this.batchLatency = Timer.builder("qct.ingest.batch.latency")
+                .description("Time taken to write one batch of metrics")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("qct.ingest.batch.size")
+                .description("Number of metrics written per batch")
+                .register(meterRegistry);
+        this.written = Counter.builder("qct.ingest.metrics.written").register(meterRegistry);
+        this.failed = Counter.builder("qct.ingest.metrics.failed").register(meterRegistry);
+        Gauge.builder("qct.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Metrics waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        writer = new Thread(this::runWriter, "metric-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(properties.getFlushInterval().toMillis() * 10);
+        }
+        // Anything left over after the writer exits is flushed on the caller thread
+        flush();
+    }
+
+    /**
+     * Parses a JSON array or NDJSON stream of {@link AnalyticsRequest} records and enqueues
+     * the valid ones. Reading stops as soon as the queue cannot accept more records.
+     */
+    public BatchIngestResponse ingest(InputStream body) throws IOException {
+        long index = 0;
+        long accepted = 0;
+        long invalid = 0;
+        List<BatchIngestResponse.RecordError> errors = new ArrayList<>();
+
+        try (MappingIterator<AnalyticsRequest> records = requestReader.readValues(body)) {
+            while (records.hasNextValue()) {
+                AnalyticsRequest request = records.nextValue();
+                Set<ConstraintViolation<AnalyticsRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                    invalid++;
+                    if (errors.size() < properties.getMaxReportedErrors()) {
+                        errors.add(new BatchIngestResponse.RecordError(index, request.getDeviceId(),
+                                violations.stream()
+                                        .map(ConstraintViolation::getMessage)
+                                        .sorted()
+                                        .collect(Collectors.joining(", "))));
+                    }
+                } else if (!submit(toMetric(request))) {
+                    log.warn("Ingest queue full, throttling batch at record {}", index);
+                    return BatchIngestResponse.builder()
+                            .received(index + 1)
+                            .accepted(accepted)
+                            .invalid(invalid)
+                            .throttled(true)
+                            .resumeFrom(index)
+                            .errors(errors)
+                            .build();
+                } else {
+                    accepted++;
+                }
+                index++;
+            }
+        }
+
+        log.debug("Accepted {} of {} metrics for ingestion", accepted, index);
+        return BatchIngestResponse.builder()
+                .received(index)
+                .accepted(accepted)
+                .invalid(invalid)
+                .errors(errors)
+                .build();
+    }
+
+    /**
+     * Offers a single metric to the queue, waiting at most the configured offer timeout.
+     *
+     * @return {@code false} if the queue stayed full
+     */
+    public boolean submit(DeviceMetric metric) {
+        try {
+            return queue.offer(metric, properties.getOfferTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Synchronously writes everything currently queued, one batch at a time.
+     *
+     * @return the number of metrics drained
+     */
+    public int flush() {
+        int total = 0;
+        int drained;
+        while ((drained = flushOnce()) > 0) {
+            total += drained;
+        }
+        return total;
+    }
+
+    private int flushOnce() {
+        List<DeviceMetric> batch = new ArrayList<>(Math.min(properties.getBatchSize(), queue.size()));
+        queue.drainTo(batch, properties.getBatchSize());
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+        return batch.size();
+    }
+
+    private void runWriter() {
+        long flushNanos = properties.getFlushInterval().toNanos();
+        List<DeviceMetric> batch = new ArrayList<>(properties.getBatchSize());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                DeviceMetric first = queue.poll(flushNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Fill the batch until it is full or the oldest metric has waited a flush interval
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < properties.getBatchSize()) {
+                    queue.drainTo(batch, properties.getBatchSize() - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= properties.getBatchSize() || remaining <= 0 || !running) {
+                        break;
+                    }
+                    DeviceMetric next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Metric ingest writer failed: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<DeviceMetric> batch) {
+        long start = System.nanoTime();
+        try {
+            List<DeviceMetric> stored;
+            try {
+                registerValues(batch);
+                insertReturningIds(batch);
+                written.increment(batch.size());
+                stored = List.copyOf(batch);
+            } catch (RuntimeException e) {
+                // One bad row (e.g. an unknown device) fails the whole batch; isolate it row by row
+                log.warn("Batch of {} metrics failed ({}), retrying individually", batch.size(), e.getMessage());
+                stored = writeIndividually(batch);
+            }
+            if (!stored.isEmpty()) {
+                publish(stored);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batchLatency.record(elapsed, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+            log.debug("Wrote batch of {} metrics in {} ms", batch.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * Outside the write's error handling: the metrics are stored, so a failing listener must not
+     * have them written again.
+     */
+    private void publish(List<DeviceMetric> stored) {
+        try {
+            eventPublisher.publishEvent(new MetricsRecordedEvent(stored));
+        } catch (RuntimeException e) {
+            log.error("Stored {} metrics but failed to announce them: {}", stored.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Listeners of {@link MetricsRecordedEvent} rely on the ids, e.g. to merge metrics into cached
+     * lists without duplicating any the cache already holds.
+     */
+    private void insertReturningIds(List<DeviceMetric> batch) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        bind(ps, batch.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keys);
+        List<Map<String, Object>> ids = keys.getKeyList();
+        for (int i = 0; i < ids.size() && i < batch.size(); i++) {
+            batch.get(i).setId(((Number) ids.get(i).get("id")).longValue());
+        }
+    }
+
+    /**
+     * Registers new metric types and units before the insert takes its connection, so binding
+     * only reads the dictionary's cache instead of waiting for a second connection.
+     */
+    private void registerValues(List<DeviceMetric> batch) {
+        for (DeviceMetric metric : batch) {
+            dictionary.idOf(DictionaryKind.METRIC_TYPE, metric.getMetricType());
+            unitId(metric);
+        }
+    }
+
+    private void bind(PreparedStatement ps, DeviceMetric metric) throws SQLException {
+        ps.setString(1, metric.getDeviceId());
+        ps.setInt(2, dictionary.idOf(DictionaryKind.METRIC_TYPE, metric.getMetricType()));
+        ps.setBigDecimal(3, metric.getValue());
+        ps.setObject(4, unitId(metric), Types.INTEGER);
+        ps.setString(5, metric.getDescription());
+        ps.setTimestamp(6, Timestamp.valueOf(metric.getTimestamp()));
+    }
+
+    private Integer unitId(DeviceMetric metric) {
+        return metric.getUnit() != null ? dictionary.idOf(DictionaryKind.UNIT, metric.getUnit()) : null;
+    }
+
+    private List<DeviceMetric> writeIndividually(List<DeviceMetric> batch) {
+        List<DeviceMetric> stored = new ArrayList<>(batch.size());
+        for (DeviceMetric metric : batch) {
+            try {
+                registerValues(List.of(metric));
+                GeneratedKeyHolder key = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"});
+                    bind(ps, metric);
+                    return ps;
+                }, key);
+                metric.setId(key.getKeyAs(Long.class));
+                written.increment();
+                stored.add(metric);
+            } catch (RuntimeException e) {
+                failed.increment();
+                log.error("Dropping metric {} for device {}: {}",
+                        metric.getMetricType(), metric.getDeviceId(), e.getMessage());
+            }
+        }
+        return stored;
+    }
+
+    private DeviceMetric toMetric(AnalyticsRequest request) {
+        DeviceMetric metric = new DeviceMetric();
+        // Queued metrics share one instance of each repeated string
+        metric.setDeviceId(MetricDictionary.intern(request.getDeviceId()));
+        metric.setMetricType(MetricDictionary.intern(request.getMetricType()));
+        metric.setValue(request.getValue());
+        metric.setUnit(MetricDictionary.intern(request.getUnit()));
+        metric.setDescription(MetricDictionary.intern(request.getDescription()));
+        metric.setTimestamp(LocalDateTime.now());
+        return metric;
+    }
+}
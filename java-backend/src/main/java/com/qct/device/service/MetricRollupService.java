@@ -0,0 +1,252 @@
+package com.qct.device.service;
+
+import com.qct.device.config.RollupProperties;
+import com.qct.device.dto.MetricSeriesResponse;
+import com.qct.device.model.RollupResolution;
+import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.repository.DeviceMetricRollupRepository;
+import com.qct.device.repository.RollupBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * Compacts raw {@code device_metrics} samples into minute, hour and day buckets, applies
+ * retention, and answers time-range series queries from the coarsest data that still
+ * resolves the range.
+ *
+ * <p>Each level is recomputed from its last (possibly still open) bucket onwards, so rollups
+ * trail the raw data by roughly {@code settle-delay}. Rows are written with upserts and a
+ * PostgreSQL advisory lock keeps replicas from compacting concurrently.
+ */
+@Service
+@Slf4j
+public class MetricRollupService {
+
+    private static final long COMPACTION_LOCK = 0x51C7_0001L;
+
+    private final DeviceMetricRepository deviceMetricRepository;
+    private final DeviceMetricRollupRepository rollupRepository;
+    private final PartitionMaintenanceService partitionMaintenanceService;
+    private final RollupProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public MetricRollupService(DeviceMetricRepository deviceMetricRepository,
+                               DeviceMetricRollupRepository rollupRepository,
+                               PartitionMaintenanceService partitionMaintenanceService,
+                               RollupProperties properties,
+                               PlatformTransactionManager transactionManager) {
+        this.deviceMetricRepository = deviceMetricRepository;
+        this.rollupRepository = rollupRepository;
+        this.partitionMaintenanceService = partitionMaintenanceService;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${qct.analytics.rollup.interval:PT1M}",
+               initialDelayString = "${qct.analytics.rollup.interval:PT1M}")
+    public void compact() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!rollupRepository.tryAdvisoryLock(COMPACTION_LOCK)) {
+                    log.debug("Rollup compaction is running on another instance");
+                    return;
+                }
+                compactRaw();
+                compactLevel(RollupResolution.MINUTE, RollupResolution.HOUR);
+                compactLevel(RollupResolution.HOUR, RollupResolution.DAY);
+            });
+        } catch (RuntimeException e) {
+            log.error("Rollup compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void compactRaw() {
+        LocalDateTime end = LocalDateTime.now().minus(properties.getSettleDelay()).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime from = rollupRepository.findLatestBucketStart(RollupResolution.MINUTE);
+        if (from == null) {
+            LocalDateTime earliest = deviceMetricRepository.findEarliestTimestamp();
+            if (earliest == null) {
+                return;
+            }
+            from = earliest.truncatedTo(ChronoUnit.MINUTES);
+        }
+        LocalDateTime next = deviceMetricRepository.findEarliestTimestampSince(from.plusMinutes(1));
+        LocalDateTime to = boundRange(from, next, RollupResolution.MINUTE, end);
+        if (!from.isBefore(to)) {
+            return;
+        }
+        int rows = rollupRepository.compactRawMetrics(from, to);
+        log.debug("Compacted raw metrics [{}, {}) into {} minute buckets", from, to, rows);
+    }
+
+    private void compactLevel(RollupResolution source, RollupResolution target) {
+        LocalDateTime sourceLatest = rollupRepository.findLatestBucketStart(source);
+        if (sourceLatest == null) {
+            return;
+        }
+        LocalDateTime from = rollupRepository.findLatestBucketStart(target);
+        if (from == null) {
+            from = rollupRepository.findEarliestBucketStart(source).truncatedTo(target.getUnit());
+        }
+        LocalDateTime next = rollupRepository.findEarliestBucketStartSince(source, from.plus(target.getBucket()));
+        LocalDateTime to = boundRange(from, next, target, sourceLatest.plus(source.getBucket()));
+        int rows = rollupRepository.compactRollups(source.name(), target.name(), target.getTruncUnit(), from, to);
+        log.debug("Compacted {} rollups [{}, {}) into {} {} buckets", source, from, to, rows, target);
+    }
+
+    /**
+     * Limits one run to {@code max-catch-up} of source data. The window always spans the
+     * current target bucket and skips ahead to the next source data after it, so gaps in
+     * the data cannot stall compaction.
+     */
+    private LocalDateTime boundRange(LocalDateTime from, LocalDateTime next,
+                                     RollupResolution target, LocalDateTime end) {
+        LocalDateTime limit = (next != null ? next : from).plus(properties.getMaxCatchUp());
+        LocalDateTime currentBucketEnd = from.plus(target.getBucket());
+        if (limit.isBefore(currentBucketEnd)) {
+            limit = currentBucketEnd;
+        }
+        return end.isAfter(limit) ? limit : end;
+    }
+
+    @Scheduled(cron = "${qct.analytics.rollup.retention-cron:0 15 * * * *}")
+    public void applyRetention() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+
+        // Never delete data that the next level has not absorbed yet
+        LocalDateTime minuteLatest = rollupRepository.findLatestBucketStart(RollupResolution.MINUTE);
+        long raw = 0;
+        int partitions = 0;
+        if (minuteLatest != null) {
+            LocalDateTime rawCutoff = earliest(now.minus(properties.getRawRetention()), minuteLatest);
+            if (partitionMaintenanceService.isPartitioned()) {
+                // Whole partitions only: rows past the cutoff wait until their partition expires
+                partitions = partitionMaintenanceService.dropPartitionsBefore(rawCutoff);
+            } else {
+                raw = deleteInBatches(() -> deviceMetricRepository.deleteOlderThan(rawCutoff, properties.getDeleteBatchSize()));
+            }
+        }
+
+        long minute = applyRollupRetention(RollupResolution.MINUTE, properties.getMinuteRetention(),
+                rollupRepository.findLatestBucketStart(RollupResolution.HOUR), now);
+        long hour = applyRollupRetention(RollupResolution.HOUR, properties.getHourRetention(),
+                rollupRepository.findLatestBucketStart(RollupResolution.DAY), now);
+        long day = applyRollupRetention(RollupResolution.DAY, properties.getDayRetention(), now, now);
+
+        log.info("Metric retention removed {} raw partitions, {} raw, {} minute, {} hour and {} day rows",
+                partitions, raw, minute, hour, day);
+    }
+
+    private long applyRollupRetention(RollupResolution resolution, Duration retention,
+                                      LocalDateTime absorbedUntil, LocalDateTime now) {
+        if (retention == null || absorbedUntil == null) {
+            return 0;
+        }
+        LocalDateTime cutoff = earliest(now.minus(retention), absorbedUntil);
+        return deleteInBatches(() -> rollupRepository.deleteOlderThan(resolution.name(), cutoff,
+                properties.getDeleteBatchSize()));
+    }
+
+    private long deleteInBatches(IntSupplier deleteBatch) {
+        long total = 0;
+        int deleted;
+        do {
+            // One short transaction per batch keeps locks and WAL bursts small
+            deleted = transactionTemplate.execute(status -> deleteBatch.getAsInt());
+            total += deleted;
+        } while (deleted >= properties.getDeleteBatchSize());
+        return total;
+    }
+
+    /**
+     * Returns the series for {@code [from, to)}, bucketed at {@code resolution} or, when that is
+     * {@code null}, at the finest resolution that yields no more than {@code max-points} buckets
+     * and is still retained for the whole range.
+     */
+    public MetricSeriesResponse getSeries(String deviceId, String metricType,
+                                          LocalDateTime from, LocalDateTime to,
+                                          RollupResolution resolution) {
+        RollupResolution chosen = resolution != null ? resolution : chooseResolution(from, to);
+
+        // Buckets from the last compacted one onwards may still be open, so read them from raw samples
+        LocalDateTime latest = rollupRepository.findLatestBucketStart(chosen);
+        LocalDateTime rawFrom = latest == null || latest.isBefore(from) ? from : latest;
+
+        List<MetricSeriesResponse.Point> points = new ArrayList<>();
+        if (rawFrom.isAfter(from)) {
+            rollupRepository.findBuckets(chosen.name(), deviceId, metricType, from, rawFrom)
+                    .forEach(bucket -> points.add(toPoint(bucket)));
+        }
+        if (rawFrom.isBefore(to)) {
+            rollupRepository.aggregateRawBuckets(chosen.getTruncUnit(), deviceId, metricType, rawFrom, to)
+                    .forEach(bucket -> points.add(toPoint(bucket)));
+        }
+
+        return MetricSeriesResponse.builder()
+                .deviceId(deviceId)
+                .metricType(metricType)
+                .resolution(chosen)
+                .from(from)
+                .to(to)
+                .points(points)
+                .build();
+    }
+
+    private RollupResolution chooseResolution(LocalDateTime from, LocalDateTime to) {
+        Duration range = Duration.between(from, to);
+        LocalDateTime now = LocalDateTime.now();
+        for (RollupResolution resolution : RollupResolution.values()) {
+            Duration retention = retentionOf(resolution);
+            boolean retained = retention == null || !from.isBefore(now.minus(retention));
+            if (retained && range.dividedBy(resolution.getBucket()) <= properties.getMaxPoints()) {
+                return resolution;
+            }
+        }
+        return RollupResolution.DAY;
+    }
+
+    private Duration retentionOf(RollupResolution resolution) {
+        return switch (resolution) {
+            case MINUTE -> properties.getMinuteRetention();
+            case HOUR -> properties.getHourRetention();
+            case DAY -> properties.getDayRetention();
+        };
+    }
+
+    private static MetricSeriesResponse.Point toPoint(RollupBucket bucket) {
+        return MetricSeriesResponse.Point.builder()
+                .bucketStart(bucket.getBucketStart())
+                .count(bucket.getSampleCount())
+                .averageValue(bucket.getSumValue()
+                        .divide(BigDecimal.valueOf(bucket.getSampleCount()), 2, RoundingMode.HALF_UP))
+                .minValue(bucket.getMinValue())
+                .maxValue(bucket.getMaxValue())
+                .lastValue(bucket.getLastValue())
+                .build();
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        if (b == null) {
+            return a;
+        }
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,325 @@
+package com.qct.device.service;
+
+import com.qct.device.config.SketchProperties;
+import com.qct.device.dto.PercentileSummaryResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceMetricSketchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Maintains a {@link QuantileSketch} per (deviceId, metricType, hour) from the write path and
+ * answers percentile queries for a device, an OEM or the whole fleet by merging the stored
+ * sketches of the range.
+ *
+ * <p>Samples are sketched in memory and merged into {@code device_metric_sketches} every
+ * {@code flush-interval}, under an advisory lock so that replicas flushing the same hour do
+ * not overwrite each other; stored figures therefore trail ingest by up to that interval, and
+ * samples still in memory are lost if the instance dies. Ranges are widened to whole hours.
+ */
+@Service
+@Slf4j
+public class MetricSketchService {
+
+    public static final List<Double> DEFAULT_QUANTILES = List.of(0.5, 0.95, 0.99);
+
+    private static final long FLUSH_LOCK = 0x51C7_0002L;
+    private static final int FLUSH_CHUNK = 1_000;
+    private static final int DELETE_BATCH_SIZE = 10_000;
+
+    private static final String SELECT_EXISTING = "SELECT s.device_id, s.metric_type, s.bucket_start, s.sketch " +
+            "FROM device_metric_sketches s JOIN unnest(?, ?, ?) AS k(device_id, metric_type, bucket_start) " +
+            "ON s.device_id = k.device_id AND s.metric_type = k.metric_type AND s.bucket_start = k.bucket_start";
+
+    private static final String UPSERT = "INSERT INTO device_metric_sketches " +
+            "(device_id, metric_type, bucket_start, sample_count, sketch) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (device_id, metric_type, bucket_start) DO UPDATE SET " +
+            "sample_count = EXCLUDED.sample_count, sketch = EXCLUDED.sketch";
+
+    private static final String SELECT_RANGE = "SELECT metric_type, sketch FROM device_metric_sketches " +
+            "WHERE bucket_start >= ? AND bucket_start < ?";
+
+    private final SketchProperties properties;
+    private final DeviceMetricSketchRepository sketchRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<SketchKey, QuantileSketch> pending = new ConcurrentHashMap<>();
+    private final Counter flushed;
+    private final Counter flushFailures;
+
+    record SketchKey(String deviceId, String metricType, LocalDateTime bucketStart) {
+    }
+
+    public MetricSketchService(SketchProperties properties,
+                               DeviceMetricSketchRepository sketchRepository,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.sketchRepository = sketchRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.flushed = Counter.builder("qct.sketches.flushed")
+                .description("Hourly sketches merged into the database")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("qct.sketches.flush.errors")
+                .register(meterRegistry);
+        Gauge.builder("qct.sketches.pending", pending, Map::size)
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMetricsRecorded(MetricsRecordedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime now = null;
+        for (DeviceMetric metric : event.getMetrics()) {
+            if (metric.getValue() == null) {
+                continue;
+            }
+            LocalDateTime timestamp = metric.getTimestamp();
+            if (timestamp == null) {
+                timestamp = now != null ? now : (now = LocalDateTime.now());
+            }
+            double value = metric.getValue().doubleValue();
+            // Mutated inside compute only, so a concurrent flush never sees a half-added sample
+            pending.compute(new SketchKey(metric.getDeviceId(), metric.getMetricType(),
+                    timestamp.truncatedTo(ChronoUnit.HOURS)), (key, sketch) -> {
+                QuantileSketch target = sketch != null ? sketch : new QuantileSketch(properties.getRelativeAccuracy());
+                target.add(value);
+                return target;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${qct.analytics.sketches.flush-interval:PT30S}",
+               initialDelayString = "${qct.analytics.sketches.flush-interval:PT30S}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<SketchKey, QuantileSketch> drained = new HashMap<>();
+        for (SketchKey key : pending.keySet()) {
+            QuantileSketch sketch = pending.remove(key);
+            if (sketch != null) {
+                drained.put(key, sketch);
+            }
+        }
+        List<Map.Entry<SketchKey, QuantileSketch>> entries = new ArrayList<>(drained.entrySet());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                sketchRepository.advisoryLock(FLUSH_LOCK);
+                for (int from = 0; from < entries.size(); from += FLUSH_CHUNK) {
+                    merge(entries.subList(from, Math.min(from + FLUSH_CHUNK, entries.size())));
+                }
+            });
+            flushed.increment(entries.size());
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            log.error("Failed to store {} metric sketches, keeping them for the next flush: {}",
+                    entries.size(), e.getMessage(), e);
+            drained.forEach((key, sketch) -> pending.merge(key, sketch, (current, failed) -> {
+                current.merge(failed);
+                return current;
+            }));
+        }
+    }
+
+    /**
+     * Merges stored sketches into the flushed ones and writes the results back.
+     */
+    private void merge(List<Map.Entry<SketchKey, QuantileSketch>> entries) {
+        // Copies, so that the flushed sketches can be returned to pending intact if the transaction fails
+        Map<SketchKey, QuantileSketch> merged = new HashMap<>();
+        entries.forEach(entry -> {
+            QuantileSketch copy = new QuantileSketch(properties.getRelativeAccuracy());
+            copy.merge(entry.getValue());
+            merged.put(entry.getKey(), copy);
+        });
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_EXISTING);
+            statement.setArray(1, array(connection, "varchar", entries, SketchKey::deviceId));
+            statement.setArray(2, array(connection, "varchar", entries, SketchKey::metricType));
+            statement.setArray(3, array(connection, "timestamp", entries, key -> Timestamp.valueOf(key.bucketStart())));
+            return statement;
+        }, rs -> {
+            SketchKey key = new SketchKey(rs.getString(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
+            QuantileSketch stored = QuantileSketch.decode(rs.getBytes(4));
+            if (stored.getRelativeAccuracy() == properties.getRelativeAccuracy()) {
+                merged.get(key).merge(stored);
+            } else {
+                log.warn("Replacing sketch {} recorded at accuracy {}", key, stored.getRelativeAccuracy());
+            }
+        });
+
+        List<Object[]> rows = new ArrayList<>(merged.size());
+        merged.forEach((key, sketch) -> rows.add(new Object[]{key.deviceId(), key.metricType(),
+                Timestamp.valueOf(key.bucketStart()), sketch.getCount(), sketch.encode()}));
+        jdbcTemplate.batchUpdate(UPSERT, rows);
+    }
+
+    private static Array array(Connection connection, String type,
+                               List<Map.Entry<SketchKey, QuantileSketch>> entries,
+                               Function<SketchKey, Object> field) throws SQLException {
+        Object[] values = new Object[entries.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = field.apply(entries.get(i).getKey());
+        }
+        return connection.createArrayOf(type, values);
+    }
+
+    @Scheduled(cron = "${qct.analytics.sketches.retention-cron:0 25 * * * *}")
+    public void applyRetention() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.getRetention()).truncatedTo(ChronoUnit.HOURS);
+        long total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> sketchRepository.deleteOlderThan(cutoff, DELETE_BATCH_SIZE));
+            total += deleted;
+        } while (deleted >= DELETE_BATCH_SIZE);
+        log.info("Sketch retention removed {} rows", total);
+    }
+
+    public PercentileSummaryResponse getDevicePercentiles(String deviceId, String metricType,
+                                                          LocalDateTime from, LocalDateTime to, List<Double> quantiles) {
+        return summarize("DEVICE", deviceId, " AND device_id = ?", deviceId, metricType, from, to, quantiles);
+    }
+
+    public PercentileSummaryResponse getOemPercentiles(String oemId, String metricType,
+                                                       LocalDateTime from, LocalDateTime to, List<Double> quantiles) {
+        return summarize("OEM", oemId, " AND device_id IN (SELECT device_id FROM devices WHERE oem_id = ?)", oemId,
+                metricType, from, to, quantiles);
+    }
+
+    public PercentileSummaryResponse getFleetPercentiles(String metricType,
+                                                         LocalDateTime from, LocalDateTime to, List<Double> quantiles) {
+        return summarize("FLEET", null, "", null, metricType, from, to, quantiles);
+    }
+
+    /**
+     * Streams the sketches of whole hours covering {@code [from, to)} and merges them per
+     * metric type. Only the merged sketches are held in memory.
+     */
+    private PercentileSummaryResponse summarize(String scope, String id, String scopeFilter, String scopeValue,
+                                                String metricType, LocalDateTime from, LocalDateTime to,
+                                                List<Double> quantiles) {
+        List<Double> requested = quantiles == null || quantiles.isEmpty() ? DEFAULT_QUANTILES : quantiles;
+        for (Double q : requested) {
+            if (q == null || q < 0 || q > 1) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1");
+            }
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        if (Duration.between(from, to).compareTo(properties.getMaxRange()) > 0) {
+            throw new IllegalArgumentException("Range must not exceed " + properties.getMaxRange());
+        }
+        LocalDateTime start = from.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime end = to.truncatedTo(ChronoUnit.HOURS);
+        if (end.isBefore(to)) {
+            end = end.plusHours(1);
+        }
+
+        List<Object> args = new ArrayList<>(List.of(Timestamp.valueOf(start), Timestamp.valueOf(end)));
+        String sql = SELECT_RANGE + scopeFilter;
+        if (scopeValue != null) {
+            args.add(scopeValue);
+        }
+        if (metricType != null) {
+            sql += " AND metric_type = ?";
+            args.add(metricType);
+        }
+        String query = sql;
+        Map<String, QuantileSketch> byType = new TreeMap<>();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(query);
+            statement.setFetchSize(1_000);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, rs -> {
+            QuantileSketch sketch = QuantileSketch.decode(rs.getBytes(2));
+            if (sketch.getRelativeAccuracy() != properties.getRelativeAccuracy()) {
+                return;
+            }
+            byType.merge(rs.getString(1), sketch, (merged, next) -> {
+                merged.merge(next);
+                return merged;
+            });
+        }));
+
+        List<PercentileSummaryResponse.MetricPercentiles> metrics = new ArrayList<>(byType.size());
+        byType.forEach((type, sketch) -> metrics.add(toPercentiles(type, sketch, requested)));
+        return PercentileSummaryResponse.builder()
+                .scope(scope)
+                .id(id)
+                .from(start)
+                .to(end)
+                .relativeAccuracy(properties.getRelativeAccuracy())
+                .metrics(metrics)
+                .build();
+    }
+
+    private static PercentileSummaryResponse.MetricPercentiles toPercentiles(String metricType, QuantileSketch sketch,
+                                                                             List<Double> quantiles) {
+        Map<String, BigDecimal> percentiles = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            percentiles.put(label(q), round(sketch.quantile(q)));
+        }
+        return PercentileSummaryResponse.MetricPercentiles.builder()
+                .metricType(metricType)
+                .count(sketch.getCount())
+                .averageValue(round(sketch.getSum() / sketch.getCount()))
+                .minValue(round(sketch.getMin()))
+                .maxValue(round(sketch.getMax()))
+                .percentiles(percentiles)
+                .build();
+    }
+
+    /** {@code 0.5} becomes {@code p50}, {@code 0.999} becomes {@code p99.9}. */
+    static String label(double quantile) {
+        return "p" + BigDecimal.valueOf(quantile).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+
+    private static BigDecimal round(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,27 @@
+package com.qct.device.service;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Sliding windows maintained by {@link MetricWindowAggregator}. Each window is split into a
+ * fixed number of buckets, so it slides with the granularity of one bucket.
+ */
+@Getter
+public enum MetricWindow {
+
+    ONE_MINUTE(Duration.ofMinutes(1), Duration.ofSeconds(1)),
+    ONE_HOUR(Duration.ofHours(1), Duration.ofMinutes(1)),
+    ONE_DAY(Duration.ofDays(1), Duration.ofMinutes(15));
+
+    private final long lengthMillis;
+    private final long bucketMillis;
+    private final int buckets;
+
+    MetricWindow(Duration length, Duration bucket) {
+        this.lengthMillis = length.toMillis();
+        this.bucketMillis = bucket.toMillis();
+        this.buckets = (int) (lengthMillis / bucketMillis);
+    }
+}
@@ -0,0 +1,191 @@
+package com.qct.device.service;
+
+import com.qct.device.config.AggregationProperties;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.repository.MetricBucketAggregate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps sliding 1m/1h/24h count/sum/min/max per (deviceId, metricType), updated from the
+ * write path so performance summaries can be answered without touching the database.
+ *
+ * <p>Each instance only sees the metrics written through it. The state is rebuilt from
+ * {@code device_metrics} on startup and, when {@code qct.analytics.aggregation.resync-cron}
+ * is set, periodically, which keeps replicas convergent when several pods share ingest.
+ */
+@Service
+@Slf4j
+public class MetricWindowAggregator {
+
+    private final DeviceMetricRepository deviceMetricRepository;
+    private final AggregationProperties properties;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private volatile Map<String, Map<String, WindowedStats>> stats = new ConcurrentHashMap<>();
+    private volatile Queue<DeviceMetric> replay;
+    private volatile boolean ready;
+
+    public MetricWindowAggregator(DeviceMetricRepository deviceMetricRepository,
+                                  AggregationProperties properties,
+                                  PlatformTransactionManager transactionManager) {
+        this.deviceMetricRepository = deviceMetricRepository;
+        this.properties = properties;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * {@code true} once the state has been rebuilt from the database and summaries can be
+     * served from memory.
+     */
+    public boolean isReady() {
+        return properties.isEnabled() && ready;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMetricsRecorded(MetricsRecordedEvent event) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Queue<DeviceMetric> pending = replay;
+        for (DeviceMetric metric : event.getMetrics()) {
+            record(stats, metric);
+            if (pending != null) {
+                pending.add(metric);
+            }
+        }
+    }
+
+    public WindowSummary summarize(String deviceId, String metricType, MetricWindow window) {
+        Map<String, WindowedStats> byType = stats.get(deviceId);
+        WindowedStats series = byType != null ? byType.get(metricType) : null;
+        return series != null ? series.summarize(window, System.currentTimeMillis()) : WindowSummary.EMPTY;
+    }
+
+    /**
+     * Summary across every metric type recorded for the device.
+     */
+    public WindowSummary summarize(String deviceId, MetricWindow window) {
+        Map<String, WindowedStats> byType = stats.get(deviceId);
+        if (byType == null) {
+            return WindowSummary.EMPTY;
+        }
+        long now = System.currentTimeMillis();
+        WindowSummary total = WindowSummary.EMPTY;
+        for (WindowedStats series : byType.values()) {
+            total = total.merge(series.summarize(window, now));
+        }
+        return total;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${qct.analytics.aggregation.resync-cron:-}")
+    public void resync() {
+        if (properties.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Recomputes the last 24 hours from per-minute database aggregates into a fresh map and
+     * swaps it in. Metrics recorded while the rebuild runs are replayed into the new map.
+     */
+    public void rebuild() {
+        // Held across the database stream, so a lock virtual threads can park on rather than a monitor
+        rebuildLock.lock();
+        try {
+            rebuildLocked();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now();
+        LocalDateTime since = cutoff.minusDays(1);
+        Queue<DeviceMetric> pending = new ConcurrentLinkedQueue<>();
+        replay = pending;
+
+        Map<String, Map<String, WindowedStats>> rebuilt = new ConcurrentHashMap<>();
+        long buckets;
+        try {
+            buckets = readOnlyTransaction.execute(status -> {
+                long count = 0;
+                try (Stream<MetricBucketAggregate> aggregates = deviceMetricRepository.streamMinuteAggregates(since, cutoff)) {
+                    for (MetricBucketAggregate aggregate : (Iterable<MetricBucketAggregate>) aggregates::iterator) {
+                        series(rebuilt, aggregate.getDeviceId(), aggregate.getMetricType())
+                                .add(toEpochMillis(aggregate.getBucketStart()), aggregate.getSampleCount(),
+                                        aggregate.getSum(), aggregate.getMin(), aggregate.getMax());
+                        count++;
+                    }
+                }
+                return count;
+            });
+        } catch (RuntimeException e) {
+            replay = null;
+            log.error("Failed to rebuild metric window aggregates: {}", e.getMessage(), e);
+            return;
+        }
+
+        replay = null;
+        for (DeviceMetric metric : pending) {
+            if (metric.getTimestamp() == null || !metric.getTimestamp().isBefore(cutoff)) {
+                record(rebuilt, metric);
+            }
+        }
+        stats = rebuilt;
+        ready = true;
+        log.info("Rebuilt metric window aggregates for {} devices from {} minute buckets in {} ms",
+                rebuilt.size(), buckets, System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedDelayString = "PT10M", initialDelayString = "PT10M")
+    public void evictIdleSeries() {
+        long threshold = System.currentTimeMillis() - properties.getIdleEviction().toMillis();
+        stats.values().forEach(byType -> byType.values().removeIf(series -> series.getLastSampleMillis() < threshold));
+        stats.values().removeIf(Map::isEmpty);
+    }
+
+    private static void record(Map<String, Map<String, WindowedStats>> target, DeviceMetric metric) {
+        if (metric.getValue() == null) {
+            return;
+        }
+        long timestamp = metric.getTimestamp() != null ? toEpochMillis(metric.getTimestamp()) : System.currentTimeMillis();
+        series(target, metric.getDeviceId(), metric.getMetricType()).add(timestamp, metric.getValue().doubleValue());
+    }
+
+    private static WindowedStats series(Map<String, Map<String, WindowedStats>> target, String deviceId, String metricType) {
+        return target.computeIfAbsent(deviceId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metricType, type -> new WindowedStats());
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,218 @@
+package com.qct.device.service;
+
+import com.qct.device.config.OemAggregateProperties;
+import com.qct.device.dto.OemAggregateResponse;
+import com.qct.device.model.RollupResolution;
+import com.qct.device.repository.DeviceMetricRollupRepository;
+import com.qct.device.repository.MetricAggregate;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-device and per-metric-type totals for the devices of an OEM, computed in the database
+ * so that dashboards receive a few rows per device instead of every sample.
+ *
+ * <p>Each query reads the settled part of the range from hour and minute rollups and only the
+ * edges from raw samples (see {@link DeviceMetricRollupRepository#aggregateOem}). With
+ * {@code shards} above one, devices are split by id hash and the shards run in parallel, each
+ * in its own read-only transaction, so they may also be spread over read replicas.
+ */
+@Service
+@Slf4j
+public class OemAggregationService {
+
+    private final DeviceMetricRollupRepository rollupRepository;
+    private final OemAggregateProperties properties;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService shardExecutor;
+
+    public OemAggregationService(DeviceMetricRollupRepository rollupRepository,
+                                 OemAggregateProperties properties,
+                                 PlatformTransactionManager transactionManager,
+                                 Environment environment) {
+        this.rollupRepository = rollupRepository;
+        this.properties = properties;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // Shards wait on the database; the connection pool bounds them instead of the thread count
+            this.shardExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("oem-aggregate-", 0).factory());
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("oem-aggregate-");
+            threadFactory.setDaemon(true);
+            this.shardExecutor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), threadFactory);
+        }
+    }
+
+    /**
+     * Totals over {@code [from, to)}, for one metric type when {@code metricType} is given.
+     */
+    public OemAggregateResponse aggregate(String oemId, String metricType, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        if (Duration.between(from, to).compareTo(properties.getMaxRange()) > 0) {
+            throw new IllegalArgumentException("Range must not exceed " + properties.getMaxRange());
+        }
+        Ranges ranges = readOnlyTransaction.execute(status -> ranges(from, to));
+        int shards = Math.max(1, properties.getShards());
+
+        List<MetricAggregate> rows;
+        if (shards == 1) {
+            rows = query(oemId, metricType, ranges, 0, 1);
+        } else {
+            List<CompletableFuture<List<MetricAggregate>>> parts = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                int current = shard;
+                parts.add(CompletableFuture.supplyAsync(
+                        () -> query(oemId, metricType, ranges, current, shards), shardExecutor));
+            }
+            rows = new ArrayList<>();
+            try {
+                for (CompletableFuture<List<MetricAggregate>> part : parts) {
+                    rows.addAll(part.join());
+                }
+            } catch (CompletionException e) {
+                parts.forEach(part -> part.cancel(false));
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return toResponse(oemId, from, to, rows);
+    }
+
+    @PreDestroy
+    void close() {
+        shardExecutor.shutdownNow();
+    }
+
+    private List<MetricAggregate> query(String oemId, String metricType, Ranges ranges, int shard, int shards) {
+        return readOnlyTransaction.execute(status -> rollupRepository.aggregateOem(oemId, metricType,
+                ranges.from, ranges.minuteFrom, ranges.hourFrom, ranges.hourTo, ranges.minuteTo, ranges.to,
+                shard, shards));
+    }
+
+    /**
+     * Splits {@code [from, to)} into raw edges, minute buckets and hour buckets. Buckets from
+     * the last compacted one onwards may still be open, so they are left to raw samples.
+     */
+    private Ranges ranges(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime latestMinute = rollupRepository.findLatestBucketStart(RollupResolution.MINUTE);
+        LocalDateTime minuteFrom = ceil(from, ChronoUnit.MINUTES);
+        LocalDateTime minuteTo = latestMinute == null ? minuteFrom
+                : earliest(to.truncatedTo(ChronoUnit.MINUTES), latestMinute);
+        if (!minuteFrom.isBefore(minuteTo)) {
+            return new Ranges(from, from, from, from, from, to);
+        }
+
+        LocalDateTime latestHour = rollupRepository.findLatestBucketStart(RollupResolution.HOUR);
+        LocalDateTime hourFrom = ceil(minuteFrom, ChronoUnit.HOURS);
+        LocalDateTime hourTo = latestHour == null ? hourFrom
+                : earliest(minuteTo.truncatedTo(ChronoUnit.HOURS), latestHour);
+        if (!hourFrom.isBefore(hourTo)) {
+            hourFrom = minuteTo;
+            hourTo = minuteTo;
+        }
+        return new Ranges(from, minuteFrom, hourFrom, hourTo, minuteTo, to);
+    }
+
+    private static OemAggregateResponse toResponse(String oemId, LocalDateTime from, LocalDateTime to,
+                                                   List<MetricAggregate> rows) {
+        Map<String, List<OemAggregateResponse.MetricTotals>> byDevice = new TreeMap<>();
+        Map<String, Totals> byType = new TreeMap<>();
+        for (MetricAggregate row : rows) {
+            byDevice.computeIfAbsent(row.getDeviceId(), id -> new ArrayList<>())
+                    .add(totals(row.getMetricType(), row.getSampleCount(), row.getSumValue(), row.getMinValue(),
+                            row.getMaxValue(), row.getLastValue(), row.getLastTimestamp()));
+            byType.computeIfAbsent(row.getMetricType(), type -> new Totals()).add(row);
+        }
+
+        List<OemAggregateResponse.DeviceTotals> devices = new ArrayList<>(byDevice.size());
+        byDevice.forEach((deviceId, metrics) -> devices.add(OemAggregateResponse.DeviceTotals.builder()
+                .deviceId(deviceId)
+                .metrics(metrics)
+                .build()));
+        List<OemAggregateResponse.MetricTotals> metrics = new ArrayList<>(byType.size());
+        byType.forEach((type, t) -> metrics.add(totals(type, t.count, t.sum, t.min, t.max, t.last, t.lastTimestamp)));
+
+        return OemAggregateResponse.builder()
+                .oemId(oemId)
+                .from(from)
+                .to(to)
+                .deviceCount(devices.size())
+                .metrics(metrics)
+                .devices(devices)
+                .build();
+    }
+
+    private static OemAggregateResponse.MetricTotals totals(String metricType, long count, BigDecimal sum,
+                                                            BigDecimal min, BigDecimal max, BigDecimal last,
+                                                            LocalDateTime lastTimestamp) {
+        return OemAggregateResponse.MetricTotals.builder()
+                .metricType(metricType)
+                .count(count)
+                .averageValue(sum.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP))
+                .minValue(min)
+                .maxValue(max)
+                .lastValue(last)
+                .lastTimestamp(lastTimestamp)
+                .build();
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.isBefore(time) ? truncated.plus(1, unit) : truncated;
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private record Ranges(LocalDateTime from, LocalDateTime minuteFrom, LocalDateTime hourFrom,
+                          LocalDateTime hourTo, LocalDateTime minuteTo, LocalDateTime to) {
+    }
+
+    /** Running totals of one metric type across devices. */
+    private static final class Totals {
+
+        private long count;
+        private BigDecimal sum = BigDecimal.ZERO;
+        private BigDecimal min;
+        private BigDecimal max;
+        private BigDecimal last;
+        private LocalDateTime lastTimestamp;
+
+        void add(MetricAggregate row) {
+            count += row.getSampleCount();
+            sum = sum.add(row.getSumValue());
+            min = min == null || row.getMinValue().compareTo(min) < 0 ? row.getMinValue() : min;
+            max = max == null || row.getMaxValue().compareTo(max) > 0 ? row.getMaxValue() : max;
+            if (lastTimestamp == null || row.getLastTimestamp().isAfter(lastTimestamp)) {
+                last = row.getLastValue();
+                lastTimestamp = row.getLastTimestamp();
+            }
+        }
+    }
+}
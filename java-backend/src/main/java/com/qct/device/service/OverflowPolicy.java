@@ -0,0 +1,19 @@
+package com.qct.device.service;
+
+/**
+ * How a live subscription sheds samples once its buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /** Discard the oldest buffered sample, so the subscriber sees the latest data with gaps. */
+    DROP_OLDEST,
+
+    /** Discard the incoming sample, so the subscriber sees an unbroken prefix and then gaps. */
+    DROP_NEWEST,
+
+    /**
+     * Keep only the latest sample per device and metric type; the buffer then bounds the number
+     * of distinct series rather than samples, dropping the longest-unchanged series beyond it.
+     */
+    CONFLATE
+}
@@ -0,0 +1,216 @@
+package com.qct.device.service;
+
+import com.qct.device.config.PartitionProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a range-partitioned {@code device_metrics} table supplied with partitions ahead of
+ * the current time and removes expired history by dropping whole partitions, which frees
+ * space immediately and leaves no dead tuples behind.
+ *
+ * <p>Whether the table is partitioned is detected from the catalog; on a plain table every
+ * operation is a no-op and {@link MetricRollupService} falls back to batched deletes.
+ */
+@Service
+@Slf4j
+public class PartitionMaintenanceService {
+
+    static final String TABLE = "device_metrics";
+
+    private static final String PARTITIONED_SQL = "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt " +
+            "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ? AND pg_table_is_visible(c.oid))";
+    private static final String PARTITIONS_SQL = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) " +
+            "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = ? AND pg_table_is_visible(p.oid)";
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Boolean partitioned;
+
+    /** A range partition of {@code device_metrics} covering {@code [from, to)}. */
+    public record Partition(String name, LocalDateTime from, LocalDateTime to) {
+    }
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       PartitionProperties properties,
+                                       PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /** {@code true} if partitioning is enabled and {@code device_metrics} is partitioned. */
+    public boolean isPartitioned() {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        Boolean current = partitioned;
+        if (current == null) {
+            current = Boolean.TRUE.equals(jdbcTemplate.queryForObject(PARTITIONED_SQL, Boolean.class, TABLE));
+            partitioned = current;
+        }
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        try {
+            if (isPartitioned()) {
+                createUpcomingPartitions(LocalDateTime.now());
+            } else if (properties.isEnabled()) {
+                log.info("{} is not partitioned; retention falls back to batched deletes", TABLE);
+            }
+        } catch (DataAccessException e) {
+            log.error("Partition maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(cron = "${qct.analytics.partitioning.maintenance-cron:0 5 * * * *}")
+    public void maintain() {
+        partitioned = null;
+        maintainOnStartup();
+    }
+
+    /**
+     * Creates the partitions needed to cover {@code now} through {@code now + ahead}. Ranges
+     * already covered are skipped, and a new range is clipped to any existing neighbour so that
+     * changing {@code interval} never produces overlaps.
+     *
+     * @return the number of partitions created
+     */
+    public int createUpcomingPartitions(LocalDateTime now) {
+        List<Partition> existing = listPartitions();
+        LocalDateTime until = now.plus(properties.getAhead());
+        int created = 0;
+        LocalDateTime from = periodStart(now);
+        while (from.isBefore(until)) {
+            for (Partition partition : existing) {
+                if (!partition.from().isAfter(from) && partition.to().isAfter(from)) {
+                    from = partition.to();
+                }
+            }
+            LocalDateTime to = nextPeriod(periodStart(from));
+            for (Partition partition : existing) {
+                if (partition.from().isAfter(from) && partition.from().isBefore(to)) {
+                    to = partition.from();
+                }
+            }
+            if (!from.isBefore(until)) {
+                break;
+            }
+            Partition partition = new Partition(TABLE + "_p" + NAME_FORMAT.format(from), from, to);
+            if (create(partition)) {
+                existing.add(partition);
+                created++;
+            }
+            from = to;
+        }
+        if (created > 0) {
+            log.info("Created {} {} partitions up to {}", created, TABLE, until.toLocalDate());
+        }
+        return created;
+    }
+
+    /**
+     * Drops every partition whose whole range lies before {@code cutoff}. Rows in a partition
+     * that straddles the cutoff are kept until the partition expires as a whole.
+     *
+     * @return the number of partitions dropped
+     */
+    public int dropPartitionsBefore(LocalDateTime cutoff) {
+        int dropped = 0;
+        for (Partition partition : listPartitions()) {
+            if (partition.to().isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    setLockTimeout();
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition.name());
+                });
+                dropped++;
+                log.info("Dropped partition {} ({} to {})", partition.name(), partition.from(), partition.to());
+            } catch (DataAccessException e) {
+                log.warn("Could not drop partition {}: {}", partition.name(), e.getMessage());
+            }
+        }
+        return dropped;
+    }
+
+    /** Range partitions of {@code device_metrics}, oldest first; the default partition is left out. */
+    public List<Partition> listPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        jdbcTemplate.query(PARTITIONS_SQL, rs -> {
+            Matcher bound = RANGE_BOUND.matcher(rs.getString(2));
+            if (bound.find()) {
+                partitions.add(new Partition(rs.getString(1), parseBound(bound.group(1)), parseBound(bound.group(2))));
+            }
+        }, TABLE);
+        partitions.sort(Comparator.comparing(Partition::from));
+        return partitions;
+    }
+
+    private boolean create(Partition partition) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                setLockTimeout();
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition.name() + " PARTITION OF " + TABLE +
+                        " FOR VALUES FROM ('" + BOUND_FORMAT.format(partition.from()) + "') TO ('" +
+                        BOUND_FORMAT.format(partition.to()) + "')");
+            });
+            return true;
+        } catch (DataAccessException e) {
+            // Typically rows for this range already sit in the default partition
+            log.warn("Could not create partition {}: {}", partition.name(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void setLockTimeout() {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '" + properties.getLockTimeout().toMillis() + "ms'");
+    }
+
+    private LocalDateTime periodStart(LocalDateTime time) {
+        LocalDate day = time.toLocalDate();
+        return switch (properties.getInterval()) {
+            case DAILY -> day.atStartOfDay();
+            case WEEKLY -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+        };
+    }
+
+    private LocalDateTime nextPeriod(LocalDateTime start) {
+        return switch (properties.getInterval()) {
+            case DAILY -> start.plusDays(1);
+            case WEEKLY -> start.plusWeeks(1);
+        };
+    }
+
+    private static LocalDateTime parseBound(String value) {
+        // Bounds print as 'yyyy-MM-dd HH:mm:ss', with fractional seconds only when non-zero
+        return LocalDateTime.parse(value.length() > 19 ? value.substring(0, 19) : value, BOUND_FORMAT);
+    }
+}
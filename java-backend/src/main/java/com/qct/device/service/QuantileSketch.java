@@ -0,0 +1,291 @@
+package com.qct.device.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable quantile sketch with a relative error guarantee, after DDSketch: values are
+ * counted in logarithmically sized buckets, so any quantile is answered within
+ * {@code relativeAccuracy} of a value actually recorded, and merging two sketches is adding
+ * their bucket counts, exactly as if every sample had been recorded in one of them.
+ *
+ * <p>Counts live in dense primitive arrays covering the range of bucket indexes seen, which
+ * stays small for a metric of one device; magnitudes below {@link #MIN_MAGNITUDE} count as
+ * zero. Not thread-safe.
+ */
+public final class QuantileSketch {
+
+    static final double MIN_MAGNITUDE = 1e-9;
+    private static final byte FORMAT = 1;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relativeAccuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value > MIN_MAGNITUDE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_MAGNITUDE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the samples of {@code other}, which must have the same relative accuracy.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of accuracy " + other.relativeAccuracy
+                    + " into " + relativeAccuracy);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * The value at quantile {@code q} (0 to 1), or {@code NaN} when the sketch is empty.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        double value;
+        if (rank < negative.total) {
+            // Most negative first, i.e. largest magnitude index first
+            value = -value(negative.indexAtRank(negative.total - 1 - rank));
+        } else if (rank < negative.total + zeroCount) {
+            value = 0;
+        } else {
+            value = value(positive.indexAtRank(rank - negative.total - zeroCount));
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Compact binary form: a header with accuracy and summary figures, then the non-empty
+     * buckets of each store as varint index deltas and counts.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        ByteBuffer header = ByteBuffer.allocate(1 + 4 * Double.BYTES);
+        header.put(FORMAT).putDouble(relativeAccuracy).putDouble(sum).putDouble(min).putDouble(max);
+        out.write(header.array(), 0, header.position());
+        writeVarLong(out, zeroCount);
+        positive.encode(out);
+        negative.encode(out);
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.get() != FORMAT) {
+            throw new IllegalArgumentException("Unknown sketch format " + bytes[0]);
+        }
+        QuantileSketch sketch = new QuantileSketch(in.getDouble());
+        sketch.sum = in.getDouble();
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.zeroCount = readVarLong(in);
+        sketch.positive.decode(in);
+        sketch.negative.decode(in);
+        sketch.count = sketch.zeroCount + sketch.positive.total + sketch.negative.total;
+        return sketch;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    /** Midpoint of the bucket in relative terms, which bounds the error by the accuracy. */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Bucket counts for a contiguous range of indexes starting at {@code offset}.
+     */
+    private static final class Store {
+
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        void add(int index, long n) {
+            ensureCovers(index, index);
+            counts[index - offset] += n;
+            total += n;
+        }
+
+        void merge(Store other) {
+            if (other.total == 0) {
+                return;
+            }
+            ensureCovers(other.offset, other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        /** Index of the bucket holding the sample of zero-based {@code rank}, lowest first. */
+        int indexAtRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return offset + i;
+                }
+            }
+            return offset + counts.length - 1;
+        }
+
+        private void ensureCovers(int low, int high) {
+            if (counts.length == 0) {
+                // Some headroom, since neighbouring samples usually land in neighbouring buckets
+                counts = new long[Math.max(high - low + 1, 32)];
+                offset = low - (counts.length - (high - low + 1)) / 2;
+                return;
+            }
+            int currentHigh = offset + counts.length - 1;
+            if (low >= offset && high <= currentHigh) {
+                return;
+            }
+            int newLow = Math.min(low, offset);
+            int newHigh = Math.max(high, currentHigh);
+            int length = newHigh - newLow + 1;
+            // Grow by at least half again so a drifting series does not copy on every sample
+            int grown = Math.max(length, counts.length + counts.length / 2);
+            int slack = grown - length;
+            if (low < offset) {
+                newLow -= slack;
+            }
+            long[] resized = new long[grown];
+            System.arraycopy(counts, 0, resized, offset - newLow, counts.length);
+            counts = resized;
+            offset = newLow;
+        }
+
+        void encode(ByteArrayOutputStream out) {
+            int buckets = 0;
+            for (long c : counts) {
+                if (c != 0) {
+                    buckets++;
+                }
+            }
+            writeVarLong(out, buckets);
+            int previous = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    int index = offset + i;
+                    int delta = index - previous;
+                    writeVarLong(out, (delta << 1) ^ (delta >> 31));
+                    writeVarLong(out, counts[i]);
+                    previous = index;
+                }
+            }
+        }
+
+        void decode(ByteBuffer in) {
+            int buckets = (int) readVarLong(in);
+            int[] indexes = new int[buckets];
+            long[] bucketCounts = new long[buckets];
+            int previous = 0;
+            for (int i = 0; i < buckets; i++) {
+                int zigzag = (int) readVarLong(in);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                indexes[i] = previous;
+                bucketCounts[i] = readVarLong(in);
+            }
+            if (buckets == 0) {
+                return;
+            }
+            offset = indexes[0];
+            counts = new long[indexes[buckets - 1] - offset + 1];
+            for (int i = 0; i < buckets; i++) {
+                counts[indexes[i] - offset] = bucketCounts[i];
+                total += bucketCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.qct.device.service;
+
+/**
+ * Time-ordered ring of raw samples for one device and metric type, held in two parallel
+ * primitive arrays so that storing and scanning samples allocates nothing.
+ *
+ * <p>The ring doubles its capacity up to a cap and then overwrites the oldest sample.
+ * Late samples are inserted in timestamp order, which keeps range lookups a binary search.
+ */
+class SampleRing {
+
+    static final int BYTES_PER_SAMPLE = Long.BYTES + Double.BYTES;
+
+    private long[] timestamps;
+    private double[] values;
+    private int head;
+    private int size;
+    private boolean released;
+
+    SampleRing(int capacity) {
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Adds a sample and drops samples older than {@code horizon}.
+     *
+     * @return bytes newly allocated by growing the ring, or {@code -1} if the ring was released
+     */
+    synchronized long add(long epochMillis, double value, long horizon, int maxCapacity) {
+        if (released) {
+            return -1;
+        }
+        expire(horizon);
+        if (epochMillis < horizon) {
+            return 0;
+        }
+        long grown = 0;
+        if (size == timestamps.length) {
+            if (timestamps.length < maxCapacity) {
+                grown = grow(Math.min(timestamps.length * 2, maxCapacity));
+            } else {
+                head = physical(1);
+                size--;
+            }
+        }
+
+        int position = size;
+        while (position > 0 && timestamps[physical(position - 1)] > epochMillis) {
+            int from = physical(position - 1);
+            int to = physical(position);
+            timestamps[to] = timestamps[from];
+            values[to] = values[from];
+            position--;
+        }
+        int slot = physical(position);
+        timestamps[slot] = epochMillis;
+        values[slot] = value;
+        size++;
+        return grown;
+    }
+
+    synchronized WindowSummary summarize(long since) {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = lowerBound(since); i < size; i++) {
+            double value = values[physical(i)];
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return count == 0 ? WindowSummary.EMPTY : new WindowSummary(count, sum, min, max);
+    }
+
+    /**
+     * Copies the newest {@code limit} samples at or after {@code since}, oldest first.
+     */
+    synchronized void copyRecent(long since, int limit, Samples target) {
+        int from = Math.max(lowerBound(since), size - limit);
+        int count = Math.max(0, size - from);
+        target.timestamps = new long[count];
+        target.values = new double[count];
+        for (int i = 0; i < count; i++) {
+            int slot = physical(from + i);
+            target.timestamps[i] = timestamps[slot];
+            target.values[i] = values[slot];
+        }
+    }
+
+    /**
+     * Drops samples older than {@code horizon}.
+     *
+     * @return {@code true} if the ring is now empty
+     */
+    synchronized boolean expire(long horizon) {
+        while (size > 0 && timestamps[head] < horizon) {
+            head = physical(1);
+            size--;
+        }
+        return size == 0;
+    }
+
+    /**
+     * Frees the buffers; later {@link #add} calls fail so writers move to a fresh ring.
+     *
+     * @return the bytes freed
+     */
+    synchronized long release() {
+        if (released) {
+            return 0;
+        }
+        released = true;
+        long freed = bytes();
+        timestamps = new long[0];
+        values = new double[0];
+        head = 0;
+        size = 0;
+        return freed;
+    }
+
+    synchronized long bytes() {
+        return (long) timestamps.length * BYTES_PER_SAMPLE;
+    }
+
+    private long grow(int capacity) {
+        long[] grownTimestamps = new long[capacity];
+        double[] grownValues = new double[capacity];
+        for (int i = 0; i < size; i++) {
+            int slot = physical(i);
+            grownTimestamps[i] = timestamps[slot];
+            grownValues[i] = values[slot];
+        }
+        long added = (long) (capacity - timestamps.length) * BYTES_PER_SAMPLE;
+        timestamps = grownTimestamps;
+        values = grownValues;
+        head = 0;
+        return added;
+    }
+
+    /** First logical index whose timestamp is at or after {@code since}. */
+    private int lowerBound(long since) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] < since) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int physical(int logical) {
+        int index = head + logical;
+        return index >= timestamps.length ? index - timestamps.length : index;
+    }
+
+    static final class Samples {
+        long[] timestamps;
+        double[] values;
+    }
+}
@@ -0,0 +1,36 @@
+package com.qct.device.service;
+
+import lombok.Value;
+
+/**
+ * Count/sum/min/max of the samples that fall inside a window.
+ */
+@Value
+public class WindowSummary {
+
+    public static final WindowSummary EMPTY = new WindowSummary(0, 0, Double.NaN, Double.NaN);
+
+    long count;
+    double sum;
+    double min;
+    double max;
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    WindowSummary merge(WindowSummary other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        return new WindowSummary(count + other.count, sum + other.sum,
+                Math.min(min, other.min), Math.max(max, other.max));
+    }
+}
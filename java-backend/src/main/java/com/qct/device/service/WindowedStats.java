@@ -0,0 +1,89 @@
+package com.qct.device.service;
+
+import java.util.Arrays;
+
+/**
+ * Running count/sum/min/max for one device and metric type, kept as a ring of time buckets
+ * per {@link MetricWindow}. Updates and reads touch a fixed number of slots, independent of
+ * how many samples were recorded.
+ */
+class WindowedStats {
+
+    private static final MetricWindow[] WINDOWS = MetricWindow.values();
+
+    private final long[][] bucketIndex = new long[WINDOWS.length][];
+    private final long[][] counts = new long[WINDOWS.length][];
+    private final double[][] sums = new double[WINDOWS.length][];
+    private final double[][] mins = new double[WINDOWS.length][];
+    private final double[][] maxes = new double[WINDOWS.length][];
+
+    private long lastSampleMillis;
+
+    WindowedStats() {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            int n = WINDOWS[w].getBuckets();
+            bucketIndex[w] = new long[n];
+            counts[w] = new long[n];
+            sums[w] = new double[n];
+            mins[w] = new double[n];
+            maxes[w] = new double[n];
+            Arrays.fill(bucketIndex[w], Long.MIN_VALUE);
+        }
+    }
+
+    synchronized void add(long epochMillis, double value) {
+        add(epochMillis, 1, value, value, value);
+    }
+
+    /**
+     * Folds a pre-aggregated group of samples that all belong to the bucket containing
+     * {@code epochMillis}.
+     */
+    synchronized void add(long epochMillis, long count, double sum, double min, double max) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            long index = Math.floorDiv(epochMillis, WINDOWS[w].getBucketMillis());
+            int slot = (int) Math.floorMod(index, (long) WINDOWS[w].getBuckets());
+            if (bucketIndex[w][slot] > index) {
+                // Older than anything the ring still holds for this slot
+                continue;
+            }
+            if (bucketIndex[w][slot] != index) {
+                bucketIndex[w][slot] = index;
+                counts[w][slot] = 0;
+                sums[w][slot] = 0;
+                mins[w][slot] = Double.POSITIVE_INFINITY;
+                maxes[w][slot] = Double.NEGATIVE_INFINITY;
+            }
+            counts[w][slot] += count;
+            sums[w][slot] += sum;
+            mins[w][slot] = Math.min(mins[w][slot], min);
+            maxes[w][slot] = Math.max(maxes[w][slot], max);
+        }
+        lastSampleMillis = Math.max(lastSampleMillis, epochMillis);
+    }
+
+    synchronized WindowSummary summarize(MetricWindow window, long nowMillis) {
+        int w = window.ordinal();
+        long newest = Math.floorDiv(nowMillis, window.getBucketMillis());
+        long oldest = newest - window.getBuckets() + 1;
+
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < window.getBuckets(); slot++) {
+            long index = bucketIndex[w][slot];
+            if (index >= oldest && index <= newest && counts[w][slot] > 0) {
+                count += counts[w][slot];
+                sum += sums[w][slot];
+                min = Math.min(min, mins[w][slot]);
+                max = Math.max(max, maxes[w][slot]);
+            }
+        }
+        return count == 0 ? WindowSummary.EMPTY : new WindowSummary(count, sum, min, max);
+    }
+
+    synchronized long getLastSampleMillis() {
+        return lastSampleMillis;
+    }
+}
@@ -0,0 +1,185 @@
+package com.qct.device;
+
+import com.qct.device.admission.AdmissionClass;
+import com.qct.device.admission.AdmissionControl;
+import com.qct.device.admission.AdmissionRejectedException;
+import com.qct.device.config.AdmissionProperties;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private final AdmissionProperties properties = new AdmissionProperties();
+    private final MockClock clock = new MockClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties.Lane read = properties.getRead();
+        read.setInitialLimit(1);
+        read.setMinLimit(1);
+        read.setMaxLimit(1);
+        read.setMaxQueueTime(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void acquire_ShouldHandFreedSlotsToWaitingOemsInTurn() throws Exception {
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+        AdmissionControl.Permit first = admission.acquire(AdmissionClass.READ, "OEM_A");
+
+        BlockingQueue<Admitted> admitted = new LinkedBlockingQueue<>();
+        // OEM_A queues two requests before OEM_B queues one
+        List<Thread> waiters = new ArrayList<>();
+        for (String name : List.of("A2:OEM_A", "A3:OEM_A", "B1:OEM_B")) {
+            String[] parts = name.split(":");
+            Thread waiter = Thread.ofVirtual().start(() ->
+                    admitted.add(new Admitted(parts[0], admission.acquire(AdmissionClass.READ, parts[1]))));
+            waiters.add(waiter);
+            awaitQueued(waiters.size());
+        }
+
+        first.release(true);
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Admitted next = admitted.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next, "Waiter was never admitted");
+            order.add(next.name);
+            next.permit.release(true);
+        }
+        assertEquals(List.of("A2", "B1", "A3"), order);
+        assertEquals(0, queued());
+    }
+
+    @Test
+    void acquire_ShouldShedAtOnceWhenTheOemHasTooManyWaiting() throws Exception {
+        properties.getRead().setMaxQueuedPerOem(1);
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+        AdmissionControl.Permit first = admission.acquire(AdmissionClass.READ, "OEM_A");
+        BlockingQueue<AdmissionControl.Permit> admitted = new LinkedBlockingQueue<>();
+        Thread.ofVirtual().start(() -> admitted.add(admission.acquire(AdmissionClass.READ, "OEM_A")));
+        awaitQueued(1);
+
+        long start = System.nanoTime();
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class,
+                () -> admission.acquire(AdmissionClass.READ, "OEM_A"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "Should not have waited");
+        assertEquals(AdmissionClass.READ, rejected.getAdmissionClass());
+        assertTrue(rejected.getRetryAfter().toSeconds() >= 1);
+        assertEquals(1.0, meterRegistry.get("qct.admission.shed").tag("class", "read").tag("reason", "oem_queue_full").counter().count());
+
+        // Other OEMs still get in line
+        Thread.ofVirtual().start(() -> admitted.add(admission.acquire(AdmissionClass.READ, "OEM_B")));
+        awaitQueued(2);
+        first.release(true);
+        admitted.poll(5, TimeUnit.SECONDS).release(true);
+        assertNotNull(admitted.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void acquire_ShouldKeepSlotsFreeBeyondAnOemsShare() throws Exception {
+        AdmissionProperties.Lane read = properties.getRead();
+        read.setInitialLimit(4);
+        read.setMinLimit(4);
+        read.setMaxLimit(4);
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+        AdmissionControl.Permit a1 = admission.acquire(AdmissionClass.READ, "OEM_A");
+        admission.acquire(AdmissionClass.READ, "OEM_A");
+
+        // OEM_A holds half the limit: its next request waits although slots are free
+        BlockingQueue<AdmissionControl.Permit> admitted = new LinkedBlockingQueue<>();
+        Thread.ofVirtual().start(() -> admitted.add(admission.acquire(AdmissionClass.READ, "OEM_A")));
+        awaitQueued(1);
+        admission.acquire(AdmissionClass.READ, "OEM_B");
+        assertTrue(admitted.isEmpty());
+
+        a1.release(true);
+        assertNotNull(admitted.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void acquire_ShouldShedWhenNoSlotFreesInTime() {
+        properties.getRead().setMaxQueueTime(Duration.ofMillis(50));
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+        admission.acquire(AdmissionClass.READ, "OEM_A");
+
+        assertThrows(AdmissionRejectedException.class, () -> admission.acquire(AdmissionClass.READ, "OEM_B"));
+        assertEquals(1.0, meterRegistry.get("qct.admission.shed").tag("class", "read").tag("reason", "timeout").counter().count());
+        assertEquals(0, queued());
+
+        // Lanes are separate: reads over capacity do not hold up ingest
+        admission.acquire(AdmissionClass.INGEST, "OEM_A").release(true);
+    }
+
+    @Test
+    void acquire_ShouldKeepExportsInAFixedLaneOfTheirOwn() {
+        properties.getExport().setMaxQueueTime(Duration.ofMillis(50));
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+        List<AdmissionControl.Permit> exports = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            exports.add(admission.acquire(AdmissionClass.EXPORT, i % 2 == 0 ? "OEM_A" : "OEM_B"));
+        }
+
+        assertThrows(AdmissionRejectedException.class, () -> admission.acquire(AdmissionClass.EXPORT, "OEM_C"));
+        // Long-running exports leave the read slots alone
+        admission.acquire(AdmissionClass.READ, "OEM_C").release(true);
+
+        exports.forEach(permit -> permit.release(false));
+        assertEquals(8, admission.limit(AdmissionClass.EXPORT));
+    }
+
+    @Test
+    void limit_ShouldGrowWhileLatencyHoldsAndShrinkWhenItRises() {
+        AdmissionProperties.Lane ingest = properties.getIngest();
+        ingest.setInitialLimit(10);
+        ingest.setMinLimit(2);
+        ingest.setMaxLimit(100);
+        ingest.setMaxOemShare(1.0);
+        AdmissionControl admission = new AdmissionControl(properties, meterRegistry);
+
+        runAtFullLimit(admission, Duration.ofMillis(10), 100);
+        int grown = admission.limit(AdmissionClass.INGEST);
+        assertTrue(grown > 10, "Limit should grow while latency is steady, was " + grown);
+
+        runAtFullLimit(admission, Duration.ofMillis(200), 20);
+        int shrunk = admission.limit(AdmissionClass.INGEST);
+        assertTrue(shrunk < grown, "Limit should shrink when latency rises, was " + shrunk);
+    }
+
+    private void runAtFullLimit(AdmissionControl admission, Duration latency, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            List<AdmissionControl.Permit> permits = new ArrayList<>();
+            int limit = admission.limit(AdmissionClass.INGEST);
+            for (int i = 0; i < limit; i++) {
+                permits.add(admission.acquire(AdmissionClass.INGEST, "OEM_A"));
+            }
+            clock.add(latency);
+            permits.forEach(permit -> permit.release(true));
+        }
+    }
+
+    private double queued() {
+        return meterRegistry.get("qct.admission.queued").tag("class", "read").gauge().value();
+    }
+
+    private void awaitQueued(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && queued() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, queued());
+    }
+
+    private record Admitted(String name, AdmissionControl.Permit permit) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.qct.device;
+
+import com.qct.device.cache.CacheWriteMode;
+import com.qct.device.config.MetricListingProperties;
+import com.qct.device.config.TwoTierCacheProperties;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.event.DeviceChangedEvent;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceOem;
+import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.AnalyticsCacheUpdater;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AnalyticsCacheUpdaterTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+    private final TwoTierCacheProperties properties = new TwoTierCacheProperties();
+    private final MetricListingProperties listingProperties = new MetricListingProperties();
+    private final LocalDateTime now = LocalDateTime.now();
+
+    private AnalyticsCacheUpdater updater;
+
+    @BeforeEach
+    void setUp() {
+        updater = new AnalyticsCacheUpdater(cacheManager, deviceRepository, properties, listingProperties,
+                new SimpleMeterRegistry());
+        when(deviceRepository.findOemsByDeviceIds(any())).thenReturn(List.of(deviceOem("DEV001", "OEM001")));
+        cacheManager.getCache("deviceMetrics").put("DEV001", List.of(response(1L, now.minusMinutes(1))));
+        cacheManager.getCache("oemAnalytics").put("OEM001", List.of(response(1L, now.minusMinutes(1))));
+        cacheManager.getCache("performanceMetrics").put("DEV001", response(null, now));
+    }
+
+    @Test
+    void flush_ShouldAppendNewMetricsInAppendMode() {
+        properties.getWrite().setMode(CacheWriteMode.APPEND);
+
+        updater.onMetricsRecorded(new MetricsRecordedEvent(List.of(metric(2L, now.minusSeconds(30)))));
+        updater.onMetricsRecorded(new MetricsRecordedEvent(List.of(metric(3L, now))));
+        updater.flush();
+
+        assertEquals(List.of(3L, 2L, 1L), ids(cacheManager.getCache("deviceMetrics").get("DEV001").get()));
+        assertEquals(List.of(3L, 2L, 1L), ids(cacheManager.getCache("oemAnalytics").get("OEM001").get()));
+        assertNull(cacheManager.getCache("performanceMetrics").get("DEV001"));
+    }
+
+    @Test
+    void flush_ShouldOrderLikeTheListingsAndDropMetricsOutsideTheWindow() {
+        properties.getWrite().setMode(CacheWriteMode.APPEND);
+        listingProperties.setDefaultWindow(Duration.ofHours(1));
+        cacheManager.getCache("deviceMetrics").put("DEV001",
+                List.of(response(2L, now.minusMinutes(1)), response(1L, now.minusHours(2))));
+
+        updater.onMetricsRecorded(new MetricsRecordedEvent(List.of(metric(3L, now), metric(4L, now))));
+        updater.flush();
+
+        // Same timestamp: higher id first, as ORDER BY timestamp DESC, id DESC lists them
+        assertEquals(List.of(4L, 3L, 2L), ids(cacheManager.getCache("deviceMetrics").get("DEV001").get()));
+    }
+
+    @Test
+    void flush_ShouldEvictWhenMetricCannotBeMergedExactly() {
+        properties.getWrite().setMode(CacheWriteMode.APPEND);
+
+        updater.onMetricsRecorded(new MetricsRecordedEvent(List.of(metric(null, now))));
+        updater.flush();
+
+        assertNull(cacheManager.getCache("deviceMetrics").get("DEV001"));
+        assertNull(cacheManager.getCache("oemAnalytics").get("OEM001"));
+    }
+
+    @Test
+    void flush_ShouldEvictWhenCachedListAlreadyHoldsTheMetrics() {
+        properties.getWrite().setMode(CacheWriteMode.APPEND);
+        // Reloaded after the ingest commit, before the flush
+        cacheManager.getCache("deviceMetrics").put("DEV001",
+                List.of(response(2L, now), response(1L, now.minusMinutes(1))));
+
+        updater.onMetricsRecorded(new MetricsRecordedEvent(List.of(metric(2L, now))));
+        updater.flush();
+
+        assertNull(cacheManager.getCache("deviceMetrics").get("DEV001"));
+        assertEquals(List.of(2L, 1L), ids(cacheManager.getCache("oemAnalytics").get("OEM001").get()));
+    }
+
+    @Test
+    void flush_ShouldEvictDeviceAndOemEntriesOnDeviceChange() {
+        updater.onDeviceChanged(new DeviceChangedEvent("DEV001", "OEM001", null));
+        updater.flush();
+
+        assertNull(cacheManager.getCache("deviceMetrics").get("DEV001"));
+        assertNull(cacheManager.getCache("oemAnalytics").get("OEM001"));
+        assertNull(cacheManager.getCache("performanceMetrics").get("DEV001"));
+    }
+
+    private static List<Long> ids(Object cached) {
+        return ((List<?>) cached).stream().map(item -> ((AnalyticsResponse) item).getId()).toList();
+    }
+
+    private static AnalyticsResponse response(Long id, LocalDateTime timestamp) {
+        return AnalyticsResponse.builder().id(id).deviceId("DEV001").timestamp(timestamp).build();
+    }
+
+    private static DeviceMetric metric(Long id, LocalDateTime timestamp) {
+        DeviceMetric metric = new DeviceMetric();
+        metric.setId(id);
+        metric.setDeviceId("DEV001");
+        metric.setMetricType("CPU_USAGE");
+        metric.setValue(new BigDecimal("50"));
+        metric.setTimestamp(timestamp);
+        return metric;
+    }
+
+    private static DeviceOem deviceOem(String deviceId, String oemId) {
+        return new DeviceOem() {
+            @Override
+            public String getDeviceId() {
+                return deviceId;
+            }
+
+            @Override
+            public String getOemId() {
+                return oemId;
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package com.qct.device;
+
+import com.qct.device.controller.AnalyticsController;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.BatchIngestResponse;
+import com.qct.device.dto.OemAggregateResponse;
+import com.qct.device.dto.PercentileSummaryResponse;
+import com.qct.device.security.SecurityConfig;
+import com.qct.device.service.AnalyticsService;
+import com.qct.device.service.HotWindowMetricStore;
+import com.qct.device.service.LiveMetricStream;
+import com.qct.device.service.MetricIngestService;
+import com.qct.device.service.MetricRollupService;
+import com.qct.device.service.MetricSketchService;
+import com.qct.device.service.OemAggregationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(AnalyticsController.class)
+@Import(SecurityConfig.class)
+@WithMockUser
+class AnalyticsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private AnalyticsService analyticsService;
+
+    @MockBean
+    private MetricIngestService metricIngestService;
+
+    @MockBean
+    private MetricRollupService metricRollupService;
+
+    @MockBean
+    private MetricSketchService metricSketchService;
+
+    @MockBean
+    private OemAggregationService oemAggregationService;
+
+    @MockBean
+    private HotWindowMetricStore hotWindowMetricStore;
+
+    @MockBean
+    private LiveMetricStream liveMetricStream;
+
+    @Test
+    void recordMetrics_ShouldAcceptNdjsonBatch() throws Exception {
+        when(metricIngestService.ingest(any(InputStream.class))).thenReturn(BatchIngestResponse.builder()
+                .received(2)
+                .accepted(2)
+                .build());
+
+        mockMvc.perform(post("/api/v1/analytics/metrics/batch")
+                .contentType(AnalyticsController.APPLICATION_NDJSON_VALUE)
+                .content("{\"deviceId\":\"DEV001\",\"metricType\":\"CPU_USAGE\",\"value\":1}\n" +
+                        "{\"deviceId\":\"DEV001\",\"metricType\":\"CPU_USAGE\",\"value\":2}\n"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2));
+    }
+
+    @Test
+    void recordMetrics_ShouldReturn429WhenThrottled() throws Exception {
+        when(metricIngestService.ingest(any(InputStream.class))).thenReturn(BatchIngestResponse.builder()
+                .received(1)
+                .throttled(true)
+                .resumeFrom(0L)
+                .build());
+
+        mockMvc.perform(post("/api/v1/analytics/metrics/batch")
+                .contentType("application/json")
+                .content("[{\"deviceId\":\"DEV001\",\"metricType\":\"CPU_USAGE\",\"value\":1}]"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.resumeFrom").value(0));
+    }
+
+    @Test
+    void getDeviceMetrics_ShouldTagFromBodyAndCheckAgainstStoredVersion() throws Exception {
+        when(analyticsService.getDeviceMetrics("DEV001", null)).thenReturn(List.of(
+                AnalyticsResponse.builder().id(9L).deviceId("DEV001").build(),
+                AnalyticsResponse.builder().id(7L).deviceId("DEV001").build()));
+
+        mockMvc.perform(get("/api/v1/analytics/device/DEV001"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"2-9-7\""));
+        verify(analyticsService, never()).getDeviceMetricsVersion(any(), any());
+
+        when(analyticsService.getDeviceMetricsVersion("DEV001", null)).thenReturn("W/\"2-9-7\"");
+        mockMvc.perform(get("/api/v1/analytics/device/DEV001").header("If-None-Match", "W/\"1-5-5\", W/\"2-9-7\""))
+                .andExpect(status().isNotModified());
+        verify(analyticsService, times(1)).getDeviceMetrics("DEV001", null);
+    }
+
+    @Test
+    void getDeviceMetricsPage_ShouldRejectInvalidCursor() throws Exception {
+        when(analyticsService.getDeviceMetricsPage(eq("DEV001"), isNull(), eq("bogus"), anyInt()))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: bogus"));
+
+        mockMvc.perform(get("/api/v1/analytics/device/DEV001/page").param("cursor", "bogus"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor: bogus"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamDeviceMetrics_ShouldWriteNdjsonSinceTheRequestedTime() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<AnalyticsResponse> sink = invocation.getArgument(2);
+            sink.accept(AnalyticsResponse.builder().id(2L).deviceId("DEV001").value(new BigDecimal("2")).build());
+            sink.accept(AnalyticsResponse.builder().id(1L).deviceId("DEV001").value(new BigDecimal("1")).build());
+            return null;
+        }).when(analyticsService).streamDeviceMetrics(eq("DEV001"), eq(LocalDateTime.of(2024, 1, 1, 0, 0)), any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/analytics/device/DEV001/stream").param("since", "2024-01-01T00:00:00"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(AnalyticsController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string(matchesPattern("(?s)\\{\"id\":2,.*\\}\n\\{\"id\":1,.*\\}")));
+    }
+
+    @Test
+    void subscribeLive_ShouldReturn503WhenSubscriptionsAreExhausted() throws Exception {
+        when(liveMetricStream.subscribe(any(), any(), any(), any(), any())).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/analytics/live").param("deviceId", "DEV001"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"));
+    }
+
+    @Test
+    void getFleetPercentiles_ShouldPassRequestedQuantiles() throws Exception {
+        when(metricSketchService.getFleetPercentiles(eq("CPU_USAGE"), any(), any(), eq(List.of(0.5, 0.999))))
+                .thenReturn(PercentileSummaryResponse.builder()
+                        .scope("FLEET")
+                        .metrics(List.of(PercentileSummaryResponse.MetricPercentiles.builder()
+                                .metricType("CPU_USAGE")
+                                .count(10L)
+                                .percentiles(Map.of("p50", new BigDecimal("41.00"), "p99.9", new BigDecimal("97.50")))
+                                .build()))
+                        .build());
+
+        mockMvc.perform(get("/api/v1/analytics/percentiles")
+                        .param("metricType", "CPU_USAGE")
+                        .param("quantile", "0.5", "0.999"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.metrics[0].percentiles['p99.9']").value(97.5));
+    }
+
+    @Test
+    void getDevicePercentiles_ShouldRejectInvalidRange() throws Exception {
+        when(metricSketchService.getDevicePercentiles(eq("DEV001"), isNull(), any(), any(), isNull()))
+                .thenThrow(new IllegalArgumentException("'from' must be before 'to'"));
+
+        mockMvc.perform(get("/api/v1/analytics/device/DEV001/percentiles")
+                        .param("from", "2024-01-02T00:00:00")
+                        .param("to", "2024-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getOemAggregate_ShouldReturnTotalsPerDeviceAndMetricType() throws Exception {
+        OemAggregateResponse.MetricTotals cpu = OemAggregateResponse.MetricTotals.builder()
+                .metricType("CPU_USAGE")
+                .count(1440L)
+                .averageValue(new BigDecimal("41.20"))
+                .minValue(new BigDecimal("0.50"))
+                .maxValue(new BigDecimal("99.80"))
+                .lastValue(new BigDecimal("37.10"))
+                .build();
+        when(oemAggregationService.aggregate(eq("OEM001"), eq("CPU_USAGE"), any(), any()))
+                .thenReturn(OemAggregateResponse.builder()
+                        .oemId("OEM001")
+                        .deviceCount(1)
+                        .metrics(List.of(cpu))
+                        .devices(List.of(OemAggregateResponse.DeviceTotals.builder()
+                                .deviceId("DEV001")
+                                .metrics(List.of(cpu))
+                                .build()))
+                        .build());
+
+        mockMvc.perform(get("/api/v1/analytics/oem/OEM001/aggregate")
+                        .param("metricType", "CPU_USAGE")
+                        .param("from", "2024-01-01T00:00:00")
+                        .param("to", "2024-01-02T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deviceCount").value(1))
+                .andExpect(jsonPath("$.metrics[0].count").value(1440))
+                .andExpect(jsonPath("$.devices[0].metrics[0].lastValue").value(37.1));
+    }
+}
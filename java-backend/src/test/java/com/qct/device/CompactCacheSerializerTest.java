@@ -0,0 +1,83 @@
+package com.qct.device;
+
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.qct.device.cache.CacheCodec;
+import com.qct.device.cache.CompactCacheSerializer;
+import com.qct.device.dto.AnalyticsResponse;
+import com.qct.device.dto.DeviceResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactCacheSerializerTest {
+
+    private final GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer()
+            .configure(mapper -> mapper.registerModule(new JavaTimeModule()));
+
+    private final CompactCacheSerializer serializer = new CompactCacheSerializer(json, CacheCodec.BINARY, 2_048);
+
+    @Test
+    void serialize_ShouldRoundTripAnalyticsListsCompactly() {
+        List<AnalyticsResponse> metrics = metrics(2_000);
+
+        byte[] binary = serializer.serialize(metrics);
+
+        assertEquals(metrics, serializer.deserialize(binary));
+        assertTrue(binary.length * 10 < json.serialize(metrics).length,
+                "binary " + binary.length + " vs json " + json.serialize(metrics).length);
+    }
+
+    @Test
+    void serialize_ShouldPreserveNullsAndEdgeValues() {
+        AnalyticsResponse summary = AnalyticsResponse.builder()
+                .deviceId("DEV001")
+                .metricType("PERFORMANCE_SUMMARY")
+                .averageValue(new BigDecimal("123456789012345678901234567890.123"))
+                .minValue(new BigDecimal("-0.5"))
+                .totalCount(0L)
+                .timestamp(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123_456_789))
+                .build();
+        DeviceResponse device = DeviceResponse.builder()
+                .deviceId("DEV001")
+                .oemId("OEM001")
+                .status("ACTIVE")
+                .configuration("{\"mode\":\"ünïcödé\"}")
+                .build();
+
+        assertEquals(summary, serializer.deserialize(serializer.serialize(summary)));
+        assertEquals(device, serializer.deserialize(serializer.serialize(device)));
+    }
+
+    @Test
+    void deserialize_ShouldReadJsonWrittenByOlderReleases() {
+        List<AnalyticsResponse> metrics = metrics(3);
+        byte[] legacy = json.serialize(new ArrayList<>(metrics));
+
+        assertEquals(metrics, serializer.deserialize(legacy));
+        // JSON-mode caches keep writing a format every release understands
+        assertEquals(metrics, serializer.deserialize(
+                new CompactCacheSerializer(json, CacheCodec.JSON, 2_048).serialize(List.copyOf(metrics))));
+    }
+
+    private static List<AnalyticsResponse> metrics(int count) {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<AnalyticsResponse> metrics = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            metrics.add(AnalyticsResponse.builder()
+                    .id(100_000L - i)
+                    .deviceId("DEV00" + (i % 3))
+                    .metricType(i % 2 == 0 ? "CPU_USAGE" : "MEMORY_USAGE")
+                    .value(BigDecimal.valueOf(i % 10_000, 2))
+                    .unit(i % 5 == 0 ? null : "%")
+                    .timestamp(start.minusNanos(i * 1_234_000L))
+                    .build());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,93 @@
+package com.qct.device;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qct.device.config.DeviceConfigurationProperties;
+import com.qct.device.service.DeviceConfigurationStore;
+import com.qct.device.service.DeviceConfigurationStore.StoredConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceConfigurationStoreTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DeviceConfigurationStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new DeviceConfigurationStore(jdbcTemplate, new ObjectMapper(), new DeviceConfigurationProperties(),
+                transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void idOf_ShouldStoreEachDistinctContentOnce() {
+        when(jdbcTemplate.queryForList(startsWith("INSERT"), eq(Long.class), any(), eq("{\"cpu\":\"870\"}"), any()))
+                .thenReturn(List.of(7L));
+        when(jdbcTemplate.queryForList(startsWith("INSERT"), eq(Long.class), any(), eq("free text"), any()))
+                .thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(startsWith("SELECT"), eq(Long.class), any(Object.class))).thenReturn(3L);
+
+        assertEquals(7L, store.idOf("{\"cpu\":\"870\"}"));
+        assertEquals(7L, store.idOf(new String("{\"cpu\":\"870\"}")));
+        // Already stored, by an earlier run or another instance
+        assertEquals(3L, store.idOf("free text"));
+        assertNull(store.idOf(null));
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Long.class), any(), any(), any());
+
+        // Written configurations are served from memory, parsed when they are JSON
+        StoredConfiguration json = store.find(7L).orElseThrow();
+        assertEquals("870", json.parsed().get("cpu").asText());
+        assertNull(store.find(3L).orElseThrow().parsed());
+        verify(jdbcTemplate, never()).query(any(PreparedStatementCreator.class), any(RowMapper.class));
+    }
+
+    @Test
+    void idsOf_ShouldStoreEachDistinctContentOnce() {
+        when(jdbcTemplate.queryForList(startsWith("INSERT"), eq(Long.class), any(), any(), any())).thenReturn(List.of(5L));
+
+        Map<String, Long> ids = store.idsOf(Arrays.asList("{\"cpu\":\"870\"}", null, "{\"cpu\":\"870\"}"));
+
+        assertEquals(5L, ids.get("{\"cpu\":\"870\"}"));
+        assertTrue(ids.containsKey(null));
+        assertNull(ids.get(null));
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(Long.class), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void findAll_ShouldLoadOnlyUncachedIdsInOneQuery() {
+        when(jdbcTemplate.queryForList(startsWith("INSERT"), eq(Long.class), any(), any(), any())).thenReturn(List.of(1L));
+        store.idOf("{\"ram\":\"8GB\"}");
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(RowMapper.class)))
+                .thenReturn(List.of(new StoredConfiguration(2L, "{\"ram\":\"12GB\"}", null)));
+
+        Map<Long, StoredConfiguration> found = store.findAll(Arrays.asList(1L, 2L, 2L, 9L, null));
+
+        assertEquals(Set.of(1L, 2L), found.keySet());
+        assertEquals("{\"ram\":\"8GB\"}", found.get(1L).content());
+        assertEquals("{\"ram\":\"12GB\"}", store.contentOf(2L));
+        verify(jdbcTemplate, times(1)).query(any(PreparedStatementCreator.class), any(RowMapper.class));
+    }
+}
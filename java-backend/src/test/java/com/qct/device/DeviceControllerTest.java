@@ -2,24 +2,41 @@ package com.qct.device;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.qct.device.controller.DeviceController;
+import com.qct.device.dto.BulkProvisionResponse;
 import com.qct.device.dto.DeviceRequest;
 import com.qct.device.dto.DeviceResponse;
+import com.qct.device.dto.StatusJobResponse;
+import com.qct.device.dto.StatusTransitionRequest;
+import com.qct.device.security.SecurityConfig;
+import com.qct.device.service.DeviceProvisioningService;
 import com.qct.device.service.DeviceService;
+import com.qct.device.service.DeviceStatusJobService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.CannotCreateTransactionException;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(DeviceController.class)
+@Import(SecurityConfig.class)
+@WithMockUser
 class DeviceControllerTest {
 
     @Autowired
@@ -28,6 +45,12 @@ class DeviceControllerTest {
     @MockBean
     private DeviceService deviceService;
 
+    @MockBean
+    private DeviceProvisioningService deviceProvisioningService;
+
+    @MockBean
+    private DeviceStatusJobService statusJobService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -55,6 +78,24 @@ class DeviceControllerTest {
                 .andExpect(jsonPath("$.status").value("ACTIVE"));
     }
 
+    @Test
+    void provisionDevices_ShouldReadCsvBody() throws Exception {
+        BulkProvisionResponse response = BulkProvisionResponse.builder()
+                .received(1)
+                .inserted(1)
+                .errors(List.of())
+                .build();
+
+        when(deviceProvisioningService.provision(any(InputStream.class), eq(DeviceProvisioningService.Format.CSV)))
+                .thenReturn(response);
+
+        mockMvc.perform(post("/api/v1/devices/bulk")
+                .contentType("text/csv;charset=UTF-8")
+                .content("deviceId,oemId,deviceType\nDEV001,SAMSUNG,SMARTPHONE\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(1));
+    }
+
     @Test
     void getDevice_ShouldReturnDevice_WhenExists() throws Exception {
         DeviceResponse response = DeviceResponse.builder()
@@ -69,6 +110,84 @@ class DeviceControllerTest {
                 .andExpect(jsonPath("$.deviceId").value("DEV001"));
     }
 
+    @Test
+    void getDevice_ShouldReturnNotModified_WhenTagMatches() throws Exception {
+        DeviceResponse response = DeviceResponse.builder()
+                .deviceId("DEV001")
+                .updatedAt(LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_789))
+                .build();
+        when(deviceService.getDevice("DEV001")).thenReturn(Optional.of(response));
+
+        String eTag = mockMvc.perform(get("/api/v1/devices/DEV001"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"1-2024-01-01T12:00:00.123\""))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/v1/devices/DEV001").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void getOemDevices_ShouldAnswerMatchingTagWithoutLoadingDevices() throws Exception {
+        when(deviceService.getDevicesByOemVersion("OEM001")).thenReturn("W/\"2-2024-01-01T12:00\"");
+
+        mockMvc.perform(get("/api/v1/devices/oem/OEM001").header("If-None-Match", "\"2-2024-01-01T12:00\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"2-2024-01-01T12:00\""));
+        verify(deviceService, never()).getDevicesByOem(any());
+
+        // A device changed since
+        when(deviceService.getDevicesByOemVersion("OEM001")).thenReturn("W/\"2-2024-01-02T08:30\"");
+        when(deviceService.getDevicesByOem("OEM001")).thenReturn(List.of(
+                DeviceResponse.builder().deviceId("DEV001").updatedAt(LocalDateTime.of(2024, 1, 1, 12, 0)).build(),
+                DeviceResponse.builder().deviceId("DEV002").updatedAt(LocalDateTime.of(2024, 1, 2, 8, 30)).build()));
+
+        mockMvc.perform(get("/api/v1/devices/oem/OEM001").header("If-None-Match", "W/\"2-2024-01-01T12:00\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"2-2024-01-02T08:30\""))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void checkDevice_ShouldReturnNotFound_WhenUnknown() throws Exception {
+        when(deviceService.deviceExists("DEV404")).thenReturn(false);
+
+        mockMvc.perform(head("/api/v1/devices/DEV404"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getOemDevices_ShouldReturn503WhenNoConnectionIsFree() throws Exception {
+        when(deviceService.getDevicesByOem("OEM001"))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager for transaction"));
+
+        mockMvc.perform(get("/api/v1/devices/oem/OEM001"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    void submitStatusJob_ShouldAcceptAndPointAtTheJob() throws Exception {
+        StatusJobResponse job = StatusJobResponse.builder()
+                .jobId("job-1")
+                .state(StatusJobResponse.State.QUEUED)
+                .status("INACTIVE")
+                .build();
+        when(statusJobService.submit(any(StatusTransitionRequest.class))).thenReturn(Optional.of(job));
+
+        mockMvc.perform(post("/api/v1/devices/status-jobs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"INACTIVE\",\"oemId\":\"OEM001\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/devices/status-jobs/job-1"))
+                .andExpect(jsonPath("$.state").value("QUEUED"));
+
+        when(statusJobService.find("job-2")).thenReturn(Optional.empty());
+        mockMvc.perform(get("/api/v1/devices/status-jobs/job-2"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void healthCheck_ShouldReturnHealthy() throws Exception {
         mockMvc.perform(get("/api/v1/devices/health"))
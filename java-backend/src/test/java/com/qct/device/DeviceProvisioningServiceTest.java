@@ -0,0 +1,148 @@
+package com.qct.device;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qct.device.config.ProvisioningProperties;
+import com.qct.device.dto.BulkProvisionResponse;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.repository.DeviceOem;
+import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.DeviceConfigurationStore;
+import com.qct.device.service.DeviceProvisioningService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceProvisioningServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceConfigurationStore configurationStore;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DeviceProvisioningService provisioningService;
+
+    @BeforeEach
+    void setUp() {
+        ProvisioningProperties properties = new ProvisioningProperties();
+        properties.setBatchSize(3);
+        provisioningService = new DeviceProvisioningService(jdbcTemplate, deviceRepository, configurationStore, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(), properties, eventPublisher,
+                transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void provision_ShouldUpsertNdjsonInBatchesAndReportBadRecords() throws Exception {
+        when(deviceRepository.findOemsByDeviceIds(anyCollection()))
+                .thenAnswer(invocation -> ((Collection<String>) invocation.getArgument(0)).contains("DEV001")
+                        ? List.of(oem("DEV001", "XIAOMI")) : List.of());
+        String body = """
+                {"deviceId":"DEV001","oemId":"SAMSUNG","deviceType":"SMARTPHONE"}
+                {"deviceId":"DEV002","oemId":"SAMSUNG"
+
+                {"deviceId":"DEV003","oemId":"SAMSUNG"}
+                {"deviceId":"DEV004","oemId":"SAMSUNG","deviceType":"TABLET"}
+                {"deviceId":"DEV004","oemId":"SAMSUNG","deviceType":"TABLET","status":"INACTIVE"}
+                {"deviceId":"DEV005","oemId":"SAMSUNG","deviceType":"TABLET"}
+                """;
+
+        BulkProvisionResponse response = provisioningService.provision(stream(body), DeviceProvisioningService.Format.NDJSON);
+
+        assertEquals(6, response.getReceived());
+        assertEquals(2, response.getInvalid());
+        assertEquals(2, response.getInserted());
+        assertEquals(2, response.getUpdated());
+        assertEquals(List.of(1L, 2L), response.getErrors().stream().map(error -> error.getIndex()).toList());
+        assertEquals("Device type is required", response.getErrors().get(1).getMessage());
+
+        // DEV004 twice in one batch is written once, with the later record
+        ArgumentCaptor<Collection<Object>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(List.of(2, 1), rows.getAllValues().stream().map(Collection::size).toList());
+
+        // One event per batch, covering the OEM that DEV001 moved away from
+        ArgumentCaptor<DeviceBatchChangedEvent> events = ArgumentCaptor.forClass(DeviceBatchChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(Set.of("DEV001", "DEV004"), Set.copyOf(events.getAllValues().get(0).getDeviceIds()));
+        assertEquals(Set.of("SAMSUNG", "XIAOMI"), events.getAllValues().get(0).getOemIds());
+
+        // Configurations are stored before the upsert's transaction holds a connection
+        InOrder order = inOrder(configurationStore, transactionManager);
+        order.verify(configurationStore).idsOf(anyCollection());
+        order.verify(transactionManager).getTransaction(any());
+    }
+
+    @Test
+    void provision_ShouldIsolateRowsRejectedByTheDatabase() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenReturn(1)
+                .thenThrow(new DataIntegrityViolationException("value too long for type character varying(20)"));
+        String body = """
+                deviceId,oemId,deviceType,configuration
+                DEV001,SAMSUNG,SMARTPHONE,"{""cpu_governor"":""performance"",""max_freq"":""2.8GHz""}"
+                DEV002,SAMSUNG,SMARTPHONE,
+                """;
+
+        BulkProvisionResponse response = provisioningService.provision(stream(body), DeviceProvisioningService.Format.CSV);
+
+        assertEquals(2, response.getReceived());
+        assertEquals(1, response.getInserted());
+        assertEquals(1, response.getFailed());
+        assertEquals(1, response.getErrors().get(0).getIndex());
+        assertEquals("DEV002", response.getErrors().get(0).getDeviceId());
+        verify(eventPublisher).publishEvent(new DeviceBatchChangedEvent(List.of("DEV001"), Set.of("SAMSUNG")));
+    }
+
+    private static DeviceOem oem(String deviceId, String oemId) {
+        return new DeviceOem() {
+            @Override
+            public String getDeviceId() {
+                return deviceId;
+            }
+
+            @Override
+            public String getOemId() {
+                return oemId;
+            }
+        };
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
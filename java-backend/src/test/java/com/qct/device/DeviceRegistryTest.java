@@ -0,0 +1,175 @@
+package com.qct.device;
+
+import com.qct.device.cache.BloomFilter;
+import com.qct.device.config.DeviceRegistryProperties;
+import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.DeviceChangedEvent;
+import com.qct.device.model.Device;
+import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.DeviceConfigurationStore;
+import com.qct.device.service.DeviceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceRegistryTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceConfigurationStore configurationStore;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private DeviceRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        DeviceRegistryProperties properties = new DeviceRegistryProperties();
+        properties.setMinExpectedDevices(1_000);
+        registry = new DeviceRegistry(deviceRepository, configurationStore, jdbcTemplate, redisTemplate, listenerContainer,
+                properties, transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void find_ShouldRejectUnknownIdsWithoutQueryingOnceTheFilterIsBuilt() throws Exception {
+        when(deviceRepository.findByDeviceId(anyString())).thenReturn(Optional.empty());
+        assertTrue(registry.find("GHOST").isEmpty());
+        verify(deviceRepository).findByDeviceId("GHOST");
+
+        // Cached as absent until the negative TTL passes
+        assertTrue(registry.find("GHOST").isEmpty());
+        verify(deviceRepository, times(1)).findByDeviceId("GHOST");
+
+        buildFilter("DEV001", "DEV002");
+        when(deviceRepository.findByDeviceId("DEV001")).thenReturn(Optional.of(device("DEV001")));
+
+        assertTrue(registry.find("DEV404").isEmpty());
+        verify(deviceRepository, never()).findByDeviceId("DEV404");
+        assertEquals("DEV001", registry.find("DEV001").map(DeviceResponse::getDeviceId).orElseThrow());
+        assertTrue(registry.exists("DEV001"));
+        verify(deviceRepository, times(1)).findByDeviceId("DEV001");
+    }
+
+    @Test
+    void changes_ShouldBeAddedToTheFilterAndAnnouncedToOtherInstances() throws Exception {
+        buildFilter("DEV001");
+        when(deviceRepository.findByDeviceId(anyString()))
+                .thenAnswer(invocation -> Optional.of(device(invocation.getArgument(0))));
+
+        registry.onDeviceChanged(new DeviceChangedEvent("DEV900", "SAMSUNG", null));
+        assertTrue(registry.exists("DEV900"));
+
+        registry.announceChanges();
+        verify(redisTemplate).convertAndSend(eq("qct:devices:changed"), endsWith("\nDEV900"));
+
+        registry.onMessage(new DefaultMessage("qct:devices:changed".getBytes(StandardCharsets.UTF_8),
+                "other-node\nDEV901\nDEV902".getBytes(StandardCharsets.UTF_8)), null);
+        assertTrue(registry.exists("DEV901"));
+        assertTrue(registry.exists("DEV902"));
+    }
+
+    @Test
+    void recheckChanges_ShouldAddDevicesWhoseAnnouncementWasLost() throws Exception {
+        buildFilter("DEV001");
+        when(deviceRepository.findByDeviceId(anyString()))
+                .thenAnswer(invocation -> Optional.of(device(invocation.getArgument(0))));
+        assertFalse(registry.exists("DEV903"));
+
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any()))
+                .thenReturn(List.of("DEV001", "DEV903"));
+        registry.recheckChanges();
+
+        assertTrue(registry.exists("DEV903"));
+        verify(jdbcTemplate).queryForList(contains("updated_at >= ?"), eq(String.class), any(Timestamp.class));
+    }
+
+    @Test
+    void bloomFilter_ShouldStayNearItsFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("DEV" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("DEV" + i));
+            if (filter.mightContain("UNKNOWN" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void findAll_ShouldLoadUncachedDevicesInOneQuery() throws Exception {
+        buildFilter("DEV001", "DEV002", "DEV003");
+        when(deviceRepository.findByDeviceId("DEV001")).thenReturn(Optional.of(device("DEV001")));
+        registry.find("DEV001");
+        when(deviceRepository.findByDeviceIdIn(anyCollection())).thenReturn(List.of(device("DEV002")));
+
+        Map<String, DeviceResponse> found = registry.findAll(List.of("DEV001", "DEV002", "DEV003", "DEV404"));
+
+        assertEquals(List.of("DEV001", "DEV002"), List.copyOf(found.keySet()));
+        // DEV001 came from the cache and DEV404 was rejected by the filter
+        verify(deviceRepository).findByDeviceIdIn(List.of("DEV002", "DEV003"));
+
+        // Found and absent devices alike are cached
+        registry.findAll(List.of("DEV002", "DEV003"));
+        verify(deviceRepository, times(1)).findByDeviceIdIn(anyCollection());
+    }
+
+    private void buildFilter(String... deviceIds) throws Exception {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn((long) deviceIds.length);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (String deviceId : List.of(deviceIds)) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn(deviceId);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        registry.rebuild();
+    }
+
+    private static Device device(String deviceId) {
+        Device device = new Device();
+        device.setDeviceId(deviceId);
+        device.setOemId("SAMSUNG");
+        device.setDeviceType("SMARTPHONE");
+        return device;
+    }
+}
@@ -1,20 +1,33 @@
 package com.qct.device;
 
+import com.qct.device.config.DeviceConfigurationProperties;
+import com.qct.device.dto.ConfigurationAssignmentRequest;
+import com.qct.device.dto.ConfigurationAssignmentResponse;
 import com.qct.device.dto.DeviceRequest;
 import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.event.DeviceChangedEvent;
 import com.qct.device.model.Device;
+import com.qct.device.repository.DeviceOem;
 import com.qct.device.repository.DeviceRepository;
+import com.qct.device.service.DeviceConfigurationStore;
+import com.qct.device.service.DeviceConfigurationStore.StoredConfiguration;
+import com.qct.device.service.DeviceRegistry;
 import com.qct.device.service.DeviceService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,6 +36,18 @@ class DeviceServiceTest {
     @Mock
     private DeviceRepository deviceRepository;
 
+    @Mock
+    private DeviceRegistry deviceRegistry;
+
+    @Mock
+    private DeviceConfigurationStore configurationStore;
+
+    @Spy
+    private DeviceConfigurationProperties configurationProperties = new DeviceConfigurationProperties();
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private DeviceService deviceService;
 
@@ -45,4 +70,86 @@ class DeviceServiceTest {
         assertEquals("DEV001", response.getDeviceId());
         verify(deviceRepository).save(any(Device.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void configureDevice_ShouldUpdateExistingDevice() {
+        DeviceRequest request = new DeviceRequest();
+        request.setDeviceId("DEV001");
+        request.setOemId("SAMSUNG");
+        request.setDeviceType("TABLET");
+
+        Device existing = new Device();
+        existing.setId(7L);
+        existing.setDeviceId("DEV001");
+        existing.setOemId("XIAOMI");
+        existing.setDeviceType("SMARTPHONE");
+
+        when(deviceRepository.findByDeviceId("DEV001")).thenReturn(Optional.of(existing));
+        when(deviceRepository.save(any(Device.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DeviceResponse response = deviceService.configureDevice(request);
+
+        assertEquals("TABLET", response.getDeviceType());
+        verify(deviceRepository).save(argThat(device -> device.getId() == 7L && "SAMSUNG".equals(device.getOemId())));
+        verify(eventPublisher).publishEvent(new DeviceChangedEvent("DEV001", "SAMSUNG", "XIAOMI"));
+    }
+
+    @Test
+    void configureDevice_ShouldStoreTheConfigurationOnceAndReferenceIt() {
+        DeviceRequest request = new DeviceRequest();
+        request.setDeviceId("DEV001");
+        request.setOemId("OEM001");
+        request.setDeviceType("SMARTPHONE");
+        request.setConfiguration("{\"cpu\":\"8 Gen 2\"}");
+
+        when(configurationStore.idOf("{\"cpu\":\"8 Gen 2\"}")).thenReturn(42L);
+        when(configurationStore.contentOf(42L)).thenReturn("{\"cpu\":\"8 Gen 2\"}");
+        when(deviceRepository.save(any(Device.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DeviceResponse response = deviceService.configureDevice(request);
+
+        assertEquals(42L, response.getConfigurationId());
+        assertEquals("{\"cpu\":\"8 Gen 2\"}", response.getConfiguration());
+        verify(deviceRepository).save(argThat(device -> device.getConfigurationId() == 42L));
+    }
+
+    @Test
+    void assignConfiguration_ShouldUpdateDevicesInOneStatementAndAnnounceTheChangedOnes() {
+        ConfigurationAssignmentRequest request = new ConfigurationAssignmentRequest();
+        request.setOemId("OEM001");
+        when(configurationStore.find(42L)).thenReturn(Optional.of(new StoredConfiguration(42L, "{}", null)));
+        when(deviceRepository.assignConfigurationToOem(42L, "OEM001"))
+                .thenReturn(List.of(oem("DEV001", "OEM001"), oem("DEV002", "OEM001")));
+
+        ConfigurationAssignmentResponse response = deviceService.assignConfiguration(42L, request).orElseThrow();
+
+        assertEquals(2, response.getUpdated());
+        verify(deviceRepository, never()).assignConfigurationToDevices(anyLong(), anyCollection());
+        verify(eventPublisher).publishEvent(new DeviceBatchChangedEvent(List.of("DEV001", "DEV002"), Set.of("OEM001")));
+    }
+
+    @Test
+    void assignConfiguration_ShouldRejectUnknownConfigurationsAndEmptySelections() {
+        ConfigurationAssignmentRequest request = new ConfigurationAssignmentRequest();
+        assertThrows(IllegalArgumentException.class, () -> deviceService.assignConfiguration(42L, request));
+
+        request.setDeviceIds(List.of("DEV001"));
+        when(configurationStore.find(42L)).thenReturn(Optional.empty());
+        assertTrue(deviceService.assignConfiguration(42L, request).isEmpty());
+        verify(deviceRepository, never()).assignConfigurationToDevices(anyLong(), anyCollection());
+    }
+
+    private static DeviceOem oem(String deviceId, String oemId) {
+        return new DeviceOem() {
+            @Override
+            public String getDeviceId() {
+                return deviceId;
+            }
+
+            @Override
+            public String getOemId() {
+                return oemId;
+            }
+        };
+    }
+}
@@ -0,0 +1,186 @@
+package com.qct.device;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qct.device.config.StatusJobProperties;
+import com.qct.device.dto.StatusJobResponse;
+import com.qct.device.dto.StatusTransitionRequest;
+import com.qct.device.event.DeviceBatchChangedEvent;
+import com.qct.device.service.DeviceStatusJobService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceStatusJobServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> redisValues;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final StatusJobProperties properties = new StatusJobProperties();
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private DeviceStatusJobService service;
+
+    @BeforeEach
+    void setUp() {
+        properties.setChunkSize(2);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(redisValues);
+        service = new DeviceStatusJobService(jdbcTemplate, redisTemplate, objectMapper, eventPublisher, properties,
+                transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void submit_ShouldUpdateInChunksAndAnnounceEachChunkOnce() throws Exception {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT"), eq(Long.class), any(Object[].class))).thenReturn(3L);
+        List<List<Long>> scans = List.of(List.of(1L, 2L), List.of(3L, 4L), List.of(5L), List.of());
+        AtomicInteger scan = new AtomicInteger();
+        List<Object[]> scanArgs = new ArrayList<>();
+        when(jdbcTemplate.queryForList(startsWith("SELECT id"), eq(Long.class), any(Object[].class))).thenAnswer(invocation -> {
+            scanArgs.add(Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length));
+            return scans.get(scan.getAndIncrement());
+        });
+        // Devices 3 and 4 left the selector between the scan and the update
+        List<List<Object[]>> chunks = List.of(
+                List.<Object[]>of(new Object[]{1L, "DEV001", "OEM001"}, new Object[]{2L, "DEV002", "OEM002"}),
+                List.of(),
+                List.<Object[]>of(new Object[]{5L, "DEV005", "OEM001"}));
+        AtomicInteger call = new AtomicInteger();
+        List<Object[]> updateArgs = new ArrayList<>();
+        when(jdbcTemplate.query(startsWith("UPDATE"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            updateArgs.add(Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length));
+            return map(invocation.getArgument(1), chunks.get(call.getAndIncrement()));
+        });
+
+        StatusTransitionRequest request = new StatusTransitionRequest();
+        request.setStatus("DECOMMISSIONED");
+        request.setFirmware("1.2.0");
+        request.setCurrentStatus("ACTIVE");
+        StatusJobResponse queued = service.submit(request).orElseThrow();
+
+        StatusJobResponse done = awaitFinished(queued.getJobId());
+        assertEquals(StatusJobResponse.State.COMPLETED, done.getState(), done.getError());
+        assertEquals(3L, done.getMatched());
+        assertEquals(3, done.getUpdated());
+        assertEquals(3, done.getChunks());
+
+        // Keyset over ids: each chunk starts after the last id scanned by the one before, updated or not
+        assertEquals(List.of(0L, 2L, 4L, 5L), scanArgs.stream().map(args -> args[0]).toList());
+        assertArrayEquals(new Long[]{1L, 2L}, (Long[]) updateArgs.get(0)[2]);
+        assertEquals(List.of("DECOMMISSIONED", "1.2.0", "ACTIVE"), List.of(updateArgs.get(0)[3], updateArgs.get(0)[4], updateArgs.get(0)[5]));
+
+        ArgumentCaptor<DeviceBatchChangedEvent> events = ArgumentCaptor.forClass(DeviceBatchChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of("DEV001", "DEV002"), events.getAllValues().get(0).getDeviceIds());
+        assertEquals(Set.of("OEM001", "OEM002"), events.getAllValues().get(0).getOemIds());
+        verify(transactionManager, times(4)).commit(any());
+
+        // Progress is published for the other instances, ending with the finished job
+        ArgumentCaptor<String> saved = ArgumentCaptor.forClass(String.class);
+        // Queued, counted, three chunks and finished; the last is written just after finishedAt is set
+        verify(redisValues, timeout(1_000).times(6)).set(eq("qct:devices:status-jobs:" + queued.getJobId()), saved.capture(),
+                eq(properties.getRetention()));
+        assertEquals(done, objectMapper.readValue(saved.getValue(), StatusJobResponse.class));
+    }
+
+    @Test
+    void submit_ShouldRejectJobsWithoutStatusOrSelector() {
+        StatusTransitionRequest request = new StatusTransitionRequest();
+        request.setOemId("OEM001");
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+
+        request.setStatus("A_STATUS_FAR_TOO_LONG_FOR_THE_COLUMN");
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+
+        // A status alone would move the whole fleet
+        request.setStatus("INACTIVE");
+        request.setOemId(null);
+        request.setDeviceIds(List.of());
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+
+        properties.setMaxDeviceIds(1);
+        request.setDeviceIds(List.of("DEV001", "DEV002"));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(request));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void find_ShouldReturnEmptyForUnknownJobs() {
+        assertTrue(service.find("no-such-job").isEmpty());
+        verify(redisValues).get("qct:devices:status-jobs:no-such-job");
+    }
+
+    @Test
+    void find_ShouldReadJobsRunOnOtherInstancesFromRedis() throws Exception {
+        StatusJobResponse job = StatusJobResponse.builder()
+                .jobId("job-1")
+                .state(StatusJobResponse.State.RUNNING)
+                .status("INACTIVE")
+                .matched(10L)
+                .updated(4)
+                .chunks(2)
+                .submittedAt(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+        when(redisValues.get("qct:devices:status-jobs:job-1")).thenReturn(objectMapper.writeValueAsString(job));
+
+        assertEquals(job, service.find("job-1").orElseThrow());
+    }
+
+    private StatusJobResponse awaitFinished(String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            StatusJobResponse job = service.find(jobId).orElseThrow();
+            if (job.getFinishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish");
+    }
+
+    private static List<Object> map(RowMapper<?> mapper, List<Object[]> rows) throws SQLException {
+        List<Object> mapped = new ArrayList<>();
+        for (Object[] row : rows) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenReturn((Long) row[0]);
+            when(rs.getString(2)).thenReturn((String) row[1]);
+            when(rs.getString(3)).thenReturn((String) row[2]);
+            mapped.add(mapper.mapRow(rs, mapped.size()));
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,124 @@
+package com.qct.device;
+
+import com.qct.device.config.HotWindowProperties;
+import com.qct.device.dto.RecentMetricsResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.service.HotWindowMetricStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class HotWindowMetricStoreTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final HotWindowProperties properties = new HotWindowProperties();
+
+    private HotWindowMetricStore store;
+
+    @BeforeEach
+    void setUp() {
+        properties.setWarmOnStartup(false);
+        properties.setInitialCapacity(2);
+        store = new HotWindowMetricStore(properties, jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void getRecent_ShouldReturnSamplesInTimeOrderWithSummary() {
+        long now = System.currentTimeMillis();
+        store.record("DEV001", "CPU_USAGE", now - 1_000, 20);
+        store.record("DEV001", "CPU_USAGE", now - 3_000, 10);
+        store.record("DEV001", "CPU_USAGE", now, 60);
+        // Outside the window and the requested range respectively
+        store.record("DEV001", "CPU_USAGE", now - Duration.ofHours(2).toMillis(), 99);
+        store.record("DEV001", "CPU_USAGE", now - Duration.ofMinutes(30).toMillis(), 5);
+
+        RecentMetricsResponse recent = store.getRecent("DEV001", "CPU_USAGE", Duration.ofMinutes(1), 2);
+
+        assertEquals(3, recent.getCount());
+        assertEquals(30.0, recent.getAverageValue());
+        assertEquals(10.0, recent.getMinValue());
+        assertArrayEquals(new long[]{now - 1_000, now}, recent.getTimestamps());
+        assertArrayEquals(new double[]{20, 60}, recent.getValues());
+        assertEquals(4, store.summarize("DEV001", "CPU_USAGE", null).getCount());
+    }
+
+    @Test
+    void record_ShouldEvictLeastRecentlyUsedDevicesOverBudget() {
+        properties.setMemoryBudget(DataSize.ofBytes(24 * 1_024));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1_000; i++) {
+            store.record("COLD", "CPU_USAGE", now - i, i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            store.record("WARM", "CPU_USAGE", now - i, i);
+        }
+        store.onMetricsRecorded(new MetricsRecordedEvent(List.of()));
+
+        assertTrue(store.getAllocatedBytes() <= 24 * 1_024);
+        assertEquals(0, store.summarize("COLD", "CPU_USAGE", null).getCount());
+        assertEquals(1_000, store.summarize("WARM", "CPU_USAGE", null).getCount());
+    }
+
+    @Test
+    void expire_ShouldReleaseEveryRingWhileRecordsRace() throws Exception {
+        properties.setWindow(Duration.ofSeconds(1));
+        long horizonLag = properties.getWindow().toMillis() - 2;
+        AtomicBoolean recording = new AtomicBoolean(true);
+        Thread expirer = Thread.ofPlatform().start(() -> {
+            while (recording.get()) {
+                store.expire();
+            }
+        });
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            writers.add(Thread.ofPlatform().start(() -> {
+                // Samples just inside the window, so devices keep emptying and refilling
+                for (int i = 0; i < 50_000; i++) {
+                    store.record("DEV" + (i % 8), "CPU_USAGE", System.currentTimeMillis() - horizonLag, i);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        recording.set(false);
+        expirer.join();
+
+        Thread.sleep(10);
+        store.expire();
+        assertEquals(0, store.getAllocatedBytes());
+    }
+
+    @Test
+    void record_ShouldOverwriteOldestSamplesAtSeriesCap() {
+        properties.setMaxSamplesPerSeries(4);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            store.record("DEV001", "CPU_USAGE", now - 10 + i, i);
+        }
+
+        RecentMetricsResponse recent = store.getRecent("DEV001", "CPU_USAGE", null, 100);
+
+        assertArrayEquals(new double[]{6, 7, 8, 9}, recent.getValues());
+        assertEquals(4L * 16, store.getAllocatedBytes());
+    }
+}
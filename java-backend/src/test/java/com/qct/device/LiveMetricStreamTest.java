@@ -0,0 +1,149 @@
+package com.qct.device;
+
+import com.qct.device.config.LiveStreamProperties;
+import com.qct.device.controller.AnalyticsController;
+import com.qct.device.dto.DeviceResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.security.SecurityConfig;
+import com.qct.device.service.AnalyticsService;
+import com.qct.device.service.DeviceRegistry;
+import com.qct.device.service.HotWindowMetricStore;
+import com.qct.device.service.LiveMetricStream;
+import com.qct.device.service.MetricIngestService;
+import com.qct.device.service.MetricRollupService;
+import com.qct.device.service.MetricSketchService;
+import com.qct.device.service.OemAggregationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@WebMvcTest(AnalyticsController.class)
+@Import({SecurityConfig.class, LiveMetricStream.class, LiveMetricStreamTest.Config.class})
+@WithMockUser
+class LiveMetricStreamTest {
+
+    @TestConfiguration
+    @EnableConfigurationProperties(LiveStreamProperties.class)
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private LiveMetricStream liveMetricStream;
+
+    @MockBean
+    private AnalyticsService analyticsService;
+
+    @MockBean
+    private MetricIngestService metricIngestService;
+
+    @MockBean
+    private MetricRollupService metricRollupService;
+
+    @MockBean
+    private MetricSketchService metricSketchService;
+
+    @MockBean
+    private OemAggregationService oemAggregationService;
+
+    @MockBean
+    private HotWindowMetricStore hotWindowMetricStore;
+
+    @MockBean
+    private DeviceRegistry deviceRegistry;
+
+    @Test
+    void subscribe_ShouldDropNewestSamplesBeyondTheBuffer() throws Exception {
+        MvcResult result = subscribe("/api/v1/analytics/live?deviceId=DEV001&policy=DROP_NEWEST&bufferSize=2");
+
+        publish(metric("DEV001", "CPU_USAGE", "1"), metric("DEV002", "CPU_USAGE", "9"),
+                metric("DEV001", "CPU_USAGE", "2"), metric("DEV001", "CPU_USAGE", "3"));
+
+        String events = awaitContent(result, "event:metrics");
+        assertTrue(events.contains("event:dropped\ndata:{\"dropped\":1}"), events);
+        assertTrue(events.contains("\"value\":1") && events.contains("\"value\":2"), events);
+        assertFalse(events.contains("\"value\":3") || events.contains("\"value\":9"), events);
+    }
+
+    @Test
+    void subscribe_ShouldConflateToTheLatestSamplePerSeries() throws Exception {
+        MvcResult result = subscribe("/api/v1/analytics/live?deviceId=DEV001&policy=CONFLATE&bufferSize=10");
+
+        publish(metric("DEV001", "CPU_USAGE", "1"), metric("DEV001", "MEMORY_USAGE", "2"),
+                metric("DEV001", "CPU_USAGE", "3"));
+
+        String events = awaitContent(result, "event:metrics");
+        assertFalse(events.contains("\"value\":1"), events);
+        assertTrue(events.indexOf("\"value\":2") < events.indexOf("\"value\":3"), events);
+        assertFalse(events.contains("event:dropped"), events);
+    }
+
+    @Test
+    void subscribe_ShouldMatchDevicesByOemAndMetricType() throws Exception {
+        when(deviceRegistry.find("DEV003")).thenReturn(Optional.of(DeviceResponse.builder()
+                .deviceId("DEV003").oemId("OEM9").build()));
+        MvcResult result = subscribe("/api/v1/analytics/live?oemId=OEM9&metricType=CPU_USAGE");
+
+        publish(metric("DEV003", "MEMORY_USAGE", "1"), metric("DEV003", "CPU_USAGE", "2"),
+                metric("DEV004", "CPU_USAGE", "3"));
+
+        String events = awaitContent(result, "event:metrics");
+        assertTrue(events.contains("\"value\":2"), events);
+        assertFalse(events.contains("\"value\":1") || events.contains("\"value\":3"), events);
+    }
+
+    private MvcResult subscribe(String url) throws Exception {
+        return mockMvc.perform(get(url)).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private void publish(DeviceMetric... metrics) {
+        liveMetricStream.onMetricsRecorded(new MetricsRecordedEvent(Arrays.asList(metrics)));
+    }
+
+    private static String awaitContent(MvcResult result, String marker) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            String content = result.getResponse().getContentAsString();
+            // An event is complete once the blank line after its data has been written
+            if (content.contains(marker) && content.endsWith("\n\n")) {
+                return content;
+            }
+            Thread.sleep(20);
+        }
+        return fail("No " + marker + " in: " + result.getResponse().getContentAsString());
+    }
+
+    private static DeviceMetric metric(String deviceId, String metricType, String value) {
+        DeviceMetric metric = new DeviceMetric();
+        metric.setDeviceId(deviceId);
+        metric.setMetricType(metricType);
+        metric.setValue(new BigDecimal(value));
+        return metric;
+    }
+}
@@ -0,0 +1,125 @@
+package com.qct.device;
+
+import com.qct.device.datasource.ReplicaRoutingDataSource;
+import com.qct.device.model.DictionaryKind;
+import com.qct.device.service.MetricDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MetricDictionaryTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private MetricDictionary dictionary;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        dictionary = new MetricDictionary(dataSource);
+    }
+
+    @Test
+    void idOf_ShouldRegisterNewValueOnceAndServeItFromCache() throws Exception {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(7);
+
+        assertEquals(7, dictionary.idOf(DictionaryKind.METRIC_TYPE, "CPU_USAGE"));
+        assertEquals(7, dictionary.idOf(DictionaryKind.METRIC_TYPE, new String("CPU_USAGE")));
+
+        verify(connection, times(1)).prepareStatement(startsWith("INSERT"));
+        assertEquals("CPU_USAGE", dictionary.valueOf(7));
+        verify(dataSource, times(1)).getConnection();
+    }
+
+    @Test
+    void idOf_ShouldFallBackToExistingIdWhenRegisteredElsewhere() throws Exception {
+        // Nothing returned by the INSERT, then the concurrent registration found by the SELECT
+        when(resultSet.next()).thenReturn(false, true);
+        when(resultSet.getInt(1)).thenReturn(3);
+
+        assertEquals(3, dictionary.idOf(DictionaryKind.UNIT, "%"));
+
+        verify(connection).prepareStatement(startsWith("SELECT id"));
+    }
+
+    @Test
+    void idOf_ShouldRegisterOnThePrimary() throws Exception {
+        boolean[] forced = new boolean[1];
+        when(dataSource.getConnection()).thenAnswer(invocation -> {
+            forced[0] = ReplicaRoutingDataSource.forcePrimary(true);
+            return connection;
+        });
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(5);
+
+        dictionary.idOf(DictionaryKind.METRIC_TYPE, "GPU_USAGE");
+
+        assertTrue(forced[0]);
+        assertFalse(ReplicaRoutingDataSource.forcePrimary(false));
+    }
+
+    @Test
+    void findId_ShouldLookUpWithoutRegistering() throws Exception {
+        when(resultSet.next()).thenReturn(false, true);
+        when(resultSet.getInt(1)).thenReturn(9);
+
+        assertNull(dictionary.findId(DictionaryKind.METRIC_TYPE, "NO_SUCH_METRIC"));
+        assertEquals(9, dictionary.findId(DictionaryKind.METRIC_TYPE, "BATTERY_LEVEL"));
+        assertEquals(9, dictionary.findId(DictionaryKind.METRIC_TYPE, "BATTERY_LEVEL"));
+
+        verify(connection, never()).prepareStatement(startsWith("INSERT"));
+        verify(connection, times(2)).prepareStatement(startsWith("SELECT id"));
+    }
+
+    @Test
+    void findId_ShouldRememberMissesUntilTheValueIsRegistered() throws Exception {
+        when(resultSet.next()).thenReturn(false, true);
+        when(resultSet.getInt(1)).thenReturn(11);
+
+        assertNull(dictionary.findId(DictionaryKind.UNIT, "lux"));
+        assertNull(dictionary.findId(DictionaryKind.UNIT, "lux"));
+        verify(connection, times(1)).prepareStatement(startsWith("SELECT id"));
+
+        assertEquals(11, dictionary.idOf(DictionaryKind.UNIT, "lux"));
+        assertEquals(11, dictionary.findId(DictionaryKind.UNIT, "lux"));
+        verify(connection, times(1)).prepareStatement(startsWith("SELECT id"));
+    }
+
+    @Test
+    void valueOf_ShouldLoadUnknownIdAndReturnInternedValue() throws Exception {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn("METRIC_TYPE");
+        when(resultSet.getString(2)).thenReturn(new String("MEMORY_USAGE"));
+
+        String value = dictionary.valueOf(11);
+
+        assertSame(MetricDictionary.intern("MEMORY_USAGE"), value);
+        assertEquals(11, dictionary.idOf(DictionaryKind.METRIC_TYPE, "MEMORY_USAGE"));
+        verify(dataSource, times(1)).getConnection();
+    }
+}
@@ -0,0 +1,133 @@
+package com.qct.device;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qct.device.config.IngestProperties;
+import com.qct.device.dto.BatchIngestResponse;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.service.MetricDictionary;
+import com.qct.device.service.MetricIngestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MetricIngestServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MetricDictionary dictionary;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private IngestProperties properties;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MetricIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new IngestProperties();
+        properties.setQueueCapacity(3);
+        properties.setBatchSize(2);
+        properties.setOfferTimeout(Duration.ZERO);
+
+        // The writer thread is not started, so the queue is only drained explicitly
+        ingestService = new MetricIngestService(jdbcTemplate, dictionary, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(), properties, eventPublisher, meterRegistry);
+    }
+
+    @Test
+    void ingest_ShouldAcceptNdjsonAndReportInvalidRecords() throws Exception {
+        String body = """
+                {"deviceId":"DEV001","metricType":"CPU_USAGE","value":45.5}
+                {"deviceId":"DEV001","metricType":"CPU_USAGE"}
+                {"deviceId":"DEV002","metricType":"MEMORY_USAGE","value":12}
+                """;
+
+        BatchIngestResponse response = ingestService.ingest(stream(body));
+
+        assertEquals(3, response.getReceived());
+        assertEquals(2, response.getAccepted());
+        assertEquals(1, response.getInvalid());
+        assertFalse(response.isThrottled());
+        assertEquals(1, response.getErrors().get(0).getIndex());
+        assertEquals(2, ingestService.getQueueDepth());
+    }
+
+    @Test
+    void ingest_ShouldThrottleWhenQueueIsFull() throws Exception {
+        String body = """
+                [{"deviceId":"D1","metricType":"CPU_USAGE","value":1},
+                 {"deviceId":"D2","metricType":"CPU_USAGE","value":2},
+                 {"deviceId":"D3","metricType":"CPU_USAGE","value":3},
+                 {"deviceId":"D4","metricType":"CPU_USAGE","value":4}]
+                """;
+
+        BatchIngestResponse response = ingestService.ingest(stream(body));
+
+        assertTrue(response.isThrottled());
+        assertEquals(3, response.getAccepted());
+        assertEquals(3L, response.getResumeFrom());
+    }
+
+    @Test
+    void flush_ShouldGroupQueuedMetricsIntoBatches() throws Exception {
+        ingestService.ingest(stream("""
+                {"deviceId":"D1","metricType":"CPU_USAGE","value":1}
+                {"deviceId":"D2","metricType":"CPU_USAGE","value":2}
+                {"deviceId":"D3","metricType":"CPU_USAGE","value":3}
+                """));
+
+        assertEquals(3, ingestService.flush());
+
+        verify(jdbcTemplate, times(2)).batchUpdate(any(PreparedStatementCreator.class),
+                any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+        assertEquals(0, ingestService.getQueueDepth());
+        verify(eventPublisher, times(2)).publishEvent(any(MetricsRecordedEvent.class));
+    }
+
+    @Test
+    void flush_ShouldCountMetricsLostToUnexpectedFailures() throws Exception {
+        ingestService.ingest(stream("""
+                {"deviceId":"D1","metricType":"CPU_USAGE","value":1}
+                {"deviceId":"D2","metricType":"CPU_USAGE","value":2}
+                """));
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class),
+                any(KeyHolder.class))).thenThrow(new IllegalStateException("driver bug"));
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class)))
+                .thenThrow(new IllegalStateException("driver bug"))
+                .thenReturn(1);
+
+        assertEquals(2, ingestService.flush());
+
+        assertEquals(1.0, meterRegistry.counter("qct.ingest.metrics.failed").count());
+        verify(jdbcTemplate, times(2)).update(any(PreparedStatementCreator.class), any(KeyHolder.class));
+        verify(eventPublisher).publishEvent(any(MetricsRecordedEvent.class));
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
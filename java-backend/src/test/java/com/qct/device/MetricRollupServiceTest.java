@@ -0,0 +1,97 @@
+package com.qct.device;
+
+import com.qct.device.config.RollupProperties;
+import com.qct.device.dto.MetricSeriesResponse;
+import com.qct.device.model.RollupResolution;
+import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.repository.DeviceMetricRollupRepository;
+import com.qct.device.service.MetricRollupService;
+import com.qct.device.service.PartitionMaintenanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MetricRollupServiceTest {
+
+    @Mock
+    private DeviceMetricRepository deviceMetricRepository;
+
+    @Mock
+    private DeviceMetricRollupRepository rollupRepository;
+
+    @Mock
+    private PartitionMaintenanceService partitionMaintenanceService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MetricRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = new MetricRollupService(deviceMetricRepository, rollupRepository,
+                partitionMaintenanceService, new RollupProperties(), transactionManager);
+    }
+
+    @Test
+    void getSeries_ShouldUseHourBucketsForAWeek() {
+        LocalDateTime to = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime from = to.minusDays(7);
+        LocalDateTime compacted = to.minusHours(1);
+        when(rollupRepository.findLatestBucketStart(RollupResolution.HOUR)).thenReturn(compacted);
+        when(rollupRepository.findBuckets(any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(rollupRepository.aggregateRawBuckets(any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        MetricSeriesResponse series = rollupService.getSeries("DEV001", "CPU_USAGE", from, to, null);
+
+        assertEquals(RollupResolution.HOUR, series.getResolution());
+        // Closed buckets come from the rollup table, the open one from raw samples
+        verify(rollupRepository).findBuckets("HOUR", "DEV001", "CPU_USAGE", from, compacted);
+        verify(rollupRepository).aggregateRawBuckets("hour", "DEV001", "CPU_USAGE", compacted, to);
+    }
+
+    @Test
+    void getSeries_ShouldUseMinuteBucketsForShortRanges() {
+        LocalDateTime to = LocalDateTime.now();
+        when(rollupRepository.aggregateRawBuckets(any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        MetricSeriesResponse series = rollupService.getSeries("DEV001", "CPU_USAGE", to.minusHours(6), to, null);
+
+        assertEquals(RollupResolution.MINUTE, series.getResolution());
+        verify(rollupRepository, never()).findBuckets(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void getSeries_ShouldFallBackToDayBucketsWhenHoursAreNotRetained() {
+        LocalDateTime to = LocalDateTime.now();
+        when(rollupRepository.aggregateRawBuckets(any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        MetricSeriesResponse series = rollupService.getSeries("DEV001", "CPU_USAGE", to.minusDays(800), to, null);
+
+        assertEquals(RollupResolution.DAY, series.getResolution());
+    }
+
+    @Test
+    void applyRetention_ShouldDropPartitionsInsteadOfDeletingRows() {
+        LocalDateTime compacted = LocalDateTime.now().minusMinutes(2);
+        when(rollupRepository.findLatestBucketStart(RollupResolution.MINUTE)).thenReturn(compacted);
+        when(partitionMaintenanceService.isPartitioned()).thenReturn(true);
+
+        rollupService.applyRetention();
+
+        verify(partitionMaintenanceService).dropPartitionsBefore(argThat(cutoff -> cutoff.isBefore(compacted)));
+        verify(deviceMetricRepository, never()).deleteOlderThan(any(), anyInt());
+    }
+}
@@ -0,0 +1,105 @@
+package com.qct.device;
+
+import com.qct.device.config.AggregationProperties;
+import com.qct.device.event.MetricsRecordedEvent;
+import com.qct.device.model.DeviceMetric;
+import com.qct.device.repository.DeviceMetricRepository;
+import com.qct.device.repository.MetricBucketAggregate;
+import com.qct.device.service.MetricWindow;
+import com.qct.device.service.MetricWindowAggregator;
+import com.qct.device.service.WindowSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetricWindowAggregatorTest {
+
+    @Mock
+    private DeviceMetricRepository deviceMetricRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MetricWindowAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new MetricWindowAggregator(deviceMetricRepository, new AggregationProperties(), transactionManager);
+    }
+
+    @Test
+    void onMetricsRecorded_ShouldMaintainWindowedSummaries() {
+        LocalDateTime now = LocalDateTime.now();
+        aggregator.onMetricsRecorded(new MetricsRecordedEvent(List.of(
+                metric("DEV001", "CPU_USAGE", "40", now),
+                metric("DEV001", "CPU_USAGE", "60", now),
+                metric("DEV001", "CPU_USAGE", "90", now.minusMinutes(30)),
+                metric("DEV001", "MEMORY_USAGE", "70", now))));
+
+        WindowSummary lastMinute = aggregator.summarize("DEV001", "CPU_USAGE", MetricWindow.ONE_MINUTE);
+        assertEquals(2, lastMinute.getCount());
+        assertEquals(50.0, lastMinute.getAverage(), 0.001);
+
+        WindowSummary lastHour = aggregator.summarize("DEV001", "CPU_USAGE", MetricWindow.ONE_HOUR);
+        assertEquals(3, lastHour.getCount());
+        assertEquals(40.0, lastHour.getMin(), 0.001);
+        assertEquals(90.0, lastHour.getMax(), 0.001);
+
+        assertEquals(4, aggregator.summarize("DEV001", MetricWindow.ONE_DAY).getCount());
+        assertTrue(aggregator.summarize("DEV002", MetricWindow.ONE_DAY).isEmpty());
+    }
+
+    @Test
+    void summarize_ShouldExcludeSamplesOutsideTheWindow() {
+        aggregator.onMetricsRecorded(new MetricsRecordedEvent(List.of(
+                metric("DEV001", "CPU_USAGE", "10", LocalDateTime.now().minusHours(2)))));
+
+        assertTrue(aggregator.summarize("DEV001", "CPU_USAGE", MetricWindow.ONE_HOUR).isEmpty());
+        assertEquals(1, aggregator.summarize("DEV001", "CPU_USAGE", MetricWindow.ONE_DAY).getCount());
+    }
+
+    @Test
+    void rebuild_ShouldLoadMinuteAggregatesAndBecomeReady() {
+        MetricBucketAggregate aggregate = mock(MetricBucketAggregate.class);
+        when(aggregate.getDeviceId()).thenReturn("DEV001");
+        when(aggregate.getMetricType()).thenReturn("CPU_USAGE");
+        when(aggregate.getBucketStart()).thenReturn(LocalDateTime.now().minusMinutes(5));
+        when(aggregate.getSampleCount()).thenReturn(12L);
+        when(aggregate.getSum()).thenReturn(600.0);
+        when(aggregate.getMin()).thenReturn(20.0);
+        when(aggregate.getMax()).thenReturn(80.0);
+        when(deviceMetricRepository.streamMinuteAggregates(any(), any())).thenReturn(Stream.of(aggregate));
+
+        assertFalse(aggregator.isReady());
+        aggregator.rebuild();
+
+        assertTrue(aggregator.isReady());
+        WindowSummary summary = aggregator.summarize("DEV001", "CPU_USAGE", MetricWindow.ONE_HOUR);
+        assertEquals(12, summary.getCount());
+        assertEquals(50.0, summary.getAverage(), 0.001);
+        assertEquals(80.0, summary.getMax(), 0.001);
+    }
+
+    private static DeviceMetric metric(String deviceId, String type, String value, LocalDateTime timestamp) {
+        DeviceMetric metric = new DeviceMetric();
+        metric.setDeviceId(deviceId);
+        metric.setMetricType(type);
+        metric.setValue(new BigDecimal(value));
+        metric.setTimestamp(timestamp);
+        return metric;
+    }
+}
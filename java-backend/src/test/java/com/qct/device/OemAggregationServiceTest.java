@@ -0,0 +1,120 @@
+package com.qct.device;
+
+import com.qct.device.config.OemAggregateProperties;
+import com.qct.device.dto.OemAggregateResponse;
+import com.qct.device.model.RollupResolution;
+import com.qct.device.repository.DeviceMetricRollupRepository;
+import com.qct.device.repository.MetricAggregate;
+import com.qct.device.service.OemAggregationService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OemAggregationServiceTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2024, 1, 1, 10, 20, 30);
+    private static final LocalDateTime TO = LocalDateTime.of(2024, 1, 1, 16, 45, 10);
+
+    @Mock
+    private DeviceMetricRollupRepository rollupRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OemAggregationService service;
+
+    @Test
+    void aggregate_ShouldReadSettledBucketsFromRollupsAndEdgesFromRawSamples() {
+        service = service(1);
+        when(rollupRepository.findLatestBucketStart(RollupResolution.MINUTE))
+                .thenReturn(LocalDateTime.of(2024, 1, 1, 16, 40));
+        when(rollupRepository.findLatestBucketStart(RollupResolution.HOUR))
+                .thenReturn(LocalDateTime.of(2024, 1, 1, 16, 0));
+
+        service.aggregate("OEM001", null, FROM, TO);
+
+        verify(rollupRepository).aggregateOem("OEM001", null, FROM,
+                LocalDateTime.of(2024, 1, 1, 10, 21),
+                LocalDateTime.of(2024, 1, 1, 11, 0),
+                LocalDateTime.of(2024, 1, 1, 16, 0),
+                LocalDateTime.of(2024, 1, 1, 16, 40),
+                TO, 0, 1);
+    }
+
+    @Test
+    void aggregate_ShouldScanRawSamplesWhenNothingIsCompacted() {
+        service = service(1);
+        when(rollupRepository.findLatestBucketStart(RollupResolution.MINUTE)).thenReturn(null);
+
+        service.aggregate("OEM001", "CPU_USAGE", FROM, TO);
+
+        verify(rollupRepository).aggregateOem("OEM001", "CPU_USAGE", FROM, FROM, FROM, FROM, FROM, TO, 0, 1);
+    }
+
+    @Test
+    void aggregate_ShouldMergeShardsIntoDeviceAndMetricTypeTotals() {
+        service = service(2);
+        when(rollupRepository.findLatestBucketStart(RollupResolution.MINUTE)).thenReturn(null);
+        when(rollupRepository.aggregateOem(any(), any(), any(), any(), any(), any(), any(), any(), eq(0), eq(2)))
+                .thenReturn(List.of(row("DEV002", "CPU_USAGE", 2, "30", "10", "20", "20", 5)));
+        when(rollupRepository.aggregateOem(any(), any(), any(), any(), any(), any(), any(), any(), eq(1), eq(2)))
+                .thenReturn(List.of(row("DEV001", "CPU_USAGE", 4, "100", "5", "40", "25", 9),
+                        row("DEV001", "MEMORY_USAGE", 1, "60", "60", "60", "60", 3)));
+
+        OemAggregateResponse response = service.aggregate("OEM001", null, FROM, TO);
+
+        assertEquals(2, response.getDeviceCount());
+        assertEquals(List.of("DEV001", "DEV002"),
+                response.getDevices().stream().map(OemAggregateResponse.DeviceTotals::getDeviceId).toList());
+        OemAggregateResponse.MetricTotals cpu = response.getMetrics().get(0);
+        assertEquals("CPU_USAGE", cpu.getMetricType());
+        assertEquals(6, cpu.getCount());
+        assertEquals(new BigDecimal("21.67"), cpu.getAverageValue());
+        assertEquals(new BigDecimal("5"), cpu.getMinValue());
+        assertEquals(new BigDecimal("40"), cpu.getMaxValue());
+        assertEquals(new BigDecimal("25"), cpu.getLastValue());
+        assertEquals("MEMORY_USAGE", response.getMetrics().get(1).getMetricType());
+    }
+
+    @Test
+    void aggregate_ShouldRejectRangeBeyondLimit() {
+        service = service(1);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.aggregate("OEM001", null, FROM, FROM.plusDays(200)));
+        assertThrows(IllegalArgumentException.class, () -> service.aggregate("OEM001", null, TO, FROM));
+    }
+
+    private OemAggregationService service(int shards) {
+        OemAggregateProperties properties = new OemAggregateProperties();
+        properties.setShards(shards);
+        properties.setThreads(2);
+        return new OemAggregationService(rollupRepository, properties, transactionManager, new MockEnvironment());
+    }
+
+    private static MetricAggregate row(String deviceId, String metricType, long count, String sum,
+                                       String min, String max, String last, int lastMinute) {
+        return new MetricAggregate() {
+            public String getDeviceId() { return deviceId; }
+            public String getMetricType() { return metricType; }
+            public Long getSampleCount() { return count; }
+            public BigDecimal getSumValue() { return new BigDecimal(sum); }
+            public BigDecimal getMinValue() { return new BigDecimal(min); }
+            public BigDecimal getMaxValue() { return new BigDecimal(max); }
+            public BigDecimal getLastValue() { return new BigDecimal(last); }
+            public LocalDateTime getLastTimestamp() { return FROM.withMinute(lastMinute); }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package com.qct.device;
+
+import com.qct.device.config.PartitionProperties;
+import com.qct.device.service.PartitionMaintenanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionMaintenanceServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PartitionProperties properties;
+    private PartitionMaintenanceService maintenanceService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new PartitionProperties();
+        properties.setAhead(Duration.ofDays(3));
+        maintenanceService = new PartitionMaintenanceService(jdbcTemplate, properties, transactionManager);
+    }
+
+    @Test
+    void listPartitions_ShouldParseRangeBoundsAndSkipTheDefaultPartition() throws Exception {
+        givenPartitions(
+                new String[]{"device_metrics_p20260102", "FOR VALUES FROM ('2026-01-02 00:00:00') TO ('2026-01-03 00:00:00')"},
+                new String[]{"device_metrics_default", "DEFAULT"},
+                new String[]{"device_metrics_p20260101", "FOR VALUES FROM ('2026-01-01 00:00:00') TO ('2026-01-02 00:00:00')"});
+
+        List<PartitionMaintenanceService.Partition> partitions = maintenanceService.listPartitions();
+
+        assertEquals(List.of(
+                new PartitionMaintenanceService.Partition("device_metrics_p20260101",
+                        LocalDateTime.of(2026, 1, 1, 0, 0), LocalDateTime.of(2026, 1, 2, 0, 0)),
+                new PartitionMaintenanceService.Partition("device_metrics_p20260102",
+                        LocalDateTime.of(2026, 1, 2, 0, 0), LocalDateTime.of(2026, 1, 3, 0, 0))), partitions);
+    }
+
+    @Test
+    void createUpcomingPartitions_ShouldOnlyCreateMissingRanges() throws Exception {
+        givenPartitions(
+                new String[]{"device_metrics_p20260101", "FOR VALUES FROM ('2026-01-01 00:00:00') TO ('2026-01-02 00:00:00')"});
+
+        int created = maintenanceService.createUpcomingPartitions(LocalDateTime.of(2026, 1, 1, 12, 0));
+
+        assertEquals(3, created);
+        verify(jdbcTemplate).execute(contains("device_metrics_p20260102 PARTITION OF device_metrics " +
+                "FOR VALUES FROM ('2026-01-02 00:00:00') TO ('2026-01-03 00:00:00')"));
+        verify(jdbcTemplate).execute(contains("device_metrics_p20260104 PARTITION OF"));
+        verify(jdbcTemplate, never()).execute(contains("device_metrics_p20260101 PARTITION OF"));
+    }
+
+    @Test
+    void createUpcomingPartitions_ShouldClipWeeklyRangesToExistingPartitions() throws Exception {
+        properties.setInterval(PartitionProperties.Interval.WEEKLY);
+        // Thursday 2026-01-01 is covered by a daily partition; the week starts on Monday 2025-12-29
+        givenPartitions(
+                new String[]{"device_metrics_p20260101", "FOR VALUES FROM ('2026-01-01 00:00:00') TO ('2026-01-02 00:00:00')"});
+
+        maintenanceService.createUpcomingPartitions(LocalDateTime.of(2026, 1, 1, 12, 0));
+
+        verify(jdbcTemplate).execute(contains("device_metrics_p20251229 PARTITION OF device_metrics " +
+                "FOR VALUES FROM ('2025-12-29 00:00:00') TO ('2026-01-01 00:00:00')"));
+        verify(jdbcTemplate).execute(contains("device_metrics_p20260102 PARTITION OF device_metrics " +
+                "FOR VALUES FROM ('2026-01-02 00:00:00') TO ('2026-01-05 00:00:00')"));
+    }
+
+    @Test
+    void dropPartitionsBefore_ShouldKeepPartitionsReachingPastTheCutoff() throws Exception {
+        givenPartitions(
+                new String[]{"device_metrics_p20260101", "FOR VALUES FROM ('2026-01-01 00:00:00') TO ('2026-01-02 00:00:00')"},
+                new String[]{"device_metrics_p20260102", "FOR VALUES FROM ('2026-01-02 00:00:00') TO ('2026-01-03 00:00:00')"});
+
+        int dropped = maintenanceService.dropPartitionsBefore(LocalDateTime.of(2026, 1, 2, 18, 0));
+
+        assertEquals(1, dropped);
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS device_metrics_p20260101");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS device_metrics_p20260102");
+    }
+
+    private void givenPartitions(String[]... partitions) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        int[] row = {-1};
+        when(rs.getString(anyInt())).thenAnswer(invocation -> partitions[row[0]][invocation.<Integer>getArgument(0) - 1]);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (row[0] = 0; row[0] < partitions.length; row[0]++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+}
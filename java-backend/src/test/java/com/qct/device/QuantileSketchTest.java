@@ -0,0 +1,78 @@
+package com.qct.device;
+
+import com.qct.device.service.QuantileSketch;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.01;
+
+    @Test
+    void quantile_ShouldStayWithinRelativeAccuracyOfExactValue() {
+        Random random = new Random(42);
+        double[] values = new double[10_000];
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 2) * 50;
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.0, 0.5, 0.95, 0.99, 1.0}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            assertEquals(exact, sketch.quantile(q), exact * ACCURACY, "q=" + q);
+        }
+        assertEquals(values.length, sketch.getCount());
+        assertEquals(values[0], sketch.getMin());
+        assertEquals(values[values.length - 1], sketch.getMax());
+    }
+
+    @Test
+    void merge_ShouldMatchSketchOfAllSamples() {
+        QuantileSketch all = new QuantileSketch(ACCURACY);
+        QuantileSketch low = new QuantileSketch(ACCURACY);
+        QuantileSketch high = new QuantileSketch(ACCURACY);
+        for (int i = -200; i <= 1000; i++) {
+            all.add(i / 10.0);
+            (i < 300 ? low : high).add(i / 10.0);
+        }
+
+        low.merge(high);
+
+        assertEquals(all.getCount(), low.getCount());
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.999}) {
+            assertEquals(all.quantile(q), low.quantile(q), "q=" + q);
+        }
+    }
+
+    @Test
+    void decode_ShouldRestoreEncodedSketch() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        for (double value : new double[]{-5.5, 0, 0, 12.25, 12.3, 99.9, 1_000_000}) {
+            sketch.add(value);
+        }
+
+        byte[] encoded = sketch.encode();
+        QuantileSketch decoded = QuantileSketch.decode(encoded);
+
+        assertTrue(encoded.length < 64, "encoded size " + encoded.length);
+        assertEquals(sketch.getCount(), decoded.getCount());
+        assertEquals(sketch.getSum(), decoded.getSum());
+        assertEquals(-5.5, decoded.getMin());
+        assertEquals(0.0, decoded.quantile(0.25));
+        for (double q : new double[]{0, 0.5, 0.75, 1}) {
+            assertEquals(sketch.quantile(q), decoded.quantile(q), "q=" + q);
+        }
+    }
+
+    @Test
+    void merge_ShouldRejectDifferentAccuracy() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.qct.device;
+
+import com.qct.device.datasource.ReplicaRoutingDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource replica;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection replicaConnection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica1", replica);
+        meterRegistry = new SimpleMeterRegistry();
+        routing = new ReplicaRoutingDataSource(primary, replicas, "SELECT 0", Duration.ofSeconds(10), meterRegistry);
+        routing.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.forcePrimary(false);
+    }
+
+    @Test
+    void getConnection_ShouldSendOnlyReadOnlyTransactionsToReplica() throws Exception {
+        when(resultSet.getDouble(1)).thenReturn(0.5);
+        routing.checkReplicas();
+
+        assertSame(primaryConnection, routing.getConnection());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(replicaConnection, routing.getConnection());
+        assertEquals(1, meterRegistry.get("qct.datasource.replica.reads").counter().count());
+    }
+
+    @Test
+    void getConnection_ShouldFallBackToPrimaryWhenReplicaLags() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        // Not yet checked
+        assertSame(primaryConnection, routing.getConnection());
+
+        when(resultSet.getDouble(1)).thenReturn(30.0);
+        routing.checkReplicas();
+        assertSame(primaryConnection, routing.getConnection());
+
+        when(resultSet.getDouble(1)).thenReturn(2.0);
+        routing.checkReplicas();
+        assertSame(replicaConnection, routing.getConnection());
+
+        assertEquals(2, meterRegistry.get("qct.datasource.replica.fallbacks").counter().count());
+        assertEquals(2.0, meterRegistry.get("qct.datasource.replica.lag").gauge().value());
+    }
+
+    @Test
+    void getConnection_ShouldFallBackToPrimaryWhenReplicaUnreachable() throws Exception {
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+        routing.checkReplicas();
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+        routing.checkReplicas();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routing.getConnection());
+        assertTrue(Double.isNaN(meterRegistry.get("qct.datasource.replica.lag").gauge().value()));
+    }
+
+    @Test
+    void getConnection_ShouldKeepForcedReadsOnPrimary() throws Exception {
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+        routing.checkReplicas();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        ReplicaRoutingDataSource.forcePrimary(true);
+        assertSame(primaryConnection, routing.getConnection());
+
+        ReplicaRoutingDataSource.forcePrimary(false);
+        assertSame(replicaConnection, routing.getConnection());
+    }
+}
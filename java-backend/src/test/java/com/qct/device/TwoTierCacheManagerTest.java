@@ -0,0 +1,288 @@
+package com.qct.device;
+
+import com.qct.device.cache.TwoTierCache;
+import com.qct.device.cache.TwoTierCacheManager;
+import com.qct.device.config.TwoTierCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TwoTierCacheManagerTest {
+
+    @Mock
+    private RedisCacheManager redisCacheManager;
+
+    @Mock
+    private Cache redisCache;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TwoTierCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        when(redisCacheManager.getCache("deviceMetrics")).thenReturn(redisCache);
+        cacheManager = new TwoTierCacheManager(redisCacheManager, new TwoTierCacheProperties(), redisTemplate, meterRegistry);
+    }
+
+    @Test
+    void get_ShouldServeRepeatReadsFromLocalTier() {
+        when(redisCache.get("DEV001")).thenReturn(new SimpleValueWrapper(List.of("a", "b")));
+        Cache cache = cacheManager.getCache("deviceMetrics");
+
+        assertEquals(List.of("a", "b"), cache.get("DEV001").get());
+        assertEquals(List.of("a", "b"), cache.get("DEV001").get());
+
+        verify(redisCache, times(1)).get("DEV001");
+        assertEquals(1.0, meterRegistry.get("qct.cache.requests")
+                .tags("cache", "deviceMetrics", "tier", "local", "result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("qct.cache.requests")
+                .tags("cache", "deviceMetrics", "tier", "redis", "result", "hit").counter().count());
+    }
+
+    @Test
+    void put_ShouldWriteBothTiersAndBroadcastEviction() {
+        Cache cache = cacheManager.getCache("deviceMetrics");
+
+        cache.put("DEV001", List.of("a"));
+
+        verify(redisCache).put("DEV001", List.of("a"));
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq("qct:cache:invalidation"), message.capture());
+        assertTrue(message.getValue().endsWith("\nE\ndeviceMetrics\nDEV001"));
+
+        // The instance ignores its own broadcast and keeps serving locally
+        cacheManager.onMessage(new DefaultMessage(new byte[0], message.getValue().getBytes(StandardCharsets.UTF_8)), null);
+        assertEquals(List.of("a"), cache.get("DEV001").get());
+        verify(redisCache, never()).get("DEV001");
+    }
+
+    @Test
+    void onMessage_ShouldDropLocalEntryWrittenByAnotherInstance() {
+        when(redisCache.get("DEV001"))
+                .thenReturn(new SimpleValueWrapper(List.of("old")))
+                .thenReturn(new SimpleValueWrapper(List.of("new")));
+        Cache cache = cacheManager.getCache("deviceMetrics");
+        assertEquals(List.of("old"), cache.get("DEV001").get());
+
+        cacheManager.onMessage(new DefaultMessage(new byte[0],
+                "other-node\nE\ndeviceMetrics\nDEV001".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(List.of("new"), cache.get("DEV001").get());
+    }
+
+    @Test
+    void getAll_ShouldReadLocalMissesFromRedisAndKeepThem() {
+        TwoTierCache cache = (TwoTierCache) cacheManager.getCache("deviceMetrics");
+        cache.put("DEV001", List.of("a"));
+        when(redisCache.get("DEV002")).thenReturn(new SimpleValueWrapper(List.of("b")));
+
+        Map<String, Object> found = cache.getAll(List.of("DEV001", "DEV002", "DEV003"));
+
+        assertEquals(Map.of("DEV001", List.of("a"), "DEV002", List.of("b")), found);
+        verify(redisCache, never()).get("DEV001");
+        assertEquals(Map.of("DEV002", List.of("b")), cache.getAll(List.of("DEV002")));
+        verify(redisCache, times(1)).get("DEV002");
+    }
+
+    @Test
+    void put_ShouldNotBroadcastFillsAfterAMiss() {
+        Cache cache = cacheManager.getCache("deviceMetrics");
+
+        // As @Cacheable fills a key, and as a synchronized lookup loads one
+        assertNull(cache.get("DEV001"));
+        cache.put("DEV001", List.of("a"));
+        assertEquals(List.of("b"), cache.get("DEV002", () -> List.of("b")));
+
+        verify(redisCache).put("DEV001", List.of("a"));
+        verify(redisCache).put("DEV002", List.of("b"));
+        verifyNoInteractions(redisTemplate);
+        assertEquals(List.of("a"), cache.get("DEV001").get());
+    }
+
+    @Test
+    void putAll_ShouldWriteBothTiersWithoutBroadcasting() {
+        TwoTierCache cache = (TwoTierCache) cacheManager.getCache("deviceMetrics");
+
+        cache.putAll(Map.of("DEV001", List.of("a"), "DEV002", List.of("b")));
+
+        verify(redisCache).put("DEV001", List.of("a"));
+        verify(redisCache).put("DEV002", List.of("b"));
+        verifyNoInteractions(redisTemplate);
+        assertEquals(List.of("b"), cache.get("DEV002").get());
+
+        // Applied by other instances key by key
+        cacheManager.onMessage(new DefaultMessage(new byte[0],
+                "other-node\nA\ndeviceMetrics\nDEV001\nDEV002".getBytes(StandardCharsets.UTF_8)), null);
+        when(redisCache.get("DEV002")).thenReturn(new SimpleValueWrapper(List.of("c")));
+        assertEquals(List.of("c"), cache.get("DEV002").get());
+    }
+
+    @Test
+    void evictAll_ShouldDropBothTiersAndBroadcastOneEviction() {
+        TwoTierCache cache = (TwoTierCache) cacheManager.getCache("deviceMetrics");
+        cache.put("DEV001", List.of("a"));
+        cache.put("DEV002", List.of("b"));
+
+        cache.evictAll(List.of("DEV001", "DEV002"));
+
+        verify(redisCache).evict("DEV001");
+        verify(redisCache).evict("DEV002");
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(3)).convertAndSend(eq("qct:cache:invalidation"), message.capture());
+        assertTrue(message.getValue().endsWith("\nA\ndeviceMetrics\nDEV001\nDEV002"));
+        assertNull(cache.get("DEV001"));
+        assertNull(cache.get("DEV002"));
+    }
+
+    @Test
+    void updateLocal_ShouldRewriteLocalCopyAndEvictRedis() {
+        TwoTierCache cache = (TwoTierCache) cacheManager.getCache("deviceMetrics");
+        cache.put("DEV001", List.of("a"));
+
+        assertTrue(cache.updateLocal("DEV001", value -> List.of("b", "a")));
+        assertFalse(cache.updateLocal("DEV002", value -> List.of("b")));
+
+        verify(redisCache).evict("DEV001");
+        verify(redisCache).evict("DEV002");
+        verify(redisTemplate, times(3)).convertAndSend(eq("qct:cache:invalidation"), anyString());
+        assertEquals(List.of("b", "a"), cache.get("DEV001").get());
+        assertNull(cache.get("DEV002"));
+    }
+
+    @Test
+    void get_ShouldTreatRedisFailureAsMiss() {
+        when(redisCache.get("DEV001")).thenThrow(new IllegalStateException("connection refused"));
+        Cache cache = cacheManager.getCache("deviceMetrics");
+
+        assertNull(cache.get("DEV001"));
+        assertEquals(1.0, meterRegistry.get("qct.cache.errors").tags("cache", "deviceMetrics").counter().count());
+    }
+
+    @Test
+    void put_ShouldRecordLoadTimeForTheKeyThatMissed() {
+        Cache cache = cacheManager.getCache("deviceMetrics");
+
+        assertNull(cache.get("DEV001"));
+        cache.put("DEV001", List.of("a"));
+        // Not preceded by a miss on this thread
+        cache.put("DEV002", List.of("b"));
+
+        assertEquals(1, meterRegistry.get("qct.cache.loads").tags("cache", "deviceMetrics").timer().count());
+    }
+
+    @Test
+    void get_ShouldRunOneLoadForConcurrentMisses() throws Exception {
+        Cache cache = cacheManager.getCache("deviceMetrics");
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> cache.get("DEV001", () -> {
+                    calls.incrementAndGet();
+                    release.await();
+                    return List.of("a");
+                })));
+            }
+            await(() -> meterRegistry.get("qct.cache.loads.coalesced").counter().count() == 3);
+            release.countDown();
+
+            for (Future<List<String>> result : results) {
+                assertEquals(List.of("a"), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        verify(redisCache, times(1)).put("DEV001", List.of("a"));
+    }
+
+    @Test
+    void get_ShouldServeStaleValueWhileReloading() throws Exception {
+        Cache cache = staleWhileRevalidateCache();
+        cache.put("DEV001", List.of("old"));
+        // Gone from both tiers, as after the Redis TTL
+        ((com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache()).invalidateAll();
+
+        assertEquals(List.of("old"), cache.get("DEV001", () -> List.of("new")));
+
+        await(() -> List.of("new").equals(cache.get("DEV001", List.class)));
+        assertEquals(1.0, meterRegistry.get("qct.cache.stale").counter().count());
+    }
+
+    @Test
+    void get_ShouldNotServeStaleValueAfterEviction() {
+        Cache cache = staleWhileRevalidateCache();
+        cache.put("DEV001", List.of("old"));
+        cache.evict("DEV001");
+
+        assertEquals(List.of("new"), cache.get("DEV001", () -> List.of("new")));
+    }
+
+    @Test
+    void get_ShouldReloadInBackgroundWithinRefreshAheadWindow() throws Exception {
+        TwoTierCacheProperties properties = new TwoTierCacheProperties();
+        TwoTierCacheProperties.Spec spec = new TwoTierCacheProperties.Spec();
+        spec.setTtl(Duration.ofMinutes(1));
+        spec.setRefreshAhead(Duration.ofMinutes(1));
+        properties.getCaches().put("deviceMetrics", spec);
+        Cache cache = new TwoTierCacheManager(redisCacheManager, properties, redisTemplate, meterRegistry)
+                .getCache("deviceMetrics");
+        cache.put("DEV001", List.of("old"));
+
+        assertEquals(List.of("old"), cache.get("DEV001", () -> List.of("new")));
+
+        await(() -> List.of("new").equals(cache.get("DEV001", List.class)));
+    }
+
+    private Cache staleWhileRevalidateCache() {
+        TwoTierCacheProperties properties = new TwoTierCacheProperties();
+        TwoTierCacheProperties.Spec spec = new TwoTierCacheProperties.Spec();
+        spec.setStaleWhileRevalidate(Duration.ofMinutes(1));
+        properties.getCaches().put("deviceMetrics", spec);
+        return new TwoTierCacheManager(redisCacheManager, properties, redisTemplate, meterRegistry)
+                .getCache("deviceMetrics");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
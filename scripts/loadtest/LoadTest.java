@@ -0,0 +1,172 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load generator: each of {@code concurrency} clients sends a request, waits
+ * for the answer and sends the next, for {@code duration}, cycling through the given paths.
+ * Clients run on virtual threads so that thousands of them cost next to nothing here.
+ *
+ * <pre>
+ * java scripts/loadtest/LoadTest.java --url http://localhost:8080 \
+ *     --path /api/v1/devices/DEV001 --path /api/v1/analytics/device/DEV001/page?limit=20 \
+ *     --header "Authorization: Bearer ..." --concurrency 50,200,1000 --duration 30s --warmup 10s
+ * </pre>
+ *
+ * One line per concurrency level: completed requests per second, latency percentiles in
+ * milliseconds, transport errors and the count of each HTTP status.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        List<String> paths = new ArrayList<>();
+        List<String> headers = new ArrayList<>();
+        int[] levels = {50};
+        Duration duration = Duration.ofSeconds(30);
+        Duration warmup = Duration.ofSeconds(5);
+        Duration timeout = Duration.ofSeconds(30);
+        String label = "";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url" -> url = args[++i];
+                case "--path" -> paths.add(args[++i]);
+                case "--concurrency" -> levels = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--duration" -> duration = parseDuration(args[++i]);
+                case "--warmup" -> warmup = parseDuration(args[++i]);
+                case "--timeout" -> timeout = parseDuration(args[++i]);
+                case "--header" -> {
+                    String[] header = args[++i].split(":", 2);
+                    headers.add(header[0].trim());
+                    headers.add(header[1].trim());
+                }
+                case "--label" -> label = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add("/api/v1/devices/health");
+        }
+
+        List<URI> targets = new ArrayList<>();
+        for (String path : paths) {
+            targets.add(URI.create(url + path));
+        }
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        System.out.printf("%-16s %6s %9s %9s %8s %8s %8s %8s %7s  %s%n",
+                "label", "conc", "requests", "req/s", "p50", "p95", "p99", "max", "errors", "status");
+        for (int concurrency : levels) {
+            if (!warmup.isZero()) {
+                run(client, targets, headers, concurrency, warmup, timeout);
+            }
+            Result result = run(client, targets, headers, concurrency, duration, timeout);
+            System.out.printf("%-16s %6d %9d %9.0f %8.1f %8.1f %8.1f %8.1f %7d  %s%n",
+                    label, concurrency, result.count(), result.count() / (duration.toMillis() / 1000.0),
+                    result.percentile(0.50), result.percentile(0.95), result.percentile(0.99),
+                    result.percentile(1.0), result.errors.sum(), new TreeMap<>(result.statuses));
+        }
+    }
+
+    private static Result run(HttpClient client, List<URI> targets, List<String> headers, int concurrency,
+                              Duration duration, Duration timeout) throws InterruptedException {
+        Result result = new Result();
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong sequence = new AtomicLong();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                clients.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        URI target = targets.get((int) (sequence.getAndIncrement() % targets.size()));
+                        HttpRequest.Builder request = HttpRequest.newBuilder(target).timeout(timeout).GET();
+                        if (!headers.isEmpty()) {
+                            request.headers(headers.toArray(String[]::new));
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                            result.record(System.nanoTime() - start, response.statusCode());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (Exception e) {
+                            result.errors.increment();
+                        }
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    /** Latencies in 0.1ms buckets up to 60s, which is plenty for percentiles. */
+    private static final class Result {
+
+        private static final int BUCKETS = 600_000;
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long nanos, int status) {
+            int bucket = (int) Math.min(BUCKETS - 1, nanos / 100_000);
+            histogram.incrementAndGet(bucket);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += histogram.get(i);
+            }
+            return count;
+        }
+
+        double percentile(double q) {
+            long count = count();
+            if (count == 0) {
+                return Double.NaN;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    return (i + 1) / 10.0;
+                }
+            }
+            return BUCKETS / 10.0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+#!/bin/bash
+
+# Runs the same load against the Java service on platform threads (default) and on virtual
+# threads (the virtual-threads profile), one after the other, and prints both result tables.
+#
+#   cd java-backend && mvn package -DskipTests && ../scripts/loadtest/compare-threading.sh
+#
+# Needs JDK 21 on the PATH, for the service and for LoadTest.java.
+#
+# Environment:
+#   APP_CMD      command starting the service (default: java -jar target/device-management-service-1.0.0.jar)
+#   PATHS        space-separated request paths, cycled through by every client
+#   CONCURRENCY  comma-separated concurrency levels (default: 50,200,800,2000)
+#   DURATION     measured time per level (default: 30s), after WARMUP (default: 10s)
+#   STARTUP_WARMUP  unmeasured load once the service is up, before the first level (default: 30s)
+#   HEADER       header sent with every request, e.g. "Authorization: Bearer ..."
+#   PROFILES     profiles to compare, e.g. "docker docker,virtual-threads" (default: "default virtual-threads")
+# Database settings (DATABASE_URL, DATABASE_POOL_SIZE, ...) are passed through to the service.
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_CMD=${APP_CMD:-"java -jar target/device-management-service-1.0.0.jar"}
+PATHS=${PATHS:-"/api/v1/devices/DEV001 /api/v1/analytics/device/DEV001/page?limit=20 /api/v1/devices/oem/OEM001"}
+CONCURRENCY=${CONCURRENCY:-50,200,800,2000}
+DURATION=${DURATION:-30s}
+WARMUP=${WARMUP:-10s}
+STARTUP_WARMUP=${STARTUP_WARMUP:-30s}
+PROFILES=${PROFILES:-"default virtual-threads"}
+PORT=${PORT:-8080}
+
+REQUEST_ARGS=()
+for path in $PATHS; do
+    REQUEST_ARGS+=(--path "$path")
+done
+if [ -n "$HEADER" ]; then
+    REQUEST_ARGS+=(--header "$HEADER")
+fi
+
+for profile in $PROFILES; do
+    log="/tmp/loadtest-$profile.log"
+    $APP_CMD --spring.profiles.active="$profile" --server.port="$PORT" > "$log" 2>&1 &
+    app=$!
+    for _ in $(seq 1 120); do
+        curl -sf "http://localhost:$PORT/api/v1/devices/health" > /dev/null && break
+        if ! kill -0 $app 2>/dev/null; then
+            echo "Service failed to start with profile $profile, see $log" >&2
+            exit 1
+        fi
+        sleep 1
+    done
+
+    # Start-up work (JIT, cache and hot-window warm-up) competes for the pool at first; keep it out of the first level
+    java "$SCRIPT_DIR/LoadTest.java" --url "http://localhost:$PORT" "${REQUEST_ARGS[@]}" \
+        --concurrency 10 --duration "$STARTUP_WARMUP" --warmup 0s > /dev/null
+
+    java "$SCRIPT_DIR/LoadTest.java" --url "http://localhost:$PORT" "${REQUEST_ARGS[@]}" \
+        --concurrency "$CONCURRENCY" --duration "$DURATION" --warmup "$WARMUP" --label "$profile"
+
+    kill $app
+    wait $app 2>/dev/null
+done